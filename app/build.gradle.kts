@@ -25,6 +25,11 @@ android {
         }
     }
 
+    // The campus pack is memory-mapped straight out of the APK
+    androidResources {
+        noCompress += "pack"
+    }
+
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
@@ -39,10 +44,31 @@ dependencies {
     implementation(libs.constraintlayout.v221)
     implementation(libs.play.services.maps)
     implementation(libs.play.services.location)
+    implementation(libs.recyclerview)
     // Remove or fix this if you don't have a version catalog:
     // implementation(libs.appcompat.v171)
     testImplementation(libs.junit)
     androidTestImplementation(libs.junit.ktx)
     androidTestImplementation(libs.espresso.core.v361)
     implementation(libs.activity.v172)
-}
\ No newline at end of file
+}
+
+// Regenerates the campus data pack asset from the campus JSON (see CampusPackTool)
+tasks.register<JavaExec>("generateCampusPack") {
+    group = "campus data"
+    dependsOn("compileDebugJavaWithJavac")
+    classpath = files(layout.buildDirectory.dir("intermediates/javac/debug/compileDebugJavaWithJavac/classes"))
+    mainClass.set("com.example.ntumap.CampusPackTool")
+    workingDir = projectDir
+    args("src/main/campus/campus.json", "src/main/assets/campus.pack")
+}
+
+// Regenerates the precomputed route index asset from the pack (see RouteIndexTool)
+tasks.register<JavaExec>("generateRouteIndex") {
+    group = "campus data"
+    dependsOn("generateCampusPack")
+    classpath = files(layout.buildDirectory.dir("intermediates/javac/debug/compileDebugJavaWithJavac/classes"))
+    mainClass.set("com.example.ntumap.RouteIndexTool")
+    workingDir = projectDir
+    args("src/main/assets/campus.pack", "src/main/assets/campus_routes.ch")
+}
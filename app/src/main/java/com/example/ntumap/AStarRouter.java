@@ -0,0 +1,123 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+
+/**
+ * A* shortest-path search over a {@link CampusGraph} using the haversine
+ * distance to the target as heuristic. Edges are weighed by a
+ * {@link RoutingProfile}, plain walking distance unless given one.
+ *
+ * Search state is kept in arrays sized to the graph and invalidated with a
+ * per-query stamp instead of being cleared, so a query only touches the nodes
+ * it actually visits. Instances are not thread-safe; keep one per caller.
+ */
+public class AStarRouter implements Router {
+
+    private final CampusGraph graph;
+    private final RoutingProfile profile;
+    private final double[] distance;
+    private final double[] heuristic;
+    private final int[] parent;
+    private final int[] parentEdge;
+    private final int[] seenStamp;
+    private final int[] closedStamp;
+    private final NodeHeap open;
+    private int stamp;
+
+    public AStarRouter(CampusGraph graph) {
+        this(graph, RoutingProfile.SHORTEST);
+    }
+
+    public AStarRouter(CampusGraph graph, RoutingProfile profile) {
+        this.graph = graph;
+        this.profile = profile;
+        int n = graph.nodeCount();
+        distance = new double[n];
+        heuristic = new double[n];
+        parent = new int[n];
+        parentEdge = new int[n];
+        seenStamp = new int[n];
+        closedStamp = new int[n];
+        open = new NodeHeap(n);
+    }
+
+    @Override
+    public CampusGraph getGraph() { return graph; }
+
+    public RoutingProfile getProfile() { return profile; }
+
+    @Override
+    public double edgeCost(int edge) {
+        return profile.cost(graph, edge);
+    }
+
+    @Override
+    public Route findRoute(int source, int target) {
+        if (++stamp == 0) {
+            // Stamp wrapped around; forget every previous query
+            Arrays.fill(seenStamp, 0);
+            Arrays.fill(closedStamp, 0);
+            stamp = 1;
+        }
+        open.clear();
+
+        double targetLat = graph.latitude(target);
+        double targetLng = graph.longitude(target);
+
+        visit(source, 0, -1, -1, targetLat, targetLng);
+        open.push(source, heuristic[source]);
+
+        while (!open.isEmpty()) {
+            int node = open.poll();
+            if (node == target) {
+                return buildRoute(source, target);
+            }
+            closedStamp[node] = stamp;
+
+            double base = distance[node];
+            for (int e = graph.firstEdge(node), end = graph.endEdge(node); e < end; e++) {
+                int next = graph.edgeTarget(e);
+                if (closedStamp[next] == stamp) continue;
+                double candidate = base + profile.cost(graph, e);
+                if (candidate == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                if (seenStamp[next] != stamp) {
+                    visit(next, candidate, node, e, targetLat, targetLng);
+                } else if (candidate < distance[next]) {
+                    distance[next] = candidate;
+                    parent[next] = node;
+                    parentEdge[next] = e;
+                } else {
+                    continue;
+                }
+                open.push(next, candidate + heuristic[next]);
+            }
+        }
+        return null;
+    }
+
+    private void visit(int node, double dist, int from, int edge, double targetLat, double targetLng) {
+        seenStamp[node] = stamp;
+        distance[node] = dist;
+        parent[node] = from;
+        parentEdge[node] = edge;
+        heuristic[node] = GeoUtils.haversine(graph.latitude(node), graph.longitude(node), targetLat, targetLng);
+    }
+
+    private Route buildRoute(int source, int target) {
+        int count = 1;
+        for (int n = target; n != source; n = parent[n]) {
+            count++;
+        }
+        int[] nodes = new int[count];
+        double meters = 0;
+        for (int n = target, i = count - 1; i >= 0; n = parent[n], i--) {
+            nodes[i] = n;
+            if (n != source) {
+                meters += graph.edgeWeight(parentEdge[n]);
+            }
+        }
+        return new Route(graph, nodes, meters);
+    }
+}
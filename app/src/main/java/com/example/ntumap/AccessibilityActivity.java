@@ -1,6 +1,5 @@
 package com.example.ntumap;
 
-import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.widget.Button;
 import android.widget.CheckBox;
@@ -22,15 +21,15 @@ public class AccessibilityActivity extends AppCompatActivity {
     private Button saveButton;
     private Button resetButton;
     
-    private SharedPreferences preferences;
+    private SettingsStore settings;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_accessibility);
         
-        // Initialize SharedPreferences
-        preferences = getSharedPreferences("AccessibilitySettings", MODE_PRIVATE);
+        // Initialize settings
+        settings = ((NtuMapApplication) getApplication()).getSettingsStore();
         
         // Initialize UI
         initializeViews();
@@ -92,20 +91,21 @@ public class AccessibilityActivity extends AppCompatActivity {
     }
     
     private void loadCurrentSettings() {
-        // Load saved settings from SharedPreferences
-        voiceGuidanceCheckBox.setChecked(preferences.getBoolean("voice_guidance", false));
-        highContrastCheckBox.setChecked(preferences.getBoolean("high_contrast", false));
-        screenReaderCheckBox.setChecked(preferences.getBoolean("screen_reader", false));
-        largeTextCheckBox.setChecked(preferences.getBoolean("large_text", false));
-        vibrationFeedbackCheckBox.setChecked(preferences.getBoolean("vibration_feedback", false));
+        // Load saved settings
+        Settings current = settings.get();
+        voiceGuidanceCheckBox.setChecked(current.has(Settings.VOICE_GUIDANCE));
+        highContrastCheckBox.setChecked(current.has(Settings.HIGH_CONTRAST));
+        screenReaderCheckBox.setChecked(current.has(Settings.SCREEN_READER));
+        largeTextCheckBox.setChecked(current.has(Settings.LARGE_TEXT));
+        vibrationFeedbackCheckBox.setChecked(current.has(Settings.VIBRATION_FEEDBACK));
         
-        int textSize = preferences.getInt("text_size", 16);
-        textSizeSeekBar.setProgress(textSize - 12); // Min size is 12, max is 24
-        updateTextSizePreview(textSize - 12);
+        int textSize = current.getTextSize();
+        textSizeSeekBar.setProgress(textSize - Settings.MIN_TEXT_SIZE);
+        updateTextSizePreview(textSize - Settings.MIN_TEXT_SIZE);
     }
     
     private void updateTextSizePreview(int progress) {
-        int textSize = 12 + progress; // Range from 12 to 24
+        int textSize = Settings.MIN_TEXT_SIZE + progress;
         textSizePreview.setText("Preview Text Size: " + textSize + "sp");
         textSizePreview.setTextSize(textSize);
     }
@@ -123,19 +123,15 @@ public class AccessibilityActivity extends AppCompatActivity {
     }
     
     private void saveSettings() {
-        // Save all settings to SharedPreferences
-        SharedPreferences.Editor editor = preferences.edit();
-        
-        editor.putBoolean("voice_guidance", voiceGuidanceCheckBox.isChecked());
-        editor.putBoolean("high_contrast", highContrastCheckBox.isChecked());
-        editor.putBoolean("screen_reader", screenReaderCheckBox.isChecked());
-        editor.putBoolean("large_text", largeTextCheckBox.isChecked());
-        editor.putBoolean("vibration_feedback", vibrationFeedbackCheckBox.isChecked());
-        
-        int textSize = 12 + textSizeSeekBar.getProgress();
-        editor.putInt("text_size", textSize);
-        
-        editor.apply();
+        // Save all settings together; they reach the disk in one write
+        settings.edit()
+                .set(Settings.VOICE_GUIDANCE, voiceGuidanceCheckBox.isChecked())
+                .set(Settings.HIGH_CONTRAST, highContrastCheckBox.isChecked())
+                .set(Settings.SCREEN_READER, screenReaderCheckBox.isChecked())
+                .set(Settings.LARGE_TEXT, largeTextCheckBox.isChecked())
+                .set(Settings.VIBRATION_FEEDBACK, vibrationFeedbackCheckBox.isChecked())
+                .setTextSize(Settings.MIN_TEXT_SIZE + textSizeSeekBar.getProgress())
+                .apply();
         
         Toast.makeText(this, "Accessibility settings saved successfully!", Toast.LENGTH_SHORT).show();
         
@@ -150,20 +146,21 @@ public class AccessibilityActivity extends AppCompatActivity {
         screenReaderCheckBox.setChecked(false);
         largeTextCheckBox.setChecked(false);
         vibrationFeedbackCheckBox.setChecked(false);
-        textSizeSeekBar.setProgress(4); // Default to 16sp (12 + 4)
-        updateTextSizePreview(4);
+        textSizeSeekBar.setProgress(Settings.DEFAULT_TEXT_SIZE - Settings.MIN_TEXT_SIZE);
+        updateTextSizePreview(Settings.DEFAULT_TEXT_SIZE - Settings.MIN_TEXT_SIZE);
         
         Toast.makeText(this, "Settings reset to defaults", Toast.LENGTH_SHORT).show();
     }
     
     private void applyAccessibilitySettings() {
         // Apply the saved accessibility settings throughout the app
-        boolean voiceGuidance = preferences.getBoolean("voice_guidance", false);
-        boolean highContrast = preferences.getBoolean("high_contrast", false);
-        boolean screenReader = preferences.getBoolean("screen_reader", false);
-        boolean largeText = preferences.getBoolean("large_text", false);
-        boolean vibrationFeedback = preferences.getBoolean("vibration_feedback", false);
-        int textSize = preferences.getInt("text_size", 16);
+        Settings current = settings.get();
+        boolean voiceGuidance = current.has(Settings.VOICE_GUIDANCE);
+        boolean highContrast = current.has(Settings.HIGH_CONTRAST);
+        boolean screenReader = current.has(Settings.SCREEN_READER);
+        boolean largeText = current.has(Settings.LARGE_TEXT);
+        boolean vibrationFeedback = current.has(Settings.VIBRATION_FEEDBACK);
+        int textSize = current.getTextSize();
         
         // In a real app, this would:
         // - Enable/disable voice guidance for navigation
@@ -182,29 +179,4 @@ public class AccessibilityActivity extends AppCompatActivity {
         
         Toast.makeText(this, appliedSettings.toString(), Toast.LENGTH_LONG).show();
     }
-    
-    // Accessibility helper methods
-    public static boolean isVoiceGuidanceEnabled(SharedPreferences preferences) {
-        return preferences.getBoolean("voice_guidance", false);
-    }
-    
-    public static boolean isHighContrastEnabled(SharedPreferences preferences) {
-        return preferences.getBoolean("high_contrast", false);
-    }
-    
-    public static boolean isScreenReaderEnabled(SharedPreferences preferences) {
-        return preferences.getBoolean("screen_reader", false);
-    }
-    
-    public static boolean isLargeTextEnabled(SharedPreferences preferences) {
-        return preferences.getBoolean("large_text", false);
-    }
-    
-    public static boolean isVibrationFeedbackEnabled(SharedPreferences preferences) {
-        return preferences.getBoolean("vibration_feedback", false);
-    }
-    
-    public static int getTextSize(SharedPreferences preferences) {
-        return preferences.getInt("text_size", 16);
-    }
-} 
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,18 @@
+package com.example.ntumap;
+
+import java.util.List;
+
+/**
+ * Source of alert revisions, delivered in batches on a background thread.
+ * A newly started feed first delivers every alert the source still holds.
+ */
+public interface AlertFeed {
+
+    interface Listener {
+        void onAlerts(List<EmergencyAlert> batch);
+    }
+
+    void start(Listener listener);
+
+    void stop();
+}
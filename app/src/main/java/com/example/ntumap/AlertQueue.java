@@ -0,0 +1,280 @@
+package com.example.ntumap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Active alerts, most urgent first.
+ *
+ * Every alert sits in two indexed binary heaps: one ordered by severity
+ * and then newest first, whose top is the alert to show, and one ordered
+ * by expiry time. Each alert remembers its position in both, so a new
+ * revision or a withdrawal moves or removes it in O(log n) and the most
+ * urgent alert is read in O(1). Alerts are deduplicated by id: a revision
+ * no newer than the one held is ignored, and so is any revision of an
+ * alert that was removed in the last {@link #TOMBSTONE_MILLIS}, so a
+ * delayed copy cannot bring a withdrawn alert back. Instances are
+ * thread-safe.
+ */
+public class AlertQueue {
+
+    // How long removed alerts are remembered for deduplication
+    public static final long TOMBSTONE_MILLIS = 60 * 60 * 1000;
+
+    private static final Comparator<EmergencyAlert> URGENCY = (a, b) -> {
+        if (a.getSeverity() != b.getSeverity()) {
+            return b.getSeverity().compareTo(a.getSeverity());
+        }
+        if (a.getIssuedAtMillis() != b.getIssuedAtMillis()) {
+            return Long.compare(b.getIssuedAtMillis(), a.getIssuedAtMillis());
+        }
+        return Long.compare(a.getId(), b.getId());
+    };
+
+    private static final int BY_URGENCY = 0;
+    private static final int BY_EXPIRY = 1;
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    // Latest revision of recently removed alerts, oldest removal first
+    private final LinkedHashMap<Long, Tombstone> tombstones = new LinkedHashMap<>();
+    private Entry[][] heaps = {new Entry[16], new Entry[16]};
+    private int size;
+
+    /**
+     * Adds new alerts and revisions, then drops everything expired by now.
+     * Returns what changed, net of any alert revised several times in the
+     * batch.
+     */
+    public synchronized Changes offer(Collection<EmergencyAlert> batch, long now) {
+        Map<Long, EmergencyAlert> before = new HashMap<>();
+        pruneTombstones(now);
+        for (EmergencyAlert alert : batch) {
+            Entry entry = entries.get(alert.getId());
+            if (entry != null ? alert.getRevision() <= entry.alert.getRevision() : isTombstoned(alert)) {
+                continue;
+            }
+            if (!before.containsKey(alert.getId())) {
+                before.put(alert.getId(), entry != null ? entry.alert : null);
+            }
+            if (alert.isExpired(now)) {
+                // A withdrawal, or an alert that timed out on its way here
+                if (entry != null) {
+                    remove(entry);
+                }
+                tombstones.put(alert.getId(), new Tombstone(alert.getRevision(), now));
+            } else if (entry == null) {
+                add(alert);
+            } else {
+                entry.alert = alert;
+                fix(BY_URGENCY, entry.position[BY_URGENCY]);
+                fix(BY_EXPIRY, entry.position[BY_EXPIRY]);
+            }
+        }
+        expire(now, before);
+        return changes(before);
+    }
+
+    /** Drops every alert that has expired by now. */
+    public synchronized Changes expire(long now) {
+        Map<Long, EmergencyAlert> before = new HashMap<>();
+        pruneTombstones(now);
+        expire(now, before);
+        return changes(before);
+    }
+
+    // The most urgent alert, or null if there are none
+    public synchronized EmergencyAlert peek() {
+        return size == 0 ? null : heaps[BY_URGENCY][0].alert;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // When the next alert expires, or Long.MAX_VALUE if none will
+    public synchronized long nextExpiry() {
+        return size == 0 ? Long.MAX_VALUE : heaps[BY_EXPIRY][0].alert.getExpiresAtMillis();
+    }
+
+    /** All active alerts, most urgent first. */
+    public synchronized List<EmergencyAlert> snapshot() {
+        EmergencyAlert[] alerts = new EmergencyAlert[size];
+        for (int i = 0; i < size; i++) {
+            alerts[i] = heaps[BY_URGENCY][i].alert;
+        }
+        Arrays.sort(alerts, URGENCY);
+        return Arrays.asList(alerts);
+    }
+
+    private void expire(long now, Map<Long, EmergencyAlert> before) {
+        while (size > 0 && heaps[BY_EXPIRY][0].alert.isExpired(now)) {
+            Entry entry = heaps[BY_EXPIRY][0];
+            if (!before.containsKey(entry.alert.getId())) {
+                before.put(entry.alert.getId(), entry.alert);
+            }
+            remove(entry);
+            tombstones.put(entry.alert.getId(), new Tombstone(entry.alert.getRevision(), now));
+        }
+    }
+
+    private Changes changes(Map<Long, EmergencyAlert> before) {
+        List<EmergencyAlert> added = new ArrayList<>();
+        List<EmergencyAlert> removed = new ArrayList<>();
+        for (Map.Entry<Long, EmergencyAlert> change : before.entrySet()) {
+            Entry entry = entries.get(change.getKey());
+            EmergencyAlert after = entry != null ? entry.alert : null;
+            if (change.getValue() == after) {
+                continue;
+            }
+            if (change.getValue() != null) {
+                removed.add(change.getValue());
+            }
+            if (after != null) {
+                added.add(after);
+            }
+        }
+        return new Changes(added, removed);
+    }
+
+    private boolean isTombstoned(EmergencyAlert alert) {
+        Tombstone tombstone = tombstones.get(alert.getId());
+        return tombstone != null && alert.getRevision() <= tombstone.revision;
+    }
+
+    private void pruneTombstones(long now) {
+        Iterator<Tombstone> it = tombstones.values().iterator();
+        while (it.hasNext() && it.next().removedAtMillis + TOMBSTONE_MILLIS <= now) {
+            it.remove();
+        }
+    }
+
+    private void add(EmergencyAlert alert) {
+        if (size == heaps[0].length) {
+            heaps[BY_URGENCY] = Arrays.copyOf(heaps[BY_URGENCY], size * 2);
+            heaps[BY_EXPIRY] = Arrays.copyOf(heaps[BY_EXPIRY], size * 2);
+        }
+        Entry entry = new Entry(alert);
+        entries.put(alert.getId(), entry);
+        int slot = size++;
+        for (int heap = BY_URGENCY; heap <= BY_EXPIRY; heap++) {
+            heaps[heap][slot] = entry;
+            entry.position[heap] = slot;
+            siftUp(heap, slot);
+        }
+    }
+
+    private void remove(Entry entry) {
+        entries.remove(entry.alert.getId());
+        // Tombstones are re-inserted at the end, keeping them in removal order
+        tombstones.remove(entry.alert.getId());
+        int last = --size;
+        for (int heap = BY_URGENCY; heap <= BY_EXPIRY; heap++) {
+            int slot = entry.position[heap];
+            Entry moved = heaps[heap][last];
+            heaps[heap][last] = null;
+            if (slot != last) {
+                heaps[heap][slot] = moved;
+                moved.position[heap] = slot;
+                fix(heap, slot);
+            }
+        }
+    }
+
+    private void fix(int heap, int slot) {
+        if (!siftUp(heap, slot)) {
+            siftDown(heap, slot);
+        }
+    }
+
+    private static boolean before(int heap, Entry a, Entry b) {
+        if (heap == BY_EXPIRY) {
+            return a.alert.getExpiresAtMillis() < b.alert.getExpiresAtMillis();
+        }
+        return URGENCY.compare(a.alert, b.alert) < 0;
+    }
+
+    private boolean siftUp(int heap, int slot) {
+        Entry[] items = heaps[heap];
+        Entry entry = items[slot];
+        int start = slot;
+        while (slot > 0) {
+            int parent = (slot - 1) >>> 1;
+            if (!before(heap, entry, items[parent])) {
+                break;
+            }
+            items[slot] = items[parent];
+            items[slot].position[heap] = slot;
+            slot = parent;
+        }
+        items[slot] = entry;
+        entry.position[heap] = slot;
+        return slot != start;
+    }
+
+    private void siftDown(int heap, int slot) {
+        Entry[] items = heaps[heap];
+        Entry entry = items[slot];
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(heap, items[child + 1], items[child])) {
+                child++;
+            }
+            if (!before(heap, items[child], entry)) {
+                break;
+            }
+            items[slot] = items[child];
+            items[slot].position[heap] = slot;
+            slot = child;
+        }
+        items[slot] = entry;
+        entry.position[heap] = slot;
+    }
+
+    private static final class Entry {
+        EmergencyAlert alert;
+        // Index in each heap
+        final int[] position = new int[2];
+
+        Entry(EmergencyAlert alert) {
+            this.alert = alert;
+        }
+    }
+
+    private static final class Tombstone {
+        final int revision;
+        final long removedAtMillis;
+
+        Tombstone(int revision, long removedAtMillis) {
+            this.revision = revision;
+            this.removedAtMillis = removedAtMillis;
+        }
+    }
+
+    /** Alerts that became active and alerts that stopped being active. A revised alert is in both. */
+    public static final class Changes {
+        private final List<EmergencyAlert> added;
+        private final List<EmergencyAlert> removed;
+
+        Changes(List<EmergencyAlert> added, List<EmergencyAlert> removed) {
+            this.added = added;
+            this.removed = removed;
+        }
+
+        public List<EmergencyAlert> getAdded() { return added; }
+        public List<EmergencyAlert> getRemoved() { return removed; }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty();
+        }
+    }
+}
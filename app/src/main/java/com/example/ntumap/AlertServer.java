@@ -0,0 +1,30 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Remote log of alert revisions, read by polling. Each revision gets a
+ * sequence number when it is published; a client keeps the cursor of the
+ * last page it read and asks only for what came after it.
+ */
+public interface AlertServer {
+
+    final class Page {
+        private final List<EmergencyAlert> alerts;
+        private final long cursor;
+
+        public Page(List<EmergencyAlert> alerts, long cursor) {
+            this.alerts = alerts;
+            this.cursor = cursor;
+        }
+
+        // Oldest first
+        public List<EmergencyAlert> getAlerts() { return alerts; }
+        // Pass to the next poll to continue after this page
+        public long getCursor() { return cursor; }
+    }
+
+    /** Up to limit revisions published after the cursor; a cursor of 0 starts from the beginning. */
+    Page poll(long cursor, int limit) throws IOException;
+}
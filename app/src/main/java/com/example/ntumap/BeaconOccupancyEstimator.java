@@ -0,0 +1,226 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+
+/**
+ * Turns Bluetooth sightings from room scanners into head counts.
+ *
+ * Each device is counted once, in the room whose scanner hears it best. It
+ * moves to another room when that room hears it clearly louder, or when its
+ * current room has not heard it for a while, and it drops out once no scanner
+ * has heard it within the window. Devices live in an open-addressing table
+ * keyed by the device hash, so a batch does no per-sighting allocation. Each
+ * batch changes the shared {@link OccupancyStore} by this estimator's own
+ * delta in one write, leaving room for other writers.
+ *
+ * Not thread-safe: feed it batches from one thread.
+ */
+public class BeaconOccupancyEstimator {
+
+    // A louder room must beat the current one by this much to take the device
+    static final int SWITCH_MARGIN_DB = 4;
+
+    private static final int MIN_TABLE_SIZE = 1024;
+
+    private final OccupancyStore store;
+    private final long windowMillis;
+    private final long switchAfterMillis;
+
+    // Device table, linear probing; used[slot] marks live entries
+    private long[] deviceKeys;
+    private boolean[] used;
+    private int[] deviceRoom;
+    private int[] deviceRssi;
+    private long[] deviceHeardInRoom;
+    private long[] deviceLastSeen;
+    private int deviceCount;
+
+    // Devices per room, and how much of that has been written to the store
+    private int[] roomCounts = new int[16];
+    private int[] publishedCounts = new int[16];
+    private int[] changedRooms = new int[16];
+    private int[] changedDeltas = new int[16];
+
+    public BeaconOccupancyEstimator(OccupancyStore store, long windowMillis) {
+        this.store = store;
+        this.windowMillis = windowMillis;
+        this.switchAfterMillis = windowMillis / 4;
+        allocateTable(MIN_TABLE_SIZE);
+    }
+
+    public int getTrackedDevices() {
+        return deviceCount;
+    }
+
+    public int getCount(int room) {
+        return room < roomCounts.length ? roomCounts[room] : 0;
+    }
+
+    /**
+     * Folds a batch of sightings into the device table, expires devices not
+     * heard since {@code nowMillis - window} and publishes the new counts.
+     */
+    public void process(BeaconSightings batch, long nowMillis) {
+        for (int i = 0; i < batch.size(); i++) {
+            long time = batch.getTimestamp(i);
+            if (time <= nowMillis - windowMillis) {
+                continue;
+            }
+            observe(batch.getDevice(i), batch.getRoom(i), batch.getRssi(i), time);
+        }
+        expire(nowMillis - windowMillis);
+        publish();
+    }
+
+    private void observe(long device, int room, int rssi, long time) {
+        ensureRoom(room);
+        int slot = find(device);
+        if (!used[slot]) {
+            if ((deviceCount + 1) * 2 > deviceKeys.length) {
+                rehash(deviceKeys.length * 2);
+                slot = find(device);
+            }
+            used[slot] = true;
+            deviceKeys[slot] = device;
+            deviceRoom[slot] = room;
+            deviceRssi[slot] = rssi;
+            deviceHeardInRoom[slot] = time;
+            deviceLastSeen[slot] = time;
+            deviceCount++;
+            roomCounts[room]++;
+            return;
+        }
+
+        deviceLastSeen[slot] = Math.max(deviceLastSeen[slot], time);
+        if (deviceRoom[slot] == room) {
+            if (time >= deviceHeardInRoom[slot]) {
+                deviceRssi[slot] = rssi;
+                deviceHeardInRoom[slot] = time;
+            }
+            return;
+        }
+        boolean louder = rssi >= deviceRssi[slot] + SWITCH_MARGIN_DB;
+        boolean currentStale = time - deviceHeardInRoom[slot] > switchAfterMillis;
+        if (louder || currentStale) {
+            roomCounts[deviceRoom[slot]]--;
+            roomCounts[room]++;
+            deviceRoom[slot] = room;
+            deviceRssi[slot] = rssi;
+            deviceHeardInRoom[slot] = time;
+        }
+    }
+
+    private void expire(long cutoff) {
+        int slot = 0;
+        while (slot < deviceKeys.length) {
+            if (used[slot] && deviceLastSeen[slot] <= cutoff) {
+                roomCounts[deviceRoom[slot]]--;
+                deviceCount--;
+                // The slot may now hold a shifted entry, so look at it again
+                removeAt(slot);
+            } else {
+                slot++;
+            }
+        }
+    }
+
+    // Writes the change since the last publish for every room, as one store write
+    private void publish() {
+        int changed = 0;
+        for (int room = 0; room < roomCounts.length; room++) {
+            int delta = roomCounts[room] - publishedCounts[room];
+            if (delta != 0) {
+                changedRooms[changed] = room;
+                changedDeltas[changed] = delta;
+                publishedCounts[room] = roomCounts[room];
+                changed++;
+            }
+        }
+        if (changed > 0) {
+            store.applyAll(changedRooms, changedDeltas, changed);
+        }
+    }
+
+    private int find(long device) {
+        int mask = deviceKeys.length - 1;
+        int slot = mix(device) & mask;
+        while (used[slot] && deviceKeys[slot] != device) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Backward-shift deletion keeps probe chains intact without tombstones
+    private void removeAt(int slot) {
+        int mask = deviceKeys.length - 1;
+        int hole = slot;
+        int next = (hole + 1) & mask;
+        while (used[next]) {
+            int home = mix(deviceKeys[next]) & mask;
+            // Move the entry back if the hole lies on its probe path from home
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                moveSlot(next, hole);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[hole] = false;
+    }
+
+    private void moveSlot(int from, int to) {
+        deviceKeys[to] = deviceKeys[from];
+        deviceRoom[to] = deviceRoom[from];
+        deviceRssi[to] = deviceRssi[from];
+        deviceHeardInRoom[to] = deviceHeardInRoom[from];
+        deviceLastSeen[to] = deviceLastSeen[from];
+        used[to] = true;
+    }
+
+    private void rehash(int size) {
+        long[] oldKeys = deviceKeys;
+        boolean[] oldUsed = used;
+        int[] oldRoom = deviceRoom;
+        int[] oldRssi = deviceRssi;
+        long[] oldHeard = deviceHeardInRoom;
+        long[] oldSeen = deviceLastSeen;
+        allocateTable(size);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = find(oldKeys[i]);
+                used[slot] = true;
+                deviceKeys[slot] = oldKeys[i];
+                deviceRoom[slot] = oldRoom[i];
+                deviceRssi[slot] = oldRssi[i];
+                deviceHeardInRoom[slot] = oldHeard[i];
+                deviceLastSeen[slot] = oldSeen[i];
+            }
+        }
+    }
+
+    private void allocateTable(int size) {
+        deviceKeys = new long[size];
+        used = new boolean[size];
+        deviceRoom = new int[size];
+        deviceRssi = new int[size];
+        deviceHeardInRoom = new long[size];
+        deviceLastSeen = new long[size];
+    }
+
+    private void ensureRoom(int room) {
+        if (room >= roomCounts.length) {
+            int size = Math.max(room + 1, roomCounts.length * 2);
+            roomCounts = Arrays.copyOf(roomCounts, size);
+            publishedCounts = Arrays.copyOf(publishedCounts, size);
+            changedRooms = Arrays.copyOf(changedRooms, size);
+            changedDeltas = Arrays.copyOf(changedDeltas, size);
+        }
+    }
+
+    // Device hashes are often sequential or low-entropy, so spread them before masking
+    private static int mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+
+/**
+ * Reusable batch of Bluetooth sightings: a room's scanner heard a device
+ * (by hashed address) at some signal strength. Stored as parallel arrays so
+ * a batch of thousands of sightings is a handful of allocations.
+ */
+public class BeaconSightings {
+
+    private int[] rooms;
+    private long[] devices;
+    private int[] rssi;
+    private long[] timestamps;
+    private int size;
+
+    public BeaconSightings(int initialCapacity) {
+        int capacity = Math.max(1, initialCapacity);
+        rooms = new int[capacity];
+        devices = new long[capacity];
+        rssi = new int[capacity];
+        timestamps = new long[capacity];
+    }
+
+    // Room ids come from OccupancyStore.intern
+    public void add(int room, long deviceHash, int rssiDbm, long timestampMillis) {
+        if (size == rooms.length) {
+            int capacity = size * 2;
+            rooms = Arrays.copyOf(rooms, capacity);
+            devices = Arrays.copyOf(devices, capacity);
+            rssi = Arrays.copyOf(rssi, capacity);
+            timestamps = Arrays.copyOf(timestamps, capacity);
+        }
+        rooms[size] = room;
+        devices[size] = deviceHash;
+        rssi[size] = rssiDbm;
+        timestamps[size] = timestampMillis;
+        size++;
+    }
+
+    public int size() { return size; }
+    public int getRoom(int i) { return rooms[i]; }
+    public long getDevice(int i) { return devices[i]; }
+    public int getRssi(int i) { return rssi[i]; }
+    public long getTimestamp(int i) { return timestamps[i]; }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Client side of room booking. Keeps the last known schedule of every
+ * bookable room and answers availability questions from it; bookings are
+ * sent to the {@link BookingServer} with the version they were checked
+ * against and retried on a fresher schedule if another client won the race.
+ *
+ * Bookable rooms are also kept sorted by capacity, so "rooms for at least
+ * n people free from start to end" is a binary search over capacities plus
+ * one binary search per candidate room's schedule.
+ */
+public class BookingEngine {
+
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final BookingServer server;
+    private final AtomicReferenceArray<RoomSchedule> known;
+    // Bookable rooms by ascending capacity
+    private final int[] roomsByCapacity;
+    private final int[] capacities;
+
+    public BookingEngine(BookingServer server, RoomTable rooms) {
+        this.server = server;
+        known = new AtomicReferenceArray<>(rooms.size());
+
+        List<Integer> bookable = new ArrayList<>();
+        for (int room = 0; room < rooms.size(); room++) {
+            if (rooms.hasFlag(room, RoomTable.BOOKABLE)) {
+                bookable.add(room);
+            }
+        }
+        bookable.sort((a, b) -> Integer.compare(rooms.getCapacity(a), rooms.getCapacity(b)));
+        roomsByCapacity = new int[bookable.size()];
+        capacities = new int[bookable.size()];
+        for (int i = 0; i < roomsByCapacity.length; i++) {
+            roomsByCapacity[i] = bookable.get(i);
+            capacities[i] = rooms.getCapacity(roomsByCapacity[i]);
+        }
+    }
+
+    /** Last known schedule of a room, fetched from the server the first time. */
+    public RoomSchedule getSchedule(int room) throws IOException {
+        RoomSchedule schedule = known.get(room);
+        return schedule != null ? schedule : refresh(room);
+    }
+
+    public RoomSchedule refresh(int room) throws IOException {
+        RoomSchedule schedule = server.fetch(room);
+        remember(room, schedule);
+        return known.get(room);
+    }
+
+    public boolean isFree(int room, long start, long end) throws IOException {
+        return getSchedule(room).isFree(start, end);
+    }
+
+    // Bookable rooms with at least minCapacity seats free for [start, end), smallest first
+    public List<Integer> findFreeRooms(long start, long end, int minCapacity) throws IOException {
+        List<Integer> free = new ArrayList<>();
+        for (int i = firstWithCapacity(minCapacity); i < roomsByCapacity.length; i++) {
+            if (isFree(roomsByCapacity[i], start, end)) {
+                free.add(roomsByCapacity[i]);
+            }
+        }
+        return free;
+    }
+
+    /**
+     * Reserves {@code [start, end)}. Returns OK with the booking id,
+     * CONFLICT if the slot is taken, or STALE if the schedule kept changing
+     * under us for every attempt.
+     */
+    public BookingServer.Response book(int room, long start, long end) throws IOException {
+        BookingServer.Response response = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            RoomSchedule schedule = getSchedule(room);
+            if (!schedule.isFree(start, end)) {
+                return new BookingServer.Response(BookingServer.Status.CONFLICT, schedule, 0);
+            }
+            response = server.book(room, schedule.getVersion(), start, end);
+            remember(room, response.getSchedule());
+            if (response.getStatus() != BookingServer.Status.STALE) {
+                return response;
+            }
+        }
+        return response;
+    }
+
+    public BookingServer.Response cancel(int room, long bookingId) throws IOException {
+        BookingServer.Response response = null;
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            response = server.cancel(room, getSchedule(room).getVersion(), bookingId);
+            remember(room, response.getSchedule());
+            if (response.getStatus() != BookingServer.Status.STALE) {
+                return response;
+            }
+        }
+        return response;
+    }
+
+    // Keeps the newest schedule seen; responses can arrive out of order
+    private void remember(int room, RoomSchedule schedule) {
+        while (true) {
+            RoomSchedule current = known.get(room);
+            if (current != null && current.getVersion() >= schedule.getVersion()) {
+                return;
+            }
+            if (known.compareAndSet(room, current, schedule)) {
+                return;
+            }
+        }
+    }
+
+    private int firstWithCapacity(int minCapacity) {
+        int low = 0;
+        int high = capacities.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (capacities[mid] < minCapacity) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+
+/**
+ * Remote store of room reservations. Changes are optimistic: the client
+ * sends the schedule version it based its decision on, and the server
+ * applies the change only if that is still the current version.
+ */
+public interface BookingServer {
+
+    enum Status {
+        OK,
+        // The slot is already reserved
+        CONFLICT,
+        // The schedule changed since the client read it; retry against the returned one
+        STALE
+    }
+
+    /** Outcome of a change, with the room's schedule as the server now has it. */
+    final class Response {
+        private final Status status;
+        private final RoomSchedule schedule;
+        private final long bookingId;
+
+        public Response(Status status, RoomSchedule schedule, long bookingId) {
+            this.status = status;
+            this.schedule = schedule;
+            this.bookingId = bookingId;
+        }
+
+        public Status getStatus() { return status; }
+        public RoomSchedule getSchedule() { return schedule; }
+        // Id of the new reservation, or 0 if nothing was booked
+        public long getBookingId() { return bookingId; }
+    }
+
+    RoomSchedule fetch(int room) throws IOException;
+
+    Response book(int room, long expectedVersion, long start, long end) throws IOException;
+
+    Response cancel(int room, long expectedVersion, long bookingId) throws IOException;
+}
@@ -0,0 +1,168 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Static campus data shared by the activities. Everything except the live
+ * occupancy comes from the campus data pack, which is mapped on first use
+ * from the source installed by {@link #setPackSource}.
+ */
+public final class CampusData {
+
+    // Binary campus data pack, generated by CampusPackTool from src/main/campus/campus.json
+    public static final String CAMPUS_PACK_ASSET = "campus.pack";
+
+    // Precomputed contraction hierarchy, generated by RouteIndexTool
+    public static final String ROUTE_INDEX_ASSET = "campus_routes.ch";
+
+    // Recorded occupancy deltas replayed while there is no live feed
+    public static final String OCCUPANCY_REPLAY_ASSET = "occupancy_replay.csv";
+
+    // Round trip of the stand-in booking server
+    private static final long BOOKING_LATENCY_MILLIS = 500;
+
+    // Opens a bundled asset; activities pass getAssets()::open
+    public interface AssetOpener {
+        InputStream open(String name) throws IOException;
+    }
+
+    // Maps the campus pack, e.g. straight out of the APK or from a file
+    public interface PackSource {
+        ByteBuffer map() throws IOException;
+    }
+
+    private static PackSource packSource;
+    private static CampusPack pack;
+    private static ContractionHierarchy routeIndex;
+    private static BookingEngine bookingEngine;
+    private static RoomQueryEngine roomQueryEngine;
+    private static final OccupancyStore occupancyStore = new OccupancyStore();
+
+    private CampusData() {}
+
+    // Called once at process start, before any campus data is used
+    public static synchronized void setPackSource(PackSource source) {
+        packSource = source;
+        pack = null;
+        routeIndex = null;
+        bookingEngine = null;
+        roomQueryEngine = null;
+    }
+
+    public static synchronized CampusPack getPack() {
+        if (pack == null) {
+            if (packSource == null) {
+                throw new IllegalStateException("No campus pack source has been set");
+            }
+            try {
+                pack = CampusPack.open(packSource.map());
+            } catch (IOException e) {
+                // The pack ships with the app, so there is nothing to fall back to
+                throw new IllegalStateException("Cannot open campus pack", e);
+            }
+        }
+        return pack;
+    }
+
+    // Walkway network of NTU Clifton campus
+    public static CampusGraph getWalkwayGraph() {
+        try {
+            return getPack().getWalkwayGraph();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read walkway graph", e);
+        }
+    }
+
+    // Shortcut index for instant route queries, loaded from assets on first use
+    public static synchronized ContractionHierarchy getRouteIndex(AssetOpener assets) {
+        if (routeIndex == null) {
+            CampusGraph graph = getWalkwayGraph();
+            try (InputStream in = assets.open(ROUTE_INDEX_ASSET)) {
+                routeIndex = ContractionHierarchy.read(in, graph);
+            } catch (IOException e) {
+                // Missing or stale asset: contract the graph on the device instead
+                e.printStackTrace();
+                routeIndex = ContractionHierarchy.build(graph);
+            }
+        }
+        return routeIndex;
+    }
+
+    // Spatial index over every room, emergency exit and safe space on campus
+    public static PoiIndex getPoiIndex() {
+        try {
+            return getPack().getPoiIndex();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read campus POIs", e);
+        }
+    }
+
+    // Type, capacity, booking details and aliases of every room
+    public static RoomTable getRooms() {
+        try {
+            return getPack().getRooms();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read room metadata", e);
+        }
+    }
+
+    // Floors, connectors and entrances of the campus buildings; floors are read as routes reach them
+    public static IndoorMap getIndoorMap() {
+        try {
+            return getPack().getIndoorMap();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read indoor map", e);
+        }
+    }
+
+    // Live head counts shared by every writer: the occupancy feed and beacon scans
+    public static OccupancyStore getOccupancyStore() {
+        return occupancyStore;
+    }
+
+    // Reservations of the bookable rooms; room ids are RoomTable rows
+    public static synchronized BookingEngine getBookingEngine() {
+        if (bookingEngine == null) {
+            RoomTable rooms = getRooms();
+            bookingEngine = new BookingEngine(new LocalBookingServer(rooms.size(), BOOKING_LATENCY_MILLIS), rooms);
+        }
+        return bookingEngine;
+    }
+
+    // Multi-criteria room search, indexes built on first use
+    public static synchronized RoomQueryEngine getRoomQueryEngine() {
+        if (roomQueryEngine == null) {
+            roomQueryEngine = new RoomQueryEngine(getRooms(), getPoiIndex());
+        }
+        return roomQueryEngine;
+    }
+
+    // POI ids are their positions in the index's POI list
+    public static Poi getPoi(int id) {
+        return getPoiIndex().getPoi(id);
+    }
+
+    // Type-ahead index over rooms by name, room type and alias; ids are POI ids
+    public static SearchIndex getSearchIndex() {
+        try {
+            return getPack().getSearchIndex();
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read search index", e);
+        }
+    }
+
+    public static List<Poi> getPois(Poi.Category category) {
+        List<Poi> result = new ArrayList<>();
+        for (Poi poi : getPoiIndex().getPois()) {
+            if (poi.getCategory() == category) {
+                result.add(poi);
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
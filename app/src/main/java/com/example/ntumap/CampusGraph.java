@@ -0,0 +1,200 @@
+package com.example.ntumap;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Campus walkway graph stored as primitive arrays in compressed sparse row
+ * form: the outgoing edges of node {@code n} are {@code firstEdge(n)} up to
+ * {@code firstEdge(n + 1)}. Edge weights are walking distances in metres and
+ * must never be shorter than the straight-line distance between their end
+ * points, which keeps the haversine heuristic used by {@link AStarRouter}
+ * admissible.
+ *
+ * Every edge also carries a bitfield of what the walker meets on it, such
+ * as {@link #STAIRS}; turn-by-turn guidance announces where these change,
+ * and {@link RoutingProfile}s weigh edges by them.
+ *
+ * The arrays are buffer views, so a graph read from the campus pack is used
+ * in place without being copied onto the heap.
+ */
+public final class CampusGraph {
+
+    // Edge flags
+    public static final int STAIRS = 1;
+    public static final int INDOOR = 1 << 1;
+    // Ramp steeper than a wheelchair user can comfortably push up
+    public static final int STEEP = 1 << 2;
+    public static final int LIFT = 1 << 3;
+    // Outdoors but covered, such as a canopy or colonnade
+    public static final int SHELTERED = 1 << 4;
+    // Number of flag bits above; higher bits are ignored
+    public static final int FLAG_BITS = 5;
+
+    private final DoubleBuffer latitudes;
+    private final DoubleBuffer longitudes;
+    private final IntBuffer edgeStart;
+    private final IntBuffer edgeTarget;
+    private final DoubleBuffer edgeWeight;
+    private final IntBuffer edgeFlags;
+
+    private CampusGraph(DoubleBuffer latitudes, DoubleBuffer longitudes, IntBuffer edgeStart,
+                        IntBuffer edgeTarget, DoubleBuffer edgeWeight, IntBuffer edgeFlags) {
+        if (longitudes.limit() != latitudes.limit() || edgeStart.limit() != latitudes.limit() + 1
+                || edgeWeight.limit() != edgeTarget.limit() || edgeFlags.limit() != edgeTarget.limit()) {
+            throw new IllegalArgumentException("Inconsistent walkway graph arrays");
+        }
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.edgeWeight = edgeWeight;
+        this.edgeFlags = edgeFlags;
+    }
+
+    // Graph stored by writeTo, viewed in place
+    public static CampusGraph read(PackReader in) {
+        return new CampusGraph(in.doubles(), in.doubles(), in.ints(), in.ints(), in.doubles(), in.ints());
+    }
+
+    public void writeTo(PackWriter out) {
+        out.putDoubles(toArray(latitudes), nodeCount())
+                .putDoubles(toArray(longitudes), nodeCount())
+                .putInts(toArray(edgeStart), nodeCount() + 1)
+                .putInts(toArray(edgeTarget), edgeCount())
+                .putDoubles(toArray(edgeWeight), edgeCount())
+                .putInts(toArray(edgeFlags), edgeCount());
+    }
+
+    public int nodeCount() { return latitudes.limit(); }
+    public int edgeCount() { return edgeTarget.limit(); }
+    public double latitude(int node) { return latitudes.get(node); }
+    public double longitude(int node) { return longitudes.get(node); }
+    public int firstEdge(int node) { return edgeStart.get(node); }
+    public int endEdge(int node) { return edgeStart.get(node + 1); }
+    public int edgeTarget(int edge) { return edgeTarget.get(edge); }
+    public double edgeWeight(int edge) { return edgeWeight.get(edge); }
+    public int edgeFlags(int edge) { return edgeFlags.get(edge); }
+    public boolean hasFlag(int edge, int flag) { return (edgeFlags.get(edge) & flag) != 0; }
+
+    // Cheapest edge from one node to another, or -1 if they are not joined
+    public int findEdge(int from, int to) {
+        int best = -1;
+        for (int e = firstEdge(from), end = endEdge(from); e < end; e++) {
+            if (edgeTarget.get(e) == to && (best < 0 || edgeWeight.get(e) < edgeWeight.get(best))) {
+                best = e;
+            }
+        }
+        return best;
+    }
+
+    // Closest graph node to an arbitrary coordinate, or -1 for an empty graph
+    public int nearestNode(double lat, double lng) {
+        int best = -1;
+        double bestDistance = Double.MAX_VALUE;
+        for (int i = 0; i < nodeCount(); i++) {
+            double d = GeoUtils.haversine(lat, lng, latitudes.get(i), longitudes.get(i));
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static double[] toArray(DoubleBuffer buffer) {
+        double[] values = new double[buffer.limit()];
+        buffer.duplicate().get(values);
+        return values;
+    }
+
+    private static int[] toArray(IntBuffer buffer) {
+        int[] values = new int[buffer.limit()];
+        buffer.duplicate().get(values);
+        return values;
+    }
+
+    public static class Builder {
+        private double[] lats = new double[16];
+        private double[] lngs = new double[16];
+        private int nodeCount;
+        private int[] from = new int[32];
+        private int[] to = new int[32];
+        private double[] weights = new double[32];
+        private int[] flags = new int[32];
+        private int edgeCount;
+
+        public int addNode(double lat, double lng) {
+            if (nodeCount == lats.length) {
+                lats = Arrays.copyOf(lats, nodeCount * 2);
+                lngs = Arrays.copyOf(lngs, nodeCount * 2);
+            }
+            lats[nodeCount] = lat;
+            lngs[nodeCount] = lng;
+            return nodeCount++;
+        }
+
+        // Two-way walkway whose length is the straight-line distance between its ends
+        public Builder addWalkway(int a, int b) {
+            double length = GeoUtils.haversine(lats[a], lngs[a], lats[b], lngs[b]);
+            return addWalkway(a, b, length);
+        }
+
+        public Builder addWalkway(int a, int b, double lengthMeters) {
+            return addWalkway(a, b, lengthMeters, 0);
+        }
+
+        public Builder addWalkway(int a, int b, double lengthMeters, int flags) {
+            addEdge(a, b, lengthMeters, flags);
+            addEdge(b, a, lengthMeters, flags);
+            return this;
+        }
+
+        public Builder addEdge(int from, int to, double weight) {
+            return addEdge(from, to, weight, 0);
+        }
+
+        public Builder addEdge(int from, int to, double weight, int flags) {
+            if (from < 0 || from >= nodeCount || to < 0 || to >= nodeCount) {
+                throw new IllegalArgumentException("Edge " + from + "->" + to + " references an unknown node");
+            }
+            if (edgeCount == this.from.length) {
+                this.from = Arrays.copyOf(this.from, edgeCount * 2);
+                this.to = Arrays.copyOf(this.to, edgeCount * 2);
+                weights = Arrays.copyOf(weights, edgeCount * 2);
+                this.flags = Arrays.copyOf(this.flags, edgeCount * 2);
+            }
+            this.from[edgeCount] = from;
+            this.to[edgeCount] = to;
+            weights[edgeCount] = weight;
+            this.flags[edgeCount] = flags;
+            edgeCount++;
+            return this;
+        }
+
+        public CampusGraph build() {
+            // Counting sort of the edge list by source node
+            int[] start = new int[nodeCount + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                start[from[i] + 1]++;
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                start[i + 1] += start[i];
+            }
+            int[] cursor = Arrays.copyOf(start, nodeCount);
+            int[] targets = new int[edgeCount];
+            double[] edgeWeights = new double[edgeCount];
+            int[] edgeFlags = new int[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                int slot = cursor[from[i]]++;
+                targets[slot] = to[i];
+                edgeWeights[slot] = weights[i];
+                edgeFlags[slot] = flags[i];
+            }
+            return new CampusGraph(DoubleBuffer.wrap(Arrays.copyOf(lats, nodeCount)),
+                    DoubleBuffer.wrap(Arrays.copyOf(lngs, nodeCount)), IntBuffer.wrap(start),
+                    IntBuffer.wrap(targets), DoubleBuffer.wrap(edgeWeights), IntBuffer.wrap(edgeFlags));
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.ntumap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Versioned binary campus data pack: POIs with their spatial index, the
+ * walkway graph, room metadata, the search index and the indoor floors,
+ * generated from JSON by {@link CampusPackTool}.
+ *
+ * The pack is meant to be memory-mapped. Opening it only checks the header;
+ * each section is checksummed the first time it is used and then read in
+ * place through buffer views, so start-up cost does not grow with the size
+ * of the campus.
+ *
+ * Layout, little-endian: magic, format version, data version, section
+ * count, then per section its id, offset, length and CRC-32, and finally a
+ * CRC-32 of the header itself. Sections start on 8-byte boundaries.
+ */
+public final class CampusPack {
+
+    static final int MAGIC = 0x4b50544e; // "NTPK"
+    // 2: rooms gained building and floor; 3: walkway edges gained flags; 4: indoor floors;
+    // 5: search postings in ranking order
+    public static final int FORMAT_VERSION = 5;
+
+    public static final int SECTION_POIS = 1;
+    public static final int SECTION_GRAPH = 2;
+    public static final int SECTION_ROOMS = 3;
+    public static final int SECTION_SEARCH = 4;
+    public static final int SECTION_BUILDINGS = 5;
+    // Each indoor floor graph is a section of its own, so floors are checked and read one at a time
+    public static final int SECTION_FLOOR_BASE = 0x100;
+
+    private static final int HEADER_FIXED_BYTES = 16;
+    private static final int SECTION_ENTRY_BYTES = 16;
+    private static final int MAX_SECTIONS = 256;
+
+    private final ByteBuffer data;
+    private final int dataVersion;
+    private final int[] sectionIds;
+    private final int[] sectionOffsets;
+    private final int[] sectionLengths;
+    private final int[] sectionChecksums;
+    private final boolean[] verified;
+
+    private PoiIndex poiIndex;
+    private CampusGraph walkwayGraph;
+    private RoomTable rooms;
+    private SearchIndex searchIndex;
+    private IndoorMap indoorMap;
+
+    private CampusPack(ByteBuffer data, int dataVersion, int sectionCount) {
+        this.data = data;
+        this.dataVersion = dataVersion;
+        sectionIds = new int[sectionCount];
+        sectionOffsets = new int[sectionCount];
+        sectionLengths = new int[sectionCount];
+        sectionChecksums = new int[sectionCount];
+        verified = new boolean[sectionCount];
+    }
+
+    // Maps a pack file read-only; the mapping stays valid after the file is closed
+    public static ByteBuffer mapFile(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+    }
+
+    /** Checks the header of a pack and returns it; sections are checked when first used. */
+    public static CampusPack open(ByteBuffer buffer) throws IOException {
+        ByteBuffer data = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (data.limit() < HEADER_FIXED_BYTES + 4 || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a campus pack");
+        }
+        int formatVersion = data.getInt(4);
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported campus pack format " + formatVersion);
+        }
+        int sectionCount = data.getInt(12);
+        int headerLength = HEADER_FIXED_BYTES + sectionCount * SECTION_ENTRY_BYTES;
+        if (sectionCount < 0 || sectionCount > MAX_SECTIONS || headerLength + 4 > data.limit()) {
+            throw new IOException("Corrupt campus pack header");
+        }
+        if (crc(data, 0, headerLength) != data.getInt(headerLength)) {
+            throw new IOException("Campus pack header checksum mismatch");
+        }
+
+        CampusPack pack = new CampusPack(data, data.getInt(8), sectionCount);
+        for (int i = 0; i < sectionCount; i++) {
+            int entry = HEADER_FIXED_BYTES + i * SECTION_ENTRY_BYTES;
+            pack.sectionIds[i] = data.getInt(entry);
+            pack.sectionOffsets[i] = data.getInt(entry + 4);
+            pack.sectionLengths[i] = data.getInt(entry + 8);
+            pack.sectionChecksums[i] = data.getInt(entry + 12);
+            if (pack.sectionOffsets[i] < headerLength + 4 || pack.sectionLengths[i] < 0
+                    || (long) pack.sectionOffsets[i] + pack.sectionLengths[i] > data.limit()) {
+                throw new IOException("Campus pack section " + pack.sectionIds[i] + " is out of bounds");
+            }
+        }
+        return pack;
+    }
+
+    // Version of the campus data the pack was generated from
+    public int getDataVersion() {
+        return dataVersion;
+    }
+
+    public synchronized PoiIndex getPoiIndex() throws IOException {
+        if (poiIndex == null) {
+            poiIndex = PoiIndex.read(section(SECTION_POIS));
+        }
+        return poiIndex;
+    }
+
+    public synchronized CampusGraph getWalkwayGraph() throws IOException {
+        if (walkwayGraph == null) {
+            walkwayGraph = CampusGraph.read(section(SECTION_GRAPH));
+        }
+        return walkwayGraph;
+    }
+
+    public synchronized RoomTable getRooms() throws IOException {
+        if (rooms == null) {
+            rooms = RoomTable.read(section(SECTION_ROOMS));
+        }
+        return rooms;
+    }
+
+    public synchronized SearchIndex getSearchIndex() throws IOException {
+        if (searchIndex == null) {
+            searchIndex = SearchIndex.read(section(SECTION_SEARCH));
+        }
+        return searchIndex;
+    }
+
+    // Building directory; floor graphs are read from their sections when routing first needs them
+    public synchronized IndoorMap getIndoorMap() throws IOException {
+        if (indoorMap == null) {
+            indoorMap = IndoorMap.read(section(SECTION_BUILDINGS), this::readFloor);
+        }
+        return indoorMap;
+    }
+
+    private synchronized CampusGraph readFloor(int floor) throws IOException {
+        return CampusGraph.read(section(SECTION_FLOOR_BASE + floor));
+    }
+
+    private PackReader section(int id) throws IOException {
+        for (int i = 0; i < sectionIds.length; i++) {
+            if (sectionIds[i] != id) {
+                continue;
+            }
+            if (!verified[i]) {
+                if (crc(data, sectionOffsets[i], sectionLengths[i]) != sectionChecksums[i]) {
+                    throw new IOException("Campus pack section " + id + " checksum mismatch");
+                }
+                verified[i] = true;
+            }
+            ByteBuffer view = data.duplicate();
+            view.position(sectionOffsets[i]);
+            view.limit(sectionOffsets[i] + sectionLengths[i]);
+            return new PackReader(view);
+        }
+        throw new IOException("Campus pack has no section " + id);
+    }
+
+    // CRC32.update(ByteBuffer) needs API 26, so checksum through a small copy buffer
+    private static int crc(ByteBuffer data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        ByteBuffer source = data.duplicate();
+        source.position(offset);
+        int remaining = length;
+        while (remaining > 0) {
+            int n = Math.min(chunk.length, remaining);
+            source.get(chunk, 0, n);
+            crc.update(chunk, 0, n);
+            remaining -= n;
+        }
+        return (int) crc.getValue();
+    }
+
+    /** Assembles sections into a pack file. */
+    public static class Writer {
+        private final int dataVersion;
+        private final List<Integer> ids = new ArrayList<>();
+        private final List<byte[]> sections = new ArrayList<>();
+
+        public Writer(int dataVersion) {
+            this.dataVersion = dataVersion;
+        }
+
+        public Writer addSection(int id, PackWriter section) {
+            ids.add(id);
+            sections.add(section.toByteArray());
+            return this;
+        }
+
+        public byte[] toByteArray() {
+            int headerLength = HEADER_FIXED_BYTES + ids.size() * SECTION_ENTRY_BYTES;
+            int size = align(headerLength + 4);
+            int[] offsets = new int[ids.size()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = size;
+                size = align(size + sections.get(i).length);
+            }
+
+            ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+            out.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(dataVersion).putInt(ids.size());
+            for (int i = 0; i < offsets.length; i++) {
+                byte[] section = sections.get(i);
+                out.putInt(ids.get(i)).putInt(offsets[i]).putInt(section.length)
+                        .putInt(crc(ByteBuffer.wrap(section), 0, section.length));
+            }
+            out.putInt(crc(out, 0, headerLength));
+            for (int i = 0; i < offsets.length; i++) {
+                out.position(offsets[i]);
+                out.put(sections.get(i));
+            }
+            return out.array();
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(toByteArray());
+        }
+
+        private static int align(int offset) {
+            return (offset + 7) & ~7;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.example.ntumap;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build-time generator for the campus data pack. Reads the campus JSON
+ * (POIs, walkway nodes and paths, rooms, building floors) and writes the binary pack that
+ * {@link CampusPack} maps at run time. Run it through the
+ * {@code generateCampusPack} Gradle task whenever the campus JSON changes.
+ */
+public final class CampusPackTool {
+
+    private CampusPackTool() {}
+
+    public static void main(String[] args) throws IOException {
+        String input = args.length > 0 ? args[0] : "src/main/campus/campus.json";
+        String output = args.length > 1 ? args[1] : "src/main/assets/" + CampusData.CAMPUS_PACK_ASSET;
+
+        String json = new String(Files.readAllBytes(Paths.get(input)), StandardCharsets.UTF_8);
+        byte[] pack = buildPack(json);
+        try (OutputStream out = new FileOutputStream(output)) {
+            out.write(pack);
+        }
+        System.out.printf("Wrote %d byte campus pack %s -> %s%n", pack.length, input, output);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static byte[] buildPack(String json) {
+        Map<String, Object> campus = (Map<String, Object>) Json.parse(json);
+
+        // POIs, with ids in file order
+        List<Poi> pois = new ArrayList<>();
+        Map<String, Integer> roomPois = new HashMap<>();
+        for (Object item : list(campus, "pois")) {
+            Map<String, Object> poi = (Map<String, Object>) item;
+            Poi.Category category = Poi.Category.valueOf(string(poi, "category"));
+            String name = string(poi, "name");
+            pois.add(new Poi(pois.size(), name, category, number(poi, "lat"), number(poi, "lng")));
+            if (category == Poi.Category.ROOM) {
+                roomPois.put(name, pois.size() - 1);
+            }
+        }
+
+        // Walkways between named nodes, optionally followed by a length, which defaults to the
+        // straight-line distance, and a list of features such as "stairs"
+        Map<String, Object> walkways = (Map<String, Object>) campus.get("walkways");
+        CampusGraph.Builder graph = new CampusGraph.Builder();
+        Map<String, Integer> nodes = new HashMap<>();
+        List<double[]> coordinates = new ArrayList<>();
+        for (Object item : list(walkways, "nodes")) {
+            Map<String, Object> node = (Map<String, Object>) item;
+            String id = string(node, "id");
+            double lat = number(node, "lat");
+            double lng = number(node, "lng");
+            coordinates.add(new double[]{lat, lng});
+            if (nodes.put(id, graph.addNode(lat, lng)) != null) {
+                throw new IllegalArgumentException("Duplicate walkway node " + id);
+            }
+        }
+        for (Object item : list(walkways, "paths")) {
+            List<Object> path = (List<Object>) item;
+            int a = node(nodes, path.get(0));
+            int b = node(nodes, path.get(1));
+            int flags = 0;
+            for (Object extra : path.subList(2, path.size())) {
+                if (!(extra instanceof Number)) {
+                    for (Object feature : (List<Object>) extra) {
+                        flags |= walkwayFlag((String) feature);
+                    }
+                }
+            }
+            graph.addWalkway(a, b, pathLength(path, coordinates.get(a), coordinates.get(b)), flags);
+        }
+
+        // Rooms; a room named like a ROOM POI is that POI's metadata
+        RoomTable.Builder rooms = new RoomTable.Builder();
+        Map<Integer, Map<String, Object>> roomsByPoi = new HashMap<>();
+        Map<String, Integer> roomRows = new HashMap<>();
+        for (Object item : list(campus, "rooms")) {
+            Map<String, Object> room = (Map<String, Object>) item;
+            String name = string(room, "name");
+            roomRows.put(name, roomRows.size());
+            Integer poi = roomPois.get(name);
+            int flags = (bool(room, "tracked") ? RoomTable.TRACKED : 0)
+                    | (bool(room, "bookable") ? RoomTable.BOOKABLE : 0);
+            for (Object access : optionalList(room, "access")) {
+                flags |= accessFlag((String) access);
+            }
+            rooms.add(name, string(room, "type"), poi != null ? poi : -1,
+                    (int) optionalNumber(room, "capacity"), (int) optionalNumber(room, "occupancy"), flags);
+            if (room.containsKey("location") || room.containsKey("description")) {
+                rooms.setDetails(optionalString(room, "location"), optionalString(room, "description"));
+            }
+            rooms.setPlace(optionalString(room, "building"), (int) optionalNumber(room, "floor"));
+            for (Object alias : optionalList(room, "aliases")) {
+                rooms.addAlias((String) alias);
+            }
+            if (poi != null) {
+                roomsByPoi.put(poi, room);
+            }
+        }
+
+        // Search over map rooms by name, building and floor, room type and alias; ids are POI ids
+        SearchIndex.Builder search = new SearchIndex.Builder();
+        for (Poi poi : pois) {
+            if (poi.getCategory() != Poi.Category.ROOM) {
+                continue;
+            }
+            search.add(poi.getId(), poi.getName());
+            Map<String, Object> room = roomsByPoi.get(poi.getId());
+            if (room != null) {
+                search.addText(SearchIndex.Field.TYPE, string(room, "type"));
+                search.addText(SearchIndex.Field.BUILDING, optionalString(room, "building"));
+                if (room.containsKey("floor")) {
+                    search.addText(SearchIndex.Field.BUILDING, "Floor " + (int) optionalNumber(room, "floor"));
+                }
+                for (Object alias : optionalList(room, "aliases")) {
+                    search.addText(SearchIndex.Field.ALIAS, (String) alias);
+                }
+            }
+        }
+
+        // Building floors, each a walkway graph of its own with node ids scoped to the building, joined
+        // by connectors listing the nodes they serve: stairs and ramps link each node to the next,
+        // a lift links every pair. Entrances pair an outdoor walkway node with an indoor one.
+        IndoorMap.Builder indoor = new IndoorMap.Builder();
+        for (Object item : optionalList(campus, "buildings")) {
+            Map<String, Object> building = (Map<String, Object>) item;
+            String name = string(building, "name");
+            indoor.addBuilding(name);
+            Map<String, int[]> indoorNodes = new HashMap<>();
+            for (Object floorItem : list(building, "floors")) {
+                Map<String, Object> floor = (Map<String, Object>) floorItem;
+                int floorIndex = indoor.floorCount();
+                CampusGraph.Builder floorGraph = new CampusGraph.Builder();
+                Map<String, Integer> floorNodes = new HashMap<>();
+                List<double[]> floorCoordinates = new ArrayList<>();
+                List<String> floorRooms = new ArrayList<>();
+                for (Object nodeItem : list(floor, "nodes")) {
+                    Map<String, Object> node = (Map<String, Object>) nodeItem;
+                    String id = string(node, "id");
+                    double lat = number(node, "lat");
+                    double lng = number(node, "lng");
+                    floorCoordinates.add(new double[]{lat, lng});
+                    int local = floorGraph.addNode(lat, lng);
+                    floorNodes.put(id, local);
+                    if (indoorNodes.put(id, new int[]{floorIndex, local}) != null) {
+                        throw new IllegalArgumentException("Duplicate node " + id + " in " + name);
+                    }
+                    floorRooms.add(optionalString(node, "room"));
+                }
+                for (Object pathItem : list(floor, "paths")) {
+                    List<Object> path = (List<Object>) pathItem;
+                    int a = node(floorNodes, path.get(0));
+                    int b = node(floorNodes, path.get(1));
+                    int flags = CampusGraph.INDOOR;
+                    for (Object extra : path.subList(2, path.size())) {
+                        if (!(extra instanceof Number)) {
+                            for (Object feature : (List<Object>) extra) {
+                                flags |= walkwayFlag((String) feature);
+                            }
+                        }
+                    }
+                    floorGraph.addWalkway(a, b, pathLength(path, floorCoordinates.get(a),
+                            floorCoordinates.get(b)), flags);
+                }
+                indoor.addFloor((int) number(floor, "level"), floorGraph.build());
+                for (int local = 0; local < floorRooms.size(); local++) {
+                    String room = floorRooms.get(local);
+                    if (room.isEmpty()) {
+                        continue;
+                    }
+                    Integer row = roomRows.get(room);
+                    if (row == null) {
+                        throw new IllegalArgumentException("Unknown room " + room + " in " + name);
+                    }
+                    indoor.addRoom(row, floorIndex, local);
+                }
+            }
+            for (Object connectorItem : optionalList(building, "connectors")) {
+                List<Object> connector = (List<Object>) connectorItem;
+                int type = connectorType((String) connector.get(0));
+                List<int[]> served = new ArrayList<>();
+                double cost = -1;
+                for (Object extra : connector.subList(1, connector.size())) {
+                    if (extra instanceof Number) {
+                        cost = ((Number) extra).doubleValue();
+                    } else {
+                        served.add(node(indoorNodes, extra));
+                    }
+                }
+                for (int i = 0; i < served.size(); i++) {
+                    int last = type == IndoorMap.LIFT ? served.size() - 1 : Math.min(i + 1, served.size() - 1);
+                    for (int j = i + 1; j <= last; j++) {
+                        int[] a = served.get(i);
+                        int[] b = served.get(j);
+                        if (cost < 0) {
+                            indoor.addConnector(type, a[0], a[1], b[0], b[1]);
+                        } else {
+                            indoor.addConnector(type, a[0], a[1], b[0], b[1], cost);
+                        }
+                    }
+                }
+            }
+            for (Object entranceItem : optionalList(building, "entrances")) {
+                List<Object> pair = (List<Object>) entranceItem;
+                int[] inside = node(indoorNodes, pair.get(1));
+                indoor.addEntrance(inside[0], inside[1], node(nodes, pair.get(0)));
+            }
+        }
+
+        PackWriter poiSection = new PackWriter();
+        PoiIndex.write(pois, poiSection);
+        PackWriter graphSection = new PackWriter();
+        graph.build().writeTo(graphSection);
+        PackWriter roomSection = new PackWriter();
+        rooms.writeTo(roomSection);
+        PackWriter searchSection = new PackWriter();
+        search.writeTo(searchSection);
+        PackWriter buildingSection = new PackWriter();
+        indoor.writeTo(buildingSection);
+
+        CampusPack.Writer pack = new CampusPack.Writer((int) number(campus, "version"))
+                .addSection(CampusPack.SECTION_POIS, poiSection)
+                .addSection(CampusPack.SECTION_GRAPH, graphSection)
+                .addSection(CampusPack.SECTION_ROOMS, roomSection)
+                .addSection(CampusPack.SECTION_SEARCH, searchSection)
+                .addSection(CampusPack.SECTION_BUILDINGS, buildingSection);
+        for (int floor = 0; floor < indoor.floorCount(); floor++) {
+            PackWriter floorSection = new PackWriter();
+            indoor.getFloor(floor).writeTo(floorSection);
+            pack.addSection(CampusPack.SECTION_FLOOR_BASE + floor, floorSection);
+        }
+        return pack.toByteArray();
+    }
+
+    private static int connectorType(String type) {
+        switch (type) {
+            case "stairs": return IndoorMap.STAIRS;
+            case "lift": return IndoorMap.LIFT;
+            case "ramp": return IndoorMap.RAMP;
+            default: throw new IllegalArgumentException("Unknown connector type " + type);
+        }
+    }
+
+    private static int accessFlag(String access) {
+        switch (access) {
+            case "step_free": return RoomTable.STEP_FREE;
+            case "hearing_loop": return RoomTable.HEARING_LOOP;
+            case "accessible_toilet": return RoomTable.ACCESSIBLE_TOILET;
+            default: throw new IllegalArgumentException("Unknown room access feature " + access);
+        }
+    }
+
+    private static int walkwayFlag(String feature) {
+        switch (feature) {
+            case "stairs": return CampusGraph.STAIRS;
+            case "indoor": return CampusGraph.INDOOR;
+            case "steep": return CampusGraph.STEEP;
+            case "lift": return CampusGraph.LIFT;
+            case "sheltered": return CampusGraph.SHELTERED;
+            default: throw new IllegalArgumentException("Unknown walkway feature " + feature);
+        }
+    }
+
+    private static <T> T node(Map<String, T> nodes, Object id) {
+        T node = nodes.get(id);
+        if (node == null) {
+            throw new IllegalArgumentException("Walkway path references unknown node " + id);
+        }
+        return node;
+    }
+
+    private static Object required(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing \"" + key + "\" in " + object);
+        }
+        return value;
+    }
+
+    private static String string(Map<String, Object> object, String key) {
+        return (String) required(object, key);
+    }
+
+    private static double number(Map<String, Object> object, String key) {
+        return ((Number) required(object, key)).doubleValue();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> list(Map<String, Object> object, String key) {
+        return (List<Object>) required(object, key);
+    }
+
+    private static String optionalString(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        return value != null ? (String) value : "";
+    }
+
+    // A path's explicit length, or the straight line between its ends. A* estimates the rest of a
+    // route by straight lines, so no path may be shorter than one.
+    private static double pathLength(List<Object> path, double[] from, double[] to) {
+        double straight = GeoUtils.haversine(from[0], from[1], to[0], to[1]);
+        for (Object extra : path.subList(2, path.size())) {
+            if (extra instanceof Number) {
+                double length = ((Number) extra).doubleValue();
+                if (!(length >= straight)) {
+                    throw new IllegalArgumentException("Path " + path.get(0) + "-" + path.get(1) + " is " + length
+                            + " m long but its ends are " + straight + " m apart");
+                }
+                return length;
+            }
+        }
+        return straight;
+    }
+
+    private static double optionalNumber(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        return value != null ? ((Number) value).doubleValue() : 0;
+    }
+
+    private static boolean bool(Map<String, Object> object, String key) {
+        return Boolean.TRUE.equals(object.get(key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> optionalList(Map<String, Object> object, String key) {
+        Object value = object.get(key);
+        return value != null ? (List<Object>) value : new ArrayList<>();
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.ntumap;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * Frame scheduler backed by the main thread's Choreographer.
+ */
+public class ChoreographerFrameScheduler implements FrameScheduler {
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    @Override
+    public void scheduleFrame(Runnable task) {
+        // Choreographer is per-thread, so hop to the main thread before posting
+        Choreographer.FrameCallback callback = frameTimeNanos -> task.run();
+        if (Looper.myLooper() == Looper.getMainLooper()) {
+            Choreographer.getInstance().postFrameCallback(callback);
+        } else {
+            mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(callback));
+        }
+    }
+}
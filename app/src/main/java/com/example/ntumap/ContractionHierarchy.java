@@ -0,0 +1,486 @@
+package com.example.ntumap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Contraction hierarchy over a {@link CampusGraph}.
+ *
+ * Nodes are contracted one by one in order of importance and shortcut edges
+ * are added wherever a shortest path ran through the removed node. A query
+ * then only has to search upwards in the hierarchy from both ends, which
+ * settles a few dozen nodes instead of a large part of the campus. Build the
+ * index offline with {@link RouteIndexTool}, ship it as an asset and query it
+ * through {@link ContractionHierarchyRouter}.
+ */
+public final class ContractionHierarchy {
+
+    private static final int MAGIC = 0x4E434831; // "NCH1"
+    private static final int VERSION = 1;
+
+    // Witness searches give up after settling this many nodes, plus a few more per outgoing
+    // edge of the node being contracted, and add the shortcut instead; priority estimates
+    // use a cheaper search than the real contraction
+    private static final int WITNESS_SETTLE_LIMIT = 100;
+    private static final int WITNESS_SETTLE_PER_EDGE = 20;
+    private static final int ESTIMATE_SETTLE_LIMIT = 10;
+
+    // Neighbours with more edges than this only get the deleted neighbour and depth terms of
+    // their priority bumped after a contraction; the lazy check on poll recomputes the rest
+    private static final int NEIGHBOUR_UPDATE_EDGES = 24;
+
+    private final CampusGraph graph;
+    private final int[] rank;
+
+    // Edges to higher ranked nodes, grouped by source, for the forward search
+    final int[] upStart;
+    final int[] upTarget;
+    final double[] upWeight;
+    final int[] upMiddle;
+
+    // Edges from higher ranked nodes, grouped by target, for the backward search
+    final int[] downStart;
+    final int[] downSource;
+    final double[] downWeight;
+    final int[] downMiddle;
+
+    private ContractionHierarchy(CampusGraph graph, int[] rank,
+                                 int[] upStart, int[] upTarget, double[] upWeight, int[] upMiddle,
+                                 int[] downStart, int[] downSource, double[] downWeight, int[] downMiddle) {
+        this.graph = graph;
+        this.rank = rank;
+        this.upStart = upStart;
+        this.upTarget = upTarget;
+        this.upWeight = upWeight;
+        this.upMiddle = upMiddle;
+        this.downStart = downStart;
+        this.downSource = downSource;
+        this.downWeight = downWeight;
+        this.downMiddle = downMiddle;
+    }
+
+    public CampusGraph getGraph() { return graph; }
+    public int getRank(int node) { return rank[node]; }
+    public int getEdgeCount() { return upTarget.length + downSource.length; }
+    public int getShortcutCount() {
+        int count = 0;
+        for (int m : upMiddle) if (m >= 0) count++;
+        for (int m : downMiddle) if (m >= 0) count++;
+        return count;
+    }
+
+    public static ContractionHierarchy build(CampusGraph graph) {
+        return new Contractor(graph).run();
+    }
+
+    public void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(fingerprint(graph));
+        data.writeInt(rank.length);
+        data.writeInt(upTarget.length);
+        data.writeInt(downSource.length);
+        for (int r : rank) data.writeInt(r);
+        writeEdges(data, upStart, upTarget, upWeight, upMiddle);
+        writeEdges(data, downStart, downSource, downWeight, downMiddle);
+        data.flush();
+    }
+
+    // Reads an index written by write(); fails if it was built for a different graph
+    public static ContractionHierarchy read(InputStream in, CampusGraph graph) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a contraction hierarchy file");
+        }
+        int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported contraction hierarchy version " + version);
+        }
+        if (data.readLong() != fingerprint(graph)) {
+            throw new IOException("Contraction hierarchy was built for a different walkway graph");
+        }
+        int nodeCount = data.readInt();
+        int upCount = data.readInt();
+        int downCount = data.readInt();
+        int[] rank = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) rank[i] = data.readInt();
+
+        int[] upStart = new int[nodeCount + 1];
+        int[] upTarget = new int[upCount];
+        double[] upWeight = new double[upCount];
+        int[] upMiddle = new int[upCount];
+        readEdges(data, upStart, upTarget, upWeight, upMiddle);
+
+        int[] downStart = new int[nodeCount + 1];
+        int[] downSource = new int[downCount];
+        double[] downWeight = new double[downCount];
+        int[] downMiddle = new int[downCount];
+        readEdges(data, downStart, downSource, downWeight, downMiddle);
+
+        return new ContractionHierarchy(graph, rank, upStart, upTarget, upWeight, upMiddle,
+                downStart, downSource, downWeight, downMiddle);
+    }
+
+    private static void writeEdges(DataOutputStream data, int[] start, int[] other,
+                                   double[] weight, int[] middle) throws IOException {
+        for (int s : start) data.writeInt(s);
+        for (int i = 0; i < other.length; i++) {
+            data.writeInt(other[i]);
+            data.writeDouble(weight[i]);
+            data.writeInt(middle[i]);
+        }
+    }
+
+    private static void readEdges(DataInputStream data, int[] start, int[] other,
+                                  double[] weight, int[] middle) throws IOException {
+        for (int i = 0; i < start.length; i++) start[i] = data.readInt();
+        for (int i = 0; i < other.length; i++) {
+            other[i] = data.readInt();
+            weight[i] = data.readDouble();
+            middle[i] = data.readInt();
+        }
+    }
+
+    // Hash of the graph topology, weights and coordinates, used to reject stale index files
+    public static long fingerprint(CampusGraph graph) {
+        long hash = 1125899906842597L;
+        hash = 31 * hash + graph.nodeCount();
+        for (int n = 0; n < graph.nodeCount(); n++) {
+            hash = 31 * hash + Double.doubleToLongBits(graph.latitude(n));
+            hash = 31 * hash + Double.doubleToLongBits(graph.longitude(n));
+            for (int e = graph.firstEdge(n); e < graph.endEdge(n); e++) {
+                hash = 31 * hash + graph.edgeTarget(e);
+                hash = 31 * hash + Double.doubleToLongBits(graph.edgeWeight(e));
+            }
+        }
+        return hash;
+    }
+
+    // Appends the original graph nodes of edge from->to (excluding from) to path
+    int unpackEdge(int from, int to, int middle, int[] path, int length) {
+        if (middle < 0) {
+            path[length] = to;
+            return length + 1;
+        }
+        length = unpackEdge(from, middle, downMiddleOf(from, middle), path, length);
+        return unpackEdge(middle, to, upMiddleOf(middle, to), path, length);
+    }
+
+    // Middle node of the cheapest edge from a higher ranked node down to node
+    private int downMiddleOf(int from, int node) {
+        int middle = -1;
+        double best = Double.POSITIVE_INFINITY;
+        for (int e = downStart[node]; e < downStart[node + 1]; e++) {
+            if (downSource[e] == from && downWeight[e] < best) {
+                best = downWeight[e];
+                middle = downMiddle[e];
+            }
+        }
+        return middle;
+    }
+
+    // Middle node of the cheapest edge from node up to a higher ranked node
+    private int upMiddleOf(int node, int to) {
+        int middle = -1;
+        double best = Double.POSITIVE_INFINITY;
+        for (int e = upStart[node]; e < upStart[node + 1]; e++) {
+            if (upTarget[e] == to && upWeight[e] < best) {
+                best = upWeight[e];
+                middle = upMiddle[e];
+            }
+        }
+        return middle;
+    }
+
+    /**
+     * Offline node contraction. Works on a mutable copy of the graph where
+     * every node keeps lists of incoming and outgoing edge ids.
+     */
+    private static final class Contractor {
+        private final CampusGraph graph;
+        private final int nodeCount;
+
+        private int[] edgeFrom;
+        private int[] edgeTo;
+        private double[] edgeWeight;
+        private int[] edgeMiddle;
+        private int edgeCount;
+
+        private final int[][] outEdges;
+        private final int[] outSize;
+        private final int[][] inEdges;
+        private final int[] inSize;
+
+        private final boolean[] contracted;
+        private final int[] contractedNeighbours;
+        private final int[] depth;
+        private final int[] touchedRound;
+        private final int[] rank;
+        private final double[] queuedPriority;
+
+        // Witness search state
+        private final double[] witnessDistance;
+        private final int[] witnessStamp;
+        private final NodeHeap witnessHeap;
+        private int stamp;
+
+        Contractor(CampusGraph graph) {
+            this.graph = graph;
+            nodeCount = graph.nodeCount();
+            int capacity = Math.max(16, graph.edgeCount() * 2);
+            edgeFrom = new int[capacity];
+            edgeTo = new int[capacity];
+            edgeWeight = new double[capacity];
+            edgeMiddle = new int[capacity];
+            outEdges = new int[nodeCount][];
+            outSize = new int[nodeCount];
+            inEdges = new int[nodeCount][];
+            inSize = new int[nodeCount];
+            contracted = new boolean[nodeCount];
+            contractedNeighbours = new int[nodeCount];
+            depth = new int[nodeCount];
+            touchedRound = new int[nodeCount];
+            rank = new int[nodeCount];
+            queuedPriority = new double[nodeCount];
+            witnessDistance = new double[nodeCount];
+            witnessStamp = new int[nodeCount];
+            witnessHeap = new NodeHeap(nodeCount);
+
+            for (int n = 0; n < nodeCount; n++) {
+                outEdges[n] = new int[4];
+                inEdges[n] = new int[4];
+            }
+            for (int n = 0; n < nodeCount; n++) {
+                for (int e = graph.firstEdge(n); e < graph.endEdge(n); e++) {
+                    int to = graph.edgeTarget(e);
+                    if (to != n) {
+                        addOrImprove(n, to, graph.edgeWeight(e), -1);
+                    }
+                }
+            }
+        }
+
+        ContractionHierarchy run() {
+            NodeHeap queue = new NodeHeap(nodeCount);
+            for (int n = 0; n < nodeCount; n++) {
+                queuedPriority[n] = priority(n);
+                queue.push(n, queuedPriority[n]);
+            }
+            int order = 0;
+            while (!queue.isEmpty()) {
+                int node = queue.poll();
+                // Lazy update: re-queue if the node became less attractive since it was queued
+                double current = priority(node);
+                if (!queue.isEmpty() && current > queue.peekKey()) {
+                    queuedPriority[node] = current;
+                    queue.push(node, current);
+                    continue;
+                }
+                contract(node, true);
+                contracted[node] = true;
+                rank[node] = order++;
+
+                // Neighbours lose an edge and may gain shortcuts, so their priority changes
+                for (int i = 0; i < outSize[node]; i++) {
+                    int e = outEdges[node][i];
+                    removeEdge(inEdges, inSize, edgeTo[e], e);
+                    touchNeighbour(queue, node, edgeTo[e]);
+                }
+                for (int i = 0; i < inSize[node]; i++) {
+                    int e = inEdges[node][i];
+                    removeEdge(outEdges, outSize, edgeFrom[e], e);
+                    touchNeighbour(queue, node, edgeFrom[e]);
+                }
+            }
+            return assemble();
+        }
+
+        private void touchNeighbour(NodeHeap queue, int contractedNode, int neighbour) {
+            // Two-way walkways list each neighbour twice; update it once per contraction
+            int round = rank[contractedNode] + 1;
+            if (contracted[neighbour] || touchedRound[neighbour] == round) return;
+            touchedRound[neighbour] = round;
+            contractedNeighbours[neighbour]++;
+            int oldDepth = depth[neighbour];
+            depth[neighbour] = Math.max(oldDepth, depth[contractedNode] + 1);
+            // Estimating a dense node is the expensive part of the build, so only sparse ones
+            // get their edge difference refreshed here
+            if (outSize[neighbour] + inSize[neighbour] <= NEIGHBOUR_UPDATE_EDGES) {
+                queuedPriority[neighbour] = priority(neighbour);
+            } else {
+                queuedPriority[neighbour] += 1 + depth[neighbour] - oldDepth;
+            }
+            queue.update(neighbour, queuedPriority[neighbour]);
+        }
+
+        // Edge difference plus deleted neighbours and hierarchy depth, which spread contraction
+        // evenly over the campus instead of growing one dense core
+        private double priority(int node) {
+            int degree = 0;
+            for (int i = 0; i < outSize[node]; i++) {
+                if (!contracted[edgeTo[outEdges[node][i]]]) degree++;
+            }
+            for (int i = 0; i < inSize[node]; i++) {
+                if (!contracted[edgeFrom[inEdges[node][i]]]) degree++;
+            }
+            return 2 * (contract(node, false) - degree) + contractedNeighbours[node] + depth[node];
+        }
+
+        // Counts (and when apply is set, adds) the shortcuts needed to remove node
+        private int contract(int node, boolean apply) {
+            int shortcuts = 0;
+            for (int i = 0; i < inSize[node]; i++) {
+                int in = inEdges[node][i];
+                int from = edgeFrom[in];
+                if (contracted[from]) continue;
+                double inWeight = edgeWeight[in];
+
+                double limit = -1;
+                for (int j = 0; j < outSize[node]; j++) {
+                    int out = outEdges[node][j];
+                    int to = edgeTo[out];
+                    if (contracted[to] || to == from) continue;
+                    limit = Math.max(limit, inWeight + edgeWeight[out]);
+                }
+                if (limit < 0) continue;
+
+                witnessSearch(from, node, limit, apply
+                        ? WITNESS_SETTLE_LIMIT + WITNESS_SETTLE_PER_EDGE * outSize[node]
+                        : ESTIMATE_SETTLE_LIMIT);
+                for (int j = 0; j < outSize[node]; j++) {
+                    int out = outEdges[node][j];
+                    int to = edgeTo[out];
+                    if (contracted[to] || to == from) continue;
+                    double via = inWeight + edgeWeight[out];
+                    if (witnessStamp[to] == stamp && witnessDistance[to] <= via) continue;
+                    shortcuts++;
+                    if (apply) {
+                        addOrImprove(from, to, via, node);
+                    }
+                }
+            }
+            return shortcuts;
+        }
+
+        // Bounded Dijkstra from source that ignores the node being contracted
+        private void witnessSearch(int source, int ignored, double limit, int settleLimit) {
+            stamp++;
+            witnessHeap.clear();
+            witnessStamp[source] = stamp;
+            witnessDistance[source] = 0;
+            witnessHeap.push(source, 0);
+            int settled = 0;
+            while (!witnessHeap.isEmpty() && settled < settleLimit) {
+                if (witnessHeap.peekKey() > limit) break;
+                int node = witnessHeap.poll();
+                settled++;
+                double base = witnessDistance[node];
+                for (int i = 0; i < outSize[node]; i++) {
+                    int e = outEdges[node][i];
+                    int to = edgeTo[e];
+                    if (to == ignored || contracted[to]) continue;
+                    double candidate = base + edgeWeight[e];
+                    if (witnessStamp[to] != stamp || candidate < witnessDistance[to]) {
+                        witnessStamp[to] = stamp;
+                        witnessDistance[to] = candidate;
+                        witnessHeap.push(to, candidate);
+                    }
+                }
+            }
+        }
+
+        private void addOrImprove(int from, int to, double weight, int middle) {
+            for (int i = 0; i < outSize[from]; i++) {
+                int e = outEdges[from][i];
+                if (edgeTo[e] == to) {
+                    if (weight < edgeWeight[e]) {
+                        edgeWeight[e] = weight;
+                        edgeMiddle[e] = middle;
+                    }
+                    return;
+                }
+            }
+            if (edgeCount == edgeFrom.length) {
+                int capacity = edgeCount * 2;
+                edgeFrom = Arrays.copyOf(edgeFrom, capacity);
+                edgeTo = Arrays.copyOf(edgeTo, capacity);
+                edgeWeight = Arrays.copyOf(edgeWeight, capacity);
+                edgeMiddle = Arrays.copyOf(edgeMiddle, capacity);
+            }
+            int e = edgeCount++;
+            edgeFrom[e] = from;
+            edgeTo[e] = to;
+            edgeWeight[e] = weight;
+            edgeMiddle[e] = middle;
+            appendEdge(outEdges, outSize, from, e);
+            appendEdge(inEdges, inSize, to, e);
+        }
+
+        private static void removeEdge(int[][] lists, int[] sizes, int node, int edge) {
+            int[] list = lists[node];
+            for (int i = 0; i < sizes[node]; i++) {
+                if (list[i] == edge) {
+                    list[i] = list[--sizes[node]];
+                    return;
+                }
+            }
+        }
+
+        private static void appendEdge(int[][] lists, int[] sizes, int node, int edge) {
+            if (sizes[node] == lists[node].length) {
+                lists[node] = Arrays.copyOf(lists[node], sizes[node] * 2);
+            }
+            lists[node][sizes[node]++] = edge;
+        }
+
+        private ContractionHierarchy assemble() {
+            int[] upStart = new int[nodeCount + 1];
+            int[] downStart = new int[nodeCount + 1];
+            for (int e = 0; e < edgeCount; e++) {
+                if (rank[edgeFrom[e]] < rank[edgeTo[e]]) {
+                    upStart[edgeFrom[e] + 1]++;
+                } else {
+                    downStart[edgeTo[e] + 1]++;
+                }
+            }
+            for (int n = 0; n < nodeCount; n++) {
+                upStart[n + 1] += upStart[n];
+                downStart[n + 1] += downStart[n];
+            }
+            int upCount = upStart[nodeCount];
+            int downCount = downStart[nodeCount];
+            int[] upTarget = new int[upCount];
+            double[] upWeight = new double[upCount];
+            int[] upMiddle = new int[upCount];
+            int[] downSource = new int[downCount];
+            double[] downWeight = new double[downCount];
+            int[] downMiddle = new int[downCount];
+            int[] upCursor = Arrays.copyOf(upStart, nodeCount);
+            int[] downCursor = Arrays.copyOf(downStart, nodeCount);
+            for (int e = 0; e < edgeCount; e++) {
+                int from = edgeFrom[e];
+                int to = edgeTo[e];
+                if (rank[from] < rank[to]) {
+                    int slot = upCursor[from]++;
+                    upTarget[slot] = to;
+                    upWeight[slot] = edgeWeight[e];
+                    upMiddle[slot] = edgeMiddle[e];
+                } else {
+                    int slot = downCursor[to]++;
+                    downSource[slot] = from;
+                    downWeight[slot] = edgeWeight[e];
+                    downMiddle[slot] = edgeMiddle[e];
+                }
+            }
+            return new ContractionHierarchy(graph, rank, upStart, upTarget, upWeight, upMiddle,
+                    downStart, downSource, downWeight, downMiddle);
+        }
+    }
+}
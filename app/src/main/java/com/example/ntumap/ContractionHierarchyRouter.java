@@ -0,0 +1,170 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+
+/**
+ * Bidirectional upward search over a {@link ContractionHierarchy}. The
+ * hierarchy itself is immutable and can be shared; each router owns its own
+ * search buffers and is not thread-safe.
+ */
+public class ContractionHierarchyRouter implements Router {
+
+    private final ContractionHierarchy hierarchy;
+    private final double[] forwardDistance;
+    private final double[] backwardDistance;
+    private final int[] forwardParent;
+    private final int[] backwardParent;
+    private final int[] forwardParentEdge;
+    private final int[] backwardParentEdge;
+    private final int[] forwardStamp;
+    private final int[] backwardStamp;
+    private final NodeHeap forwardQueue;
+    private final NodeHeap backwardQueue;
+    private final int[] pathBuffer;
+    private int[] edgeBuffer = new int[16];
+    private int stamp;
+
+    public ContractionHierarchyRouter(ContractionHierarchy hierarchy) {
+        this.hierarchy = hierarchy;
+        int n = hierarchy.getGraph().nodeCount();
+        forwardDistance = new double[n];
+        backwardDistance = new double[n];
+        forwardParent = new int[n];
+        backwardParent = new int[n];
+        forwardParentEdge = new int[n];
+        backwardParentEdge = new int[n];
+        forwardStamp = new int[n];
+        backwardStamp = new int[n];
+        forwardQueue = new NodeHeap(n);
+        backwardQueue = new NodeHeap(n);
+        pathBuffer = new int[n];
+    }
+
+    @Override
+    public CampusGraph getGraph() { return hierarchy.getGraph(); }
+
+    @Override
+    public Route findRoute(int source, int target) {
+        if (++stamp == 0) {
+            Arrays.fill(forwardStamp, 0);
+            Arrays.fill(backwardStamp, 0);
+            stamp = 1;
+        }
+        forwardQueue.clear();
+        backwardQueue.clear();
+
+        forwardStamp[source] = stamp;
+        forwardDistance[source] = 0;
+        forwardQueue.push(source, 0);
+        backwardStamp[target] = stamp;
+        backwardDistance[target] = 0;
+        backwardQueue.push(target, 0);
+
+        double best = Double.POSITIVE_INFINITY;
+        int meeting = -1;
+        ContractionHierarchy ch = hierarchy;
+
+        while (!forwardQueue.isEmpty() || !backwardQueue.isEmpty()) {
+            double forwardMin = forwardQueue.isEmpty() ? Double.POSITIVE_INFINITY : forwardQueue.peekKey();
+            double backwardMin = backwardQueue.isEmpty() ? Double.POSITIVE_INFINITY : backwardQueue.peekKey();
+            if (Math.min(forwardMin, backwardMin) >= best) break;
+
+            if (forwardMin <= backwardMin) {
+                int node = forwardQueue.poll();
+                double base = forwardDistance[node];
+                if (backwardStamp[node] == stamp && base + backwardDistance[node] < best) {
+                    best = base + backwardDistance[node];
+                    meeting = node;
+                }
+                if (stalledForward(node, base)) continue;
+                for (int e = ch.upStart[node]; e < ch.upStart[node + 1]; e++) {
+                    int next = ch.upTarget[e];
+                    double candidate = base + ch.upWeight[e];
+                    if (forwardStamp[next] != stamp || candidate < forwardDistance[next]) {
+                        forwardStamp[next] = stamp;
+                        forwardDistance[next] = candidate;
+                        forwardParent[next] = node;
+                        forwardParentEdge[next] = e;
+                        forwardQueue.push(next, candidate);
+                    }
+                }
+            } else {
+                int node = backwardQueue.poll();
+                double base = backwardDistance[node];
+                if (forwardStamp[node] == stamp && base + forwardDistance[node] < best) {
+                    best = base + forwardDistance[node];
+                    meeting = node;
+                }
+                if (stalledBackward(node, base)) continue;
+                for (int e = ch.downStart[node]; e < ch.downStart[node + 1]; e++) {
+                    int next = ch.downSource[e];
+                    double candidate = base + ch.downWeight[e];
+                    if (backwardStamp[next] != stamp || candidate < backwardDistance[next]) {
+                        backwardStamp[next] = stamp;
+                        backwardDistance[next] = candidate;
+                        backwardParent[next] = node;
+                        backwardParentEdge[next] = e;
+                        backwardQueue.push(next, candidate);
+                    }
+                }
+            }
+        }
+
+        if (meeting < 0) {
+            return null;
+        }
+        return new Route(getGraph(), unpack(source, meeting, target), best);
+    }
+
+    // Stall-on-demand: a node reached more cheaply through a higher ranked node
+    // cannot lie on a shortest up-down path, so its edges need not be relaxed
+    private boolean stalledForward(int node, double distance) {
+        ContractionHierarchy ch = hierarchy;
+        for (int e = ch.downStart[node]; e < ch.downStart[node + 1]; e++) {
+            int higher = ch.downSource[e];
+            if (forwardStamp[higher] == stamp && forwardDistance[higher] + ch.downWeight[e] < distance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean stalledBackward(int node, double distance) {
+        ContractionHierarchy ch = hierarchy;
+        for (int e = ch.upStart[node]; e < ch.upStart[node + 1]; e++) {
+            int higher = ch.upTarget[e];
+            if (backwardStamp[higher] == stamp && backwardDistance[higher] + ch.upWeight[e] < distance) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int[] unpack(int source, int meeting, int target) {
+        ContractionHierarchy ch = hierarchy;
+        int[] path = pathBuffer;
+
+        // Hierarchy edges from source up to the meeting node, collected in reverse
+        int upEdges = 0;
+        for (int node = meeting; node != source; node = forwardParent[node]) {
+            if (upEdges == edgeBuffer.length) edgeBuffer = Arrays.copyOf(edgeBuffer, upEdges * 2);
+            edgeBuffer[upEdges++] = forwardParentEdge[node];
+        }
+
+        int length = 0;
+        path[length++] = source;
+        int from = source;
+        for (int i = upEdges - 1; i >= 0; i--) {
+            int e = edgeBuffer[i];
+            length = ch.unpackEdge(from, ch.upTarget[e], ch.upMiddle[e], path, length);
+            from = ch.upTarget[e];
+        }
+        // Hierarchy edges from the meeting node down to the target
+        for (int node = meeting; node != target; ) {
+            int to = backwardParent[node];
+            length = ch.unpackEdge(node, to, ch.downMiddle[backwardParentEdge[node]], path, length);
+            node = to;
+        }
+        return Arrays.copyOf(path, length);
+    }
+}
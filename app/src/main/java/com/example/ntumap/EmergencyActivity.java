@@ -1,50 +1,185 @@
 package com.example.ntumap;
 
+import android.Manifest;
 import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.location.Location;
 import android.os.Bundle;
+import android.os.Looper;
 import android.widget.Button;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
+import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class EmergencyActivity extends AppCompatActivity implements OnMapReadyCallback {
     
     private GoogleMap mMap;
     private TextView emergencyStatusText;
-    private ListView emergencyListView;
+    private RecyclerView emergencyListView;
     private Button evacuationRouteButton;
     private Button contactSecurityButton;
     private Button safeSpacesButton;
     
-    private List<EmergencyAlert> emergencyAlerts;
-    private EmergencyAlertAdapter alertAdapter;
+    private final AlertQueue alertQueue = new AlertQueue();
+    private AlertFeed alertFeed;
+    private ItemListAdapter<EmergencyAlert> alertAdapter;
+    private final FrameScheduler frameScheduler = new ChoreographerFrameScheduler();
+    private final AtomicBoolean alertsScheduled = new AtomicBoolean();
+    // Alert shown in the status banner
+    private EmergencyAlert shownAlert;
+    private TaskScheduler.Cancellable expiryTimer;
+    
+    // Ways out avoiding the areas alerts have closed, null until built in the background
+    private Evacuation evacuation;
+    private TaskScheduler.Scope tasks;
+    // Guards the queue's changes together with the hazard zones closed for them
+    private final Object alertLock = new Object();
+    private EvacuationPlanner zonePlanner;
+    private final Map<Long, Integer> hazardZones = new HashMap<>();
+    // Bumped whenever a hazard zone closes or reopens
+    private int hazardRevision;
+    // Latest crowd split over the exits, read by the balancing task to skip unchanged inputs
+    private volatile ExitAssignment assignment;
+    private TaskScheduler.Cancellable balancing;
+    private Polyline routeLine;
+    private Marker routeExitMarker;
+    
+    // Walkway-snapped positions to route from; null until the walkway index is built
+    private FusedLocationProviderClient fusedLocationClient;
+    private LocationPipeline locationPipeline;
+    private Marker positionMarker;
+    private boolean started;
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult result) {
+            if (locationPipeline == null) {
+                return;
+            }
+            for (Location location : result.getLocations()) {
+                locationPipeline.onFix(new LocationFix(location.getLatitude(), location.getLongitude(),
+                        location.getAccuracy(), location.getTime()));
+            }
+        }
+    };
     
     // NTU Clifton Campus coordinates
     private static final LatLng NTU_CLIFTON = new LatLng(52.9068, -1.1878);
+    // People a door or a walkway lets through each second, for spreading crowds over the exits
+    private static final double EXIT_PEOPLE_PER_SECOND = 2.0;
+    private static final double WALKWAY_PEOPLE_PER_SECOND = 2.6;
+    // Area kept clear around the scene of an incident
+    private static final double HAZARD_RADIUS_METERS = 20;
+    private static final long MINUTE_MILLIS = 60 * 1000;
+    private static final long LOCATION_INTERVAL_MILLIS = 1000;
+    private static final float LOCATION_MIN_MOVE_METERS = 2;
+    private static final double POSITION_MIN_MOVE_METERS = 3;
+    // How often head counts are checked for a change worth re-balancing the exits for
+    private static final long BALANCE_CHECK_MILLIS = 5000;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_emergency);
+        tasks = NtuMapApplication.tasksFor(this);
+        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
         
         // Initialize UI
         initializeViews();
         setupClickListeners();
         setupMap();
-        loadEmergencyAlerts();
+        setupAlertList();
+        publishDemoAlerts();
+        buildEvacuationPlanner();
+        buildLocationPipeline();
+    }
+    
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        alertFeed.start(this::onAlerts);
+        startLocationUpdates();
+        scheduleBalance(0);
+    }
+    
+    @Override
+    protected void onStop() {
+        started = false;
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+        alertFeed.stop();
+        if (expiryTimer != null) {
+            expiryTimer.cancel();
+            expiryTimer = null;
+        }
+        if (balancing != null) {
+            balancing.cancel();
+            balancing = null;
+        }
+        super.onStop();
+    }
+    
+    private void buildLocationPipeline() {
+        tasks.submit(TaskScheduler.BACKGROUND, () -> new WalkwayIndex(CampusData.getWalkwayGraph()), index -> {
+            locationPipeline = new LocationPipeline(index, POSITION_MIN_MOVE_METERS, this::onPosition);
+            startLocationUpdates();
+        });
+    }
+    
+    private void startLocationUpdates() {
+        if (!started || locationPipeline == null || ContextCompat.checkSelfPermission(this,
+                Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        LocationRequest request = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, LOCATION_INTERVAL_MILLIS)
+                .setMinUpdateDistanceMeters(LOCATION_MIN_MOVE_METERS)
+                .build();
+        fusedLocationClient.requestLocationUpdates(request, locationCallback, Looper.getMainLooper());
+    }
+    
+    private void onPosition(LocationPipeline.Position position) {
+        if (mMap == null) {
+            return;
+        }
+        LatLng at = new LatLng(position.getLatitude(), position.getLongitude());
+        if (positionMarker == null) {
+            positionMarker = mMap.addMarker(new MarkerOptions()
+                    .position(at)
+                    .title("Current Location")
+                    .snippet("You are here"));
+        } else {
+            // May still be the campus centre stand-in from a route drawn before the first fix
+            positionMarker.setPosition(at);
+            positionMarker.setTitle("Current Location");
+            positionMarker.setSnippet("You are here");
+        }
     }
     
     private void initializeViews() {
@@ -79,8 +214,7 @@ public class EmergencyActivity extends AppCompatActivity implements OnMapReadyCa
         // Add NTU campus marker
         mMap.addMarker(new MarkerOptions()
                 .position(NTU_CLIFTON)
-                .title("NTU Clifton Campus")
-                .snippet("Current Location"));
+                .title("NTU Clifton Campus"));
         
         // Move camera to NTU
         mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(NTU_CLIFTON, 15));
@@ -91,117 +225,330 @@ public class EmergencyActivity extends AppCompatActivity implements OnMapReadyCa
     
     private void addEmergencyExits() {
         // Add emergency exit locations around campus
-        LatLng[] emergencyExits = {
-            new LatLng(52.9070, -1.1880), // Library exit
-            new LatLng(52.9066, -1.1876), // Main building exit
-            new LatLng(52.9072, -1.1882), // Cafeteria exit
-            new LatLng(52.9064, -1.1874), // Gym exit
-        };
-        
-        String[] exitNames = {"Library Emergency Exit", "Main Building Exit", "Cafeteria Exit", "Gym Exit"};
-        
-        for (int i = 0; i < emergencyExits.length; i++) {
+        for (Poi exit : CampusData.getPois(Poi.Category.EMERGENCY_EXIT)) {
             mMap.addMarker(new MarkerOptions()
-                    .position(emergencyExits[i])
-                    .title(exitNames[i])
+                    .position(new LatLng(exit.getLatitude(), exit.getLongitude()))
+                    .title(exit.getName())
                     .snippet("Emergency Exit"));
         }
     }
     
-    private void loadEmergencyAlerts() {
-        emergencyAlerts = new ArrayList<>();
-        
-        // Simulate emergency alerts
-        emergencyAlerts.add(new EmergencyAlert("Fire Drill", "Scheduled fire drill in Main Building", "Low", "10 minutes ago"));
-        emergencyAlerts.add(new EmergencyAlert("Medical Emergency", "Medical assistance needed in Library", "Medium", "5 minutes ago"));
-        emergencyAlerts.add(new EmergencyAlert("Weather Warning", "Severe weather approaching campus", "High", "2 minutes ago"));
-        
-        // Create adapter
-        alertAdapter = new EmergencyAlertAdapter(this, emergencyAlerts);
+    private void setupAlertList() {
+        alertAdapter = new ItemListAdapter<>(
+                ((NtuMapApplication) getApplication()).getTaskScheduler().executor(TaskScheduler.BACKGROUND), null);
+        emergencyListView.setLayoutManager(new LinearLayoutManager(this));
+        emergencyListView.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
         emergencyListView.setAdapter(alertAdapter);
+        showEmergencyStatus(null);
         
-        // Update status
-        updateEmergencyStatus();
+        // Pushed by the alert server; the first batch is everything it still holds
+        alertFeed = ((NtuMapApplication) getApplication()).getAlertServer();
     }
     
-    private void updateEmergencyStatus() {
-        if (emergencyAlerts.isEmpty()) {
-            emergencyStatusText.setText("No Active Emergencies");
-            emergencyStatusText.setBackgroundColor(android.graphics.Color.GREEN);
-        } else {
-            EmergencyAlert highestPriority = getHighestPriorityAlert();
-            emergencyStatusText.setText("Active Emergency: " + highestPriority.getTitle());
-            
-            switch (highestPriority.getPriority()) {
-                case "Low":
-                    emergencyStatusText.setBackgroundColor(android.graphics.Color.YELLOW);
-                    break;
-                case "Medium":
-                    emergencyStatusText.setBackgroundColor(android.graphics.Color.rgb(255, 165, 0)); // Orange
-                    break;
-                case "High":
-                    emergencyStatusText.setBackgroundColor(android.graphics.Color.RED);
-                    break;
+    private void publishDemoAlerts() {
+        // Simulate the campus alert service; republishing the same revisions is a no-op
+        long now = System.currentTimeMillis();
+        List<EmergencyAlert> alerts = new ArrayList<>();
+        alerts.add(new EmergencyAlert.Builder(1, "Fire Drill", EmergencyAlert.Severity.LOW)
+                .description("Scheduled fire drill in Main Building")
+                .issuedAt(now - 10 * MINUTE_MILLIS).ttl(60 * MINUTE_MILLIS).build());
+        EmergencyAlert.Builder medical = new EmergencyAlert.Builder(2, "Medical Emergency", EmergencyAlert.Severity.MEDIUM)
+                .description("Medical assistance needed in Library")
+                .issuedAt(now - 5 * MINUTE_MILLIS).ttl(120 * MINUTE_MILLIS);
+        Poi library = findPlace("Library");
+        if (library != null) {
+            medical.hazardZone(library.getLatitude(), library.getLongitude(), HAZARD_RADIUS_METERS);
+        }
+        alerts.add(medical.build());
+        alerts.add(new EmergencyAlert.Builder(3, "Weather Warning", EmergencyAlert.Severity.HIGH)
+                .description("Severe weather approaching campus")
+                .issuedAt(now - 2 * MINUTE_MILLIS).ttl(180 * MINUTE_MILLIS).build());
+        ((NtuMapApplication) getApplication()).getAlertServer().publish(alerts);
+    }
+    
+    // Runs on the feed thread. However many batches arrive between two frames, the screen is redrawn once
+    private void onAlerts(List<EmergencyAlert> batch) {
+        AlertQueue.Changes changes;
+        synchronized (alertLock) {
+            changes = alertQueue.offer(batch, System.currentTimeMillis());
+            applyHazardZones(changes);
+        }
+        if (!changes.isEmpty() && alertsScheduled.compareAndSet(false, true)) {
+            frameScheduler.scheduleFrame(this::showAlerts);
+        }
+    }
+    
+    private void showAlerts() {
+        alertsScheduled.set(false);
+        alertAdapter.submitList(alertQueue.snapshot());
+        showEmergencyStatus(alertQueue.peek());
+        scheduleExpiry();
+        // Closed areas may have changed; the task itself finds out whether they did
+        scheduleBalance(0);
+    }
+    
+    // Wakes up when the next alert runs out
+    private void scheduleExpiry() {
+        if (expiryTimer != null) {
+            expiryTimer.cancel();
+            expiryTimer = null;
+        }
+        long next = alertQueue.nextExpiry();
+        if (next == Long.MAX_VALUE) {
+            return;
+        }
+        expiryTimer = tasks.submitDelayed(TaskScheduler.EMERGENCY, Math.max(0, next - System.currentTimeMillis()), () -> {
+            synchronized (alertLock) {
+                AlertQueue.Changes changes = alertQueue.expire(System.currentTimeMillis());
+                applyHazardZones(changes);
+                return changes;
+            }
+        }, changes -> showAlerts());
+    }
+    
+    // Called holding alertLock. Until the planner exists there is nothing to patch: it closes the zones of whatever is queued when built
+    private void applyHazardZones(AlertQueue.Changes changes) {
+        if (zonePlanner == null) {
+            return;
+        }
+        for (EmergencyAlert alert : changes.getRemoved()) {
+            Integer zone = hazardZones.remove(alert.getId());
+            if (zone != null) {
+                zonePlanner.openZone(zone);
+                hazardRevision++;
+            }
+        }
+        for (EmergencyAlert alert : changes.getAdded()) {
+            if (alert.hasHazardZone()) {
+                hazardZones.put(alert.getId(), zonePlanner.closeZone(alert.getLatitude(), alert.getLongitude(),
+                        alert.getHazardRadiusMeters()));
+                hazardRevision++;
             }
         }
     }
     
-    private EmergencyAlert getHighestPriorityAlert() {
-        EmergencyAlert highest = emergencyAlerts.get(0);
-        for (EmergencyAlert alert : emergencyAlerts) {
-            if (getPriorityLevel(alert.getPriority()) > getPriorityLevel(highest.getPriority())) {
-                highest = alert;
+    private static Poi findPlace(String name) {
+        for (Poi poi : CampusData.getPoiIndex().getPois()) {
+            if (poi.getName().equals(name)) {
+                return poi;
             }
         }
-        return highest;
+        return null;
+    }
+    
+    // Distances to the exits are worked out once for the whole campus, then patched as alerts close areas
+    private void buildEvacuationPlanner() {
+        tasks.submit(TaskScheduler.BACKGROUND, () -> {
+            CampusGraph graph = CampusData.getWalkwayGraph();
+            List<Poi> exits = CampusData.getPois(Poi.Category.EMERGENCY_EXIT);
+            int[] exitNodes = new int[exits.size()];
+            double[] throughput = new double[exits.size()];
+            for (int i = 0; i < exitNodes.length; i++) {
+                exitNodes[i] = graph.nearestNode(exits.get(i).getLatitude(), exits.get(i).getLongitude());
+                throughput[i] = EXIT_PEOPLE_PER_SECOND;
+            }
+            EvacuationPlanner planner = new EvacuationPlanner(graph, exitNodes);
+            synchronized (alertLock) {
+                for (EmergencyAlert alert : alertQueue.snapshot()) {
+                    if (alert.hasHazardZone()) {
+                        hazardZones.put(alert.getId(), planner.closeZone(alert.getLatitude(), alert.getLongitude(),
+                                alert.getHazardRadiusMeters()));
+                    }
+                }
+                zonePlanner = planner;
+            }
+            
+            // Occupied rooms stand at their own marker or, failing that, their building's
+            RoomTable rooms = CampusData.getRooms();
+            List<Integer> tracked = new ArrayList<>();
+            List<Integer> nodes = new ArrayList<>();
+            for (int room = 0; room < rooms.size(); room++) {
+                Poi place = rooms.getPoiId(room) >= 0 ? CampusData.getPoi(rooms.getPoiId(room))
+                        : findPlace(rooms.getBuilding(room));
+                if (rooms.hasFlag(room, RoomTable.TRACKED) && place != null) {
+                    tracked.add(room);
+                    nodes.add(graph.nearestNode(place.getLatitude(), place.getLongitude()));
+                }
+            }
+            return new Evacuation(planner,
+                    new EvacuationBalancer(graph, exitNodes, throughput, WALKWAY_PEOPLE_PER_SECOND), exits,
+                    tracked.stream().mapToInt(Integer::intValue).toArray(),
+                    nodes.stream().mapToInt(Integer::intValue).toArray(),
+                    graph.nearestNode(NTU_CLIFTON.latitude, NTU_CLIFTON.longitude));
+        }, evacuation -> {
+            this.evacuation = evacuation;
+            scheduleBalance(0);
+        });
     }
     
-    private int getPriorityLevel(String priority) {
-        switch (priority) {
-            case "Low": return 1;
-            case "Medium": return 2;
-            case "High": return 3;
-            default: return 0;
+    // The queue keeps its most urgent alert on top, so this is a constant-time check
+    private void showEmergencyStatus(EmergencyAlert top) {
+        if (top != null && top == shownAlert) {
+            return;
+        }
+        shownAlert = top;
+        if (top == null) {
+            emergencyStatusText.setText("No Active Emergencies");
+            emergencyStatusText.setBackgroundColor(android.graphics.Color.GREEN);
+        } else {
+            emergencyStatusText.setText("Active Emergency: " + top.getTitle());
+            emergencyStatusText.setBackgroundColor(top.getSeverity().getColor());
         }
     }
     
     private void showEvacuationRoute() {
         // Show evacuation route on map
         if (mMap != null) {
-            // Clear existing routes
-            mMap.clear();
-            
-            // Add current location
-            mMap.addMarker(new MarkerOptions()
-                    .position(NTU_CLIFTON)
-                    .title("Current Location")
-                    .snippet("You are here"));
-            
-            // Add nearest emergency exit
-            LatLng nearestExit = new LatLng(52.9070, -1.1880); // Library exit
-            mMap.addMarker(new MarkerOptions()
-                    .position(nearestExit)
-                    .title("Nearest Emergency Exit")
-                    .snippet("Follow this route"));
-            
-            // Draw evacuation route
-            List<LatLng> routePoints = new ArrayList<>();
-            routePoints.add(NTU_CLIFTON);
-            routePoints.add(nearestExit);
-            
-            PolylineOptions polylineOptions = new PolylineOptions()
-                    .addAll(routePoints)
-                    .width(10)
-                    .color(0xFFFF0000); // Red color for emergency route
+            if (evacuation == null) {
+                Toast.makeText(this, "Evacuation routes are still being prepared, please try again", Toast.LENGTH_SHORT).show();
+                return;
+            }
             
-            mMap.addPolyline(polylineOptions);
+            // Route from the latest walkway-snapped fix; without one all we can do is start from the campus centre
+            LocationPipeline.Position fix = locationPipeline != null ? locationPipeline.getLastPosition() : null;
+            boolean located = fix != null;
+            LatLng position = located ? new LatLng(fix.getLatitude(), fix.getLongitude()) : NTU_CLIFTON;
+            Evacuation current = evacuation;
+            int start = located && fix.getNode() >= 0 ? fix.getNode()
+                    : located ? current.planner.getGraph().nearestNode(position.latitude, position.longitude)
+                    : current.centreNode;
             
-            // Move camera to show route
-            mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(NTU_CLIFTON, 16));
+            // The planner's way out avoids every area closed right now
+            Route nearest = current.planner.routeFrom(start);
+            if (nearest == null) {
+                Toast.makeText(this, "No exit can be reached from here. Contact security.", Toast.LENGTH_LONG).show();
+                return;
+            }
+            int[] path = nearest.getNodes();
+            int exit = current.exitOf(nearest.getEndNode());
             
-            Toast.makeText(this, "Evacuation route displayed. Follow the red line to the nearest exit.", 
+            // Join the crowd's balanced way out where it passes, unless an area closed since the plan makes it the worse choice
+            ExitAssignment assigned = assignment;
+            int group = assigned != null ? assigned.groupAt[start] : -1;
+            if (group >= 0) {
+                EvacuationBalancer.Group crowd = assigned.plan.getGroups().get(group);
+                int[] crowdPath = Arrays.copyOfRange(crowd.getPath(), assigned.stepAt[start], crowd.getPath().length);
+                if (!current.entersClosedArea(crowdPath) || current.entersClosedArea(path)) {
+                    path = crowdPath;
+                    exit = crowd.getExit();
+                }
+            }
+            drawEvacuationRoute(position, located, current, path, exit, assigned);
+        }
+    }
+    
+    private void drawEvacuationRoute(LatLng position, boolean located, Evacuation current, int[] path, int exitIndex,
+                                     ExitAssignment assigned) {
+        // Replace only the previous route, keeping hazard and exit markers
+        if (routeLine != null) {
+            routeLine.remove();
+            routeExitMarker.remove();
+        }
+        
+        // Add current location, or say plainly that the route starts from the campus centre instead
+        if (positionMarker == null) {
+            positionMarker = mMap.addMarker(new MarkerOptions().position(position));
+        }
+        positionMarker.setPosition(position);
+        positionMarker.setTitle(located ? "Current Location" : "NTU Clifton Campus");
+        positionMarker.setSnippet(located ? "You are here" : "Your location is unknown; route starts at the campus centre");
+        
+        // Mark the exit we are sent to
+        Poi exit = current.exits.get(exitIndex);
+        routeExitMarker = mMap.addMarker(new MarkerOptions()
+                .position(new LatLng(exit.getLatitude(), exit.getLongitude()))
+                .title("Your Evacuation Exit")
+                .snippet(exit.getName() + " - Follow this route"));
+        
+        // Draw evacuation route along the walkways
+        CampusGraph graph = current.planner.getGraph();
+        List<LatLng> routePoints = new ArrayList<>();
+        routePoints.add(position);
+        for (int node : path) {
+            routePoints.add(new LatLng(graph.latitude(node), graph.longitude(node)));
+        }
+        
+        PolylineOptions polylineOptions = new PolylineOptions()
+                .addAll(routePoints)
+                .width(10)
+                .color(0xFFFF0000); // Red color for emergency route
+        
+        routeLine = mMap.addPolyline(polylineOptions);
+        
+        // Move camera to show route
+        mMap.moveCamera(CameraUpdateFactory.newLatLngZoom(position, 16));
+        
+        if (!located) {
+            Toast.makeText(this, "Your location is not known yet, so this route starts at the campus centre. "
+                          + "Turn on location for a route from where you are.", Toast.LENGTH_LONG).show();
+        } else if (current.entersClosedArea(path)) {
+            Toast.makeText(this, "Every way out passes a closed area. Follow the red line with care.",
                           Toast.LENGTH_LONG).show();
+        } else if (assigned != null) {
+            // Other exits may be nearer; this one keeps the crowd moving
+            Toast.makeText(this, String.format("Evacuation route displayed: head for %s with about %d others. Follow the red line.",
+                          exit.getName(), Math.round(assigned.plan.getExitLoad(exitIndex))), Toast.LENGTH_LONG).show();
+        } else {
+            Toast.makeText(this, String.format("Evacuation route displayed: head for %s. Follow the red line.",
+                          exit.getName()), Toast.LENGTH_LONG).show();
+        }
+    }
+    
+    // Re-balances the crowd over the exits on the emergency queue, but only when head counts or closed areas have moved on
+    private void scheduleBalance(long delayMillis) {
+        if (evacuation == null || !started) {
+            return;
+        }
+        if (balancing != null) {
+            balancing.cancel();
+        }
+        Evacuation current = evacuation;
+        balancing = tasks.submitDelayed(TaskScheduler.EMERGENCY, delayMillis, () -> {
+            long occupancyVersion = CampusData.getOccupancyStore().version();
+            int hazards;
+            synchronized (alertLock) {
+                hazards = hazardRevision;
+            }
+            ExitAssignment last = assignment;
+            if (last != null && last.occupancyVersion == occupancyVersion && last.hazardRevision == hazards) {
+                return last;
+            }
+            return balance(current, occupancyVersion, hazards);
+        }, assigned -> {
+            assignment = assigned;
+            balancing = null;
+            scheduleBalance(BALANCE_CHECK_MILLIS);
+        });
+    }
+    
+    // Spreads everyone in the tracked rooms over the exits by the live head counts
+    private static ExitAssignment balance(Evacuation current, long occupancyVersion, int hazardRevision) {
+        RoomTable rooms = CampusData.getRooms();
+        OccupancyStore store = CampusData.getOccupancyStore();
+        int[] occupants = new int[current.roomRows.length];
+        for (int i = 0; i < occupants.length; i++) {
+            String name = rooms.getName(current.roomRows[i]);
+            occupants[i] = store.contains(name) ? store.get(name) : rooms.getInitialOccupancy(current.roomRows[i]);
+        }
+        EvacuationBalancer.Plan plan = current.balancer.plan(current.roomNodes, occupants, current.planner::isClosed);
+        
+        // Every node a group walks through joins the biggest group passing it
+        int nodeCount = current.planner.getGraph().nodeCount();
+        int[] groupAt = new int[nodeCount];
+        int[] stepAt = new int[nodeCount];
+        Arrays.fill(groupAt, -1);
+        List<EvacuationBalancer.Group> groups = plan.getGroups();
+        for (int g = 0; g < groups.size(); g++) {
+            int[] path = groups.get(g).getPath();
+            for (int i = 0; i < path.length; i++) {
+                int node = path[i];
+                if (groupAt[node] < 0 || groups.get(groupAt[node]).getPeople() < groups.get(g).getPeople()) {
+                    groupAt[node] = g;
+                    stepAt[node] = i;
+                }
+            }
         }
+        return new ExitAssignment(plan, groupAt, stepAt, occupancyVersion, hazardRevision);
     }
     
     private void contactSecurity() {
@@ -227,20 +574,15 @@ public class EmergencyActivity extends AppCompatActivity implements OnMapReadyCa
         // Show safe spaces on campus
         if (mMap != null) {
             mMap.clear();
+            positionMarker = null;
+            routeLine = null;
+            routeExitMarker = null;
             
             // Add safe space locations
-            LatLng[] safeSpaces = {
-                new LatLng(52.9070, -1.1880), // Library
-                new LatLng(52.9066, -1.1876), // Main building lobby
-                new LatLng(52.9072, -1.1882), // Student union
-            };
-            
-            String[] safeSpaceNames = {"Library Safe Space", "Main Building Lobby", "Student Union"};
-            
-            for (int i = 0; i < safeSpaces.length; i++) {
+            for (Poi safeSpace : CampusData.getPois(Poi.Category.SAFE_SPACE)) {
                 mMap.addMarker(new MarkerOptions()
-                        .position(safeSpaces[i])
-                        .title(safeSpaceNames[i])
+                        .position(new LatLng(safeSpace.getLatitude(), safeSpace.getLongitude()))
+                        .title(safeSpace.getName())
                         .snippet("Safe Space - Staff Available"));
             }
             
@@ -252,63 +594,65 @@ public class EmergencyActivity extends AppCompatActivity implements OnMapReadyCa
         }
     }
     
-    // Emergency Alert data class
-    public static class EmergencyAlert {
-        private final String title;
-        private final String description;
-        private final String priority;
-        private final String timeAgo;
+    // Evacuation state for the whole campus, built off the main thread
+    private static final class Evacuation {
+        final EvacuationPlanner planner;
+        final EvacuationBalancer balancer;
+        // Exit markers, in the balancer's exit order
+        final List<Poi> exits;
+        // Tracked rooms by RoomTable row, and the walkway node each stands at
+        final int[] roomRows;
+        final int[] roomNodes;
+        // Where routes start while there is no location fix
+        final int centreNode;
+        private final int[] exitNodes;
         
-        public EmergencyAlert(String title, String description, String priority, String timeAgo) {
-            this.title = title;
-            this.description = description;
-            this.priority = priority;
-            this.timeAgo = timeAgo;
+        Evacuation(EvacuationPlanner planner, EvacuationBalancer balancer, List<Poi> exits, int[] roomRows, int[] roomNodes,
+                   int centreNode) {
+            this.planner = planner;
+            this.balancer = balancer;
+            this.exits = exits;
+            this.roomRows = roomRows;
+            this.roomNodes = roomNodes;
+            this.centreNode = centreNode;
+            this.exitNodes = balancer.getExitNodes();
         }
         
-        // Getters
-        public String getTitle() { return title; }
-        public String getDescription() { return description; }
-        public String getPriority() { return priority; }
-        public String getTimeAgo() { return timeAgo; }
+        // Position of an exit node in the exit list
+        int exitOf(int node) {
+            for (int i = 0; i < exitNodes.length; i++) {
+                if (exitNodes[i] == node) {
+                    return i;
+                }
+            }
+            return -1;
+        }
         
-        @Override
-        public String toString() {
-            return String.format("%s (%s) - %s", title, priority, timeAgo);
+        // Whether the path walks into a closed area it did not start in
+        boolean entersClosedArea(int[] path) {
+            for (int i = 1; i < path.length; i++) {
+                if (planner.isClosed(path[i]) && !planner.isClosed(path[0])) {
+                    return true;
+                }
+            }
+            return false;
         }
     }
     
-    // Custom adapter for emergency alerts
-    private static class EmergencyAlertAdapter extends android.widget.ArrayAdapter<EmergencyAlert> {
-        private final List<EmergencyAlert> alerts;
+    // The balancer's split of the crowd, with the biggest group walking through each node and the node's step along its path
+    private static final class ExitAssignment {
+        final EvacuationBalancer.Plan plan;
+        final int[] groupAt;
+        final int[] stepAt;
+        final long occupancyVersion;
+        final int hazardRevision;
         
-        public EmergencyAlertAdapter(EmergencyActivity context, List<EmergencyAlert> alerts) {
-            super(context, android.R.layout.simple_list_item_1, alerts);
-            this.alerts = alerts;
-        }
-        
-        @Override
-        public android.view.View getView(int position, android.view.View convertView, android.view.ViewGroup parent) {
-            android.view.View view = super.getView(position, convertView, parent);
-            TextView textView = view.findViewById(android.R.id.text1);
-            
-            EmergencyAlert alert = alerts.get(position);
-            textView.setText(alert.toString());
-            
-            // Color code based on priority
-            switch (alert.getPriority()) {
-                case "Low":
-                    textView.setTextColor(android.graphics.Color.GREEN);
-                    break;
-                case "Medium":
-                    textView.setTextColor(android.graphics.Color.rgb(255, 165, 0)); // Orange
-                    break;
-                case "High":
-                    textView.setTextColor(android.graphics.Color.RED);
-                    break;
-            }
-            
-            return view;
+        ExitAssignment(EvacuationBalancer.Plan plan, int[] groupAt, int[] stepAt, long occupancyVersion, int hazardRevision) {
+            this.plan = plan;
+            this.groupAt = groupAt;
+            this.stepAt = stepAt;
+            this.occupancyVersion = occupancyVersion;
+            this.hazardRevision = hazardRevision;
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,173 @@
+package com.example.ntumap;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * One revision of an alert as published by the alert server. Alerts are
+ * immutable; an update is a new instance with the same id and a higher
+ * revision, and an alert is withdrawn by publishing a revision that has
+ * already expired.
+ */
+public final class EmergencyAlert implements ListItem {
+
+    public enum Severity {
+        // Colours are the values of android.graphics.Color.YELLOW, orange and RED
+        LOW("Low", 0xFFFFFF00),
+        MEDIUM("Medium", 0xFFFFA500),
+        HIGH("High", 0xFFFF0000);
+
+        private final String label;
+        private final int color;
+
+        Severity(String label, int color) {
+            this.label = label;
+            this.color = color;
+        }
+
+        public String getLabel() { return label; }
+        // ARGB colour used for the alert's text and the status banner
+        public int getColor() { return color; }
+    }
+
+    private final long id;
+    private final int revision;
+    private final String title;
+    private final String description;
+    private final Severity severity;
+    private final long issuedAtMillis;
+    private final long expiresAtMillis;
+    // Area to keep clear, if the alert has one
+    private final double latitude;
+    private final double longitude;
+    private final double hazardRadiusMeters;
+    private String label;
+
+    private EmergencyAlert(Builder builder) {
+        this.id = builder.id;
+        this.revision = builder.revision;
+        this.title = builder.title;
+        this.description = builder.description;
+        this.severity = builder.severity;
+        this.issuedAtMillis = builder.issuedAtMillis;
+        this.expiresAtMillis = builder.expiresAtMillis;
+        this.latitude = builder.latitude;
+        this.longitude = builder.longitude;
+        this.hazardRadiusMeters = builder.hazardRadiusMeters;
+    }
+
+    public long getId() { return id; }
+    public int getRevision() { return revision; }
+    public String getTitle() { return title; }
+    public String getDescription() { return description; }
+    public Severity getSeverity() { return severity; }
+    public long getIssuedAtMillis() { return issuedAtMillis; }
+    public long getExpiresAtMillis() { return expiresAtMillis; }
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+    public double getHazardRadiusMeters() { return hazardRadiusMeters; }
+
+    public boolean hasHazardZone() {
+        return !Double.isNaN(latitude);
+    }
+
+    public boolean isExpired(long now) {
+        return expiresAtMillis <= now;
+    }
+
+    // The same alert keeps its row in the list through every revision
+    @Override
+    public long getItemId() {
+        return id;
+    }
+
+    @Override
+    public String getLabel() {
+        if (label == null) {
+            String issued = new SimpleDateFormat("HH:mm", Locale.UK).format(new Date(issuedAtMillis));
+            label = title + " (" + severity.getLabel() + ") - " + issued;
+        }
+        return label;
+    }
+
+    @Override
+    public int getTextColor() {
+        return severity.getColor();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof EmergencyAlert)) return false;
+        EmergencyAlert other = (EmergencyAlert) o;
+        return id == other.id && revision == other.revision;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, revision);
+    }
+
+    @Override
+    public String toString() {
+        return getLabel();
+    }
+
+    public static class Builder {
+        private final long id;
+        private final String title;
+        private final Severity severity;
+        private int revision;
+        private String description = "";
+        private long issuedAtMillis;
+        private long expiresAtMillis = Long.MAX_VALUE;
+        private double latitude = Double.NaN;
+        private double longitude = Double.NaN;
+        private double hazardRadiusMeters;
+
+        public Builder(long id, String title, Severity severity) {
+            this.id = id;
+            this.title = title;
+            this.severity = severity;
+        }
+
+        public Builder revision(int revision) {
+            this.revision = revision;
+            return this;
+        }
+
+        public Builder description(String description) {
+            this.description = description;
+            return this;
+        }
+
+        public Builder issuedAt(long millis) {
+            this.issuedAtMillis = millis;
+            return this;
+        }
+
+        public Builder expiresAt(long millis) {
+            this.expiresAtMillis = millis;
+            return this;
+        }
+
+        // Time to live, counted from the issue time, so call issuedAt first
+        public Builder ttl(long millis) {
+            this.expiresAtMillis = issuedAtMillis + millis;
+            return this;
+        }
+
+        public Builder hazardZone(double latitude, double longitude, double radiusMeters) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.hazardRadiusMeters = radiusMeters;
+            return this;
+        }
+
+        public EmergencyAlert build() {
+            return new EmergencyAlert(this);
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.example.ntumap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+/**
+ * Spreads the people in each room over the exits so that no door or
+ * corridor becomes the bottleneck of an evacuation.
+ *
+ * An iterative congestion model (the method of successive averages): each
+ * round prices every walkway at its walking time plus the time its current
+ * load needs to squeeze through it, and every exit at the time its queue
+ * takes to drain. One reverse Dijkstra from all exits then gives every
+ * room its cheapest way out at those prices, and a shrinking share of each
+ * room moves over to it. Loads settle where no group can get out sooner
+ * by switching, which is much faster overall than sending everyone to the
+ * nearest exit.
+ *
+ * Plans are worked out one at a time on shared load arrays, so concurrent
+ * callers wait for each other.
+ */
+public class EvacuationBalancer {
+
+    private static final int ROUNDS = 40;
+    // Entering a closed area costs as much time as walking the planner's penalty
+    private static final double CLOSED_PENALTY_SECONDS =
+            EvacuationPlanner.CLOSED_PENALTY_METERS / GeoUtils.WALKING_METERS_PER_SECOND;
+
+    private final CampusGraph graph;
+    private final int[] exitNodes;
+    private final double[] exitPeoplePerSecond;
+    private final double corridorPeoplePerSecond;
+    // exitIndex[node] is the node's position in exitNodes, or -1
+    private final int[] exitIndex;
+    private final int[] inStart;
+    private final int[] inEdge;
+    private final int[] edgeSource;
+
+    private final double[] edgeLoad;
+    private final double[] exitLoad;
+    private final double[] roundEdgeLoad;
+    private final double[] roundExitLoad;
+    private final double[] cost;
+    private final int[] nextEdge;
+    private final NodeHeap heap;
+
+    public EvacuationBalancer(CampusGraph graph, int[] exitNodes, double[] exitPeoplePerSecond,
+                              double corridorPeoplePerSecond) {
+        if (exitNodes.length != exitPeoplePerSecond.length) {
+            throw new IllegalArgumentException("Every exit needs a throughput");
+        }
+        this.graph = graph;
+        this.exitNodes = exitNodes.clone();
+        this.exitPeoplePerSecond = exitPeoplePerSecond.clone();
+        this.corridorPeoplePerSecond = corridorPeoplePerSecond;
+        int n = graph.nodeCount();
+        int m = graph.edgeCount();
+        exitIndex = new int[n];
+        Arrays.fill(exitIndex, -1);
+        for (int i = 0; i < exitNodes.length; i++) {
+            exitIndex[exitNodes[i]] = i;
+        }
+
+        // Counting sort of the edges by target node
+        edgeSource = new int[m];
+        inStart = new int[n + 1];
+        for (int node = 0; node < n; node++) {
+            for (int e = graph.firstEdge(node), end = graph.endEdge(node); e < end; e++) {
+                edgeSource[e] = node;
+                inStart[graph.edgeTarget(e) + 1]++;
+            }
+        }
+        for (int node = 0; node < n; node++) {
+            inStart[node + 1] += inStart[node];
+        }
+        int[] cursor = Arrays.copyOf(inStart, n);
+        inEdge = new int[m];
+        for (int e = 0; e < m; e++) {
+            inEdge[cursor[graph.edgeTarget(e)]++] = e;
+        }
+
+        edgeLoad = new double[m];
+        exitLoad = new double[exitNodes.length];
+        roundEdgeLoad = new double[m];
+        roundExitLoad = new double[exitNodes.length];
+        cost = new double[n];
+        nextEdge = new int[n];
+        heap = new NodeHeap(n);
+    }
+
+    public CampusGraph getGraph() { return graph; }
+    public int[] getExitNodes() { return exitNodes.clone(); }
+
+    /** Sends everyone to the nearest exit, as a baseline. */
+    public Plan planNearest(int[] roomNodes, int[] occupants, IntPredicate closed) {
+        return plan(roomNodes, occupants, closed, 1);
+    }
+
+    /**
+     * Splits the occupants of each room, standing at roomNodes, between the
+     * exits. Nodes for which closed tests true are entered only when there
+     * is no other way out; closed may be null.
+     */
+    public Plan plan(int[] roomNodes, int[] occupants, IntPredicate closed) {
+        return plan(roomNodes, occupants, closed, ROUNDS);
+    }
+
+    private synchronized Plan plan(int[] roomNodes, int[] occupants, IntPredicate closed, int rounds) {
+        int rooms = roomNodes.length;
+        int exits = exitNodes.length;
+        // share[room * exits + exit] of each room's people goes to each exit, along the latest path found to it
+        double[] share = new double[rooms * exits];
+        int[][] paths = new int[rooms * exits][];
+        Arrays.fill(edgeLoad, 0);
+        Arrays.fill(exitLoad, 0);
+
+        for (int round = 1; round <= rounds; round++) {
+            shortestWaysOut(closed);
+            Arrays.fill(roundEdgeLoad, 0);
+            Arrays.fill(roundExitLoad, 0);
+            double step = 1.0 / round;
+            for (int room = 0; room < rooms; room++) {
+                int node = roomNodes[room];
+                if (cost[node] == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                int exit = exitIndex[endOf(node)];
+                for (int e = 0; e < exits; e++) {
+                    share[room * exits + e] *= 1 - step;
+                }
+                share[room * exits + exit] += step;
+                paths[room * exits + exit] = pathFrom(node);
+                for (int at = node; nextEdge[at] >= 0; at = graph.edgeTarget(nextEdge[at])) {
+                    roundEdgeLoad[nextEdge[at]] += occupants[room];
+                }
+                roundExitLoad[exit] += occupants[room];
+            }
+            for (int e = 0; e < edgeLoad.length; e++) {
+                edgeLoad[e] += step * (roundEdgeLoad[e] - edgeLoad[e]);
+            }
+            for (int e = 0; e < exits; e++) {
+                exitLoad[e] += step * (roundExitLoad[e] - exitLoad[e]);
+            }
+        }
+
+        List<Group> groups = new ArrayList<>();
+        for (int room = 0; room < rooms; room++) {
+            for (int exit = 0; exit < exits; exit++) {
+                double people = share[room * exits + exit] * occupants[room];
+                if (people > 0) {
+                    groups.add(new Group(room, exit, people, paths[room * exits + exit]));
+                }
+            }
+        }
+        return new Plan(groups, exitLoad.clone());
+    }
+
+    // Cheapest way out of every node at the current loads, as a reverse Dijkstra seeded with the exit queues
+    private void shortestWaysOut(IntPredicate closed) {
+        Arrays.fill(cost, Double.POSITIVE_INFINITY);
+        Arrays.fill(nextEdge, -1);
+        heap.clear();
+        for (int e = 0; e < exitNodes.length; e++) {
+            int exit = exitNodes[e];
+            double wait = exitLoad[e] / exitPeoplePerSecond[e];
+            if (wait < cost[exit]) {
+                cost[exit] = wait;
+                heap.push(exit, wait);
+            }
+        }
+        while (!heap.isEmpty()) {
+            int node = heap.poll();
+            double penalty = closed != null && closed.test(node) ? CLOSED_PENALTY_SECONDS : 0;
+            for (int i = inStart[node], end = inStart[node + 1]; i < end; i++) {
+                int edge = inEdge[i];
+                int source = edgeSource[edge];
+                double candidate = cost[node] + penalty + graph.edgeWeight(edge) / GeoUtils.WALKING_METERS_PER_SECOND
+                        + edgeLoad[edge] / corridorPeoplePerSecond;
+                if (candidate < cost[source]) {
+                    cost[source] = candidate;
+                    nextEdge[source] = edge;
+                    heap.push(source, candidate);
+                }
+            }
+        }
+    }
+
+    private int endOf(int node) {
+        while (nextEdge[node] >= 0) {
+            node = graph.edgeTarget(nextEdge[node]);
+        }
+        return node;
+    }
+
+    private int[] pathFrom(int node) {
+        int length = 1;
+        for (int at = node; nextEdge[at] >= 0; at = graph.edgeTarget(nextEdge[at])) {
+            length++;
+        }
+        int[] path = new int[length];
+        path[0] = node;
+        for (int i = 1; i < length; i++) {
+            path[i] = graph.edgeTarget(nextEdge[path[i - 1]]);
+        }
+        return path;
+    }
+
+    /** People from one room sent to one exit along one path. */
+    public static final class Group {
+        private final int room;
+        private final int exit;
+        private final double people;
+        private final int[] path;
+
+        Group(int room, int exit, double people, int[] path) {
+            this.room = room;
+            this.exit = exit;
+            this.people = people;
+            this.path = path;
+        }
+
+        // Index into the rooms passed to plan
+        public int getRoom() { return room; }
+        // Index into the balancer's exits
+        public int getExit() { return exit; }
+        public double getPeople() { return people; }
+        // Graph nodes from the room to the exit
+        public int[] getPath() { return path; }
+    }
+
+    public static final class Plan {
+        private final List<Group> groups;
+        private final double[] exitLoads;
+
+        Plan(List<Group> groups, double[] exitLoads) {
+            this.groups = groups;
+            this.exitLoads = exitLoads;
+        }
+
+        public List<Group> getGroups() { return groups; }
+
+        // People sent to each exit
+        public double getExitLoad(int exit) { return exitLoads[exit]; }
+
+        /** The biggest group leaving a room, or null if nobody in it can get out. */
+        public Group largestGroupFrom(int room) {
+            Group largest = null;
+            for (Group group : groups) {
+                if (group.room == room && (largest == null || group.people > largest.people)) {
+                    largest = group;
+                }
+            }
+            return largest;
+        }
+    }
+}
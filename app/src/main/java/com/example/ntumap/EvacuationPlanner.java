@@ -0,0 +1,262 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shortest way out from anywhere on campus, kept up to date as hazards
+ * close parts of the walkway graph.
+ *
+ * A multi-source Dijkstra over the reversed graph, seeded at every usable
+ * exit, gives each node its walking distance to the nearest exit and the
+ * next node on the way there. Following those links answers a route query
+ * in time proportional to the route's length.
+ *
+ * A hazard zone closes the nodes inside it. Walking into a closed node
+ * costs an extra {@link #CLOSED_PENALTY_METERS}, so routes go around
+ * hazards whenever there is any way round, and someone caught inside one
+ * is led out of it by the shortest way. Closing nodes only re-runs the
+ * search for the part of the shortest-path tree that hung below them, and
+ * reopening them only for the nodes that get closer to an exit, so updates
+ * cost time in proportion to the area they change. Instances are
+ * thread-safe.
+ */
+public class EvacuationPlanner {
+
+    // Longer than any walk on campus, so one closed node outweighs every detour
+    public static final double CLOSED_PENALTY_METERS = 100_000;
+
+    private final CampusGraph graph;
+    // Incoming edges of node n are inEdge[inStart[n]] up to inEdge[inStart[n + 1]], as forward edge indexes
+    private final int[] inStart;
+    private final int[] inEdge;
+    private final int[] edgeSource;
+
+    private final double[] distance;
+    // First edge towards the nearest exit, -1 at exits and unreachable nodes
+    private final int[] nextEdge;
+    // Number of hazard zones covering each node
+    private final int[] closedBy;
+    private final Map<Integer, int[]> zones = new HashMap<>();
+    private int nextZoneId;
+
+    private final NodeHeap heap;
+    private final int[] stack;
+    private final int[] resetStamp;
+    private int stamp;
+
+    public EvacuationPlanner(CampusGraph graph, int[] exitNodes) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+        int m = graph.edgeCount();
+        // Counting sort of the edges by target node
+        edgeSource = new int[m];
+        inStart = new int[n + 1];
+        for (int node = 0; node < n; node++) {
+            for (int e = graph.firstEdge(node), end = graph.endEdge(node); e < end; e++) {
+                edgeSource[e] = node;
+                inStart[graph.edgeTarget(e) + 1]++;
+            }
+        }
+        for (int node = 0; node < n; node++) {
+            inStart[node + 1] += inStart[node];
+        }
+        int[] cursor = Arrays.copyOf(inStart, n);
+        inEdge = new int[m];
+        for (int e = 0; e < m; e++) {
+            inEdge[cursor[graph.edgeTarget(e)]++] = e;
+        }
+
+        distance = new double[n];
+        nextEdge = new int[n];
+        closedBy = new int[n];
+        heap = new NodeHeap(n);
+        stack = new int[n];
+        resetStamp = new int[n];
+
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        Arrays.fill(nextEdge, -1);
+        for (int exit : exitNodes) {
+            distance[exit] = 0;
+            heap.push(exit, 0);
+        }
+        search();
+    }
+
+    public CampusGraph getGraph() { return graph; }
+
+    /** Cost of the way out from a node: metres walked plus the penalty for each closed node entered. */
+    public synchronized double distanceToExit(int node) {
+        return distance[node];
+    }
+
+    public synchronized boolean isClosed(int node) {
+        return closedBy[node] > 0;
+    }
+
+    /**
+     * Best route from a node to an exit, or null if no exit can be reached.
+     * It enters closed nodes only if there is no other way out.
+     */
+    public synchronized Route routeFrom(int node) {
+        if (distance[node] == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+        int length = 1;
+        for (int at = node; nextEdge[at] >= 0; at = graph.edgeTarget(nextEdge[at])) {
+            length++;
+        }
+        int[] nodes = new int[length];
+        nodes[0] = node;
+        double meters = 0;
+        for (int i = 1; i < length; i++) {
+            int edge = nextEdge[nodes[i - 1]];
+            nodes[i] = graph.edgeTarget(edge);
+            meters += graph.edgeWeight(edge);
+        }
+        return new Route(graph, nodes, meters);
+    }
+
+    // Routes from the graph node closest to the coordinate
+    public Route routeFrom(double lat, double lng) {
+        int node = graph.nearestNode(lat, lng);
+        return node < 0 ? null : routeFrom(node);
+    }
+
+    /** Closes every node within the radius of a point. Returns an id for {@link #openZone}. */
+    public synchronized int closeZone(double lat, double lng, double radiusMeters) {
+        int[] nodes = nodesWithin(lat, lng, radiusMeters);
+        int id = nextZoneId++;
+        zones.put(id, nodes);
+
+        int[] newlyClosed = new int[nodes.length];
+        int count = 0;
+        for (int node : nodes) {
+            if (closedBy[node]++ == 0) {
+                newlyClosed[count++] = node;
+            }
+        }
+        if (count > 0) {
+            invalidateBelow(newlyClosed, count);
+        }
+        return id;
+    }
+
+    /** Reopens a zone's nodes, unless another zone still covers them. */
+    public synchronized void openZone(int id) {
+        int[] nodes = zones.remove(id);
+        if (nodes == null) {
+            return;
+        }
+        for (int node : nodes) {
+            // Walking into it gets cheaper again
+            if (--closedBy[node] == 0 && distance[node] < Double.POSITIVE_INFINITY) {
+                heap.push(node, distance[node]);
+            }
+        }
+        search();
+    }
+
+    // Forgets the distances of everything whose way out led into the closed nodes, then repairs them
+    private void invalidateBelow(int[] closedNodes, int count) {
+        if (++stamp == 0) {
+            Arrays.fill(resetStamp, 0);
+            stamp = 1;
+        }
+        // Nodes whose way out starts by walking into a closed node are the roots of the area to redo
+        int top = 0;
+        for (int i = 0; i < count; i++) {
+            int closed = closedNodes[i];
+            for (int j = inStart[closed], end = inStart[closed + 1]; j < end; j++) {
+                int edge = inEdge[j];
+                int child = edgeSource[edge];
+                if (nextEdge[child] == edge && resetStamp[child] != stamp) {
+                    resetStamp[child] = stamp;
+                    stack[top++] = child;
+                }
+            }
+        }
+
+        // Everything hanging below the roots in the shortest-path tree
+        int reset = 0;
+        while (top > reset) {
+            int node = stack[reset++];
+            for (int i = inStart[node], end = inStart[node + 1]; i < end; i++) {
+                int edge = inEdge[i];
+                int child = edgeSource[edge];
+                if (nextEdge[child] == edge && resetStamp[child] != stamp) {
+                    resetStamp[child] = stamp;
+                    stack[top++] = child;
+                }
+            }
+        }
+        for (int i = 0; i < reset; i++) {
+            distance[stack[i]] = Double.POSITIVE_INFINITY;
+            nextEdge[stack[i]] = -1;
+        }
+
+        // Each reset node starts from its best neighbour outside the reset area
+        for (int i = 0; i < reset; i++) {
+            int node = stack[i];
+            for (int e = graph.firstEdge(node), end = graph.endEdge(node); e < end; e++) {
+                int target = graph.edgeTarget(e);
+                if (resetStamp[target] == stamp) {
+                    continue;
+                }
+                double candidate = distance[target] + cost(e, target);
+                if (candidate < distance[node]) {
+                    distance[node] = candidate;
+                    nextEdge[node] = e;
+                }
+            }
+            if (distance[node] < Double.POSITIVE_INFINITY) {
+                heap.push(node, distance[node]);
+            }
+        }
+        search();
+    }
+
+    private double cost(int edge, int target) {
+        return closedBy[target] > 0 ? graph.edgeWeight(edge) + CLOSED_PENALTY_METERS : graph.edgeWeight(edge);
+    }
+
+    // Dijkstra over the reversed graph from whatever is queued; only ever lowers distances
+    private void search() {
+        while (!heap.isEmpty()) {
+            int node = heap.poll();
+            double base = distance[node];
+            for (int i = inStart[node], end = inStart[node + 1]; i < end; i++) {
+                int edge = inEdge[i];
+                int source = edgeSource[edge];
+                double candidate = base + cost(edge, node);
+                if (candidate < distance[source]) {
+                    distance[source] = candidate;
+                    nextEdge[source] = edge;
+                    heap.push(source, candidate);
+                }
+            }
+        }
+    }
+
+    private int[] nodesWithin(double lat, double lng, double radiusMeters) {
+        // Cheap bounding box test before the exact distance
+        double latSpan = Math.toDegrees(radiusMeters / GeoUtils.EARTH_RADIUS_METERS);
+        double lngSpan = latSpan / Math.max(1e-9, Math.cos(Math.toRadians(lat)));
+        int[] found = new int[16];
+        int count = 0;
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            double nodeLat = graph.latitude(node);
+            double nodeLng = graph.longitude(node);
+            if (Math.abs(nodeLat - lat) > latSpan || Math.abs(nodeLng - lng) > lngSpan
+                    || GeoUtils.haversine(lat, lng, nodeLat, nodeLng) > radiusMeters) {
+                continue;
+            }
+            if (count == found.length) {
+                found = Arrays.copyOf(found, count * 2);
+            }
+            found[count++] = node;
+        }
+        return Arrays.copyOf(found, count);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.ntumap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays an {@link EvacuationBalancer.Plan} second by second to see how
+ * long the campus takes to empty.
+ *
+ * Every walkway is a point queue: people walk its length at walking speed,
+ * then leave its far end at most {@code corridorPeoplePerSecond} at a
+ * time, first come first served. Exits drain the same way at their own
+ * throughput. Crowds are treated as a fluid and everything is processed in
+ * a fixed order, so a plan always gives the same result.
+ */
+public class EvacuationSimulator {
+
+    // Give up on plans that would take longer than a day
+    private static final int MAX_SECONDS = 24 * 60 * 60;
+    private static final double EPSILON = 1e-6;
+
+    private final CampusGraph graph;
+    private final int[] exitNodes;
+    private final double[] exitPeoplePerSecond;
+    private final double corridorPeoplePerSecond;
+
+    public EvacuationSimulator(CampusGraph graph, int[] exitNodes, double[] exitPeoplePerSecond,
+                               double corridorPeoplePerSecond) {
+        this.graph = graph;
+        this.exitNodes = exitNodes.clone();
+        this.exitPeoplePerSecond = exitPeoplePerSecond.clone();
+        this.corridorPeoplePerSecond = corridorPeoplePerSecond;
+    }
+
+    public Result run(EvacuationBalancer.Plan plan) {
+        List<EvacuationBalancer.Group> groups = plan.getGroups();
+        // Queues of people on their way along, or waiting at the end of, each walkway; then one per exit
+        int edges = graph.edgeCount();
+        Queue[] queues = new Queue[edges + exitNodes.length];
+        List<Queue> active = new ArrayList<>();
+        double remaining = 0;
+        double[] lastOut = new double[exitNodes.length];
+
+        for (int g = 0; g < groups.size(); g++) {
+            EvacuationBalancer.Group group = groups.get(g);
+            remaining += group.getPeople();
+            enter(queues, active, group, g, 0, group.getPeople(), 0);
+        }
+
+        int second = 0;
+        while (remaining > EPSILON) {
+            if (second == MAX_SECONDS) {
+                return new Result(Double.POSITIVE_INFINITY, lastOut);
+            }
+            // Queues activated during this second join at the end and wait until the next one
+            int count = active.size();
+            for (int i = 0; i < count; i++) {
+                Queue queue = active.get(i);
+                double budget = queue.peoplePerSecond;
+                while (budget > EPSILON && !queue.packets.isEmpty() && queue.packets.peek().ready <= second) {
+                    Packet packet = queue.packets.peek();
+                    double moving = Math.min(budget, packet.people);
+                    budget -= moving;
+                    packet.people -= moving;
+                    if (packet.people <= EPSILON) {
+                        queue.packets.poll();
+                    }
+                    EvacuationBalancer.Group group = groups.get(packet.group);
+                    if (queue.exit >= 0) {
+                        remaining -= moving;
+                        lastOut[queue.exit] = second + 1;
+                    } else {
+                        enter(queues, active, group, packet.group, packet.position + 1, moving, second + 1);
+                    }
+                }
+            }
+            active.removeIf(queue -> {
+                queue.listed = !queue.packets.isEmpty();
+                return !queue.listed;
+            });
+            second++;
+        }
+        double clearance = 0;
+        for (double time : lastOut) {
+            clearance = Math.max(clearance, time);
+        }
+        return new Result(clearance, lastOut);
+    }
+
+    // Puts people at position along their path: onto the walkway leaving it, or into the exit queue at the end
+    private void enter(Queue[] queues, List<Queue> active, EvacuationBalancer.Group group, int groupIndex,
+                       int position, double people, int second) {
+        int[] path = group.getPath();
+        int slot;
+        int ready;
+        if (position == path.length - 1) {
+            slot = graph.edgeCount() + group.getExit();
+            ready = second;
+        } else {
+            slot = edgeBetween(path[position], path[position + 1]);
+            double seconds = graph.edgeWeight(slot) / GeoUtils.WALKING_METERS_PER_SECOND;
+            ready = second + (int) Math.max(1, Math.round(seconds));
+        }
+        Queue queue = queues[slot];
+        if (queue == null) {
+            boolean isExit = slot >= graph.edgeCount();
+            queue = new Queue(isExit ? group.getExit() : -1,
+                    isExit ? exitPeoplePerSecond[group.getExit()] : corridorPeoplePerSecond);
+            queues[slot] = queue;
+        }
+        if (!queue.listed) {
+            queue.listed = true;
+            active.add(queue);
+        }
+        queue.packets.add(new Packet(groupIndex, position, people, ready));
+    }
+
+    private int edgeBetween(int from, int to) {
+        for (int e = graph.firstEdge(from), end = graph.endEdge(from); e < end; e++) {
+            if (graph.edgeTarget(e) == to) {
+                return e;
+            }
+        }
+        throw new IllegalArgumentException("No walkway from " + from + " to " + to);
+    }
+
+    private static final class Packet {
+        final int group;
+        // Index into the group's path of the node the walkway starts at
+        final int position;
+        double people;
+        final int ready;
+
+        Packet(int group, int position, double people, int ready) {
+            this.group = group;
+            this.position = position;
+            this.people = people;
+            this.ready = ready;
+        }
+    }
+
+    private static final class Queue {
+        // Exit index, or -1 for a walkway
+        final int exit;
+        final double peoplePerSecond;
+        final ArrayDeque<Packet> packets = new ArrayDeque<>();
+        // Whether it is in the active list
+        boolean listed;
+
+        Queue(int exit, double peoplePerSecond) {
+            this.exit = exit;
+            this.peoplePerSecond = peoplePerSecond;
+        }
+    }
+
+    public static final class Result {
+        private final double clearanceSeconds;
+        private final double[] lastOutSeconds;
+
+        Result(double clearanceSeconds, double[] lastOutSeconds) {
+            this.clearanceSeconds = clearanceSeconds;
+            this.lastOutSeconds = lastOutSeconds;
+        }
+
+        // Time until the last person is out, infinite if the plan never finishes
+        public double getClearanceSeconds() { return clearanceSeconds; }
+
+        // Time the last person leaves through each exit, 0 if nobody uses it
+        public double getLastOutSeconds(int exit) { return lastOutSeconds[exit]; }
+    }
+}
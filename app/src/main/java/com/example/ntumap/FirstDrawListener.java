@@ -0,0 +1,40 @@
+package com.example.ntumap;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+/**
+ * Runs a callback once, right after a view's next frame has been drawn.
+ */
+public class FirstDrawListener implements ViewTreeObserver.OnDrawListener {
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final View view;
+    private final Runnable callback;
+    private boolean drawn;
+
+    private FirstDrawListener(View view, Runnable callback) {
+        this.view = view;
+        this.callback = callback;
+    }
+
+    public static void register(View view, Runnable callback) {
+        view.getViewTreeObserver().addOnDrawListener(new FirstDrawListener(view, callback));
+    }
+
+    @Override
+    public void onDraw() {
+        if (drawn) {
+            return;
+        }
+        drawn = true;
+        // Listeners can't be removed during a draw, and posting to the front of the
+        // queue runs the callback as soon as this frame has been handed to the renderer
+        mainHandler.postAtFrontOfQueue(() -> {
+            view.getViewTreeObserver().removeOnDrawListener(this);
+            callback.run();
+        });
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.ntumap;
+
+import java.util.List;
+
+/**
+ * Result of an indoor route query: the walk split into legs, one outdoors
+ * and then one per floor visited, so the map can draw each level on its
+ * own. Consecutive legs meet where a connector changes floor.
+ */
+public final class FloorRoute {
+
+    /** A stretch of the route on one level, or outdoors. */
+    public static final class Leg {
+        private final int building;
+        private final int level;
+        private final int connectorType;
+        private final double[] latitudes;
+        private final double[] longitudes;
+
+        public Leg(int building, int level, int connectorType, double[] latitudes, double[] longitudes) {
+            this.building = building;
+            this.level = level;
+            this.connectorType = connectorType;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+        }
+
+        // IndoorMap building index, or -1 outdoors
+        public int getBuilding() { return building; }
+        public boolean isIndoor() { return building >= 0; }
+        public int getLevel() { return level; }
+        // IndoorMap connector type taken to reach this leg, or -1 if it was walked into
+        public int getConnectorType() { return connectorType; }
+        public int getPointCount() { return latitudes.length; }
+        public double getLatitude(int index) { return latitudes[index]; }
+        public double getLongitude(int index) { return longitudes[index]; }
+    }
+
+    private final Route outdoorRoute;
+    private final List<Leg> legs;
+    private final int targetNode;
+    private final double lengthMeters;
+    private final double cost;
+
+    public FloorRoute(Route outdoorRoute, List<Leg> legs, int targetNode, double lengthMeters, double cost) {
+        this.outdoorRoute = outdoorRoute;
+        this.legs = legs;
+        this.targetNode = targetNode;
+        this.lengthMeters = lengthMeters;
+        this.cost = cost;
+    }
+
+    // The walkway route to the entrance used, which guidance follows
+    public Route getOutdoorRoute() { return outdoorRoute; }
+    public List<Leg> getLegs() { return legs; }
+    public int getLegCount() { return legs.size(); }
+    public Leg getLeg(int index) { return legs.get(index); }
+    public int getTargetNode() { return targetNode; }
+    // Walking distance, not counting the climb on stairs and lifts
+    public double getLengthMeters() { return lengthMeters; }
+    // Walking cost under the routing profile, connectors included
+    public double getCost() { return cost; }
+}
@@ -0,0 +1,9 @@
+package com.example.ntumap;
+
+/**
+ * Runs a task on the UI thread at the start of the next frame.
+ * May be called from any thread.
+ */
+public interface FrameScheduler {
+    void scheduleFrame(Runnable task);
+}
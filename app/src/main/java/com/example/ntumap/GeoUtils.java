@@ -0,0 +1,28 @@
+package com.example.ntumap;
+
+/**
+ * Small geodesy helpers shared by the routing and map code.
+ */
+public final class GeoUtils {
+
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+    // A kilometre in 15 minutes
+    public static final double WALKING_METERS_PER_SECOND = 1000.0 / (15 * 60);
+
+    private GeoUtils() {}
+
+    // Great-circle distance in metres between two WGS84 coordinates
+    public static double haversine(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLng = Math.sin(dLng / 2);
+        double a = sinLat * sinLat
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    public static long walkingMillis(double meters) {
+        return Math.round(meters / WALKING_METERS_PER_SECOND * 1000);
+    }
+}
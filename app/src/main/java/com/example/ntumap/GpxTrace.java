@@ -0,0 +1,161 @@
+package com.example.ntumap;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * Reads and writes walks as GPX tracks, so that recorded sessions can be
+ * replayed through a {@link LocationPipeline} in unit tests.
+ *
+ * Every {@code trkpt} with a {@code time} becomes one fix. GPX has no
+ * accuracy field, so it travels as {@code hdop}: a fix is taken to be
+ * accurate to {@link #METERS_PER_HDOP} times its dilution of precision,
+ * or {@link #DEFAULT_ACCURACY_METERS} if the point has none.
+ */
+public final class GpxTrace {
+
+    // Typical range error of a phone receiver
+    static final float METERS_PER_HDOP = 5;
+    static final float DEFAULT_ACCURACY_METERS = 10;
+
+    private GpxTrace() {}
+
+    public static List<LocationFix> parse(Reader source) throws IOException {
+        TrackHandler handler = new TrackHandler();
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.newSAXParser().parse(new InputSource(source), handler);
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Bad GPX track: " + e.getMessage(), e);
+        }
+        return handler.fixes;
+    }
+
+    public static void write(List<LocationFix> fixes, Writer out) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<gpx version=\"1.1\" creator=\"NTU Map\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+        out.write("<trk><trkseg>\n");
+        for (LocationFix fix : fixes) {
+            out.write(String.format(Locale.ROOT, "<trkpt lat=\"%.7f\" lon=\"%.7f\"><time>%s</time><hdop>%.2f</hdop></trkpt>\n",
+                    fix.getLatitude(), fix.getLongitude(), formatTime(fix.getTimeMillis()),
+                    fix.getAccuracyMeters() / METERS_PER_HDOP));
+        }
+        out.write("</trkseg></trk>\n</gpx>\n");
+        out.flush();
+    }
+
+    // ISO 8601 in UTC with milliseconds, e.g. 2024-03-05T10:15:30.250Z
+    static String formatTime(long millis) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.ROOT);
+        calendar.setTimeInMillis(millis);
+        return String.format(Locale.ROOT, "%04d-%02d-%02dT%02d:%02d:%02d.%03dZ",
+                calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1, calendar.get(Calendar.DAY_OF_MONTH),
+                calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND),
+                calendar.get(Calendar.MILLISECOND));
+    }
+
+    // ISO 8601 date and time, with optional fraction of a second and a Z or ±hh:mm offset
+    static long parseTime(String text) {
+        String s = text.trim();
+        if (s.length() < 19 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T') {
+            throw new IllegalArgumentException("Bad GPX time: " + text);
+        }
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"), Locale.ROOT);
+        calendar.clear();
+        calendar.set(Integer.parseInt(s.substring(0, 4)), Integer.parseInt(s.substring(5, 7)) - 1,
+                Integer.parseInt(s.substring(8, 10)), Integer.parseInt(s.substring(11, 13)),
+                Integer.parseInt(s.substring(14, 16)), Integer.parseInt(s.substring(17, 19)));
+        long millis = calendar.getTimeInMillis();
+        int at = 19;
+        if (at < s.length() && s.charAt(at) == '.') {
+            int start = ++at;
+            while (at < s.length() && Character.isDigit(s.charAt(at))) {
+                at++;
+            }
+            String fraction = (s.substring(start, at) + "000").substring(0, 3);
+            millis += Integer.parseInt(fraction);
+        }
+        if (at < s.length() && s.charAt(at) != 'Z') {
+            int sign = s.charAt(at) == '-' ? -1 : 1;
+            int hours = Integer.parseInt(s.substring(at + 1, at + 3));
+            int minutes = s.length() >= at + 6 ? Integer.parseInt(s.substring(at + 4, at + 6)) : 0;
+            millis -= sign * (hours * 60 + minutes) * 60_000L;
+        }
+        return millis;
+    }
+
+    private static final class TrackHandler extends DefaultHandler {
+        final List<LocationFix> fixes = new ArrayList<>();
+        private final StringBuilder text = new StringBuilder();
+        private boolean inPoint;
+        private double lat;
+        private double lng;
+        private long time;
+        private boolean hasTime;
+        private float accuracy;
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            text.setLength(0);
+            if ("trkpt".equals(localName)) {
+                try {
+                    lat = Double.parseDouble(attributes.getValue("lat"));
+                    lng = Double.parseDouble(attributes.getValue("lon"));
+                } catch (NullPointerException | NumberFormatException e) {
+                    throw new SAXException("Track point without a position");
+                }
+                inPoint = true;
+                hasTime = false;
+                accuracy = DEFAULT_ACCURACY_METERS;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            text.append(ch, start, length);
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) throws SAXException {
+            if (!inPoint) {
+                return;
+            }
+            try {
+                switch (localName) {
+                    case "time":
+                        time = parseTime(text.toString());
+                        hasTime = true;
+                        break;
+                    case "hdop":
+                        accuracy = Float.parseFloat(text.toString().trim()) * METERS_PER_HDOP;
+                        break;
+                    case "trkpt":
+                        inPoint = false;
+                        if (hasTime) {
+                            fixes.add(new LocationFix(lat, lng, accuracy, time));
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            } catch (IllegalArgumentException e) {
+                throw new SAXException(e.getMessage());
+            }
+        }
+    }
+}
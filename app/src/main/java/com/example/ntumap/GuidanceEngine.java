@@ -0,0 +1,464 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+
+/**
+ * Turn-by-turn guidance along a {@link Route}.
+ *
+ * Starting a route turns its polyline into maneuvers: turns where the
+ * heading changes, and stairs and building doors where the walkway flags
+ * change. Positions are then matched to the route segment by segment,
+ * starting from the segment matched last and looking only a short way
+ * ahead, so following a route costs O(1) amortized per position however
+ * long it is.
+ *
+ * A walker counts as off route once {@link #OFF_ROUTE_POSITIONS} positions
+ * in a row are further than {@link #OFF_ROUTE_METERS} from it, and as back
+ * on it only within {@link #ON_ROUTE_METERS}, so noise around the edge of
+ * the corridor does not trigger reroutes. A reroute searches outwards from
+ * the nearest graph node for the cheapest way back onto the rest of the old
+ * route, and keeps that part; only if the walker has strayed far does it
+ * ask the router for a whole new route. A reroute that finds no way back
+ * is tried again every {@link #REROUTE_RETRY_POSITIONS} positions while
+ * the walker stays off route. Edges are weighed by the router's
+ * {@link Router#edgeCost}, so a reroute keeps to its routing profile.
+ *
+ * All search state is allocated up front: following a route allocates
+ * nothing, and only a reroute creates the new {@link Route}. Not
+ * thread-safe: feed it from one thread.
+ */
+public class GuidanceEngine {
+
+    // Maneuver types
+    public static final int SLIGHT_LEFT = 1;
+    public static final int LEFT = 2;
+    public static final int SHARP_LEFT = 3;
+    public static final int SLIGHT_RIGHT = 4;
+    public static final int RIGHT = 5;
+    public static final int SHARP_RIGHT = 6;
+    public static final int STAIRS = 7;
+    public static final int ENTER_BUILDING = 8;
+    public static final int LEAVE_BUILDING = 9;
+    public static final int ARRIVE = 10;
+
+    // What an update changed
+    public static final int NO_CHANGE = 0;
+    public static final int NEXT_MANEUVER = 1;
+    public static final int OFF_ROUTE = 2;
+    public static final int REROUTED = 3;
+    public static final int ARRIVED = 4;
+
+    // Turns gentler than this are just following the path
+    static final double STRAIGHT_DEGREES = 20;
+    private static final double SLIGHT_DEGREES = 45;
+    private static final double SHARP_DEGREES = 120;
+
+    static final double OFF_ROUTE_METERS = 20;
+    static final double ON_ROUTE_METERS = 10;
+    static final int OFF_ROUTE_POSITIONS = 3;
+    static final double ARRIVAL_METERS = 10;
+    // Positions are matched to segments starting at most this far ahead of the last match
+    private static final double LOOKAHEAD_METERS = 40;
+    // A maneuver is done once the walker is this far past it
+    private static final double PASSED_METERS = 5;
+    // Beyond this many settled nodes the local search gives up and the router plans from scratch
+    static final int MAX_LOCAL_SEARCH_NODES = 500;
+    // Positions between attempts while no reroute has succeeded, so a walker off the graph does not search on every fix
+    static final int REROUTE_RETRY_POSITIONS = 5;
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_RADIUS_METERS;
+
+    private final Router router;
+    private final CampusGraph graph;
+    private final double originLat;
+    private final double originLng;
+    private final double metersPerDegreeLng;
+
+    private Route route;
+    // Route vertices: projected position, distance walked and cost of the route up to each
+    private int vertexCount;
+    private double[] x = new double[16];
+    private double[] y = new double[16];
+    private double[] along = new double[16];
+    private double[] cost = new double[16];
+    private int[] flags = new int[16];
+    private int[] maneuverType = new int[16];
+    private int[] maneuverVertex = new int[16];
+    private int maneuverCount;
+
+    // Progress
+    private int segment;
+    private double progress;
+    private double offset;
+    private int nextManeuver;
+    private int offCount;
+    private boolean offRoute;
+    // Positions left until a failed reroute is tried again
+    private int retryCountdown;
+    private boolean arrived;
+    private int rerouteCount;
+
+    // Route vertex of each graph node on the current route, valid where routeStamp matches
+    private final int[] vertexOf;
+    private final int[] routeStamp;
+    private int currentRoute;
+    // Local search state
+    private final double[] distance;
+    private final int[] parent;
+    private final int[] searchStamp;
+    private final NodeHeap open;
+    private int search;
+
+    public GuidanceEngine(Router router) {
+        this.router = router;
+        graph = router.getGraph();
+        int n = graph.nodeCount();
+        originLat = n == 0 ? 0 : graph.latitude(0);
+        originLng = n == 0 ? 0 : graph.longitude(0);
+        metersPerDegreeLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(originLat));
+        vertexOf = new int[n];
+        routeStamp = new int[n];
+        distance = new double[n];
+        parent = new int[n];
+        searchStamp = new int[n];
+        open = new NodeHeap(n);
+    }
+
+    /** Starts guidance along the route, which must have at least one node. */
+    public void start(Route route) {
+        load(route);
+        rerouteCount = 0;
+    }
+
+    public Route getRoute() { return route; }
+    public boolean isOffRoute() { return offRoute; }
+    public boolean hasArrived() { return arrived; }
+    public int getRerouteCount() { return rerouteCount; }
+
+    public int getManeuverCount() { return maneuverCount; }
+    public int getManeuverType(int maneuver) { return maneuverType[maneuver]; }
+    // Index into the route nodes where the maneuver happens
+    public int getManeuverVertex(int maneuver) { return maneuverVertex[maneuver]; }
+    public double getManeuverLatitude(int maneuver) { return route.getLatitude(maneuverVertex[maneuver]); }
+    public double getManeuverLongitude(int maneuver) { return route.getLongitude(maneuverVertex[maneuver]); }
+
+    // Index of the maneuver coming up; the last one is always ARRIVE
+    public int getNextManeuver() { return nextManeuver; }
+
+    public double getDistanceToNextManeuver() {
+        return Math.max(0, along[maneuverVertex[nextManeuver]] - progress);
+    }
+
+    public double getRemainingMeters() {
+        return Math.max(0, along[vertexCount - 1] - progress);
+    }
+
+    // Distance walked along the route, and from the route at the last position
+    public double getProgressMeters() { return progress; }
+    public double getOffsetMeters() { return offset; }
+
+    public int update(LocationPipeline.Position position) {
+        return update(position.getLatitude(), position.getLongitude(), position.getAccuracyMeters(), position.getNode());
+    }
+
+    /**
+     * Moves the walker to a new position. nearNode is a graph node close by,
+     * such as the one a {@link LocationPipeline} snapped to, or -1 to have
+     * the nearest one looked up should a reroute need it.
+     */
+    public int update(double lat, double lng, double accuracyMeters, int nearNode) {
+        if (route == null || arrived) {
+            return NO_CHANGE;
+        }
+        double px = (lng - originLng) * metersPerDegreeLng;
+        double py = (lat - originLat) * METERS_PER_DEGREE;
+        match(px, py);
+
+        // Hysteresis: between the two thresholds the count neither grows nor resets
+        double offThreshold = Math.max(OFF_ROUTE_METERS, 2 * accuracyMeters);
+        if (offset > offThreshold) {
+            offCount++;
+        } else if (offset < ON_ROUTE_METERS) {
+            offCount = 0;
+            offRoute = false;
+        }
+        if (offCount >= OFF_ROUTE_POSITIONS && (!offRoute || --retryCountdown <= 0)) {
+            boolean first = !offRoute;
+            offRoute = true;
+            int node = nearNode >= 0 ? nearNode : graph.nearestNode(lat, lng);
+            if (reroute(node)) {
+                rerouteCount++;
+                // The walker has not reached the new route yet; measure from where they are
+                match(px, py);
+                return REROUTED;
+            }
+            retryCountdown = REROUTE_RETRY_POSITIONS;
+            return first ? OFF_ROUTE : NO_CHANGE;
+        }
+        if (offRoute) {
+            return NO_CHANGE;
+        }
+
+        if (getRemainingMeters() <= ARRIVAL_METERS) {
+            arrived = true;
+            nextManeuver = maneuverCount - 1;
+            return ARRIVED;
+        }
+        int before = nextManeuver;
+        while (nextManeuver < maneuverCount - 1 && passed(maneuverVertex[nextManeuver])) {
+            nextManeuver++;
+        }
+        return nextManeuver != before ? NEXT_MANEUVER : NO_CHANGE;
+    }
+
+    // Finds the closest segment from the current one up to the lookahead, and the walker's progress on it
+    private void match(double px, double py) {
+        double best = Double.MAX_VALUE;
+        int bestSegment = segment;
+        double bestAlong = progress;
+        double limit = progress + LOOKAHEAD_METERS + offset;
+        for (int s = segment; s < vertexCount - 1; s++) {
+            if (s > segment && along[s] > limit) {
+                break;
+            }
+            double dx = x[s + 1] - x[s];
+            double dy = y[s + 1] - y[s];
+            double lengthSquared = dx * dx + dy * dy;
+            double t = lengthSquared == 0 ? 0 : ((px - x[s]) * dx + (py - y[s]) * dy) / lengthSquared;
+            t = Math.max(0, Math.min(1, t));
+            double d = Math.hypot(x[s] + dx * t - px, y[s] + dy * t - py);
+            if (d < best) {
+                best = d;
+                bestSegment = s;
+                bestAlong = along[s] + (along[s + 1] - along[s]) * t;
+            }
+        }
+        if (vertexCount == 1) {
+            best = Math.hypot(x[0] - px, y[0] - py);
+        }
+        segment = bestSegment;
+        progress = bestAlong;
+        offset = best;
+    }
+
+    private boolean passed(int vertex) {
+        if (segment < vertex) {
+            return false;
+        }
+        double next = vertex + 1 < vertexCount ? along[vertex + 1] - along[vertex] : 0;
+        return progress >= along[vertex] + Math.min(PASSED_METERS, next);
+    }
+
+    /**
+     * Dijkstra from the node for the cheapest way back onto the route still
+     * ahead, stopping once nothing left in the queue can beat the best join
+     * found. The result keeps the old route from the join, so it can be
+     * longer than a new route that leaves the old one behind altogether.
+     * After {@link #MAX_LOCAL_SEARCH_NODES} settled nodes the search gives
+     * up and the router plans a whole new route instead. Returns false if
+     * neither finds a way.
+     */
+    private boolean reroute(int from) {
+        if (from < 0) {
+            return false;
+        }
+        if (++search == 0) {
+            Arrays.fill(searchStamp, 0);
+            search = 1;
+        }
+        open.clear();
+        searchStamp[from] = search;
+        distance[from] = 0;
+        parent[from] = -1;
+        open.push(from, 0);
+
+        double total = cost[vertexCount - 1];
+        double best = Double.POSITIVE_INFINITY;
+        int join = -1;
+        int settled = 0;
+        while (!open.isEmpty() && open.peekKey() < best) {
+            if (++settled > MAX_LOCAL_SEARCH_NODES) {
+                Route fresh = router.findRoute(from, route.getEndNode());
+                if (fresh == null) {
+                    return false;
+                }
+                load(fresh);
+                return true;
+            }
+            int node = open.poll();
+            double base = distance[node];
+            if (routeStamp[node] == currentRoute && vertexOf[node] >= segment) {
+                double candidate = base + total - cost[vertexOf[node]];
+                if (candidate < best) {
+                    best = candidate;
+                    join = node;
+                }
+            }
+            for (int e = graph.firstEdge(node), end = graph.endEdge(node); e < end; e++) {
+                int next = graph.edgeTarget(e);
+                double d = base + router.edgeCost(e);
+                if (d == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                if (searchStamp[next] != search || d < distance[next]) {
+                    searchStamp[next] = search;
+                    distance[next] = d;
+                    parent[next] = node;
+                    open.push(next, d);
+                }
+            }
+        }
+        if (join < 0) {
+            return false;
+        }
+
+        // The way back, then the old route from where it joins
+        int head = 0;
+        for (int n = join; n != -1; n = parent[n]) {
+            head++;
+        }
+        int joinVertex = vertexOf[join];
+        int[] nodes = new int[head + vertexCount - 1 - joinVertex];
+        for (int n = join, i = head - 1; n != -1; n = parent[n], i--) {
+            nodes[i] = n;
+        }
+        int[] old = route.getNodes();
+        System.arraycopy(old, joinVertex + 1, nodes, head, vertexCount - 1 - joinVertex);
+        double meters = route.getLengthMeters() - lengthTo(joinVertex);
+        for (int i = 1; i < head; i++) {
+            meters += graph.edgeWeight(cheapestEdge(nodes[i - 1], nodes[i]));
+        }
+        load(new Route(graph, nodes, meters));
+        return true;
+    }
+
+    private void load(Route route) {
+        this.route = route;
+        int count = route.getNodeCount();
+        if (count > x.length) {
+            int capacity = Math.max(count, 2 * x.length);
+            x = new double[capacity];
+            y = new double[capacity];
+            along = new double[capacity];
+            cost = new double[capacity];
+            flags = new int[capacity];
+            maneuverType = new int[capacity];
+            maneuverVertex = new int[capacity];
+        }
+        vertexCount = count;
+        if (++currentRoute == 0) {
+            Arrays.fill(routeStamp, 0);
+            currentRoute = 1;
+        }
+        for (int i = 0; i < count; i++) {
+            int node = route.getNodes()[i];
+            x[i] = (graph.longitude(node) - originLng) * metersPerDegreeLng;
+            y[i] = (graph.latitude(node) - originLat) * METERS_PER_DEGREE;
+            routeStamp[node] = currentRoute;
+            vertexOf[node] = i;
+            if (i == 0) {
+                along[0] = 0;
+                cost[0] = 0;
+            } else {
+                along[i] = along[i - 1] + Math.hypot(x[i] - x[i - 1], y[i] - y[i - 1]);
+                int edge = cheapestEdge(route.getNodes()[i - 1], node);
+                cost[i] = cost[i - 1] + (edge >= 0 ? router.edgeCost(edge) : along[i] - along[i - 1]);
+                // Flags of the segment ending here
+                flags[i - 1] = edge >= 0 ? graph.edgeFlags(edge) : 0;
+            }
+        }
+        buildManeuvers();
+        segment = 0;
+        progress = 0;
+        offset = 0;
+        nextManeuver = 0;
+        offCount = 0;
+        offRoute = false;
+        arrived = false;
+    }
+
+    // Walking distance of the route up to a vertex
+    private double lengthTo(int vertex) {
+        double meters = 0;
+        int[] nodes = route.getNodes();
+        for (int i = 1; i <= vertex; i++) {
+            meters += graph.edgeWeight(cheapestEdge(nodes[i - 1], nodes[i]));
+        }
+        return meters;
+    }
+
+    // Edge between two nodes that the router would take, or -1
+    private int cheapestEdge(int from, int to) {
+        int best = -1;
+        for (int e = graph.firstEdge(from), end = graph.endEdge(from); e < end; e++) {
+            if (graph.edgeTarget(e) == to && (best < 0 || router.edgeCost(e) < router.edgeCost(best))) {
+                best = e;
+            }
+        }
+        return best;
+    }
+
+    private void buildManeuvers() {
+        maneuverCount = 0;
+        for (int v = 0; v < vertexCount - 1; v++) {
+            int out = flags[v];
+            int in = v > 0 ? flags[v - 1] : out & ~CampusGraph.STAIRS;
+            int type;
+            if ((out & CampusGraph.STAIRS) != 0 && (in & CampusGraph.STAIRS) == 0) {
+                type = STAIRS;
+            } else if ((out & CampusGraph.INDOOR) != 0 && (in & CampusGraph.INDOOR) == 0) {
+                type = ENTER_BUILDING;
+            } else if ((out & CampusGraph.INDOOR) == 0 && (in & CampusGraph.INDOOR) != 0) {
+                type = LEAVE_BUILDING;
+            } else if (v > 0) {
+                type = turn(turnDegrees(v));
+            } else {
+                type = 0;
+            }
+            if (type != 0) {
+                maneuverType[maneuverCount] = type;
+                maneuverVertex[maneuverCount] = v;
+                maneuverCount++;
+            }
+        }
+        maneuverType[maneuverCount] = ARRIVE;
+        maneuverVertex[maneuverCount] = vertexCount - 1;
+        maneuverCount++;
+    }
+
+    // Change of heading at an inner vertex, clockwise positive; segments of no length are looked past
+    private double turnDegrees(int vertex) {
+        int before = vertex - 1;
+        while (before > 0 && along[before + 1] - along[before] < 0.5) {
+            before--;
+        }
+        int after = vertex;
+        while (after < vertexCount - 2 && along[after + 1] - along[after] < 0.5) {
+            after++;
+        }
+        double in = Math.toDegrees(Math.atan2(x[before + 1] - x[before], y[before + 1] - y[before]));
+        double out = Math.toDegrees(Math.atan2(x[after + 1] - x[after], y[after + 1] - y[after]));
+        double turn = out - in;
+        while (turn > 180) {
+            turn -= 360;
+        }
+        while (turn <= -180) {
+            turn += 360;
+        }
+        return turn;
+    }
+
+    static int turn(double degrees) {
+        double size = Math.abs(degrees);
+        if (size < STRAIGHT_DEGREES) {
+            return 0;
+        }
+        if (size < SLIGHT_DEGREES) {
+            return degrees > 0 ? SLIGHT_RIGHT : SLIGHT_LEFT;
+        }
+        if (size < SHARP_DEGREES) {
+            return degrees > 0 ? RIGHT : LEFT;
+        }
+        return degrees > 0 ? SHARP_RIGHT : SHARP_LEFT;
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.ntumap;
+
+import android.graphics.Bitmap;
+
+import com.google.android.gms.maps.model.Tile;
+import com.google.android.gms.maps.model.TileProvider;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Serves {@link HeatmapTiles} to a map tile overlay as PNGs. The map asks
+ * for tiles on its own background threads; each of them keeps one bitmap
+ * and one output buffer for encoding, so rendering allocates only the
+ * finished PNG.
+ */
+public class HeatmapTileProvider implements TileProvider {
+
+    private static final int TILE_SIZE = 256;
+    private static final int RADIUS_PX = 24;
+    private static final int MAX_CACHED_TILES = 128;
+
+    private final ThreadLocal<Bitmap> bitmaps = ThreadLocal.withInitial(
+            () -> Bitmap.createBitmap(TILE_SIZE, TILE_SIZE, Bitmap.Config.ARGB_8888));
+    private final ThreadLocal<ByteArrayOutputStream> buffers = ThreadLocal.withInitial(
+            () -> new ByteArrayOutputStream(16 * 1024));
+    private final HeatmapTiles tiles = new HeatmapTiles(TILE_SIZE, RADIUS_PX, MAX_CACHED_TILES, this::encode);
+
+    public HeatmapTiles getTiles() {
+        return tiles;
+    }
+
+    @Override
+    public Tile getTile(int x, int y, int zoom) {
+        byte[] png = tiles.getTile(x, y, zoom);
+        return png != null ? new Tile(TILE_SIZE, TILE_SIZE, png) : NO_TILE;
+    }
+
+    private byte[] encode(int[] argb, int size) {
+        Bitmap bitmap = bitmaps.get();
+        bitmap.setPixels(argb, 0, size, 0, 0, size, size);
+        ByteArrayOutputStream buffer = buffers.get();
+        buffer.reset();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, buffer);
+        return buffer.toByteArray();
+    }
+}
@@ -0,0 +1,222 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Renders weighted points, such as room occupancy, into heatmap map tiles
+ * in the Web Mercator tiling the map uses, and keeps the encoded tiles in
+ * an LRU cache. Changing a point drops only the cached tiles it can reach,
+ * so the rest of the heatmap is served from the cache.
+ *
+ * Tiles can be requested from any number of threads. Each rendering thread
+ * reuses its own pixel buffers.
+ */
+public class HeatmapTiles {
+
+    // Turns rendered ARGB pixels, row by row, into the bytes handed to the map, e.g. a PNG
+    public interface Encoder {
+        byte[] encode(int[] argb, int size);
+    }
+
+    // Cached marker for tiles with nothing on them
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int tileSize;
+    private final int radius;
+    private final Encoder encoder;
+    // Falloff of one point, (2 * radius + 1) pixels square
+    private final float[] kernel;
+    // Colour for each intensity step, transparent at 0
+    private final int[] palette = new int[256];
+
+    private final LinkedHashMap<Long, byte[]> cache;
+    private final ThreadLocal<float[]> intensities;
+    private final ThreadLocal<int[]> pixels;
+
+    // Guarded by this; the arrays grow by replacement, so renderers can use the ones they saw
+    private int count;
+    private double[] worldX = new double[16];
+    private double[] worldY = new double[16];
+    private float[] weights = new float[16];
+    // Bumped whenever cached tiles are dropped, so a render that raced a change isn't cached
+    private long dataVersion;
+    private int renders;
+
+    public HeatmapTiles(int tileSize, int radiusPx, int maxCachedTiles, Encoder encoder) {
+        this.tileSize = tileSize;
+        this.radius = radiusPx;
+        this.encoder = encoder;
+
+        int side = 2 * radiusPx + 1;
+        kernel = new float[side * side];
+        double sigma = radiusPx / 2.5;
+        for (int dy = -radiusPx; dy <= radiusPx; dy++) {
+            for (int dx = -radiusPx; dx <= radiusPx; dx++) {
+                double falloff = Math.exp(-(dx * dx + dy * dy) / (2 * sigma * sigma));
+                kernel[(dy + radiusPx) * side + dx + radiusPx] = dx * dx + dy * dy <= radiusPx * radiusPx
+                        ? (float) falloff : 0f;
+            }
+        }
+        for (int i = 1; i < palette.length; i++) {
+            palette[i] = color(i / 255.0);
+        }
+
+        cache = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > maxCachedTiles;
+            }
+        };
+        intensities = ThreadLocal.withInitial(() -> new float[tileSize * tileSize]);
+        pixels = ThreadLocal.withInitial(() -> new int[tileSize * tileSize]);
+    }
+
+    /** Adds a point with a weight from 0 to 1 and returns its id. */
+    public synchronized int addPoint(double latitude, double longitude, double weight) {
+        if (count == weights.length) {
+            worldX = Arrays.copyOf(worldX, count * 2);
+            worldY = Arrays.copyOf(worldY, count * 2);
+            weights = Arrays.copyOf(weights, count * 2);
+        }
+        worldX[count] = (longitude + 180) / 360;
+        double sin = Math.sin(Math.toRadians(latitude));
+        worldY[count] = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        weights[count] = clamp(weight);
+        invalidateAround(count);
+        return count++;
+    }
+
+    /** Changes a point's weight; returns false if it was already that weight. */
+    public synchronized boolean setWeight(int id, double weight) {
+        float clamped = clamp(weight);
+        if (weights[id] == clamped) {
+            return false;
+        }
+        weights[id] = clamped;
+        invalidateAround(id);
+        return true;
+    }
+
+    /** Encoded tile, or null if nothing is drawn on it. */
+    public byte[] getTile(int x, int y, int zoom) {
+        long key = key(x, y, zoom);
+        int n;
+        double[] xs;
+        double[] ys;
+        float[] ws;
+        long version;
+        synchronized (this) {
+            byte[] cached = cache.get(key);
+            if (cached != null) {
+                return cached == EMPTY ? null : cached;
+            }
+            n = count;
+            xs = worldX;
+            ys = worldY;
+            ws = weights;
+            version = dataVersion;
+        }
+
+        byte[] tile = render(x, y, zoom, n, xs, ys, ws);
+        synchronized (this) {
+            renders++;
+            if (dataVersion == version) {
+                cache.put(key, tile != null ? tile : EMPTY);
+            }
+        }
+        return tile;
+    }
+
+    // Number of tiles rendered so far, cache misses included
+    public synchronized int getRenderCount() {
+        return renders;
+    }
+
+    public synchronized int getCachedTileCount() {
+        return cache.size();
+    }
+
+    private byte[] render(int x, int y, int zoom, int n, double[] xs, double[] ys, float[] ws) {
+        double scale = (double) tileSize * (1L << zoom);
+        double left = (double) x * tileSize;
+        double top = (double) y * tileSize;
+        float[] intensity = null;
+        int side = 2 * radius + 1;
+
+        for (int p = 0; p < n; p++) {
+            float weight = ws[p];
+            if (weight == 0) {
+                continue;
+            }
+            int px = (int) Math.round(xs[p] * scale - left);
+            int py = (int) Math.round(ys[p] * scale - top);
+            if (px < -radius || py < -radius || px >= tileSize + radius || py >= tileSize + radius) {
+                continue;
+            }
+            if (intensity == null) {
+                intensity = intensities.get();
+                Arrays.fill(intensity, 0f);
+            }
+            // Overlapping rooms show the busier of the two rather than adding up
+            for (int ty = Math.max(0, py - radius); ty <= Math.min(tileSize - 1, py + radius); ty++) {
+                int kernelRow = (ty - py + radius) * side + radius - px;
+                int row = ty * tileSize;
+                for (int tx = Math.max(0, px - radius); tx <= Math.min(tileSize - 1, px + radius); tx++) {
+                    float value = weight * kernel[kernelRow + tx];
+                    if (value > intensity[row + tx]) {
+                        intensity[row + tx] = value;
+                    }
+                }
+            }
+        }
+        if (intensity == null) {
+            return null;
+        }
+
+        int[] argb = pixels.get();
+        boolean drawn = false;
+        for (int i = 0; i < argb.length; i++) {
+            int step = (int) (intensity[i] * 255);
+            argb[i] = palette[step];
+            drawn |= step != 0;
+        }
+        return drawn ? encoder.encode(argb, tileSize) : null;
+    }
+
+    // Drops every cached tile the point's kernel reaches
+    private void invalidateAround(int point) {
+        dataVersion++;
+        Iterator<Long> keys = cache.keySet().iterator();
+        while (keys.hasNext()) {
+            long key = keys.next();
+            int zoom = (int) (key >>> 58);
+            long x = (key >>> 29) & ((1 << 29) - 1);
+            long y = key & ((1 << 29) - 1);
+            double scale = (double) tileSize * (1L << zoom);
+            double px = worldX[point] * scale - x * tileSize;
+            double py = worldY[point] * scale - y * tileSize;
+            if (px >= -radius - 1 && py >= -radius - 1 && px < tileSize + radius + 1 && py < tileSize + radius + 1) {
+                keys.remove();
+            }
+        }
+    }
+
+    private static long key(int x, int y, int zoom) {
+        return ((long) zoom << 58) | ((long) x << 29) | y;
+    }
+
+    private static float clamp(double weight) {
+        return (float) Math.max(0, Math.min(1, weight));
+    }
+
+    // Green through yellow to red, fading in from transparent
+    private static int color(double intensity) {
+        int alpha = (int) (Math.min(1, intensity * 3) * 0xB0);
+        int red = (int) (Math.min(1, intensity * 2) * 255);
+        int green = (int) (Math.min(1, 2 - intensity * 2) * 255);
+        return alpha << 24 | red << 16 | green << 8;
+    }
+}
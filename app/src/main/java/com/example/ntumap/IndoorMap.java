@@ -0,0 +1,329 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Indoor walkways of the campus buildings. Every floor is a partition of
+ * its own, a {@link CampusGraph} of corridors, joined to the other floors
+ * of its building by stairs, lift and ramp connectors and to the outdoor
+ * walkways by entrances.
+ *
+ * Only the directory of buildings, floors, connectors, entrances and rooms
+ * is read up front. A floor's graph is read from its own pack section the
+ * first time it is asked for, so routing into the Library pages in the
+ * Library's floors and nothing else.
+ *
+ * Indoor nodes are numbered across every floor: the nodes of floor f are
+ * {@code floorBase(f)} up to {@code floorBase(f + 1)}, in the order of the
+ * floor's graph. Thread-safe; the floors are shared once loaded.
+ */
+public final class IndoorMap {
+
+    /** Reads the graph of one floor, e.g. from its campus pack section. */
+    public interface FloorSource {
+        CampusGraph load(int floor) throws IOException;
+    }
+
+    // Connector types
+    public static final int STAIRS = 0;
+    public static final int LIFT = 1;
+    public static final int RAMP = 2;
+
+    // Default connector costs, in metres of level walking: a flight of stairs takes about as long
+    // as fifteen metres of corridor, and a lift is mostly waiting for it
+    static final double STAIRS_METERS_PER_LEVEL = 15;
+    static final double LIFT_WAIT_METERS = 40;
+    static final double LIFT_METERS_PER_LEVEL = 5;
+    static final double RAMP_METERS_PER_LEVEL = 30;
+
+    private final PackedStrings buildingNames;
+    private final IntBuffer buildingFloorStart;
+    private final IntBuffer floorLevels;
+    private final IntBuffer floorBase;
+    private final IntBuffer connectorFrom;
+    private final IntBuffer connectorTo;
+    private final IntBuffer connectorTypes;
+    private final DoubleBuffer connectorCosts;
+    private final IntBuffer entranceNodes;
+    private final IntBuffer entranceWalkways;
+    private final IntBuffer roomRows;
+    private final IntBuffer roomNodes;
+    // Connectors at each indoor node, both ways, in compressed sparse row form
+    private final int[] connectorStart;
+    private final int[] connectorsAt;
+
+    private final FloorSource source;
+    private final CampusGraph[] floors;
+    private int loadedFloors;
+
+    private IndoorMap(PackReader in, FloorSource source) {
+        buildingNames = in.strings();
+        buildingFloorStart = in.ints();
+        floorLevels = in.ints();
+        floorBase = in.ints();
+        connectorFrom = in.ints();
+        connectorTo = in.ints();
+        connectorTypes = in.ints();
+        connectorCosts = in.doubles();
+        entranceNodes = in.ints();
+        entranceWalkways = in.ints();
+        roomRows = in.ints();
+        roomNodes = in.ints();
+        this.source = source;
+        floors = new CampusGraph[floorCount()];
+
+        int nodes = nodeCount();
+        connectorStart = new int[nodes + 1];
+        for (int c = 0; c < connectorCount(); c++) {
+            connectorStart[connectorFrom.get(c) + 1]++;
+            connectorStart[connectorTo.get(c) + 1]++;
+        }
+        for (int n = 0; n < nodes; n++) {
+            connectorStart[n + 1] += connectorStart[n];
+        }
+        connectorsAt = new int[connectorStart[nodes]];
+        int[] cursor = Arrays.copyOf(connectorStart, nodes);
+        for (int c = 0; c < connectorCount(); c++) {
+            connectorsAt[cursor[connectorFrom.get(c)]++] = c;
+            connectorsAt[cursor[connectorTo.get(c)]++] = c;
+        }
+    }
+
+    // Directory stored by Builder.writeTo, viewed in place; floors come from the source when needed
+    public static IndoorMap read(PackReader in, FloorSource source) {
+        return new IndoorMap(in, source);
+    }
+
+    public int buildingCount() { return buildingNames.size(); }
+    public String getBuildingName(int building) { return buildingNames.get(building); }
+    public int firstFloor(int building) { return buildingFloorStart.get(building); }
+    public int endFloor(int building) { return buildingFloorStart.get(building + 1); }
+
+    public int floorCount() { return floorLevels.limit(); }
+    public int getLevel(int floor) { return floorLevels.get(floor); }
+    public int nodeCount() { return floorBase.get(floorCount()); }
+    public int floorBase(int floor) { return floorBase.get(floor); }
+
+    public int findBuilding(String name) {
+        for (int b = 0; b < buildingCount(); b++) {
+            if (buildingNames.get(b).equalsIgnoreCase(name)) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    // Floor of a building at a level, or -1
+    public int findFloor(int building, int level) {
+        for (int f = firstFloor(building); f < endFloor(building); f++) {
+            if (floorLevels.get(f) == level) {
+                return f;
+            }
+        }
+        return -1;
+    }
+
+    public int floorOf(int node) {
+        return upperBound(floorBase, floorCount(), node) - 1;
+    }
+
+    public int buildingOf(int floor) {
+        return upperBound(buildingFloorStart, buildingCount(), floor) - 1;
+    }
+
+    /** The graph of a floor, read on first use. */
+    public CampusGraph getFloor(int floor) throws IOException {
+        synchronized (floors) {
+            if (floors[floor] == null) {
+                CampusGraph graph = source.load(floor);
+                if (graph.nodeCount() != floorBase(floor + 1) - floorBase(floor)) {
+                    throw new IOException("Floor " + floor + " does not match the indoor directory");
+                }
+                floors[floor] = graph;
+                loadedFloors++;
+            }
+            return floors[floor];
+        }
+    }
+
+    // How many floors have been read so far
+    public int getLoadedFloorCount() {
+        synchronized (floors) {
+            return loadedFloors;
+        }
+    }
+
+    public int connectorCount() { return connectorTypes.limit(); }
+    public int connectorFrom(int connector) { return connectorFrom.get(connector); }
+    public int connectorTo(int connector) { return connectorTo.get(connector); }
+    public int getConnectorType(int connector) { return connectorTypes.get(connector); }
+    public double getConnectorCost(int connector) { return connectorCosts.get(connector); }
+    public int firstConnector(int node) { return connectorStart[node]; }
+    public int endConnector(int node) { return connectorStart[node + 1]; }
+    public int connectorAt(int index) { return connectorsAt[index]; }
+
+    // Edge flags of a connector, for weighing it like a walkway
+    public int connectorFlags(int connector) {
+        switch (connectorTypes.get(connector)) {
+            case STAIRS: return CampusGraph.STAIRS | CampusGraph.INDOOR;
+            case LIFT: return CampusGraph.LIFT | CampusGraph.INDOOR;
+            default: return CampusGraph.INDOOR;
+        }
+    }
+
+    public int entranceCount() { return entranceNodes.limit(); }
+    // Indoor node just inside the entrance, and the outdoor walkway node just outside it
+    public int getEntranceNode(int entrance) { return entranceNodes.get(entrance); }
+    public int getEntranceWalkway(int entrance) { return entranceWalkways.get(entrance); }
+
+    // Indoor node at the door of a RoomTable row, or -1 if the room is not mapped indoors
+    public int findRoomNode(int room) {
+        for (int i = 0; i < roomRows.limit(); i++) {
+            if (roomRows.get(i) == room) {
+                return roomNodes.get(i);
+            }
+        }
+        return -1;
+    }
+
+    // Cost of a connector between two levels when the campus data does not give one
+    public static double defaultConnectorCost(int type, int levels) {
+        levels = Math.abs(levels);
+        switch (type) {
+            case STAIRS: return STAIRS_METERS_PER_LEVEL * levels;
+            case LIFT: return LIFT_WAIT_METERS + LIFT_METERS_PER_LEVEL * levels;
+            default: return RAMP_METERS_PER_LEVEL * levels;
+        }
+    }
+
+    // First index whose value is greater than key, searching the first count values
+    private static int upperBound(IntBuffer values, int count, int key) {
+        int low = 0, high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (values.get(middle) <= key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    public static class Builder {
+        private final List<String> buildings = new ArrayList<>();
+        private final List<Integer> buildingFloorStart = new ArrayList<>();
+        private final List<CampusGraph> floors = new ArrayList<>();
+        private final List<Integer> levels = new ArrayList<>();
+        private final List<Integer> floorBase = new ArrayList<>(Arrays.asList(0));
+        private final List<int[]> connectors = new ArrayList<>();
+        private final List<Double> connectorCosts = new ArrayList<>();
+        private final List<int[]> entrances = new ArrayList<>();
+        private final List<int[]> rooms = new ArrayList<>();
+
+        public int addBuilding(String name) {
+            buildings.add(name);
+            buildingFloorStart.add(floors.size());
+            return buildings.size() - 1;
+        }
+
+        // Adds a floor to the latest building and returns its floor index
+        public int addFloor(int level, CampusGraph graph) {
+            if (buildings.isEmpty()) {
+                throw new IllegalStateException("No building to add a floor to");
+            }
+            floors.add(graph);
+            levels.add(level);
+            floorBase.add(floorBase.get(floorBase.size() - 1) + graph.nodeCount());
+            return floors.size() - 1;
+        }
+
+        // Indoor id of a node of a floor
+        public int node(int floor, int node) {
+            if (node < 0 || node >= floors.get(floor).nodeCount()) {
+                throw new IllegalArgumentException("Floor " + floor + " has no node " + node);
+            }
+            return floorBase.get(floor) + node;
+        }
+
+        public Builder addConnector(int type, int fromFloor, int fromNode, int toFloor, int toNode) {
+            return addConnector(type, fromFloor, fromNode, toFloor, toNode,
+                    defaultConnectorCost(type, levels.get(toFloor) - levels.get(fromFloor)));
+        }
+
+        public Builder addConnector(int type, int fromFloor, int fromNode, int toFloor, int toNode, double cost) {
+            connectors.add(new int[]{node(fromFloor, fromNode), node(toFloor, toNode), type});
+            connectorCosts.add(cost);
+            return this;
+        }
+
+        public Builder addEntrance(int floor, int node, int walkwayNode) {
+            entrances.add(new int[]{node(floor, node), walkwayNode});
+            return this;
+        }
+
+        public Builder addRoom(int room, int floor, int node) {
+            rooms.add(new int[]{room, node(floor, node)});
+            return this;
+        }
+
+        public int floorCount() { return floors.size(); }
+        public CampusGraph getFloor(int floor) { return floors.get(floor); }
+
+        public IndoorMap build() {
+            PackWriter out = new PackWriter();
+            writeTo(out);
+            return new IndoorMap(out.toReader(), floors::get);
+        }
+
+        // Writes the directory in the layout read expects; each floor graph goes in a section of its own
+        public void writeTo(PackWriter out) {
+            int[] buildingStarts = new int[buildings.size() + 1];
+            for (int b = 0; b < buildings.size(); b++) {
+                buildingStarts[b] = buildingFloorStart.get(b);
+            }
+            buildingStarts[buildings.size()] = floors.size();
+            out.putStrings(buildings)
+                    .putInts(buildingStarts, buildingStarts.length)
+                    .putInts(toArray(levels), levels.size())
+                    .putInts(toArray(floorBase), floorBase.size())
+                    .putInts(column(connectors, 0), connectors.size())
+                    .putInts(column(connectors, 1), connectors.size())
+                    .putInts(column(connectors, 2), connectors.size())
+                    .putDoubles(toDoubles(connectorCosts), connectorCosts.size())
+                    .putInts(column(entrances, 0), entrances.size())
+                    .putInts(column(entrances, 1), entrances.size())
+                    .putInts(column(rooms, 0), rooms.size())
+                    .putInts(column(rooms, 1), rooms.size());
+        }
+
+        private static int[] toArray(List<Integer> values) {
+            int[] array = new int[values.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = values.get(i);
+            }
+            return array;
+        }
+
+        private static double[] toDoubles(List<Double> values) {
+            double[] array = new double[values.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = values.get(i);
+            }
+            return array;
+        }
+
+        private static int[] column(List<int[]> rows, int column) {
+            int[] array = new int[rows.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = rows.get(i)[column];
+            }
+            return array;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Routes from a walkway node to a node inside a building, such as a room's
+ * door, over the floors of an {@link IndoorMap}.
+ *
+ * The outdoor router finds the way to each entrance of the target
+ * building. An indoor Dijkstra search then starts from every entrance at
+ * once, each seeded with what it took to get there, and crosses floors
+ * through the building's connectors. Connectors never leave a building, so
+ * the search only reads the floors of the building it is routing into.
+ * Outdoor and indoor legs are weighed by the outdoor router's current
+ * {@link RoutingProfile}. Not thread-safe, like the routers it wraps.
+ */
+public class IndoorRouter {
+
+    private final ProfileRouter outdoor;
+    private final IndoorMap map;
+    private final double[] distance;
+    private final int[] parent;
+    private final int[] parentEdge;
+    private final int[] parentConnector;
+    private final int[] entrance;
+    private final int[] seenStamp;
+    private final int[] closedStamp;
+    private final NodeHeap open;
+    private final Route[] entranceRoutes;
+    private int stamp;
+
+    // The last trip planned, which is planned again every time the map is redrawn
+    private int lastSource = -1;
+    private int lastTarget = -1;
+    private RoutingProfile lastProfile;
+    private FloorRoute lastRoute;
+
+    public IndoorRouter(ProfileRouter outdoor, IndoorMap map) {
+        this.outdoor = outdoor;
+        this.map = map;
+        int n = map.nodeCount();
+        distance = new double[n];
+        parent = new int[n];
+        parentEdge = new int[n];
+        parentConnector = new int[n];
+        entrance = new int[n];
+        seenStamp = new int[n];
+        closedStamp = new int[n];
+        open = new NodeHeap(n);
+        entranceRoutes = new Route[map.entranceCount()];
+    }
+
+    public IndoorMap getIndoorMap() { return map; }
+
+    /** Cheapest route from a walkway node to an indoor node, or null if it cannot be reached. */
+    public FloorRoute findRoute(int source, int target) throws IOException {
+        RoutingProfile profile = outdoor.getProfile();
+        if (source == lastSource && target == lastTarget && profile == lastProfile) {
+            return lastRoute;
+        }
+        lastRoute = search(source, target, profile);
+        lastSource = source;
+        lastTarget = target;
+        lastProfile = profile;
+        return lastRoute;
+    }
+
+    private FloorRoute search(int source, int target, RoutingProfile profile) throws IOException {
+        if (++stamp == 0) {
+            Arrays.fill(seenStamp, 0);
+            Arrays.fill(closedStamp, 0);
+            stamp = 1;
+        }
+        open.clear();
+
+        CampusGraph walkways = outdoor.getGraph();
+        int building = map.buildingOf(map.floorOf(target));
+        for (int e = 0; e < map.entranceCount(); e++) {
+            int node = map.getEntranceNode(e);
+            entranceRoutes[e] = null;
+            if (map.buildingOf(map.floorOf(node)) != building) {
+                continue;
+            }
+            int walkway = map.getEntranceWalkway(e);
+            Route route = outdoor.findRoute(source, walkway);
+            if (route == null) {
+                continue;
+            }
+            entranceRoutes[e] = route;
+            double cost = outdoorCost(route) + GeoUtils.haversine(walkways.latitude(walkway), walkways.longitude(walkway),
+                    latitude(node), longitude(node));
+            if (seenStamp[node] != stamp || cost < distance[node]) {
+                seenStamp[node] = stamp;
+                distance[node] = cost;
+                parent[node] = -1;
+                entrance[node] = e;
+                open.push(node, cost);
+            }
+        }
+
+        while (!open.isEmpty()) {
+            int node = open.poll();
+            if (node == target) {
+                return buildRoute(target);
+            }
+            closedStamp[node] = stamp;
+            double base = distance[node];
+
+            int floor = map.floorOf(node);
+            CampusGraph graph = map.getFloor(floor);
+            int first = map.floorBase(floor);
+            for (int e = graph.firstEdge(node - first), end = graph.endEdge(node - first); e < end; e++) {
+                relax(first + graph.edgeTarget(e), base + profile.cost(graph, e), node, e, -1);
+            }
+            for (int i = map.firstConnector(node), end = map.endConnector(node); i < end; i++) {
+                int c = map.connectorAt(i);
+                int next = map.connectorFrom(c) == node ? map.connectorTo(c) : map.connectorFrom(c);
+                relax(next, base + profile.cost(map.getConnectorCost(c), map.connectorFlags(c)), node, -1, c);
+            }
+        }
+        return null;
+    }
+
+    private void relax(int next, double candidate, int from, int edge, int connector) {
+        if (candidate == Double.POSITIVE_INFINITY || closedStamp[next] == stamp) {
+            return;
+        }
+        if (seenStamp[next] == stamp && candidate >= distance[next]) {
+            return;
+        }
+        seenStamp[next] = stamp;
+        distance[next] = candidate;
+        parent[next] = from;
+        parentEdge[next] = edge;
+        parentConnector[next] = connector;
+        open.push(next, candidate);
+    }
+
+    // Cost of a walkway route under the profile, which the route itself only gives as a length
+    private double outdoorCost(Route route) {
+        CampusGraph graph = outdoor.getGraph();
+        int[] nodes = route.getNodes();
+        double cost = 0;
+        for (int i = 1; i < nodes.length; i++) {
+            double cheapest = Double.POSITIVE_INFINITY;
+            for (int e = graph.firstEdge(nodes[i - 1]), end = graph.endEdge(nodes[i - 1]); e < end; e++) {
+                if (graph.edgeTarget(e) == nodes[i]) {
+                    cheapest = Math.min(cheapest, outdoor.edgeCost(e));
+                }
+            }
+            cost += cheapest;
+        }
+        return cost;
+    }
+
+    private FloorRoute buildRoute(int target) throws IOException {
+        int count = 1;
+        int seed = target;
+        while (parent[seed] >= 0) {
+            seed = parent[seed];
+            count++;
+        }
+        int[] nodes = new int[count];
+        for (int n = target, i = count - 1; i >= 0; n = parent[n], i--) {
+            nodes[i] = n;
+        }
+
+        Route outdoorRoute = entranceRoutes[entrance[seed]];
+        CampusGraph walkways = outdoor.getGraph();
+        int walkway = map.getEntranceWalkway(entrance[seed]);
+        List<FloorRoute.Leg> legs = new ArrayList<>();
+        int outdoorCount = outdoorRoute.getNodeCount();
+        double[] lats = new double[outdoorCount];
+        double[] lngs = new double[outdoorCount];
+        for (int i = 0; i < outdoorCount; i++) {
+            lats[i] = outdoorRoute.getLatitude(i);
+            lngs[i] = outdoorRoute.getLongitude(i);
+        }
+        legs.add(new FloorRoute.Leg(-1, 0, -1, lats, lngs));
+        double meters = outdoorRoute.getLengthMeters() + GeoUtils.haversine(walkways.latitude(walkway),
+                walkways.longitude(walkway), latitude(seed), longitude(seed));
+
+        // One leg per run of nodes on the same floor; the first starts at the door
+        int building = map.buildingOf(map.floorOf(seed));
+        int start = 0;
+        while (start < count) {
+            int floor = map.floorOf(nodes[start]);
+            int end = start + 1;
+            while (end < count && parentConnector[nodes[end]] < 0) {
+                meters += map.getFloor(floor).edgeWeight(parentEdge[nodes[end]]);
+                end++;
+            }
+            int door = start == 0 ? 1 : 0;
+            lats = new double[door + end - start];
+            lngs = new double[door + end - start];
+            if (door == 1) {
+                lats[0] = walkways.latitude(walkway);
+                lngs[0] = walkways.longitude(walkway);
+            }
+            for (int i = start; i < end; i++) {
+                lats[door + i - start] = latitude(nodes[i]);
+                lngs[door + i - start] = longitude(nodes[i]);
+            }
+            int connector = start == 0 ? -1 : map.getConnectorType(parentConnector[nodes[start]]);
+            legs.add(new FloorRoute.Leg(building, map.getLevel(floor), connector, lats, lngs));
+            start = end;
+        }
+        return new FloorRoute(outdoorRoute, legs, target, meters, distance[target]);
+    }
+
+    private double latitude(int node) throws IOException {
+        int floor = map.floorOf(node);
+        return map.getFloor(floor).latitude(node - map.floorBase(floor));
+    }
+
+    private double longitude(int node) throws IOException {
+        int floor = map.floorOf(node);
+        return map.getFloor(floor).longitude(node - map.floorBase(floor));
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.ntumap;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.concurrent.Executor;
+
+/**
+ * One-line RecyclerView list of {@link ListItem}s. Submitted lists are
+ * diffed on a background executor, so only the rows that changed are
+ * rebound, and binding a row sets its cached label without formatting.
+ */
+public class ItemListAdapter<T extends ListItem> extends ListAdapter<T, ItemListAdapter.Holder> {
+
+    // Rows from the end at which the next page is requested
+    private static final int PREFETCH_DISTANCE = 10;
+
+    public interface OnItemClickListener<T> {
+        void onItemClick(T item);
+    }
+
+    private final OnItemClickListener<T> clickListener;
+    private Runnable nearEndListener;
+
+    // clickListener may be null for rows that can't be tapped
+    public ItemListAdapter(Executor diffExecutor, OnItemClickListener<T> clickListener) {
+        super(new AsyncDifferConfig.Builder<T>(new DiffUtil.ItemCallback<T>() {
+            @Override
+            public boolean areItemsTheSame(T oldItem, T newItem) {
+                return oldItem.getItemId() == newItem.getItemId();
+            }
+
+            @Override
+            public boolean areContentsTheSame(T oldItem, T newItem) {
+                return oldItem.equals(newItem);
+            }
+        }).setBackgroundThreadExecutor(diffExecutor).build());
+        this.clickListener = clickListener;
+        setHasStableIds(true);
+    }
+
+    // Called on the UI thread when a row near the end of the list is bound
+    public void setNearEndListener(Runnable listener) {
+        nearEndListener = listener;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getItemId();
+    }
+
+    @Override
+    public Holder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(android.R.layout.simple_list_item_1, parent, false);
+        Holder holder = new Holder(view);
+        if (clickListener != null) {
+            view.setOnClickListener(v -> {
+                int position = holder.getBindingAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    clickListener.onItemClick(getItem(position));
+                }
+            });
+        }
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(Holder holder, int position) {
+        T item = getItem(position);
+        holder.text.setText(item.getLabel());
+        holder.text.setTextColor(item.getTextColor());
+
+        // The list can't change while it is being laid out, so ask for more once this pass is done
+        if (nearEndListener != null && position >= getItemCount() - PREFETCH_DISTANCE) {
+            holder.itemView.post(nearEndListener);
+        }
+    }
+
+    static class Holder extends RecyclerView.ViewHolder {
+        final TextView text;
+
+        Holder(View view) {
+            super(view);
+            text = view.findViewById(android.R.id.text1);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.ntumap;
+
+/**
+ * Smooths noisy location fixes with a constant-velocity Kalman filter.
+ *
+ * Positions are tracked in metres east and north of the first fix, each
+ * axis with its own position and velocity, since for a walker the two are
+ * independent. A fix's reported accuracy is its measurement noise, and
+ * the walker may change speed by about {@link #ACCELERATION_SIGMA} each
+ * second. Fixes that land improbably far from the prediction are
+ * dropped, unless several in a row agree, which means the walker really
+ * is elsewhere; the filter then starts over from the latest fix, as it
+ * does after a long gap.
+ */
+public class KalmanLocationFilter {
+
+    // Standard deviation of a walker's acceleration, m/s²; small, as people keep a steady pace
+    static final double ACCELERATION_SIGMA = 0.3;
+    // Uncertainty of the speed after a reset, m/s
+    private static final double INITIAL_SPEED_SIGMA = 2.0;
+    private static final double MIN_ACCURACY_METERS = 1.0;
+    // Innovations beyond five standard deviations are outliers
+    private static final double GATE = 5 * 5;
+    private static final int MAX_REJECTED = 3;
+    private static final long MAX_GAP_MILLIS = 30_000;
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_RADIUS_METERS;
+
+    private boolean initialized;
+    private double originLat;
+    private double originLng;
+    private double metersPerDegreeLng;
+    private long timeMillis;
+    private int rejected;
+    private final Axis east = new Axis();
+    private final Axis north = new Axis();
+
+    public void reset() {
+        initialized = false;
+        rejected = 0;
+    }
+
+    public boolean isInitialized() { return initialized; }
+
+    /** Adds a fix and returns whether it was used; an outlier leaves the estimate as it was. */
+    public boolean update(LocationFix fix) {
+        double accuracy = Math.max(MIN_ACCURACY_METERS, fix.getAccuracyMeters());
+        double variance = accuracy * accuracy;
+        if (!initialized || fix.getTimeMillis() - timeMillis > MAX_GAP_MILLIS) {
+            start(fix, variance);
+            return true;
+        }
+        double x = (fix.getLongitude() - originLng) * metersPerDegreeLng;
+        double y = (fix.getLatitude() - originLat) * METERS_PER_DEGREE;
+        double seconds = Math.max(0, fix.getTimeMillis() - timeMillis) / 1000.0;
+        east.predict(seconds);
+        north.predict(seconds);
+        if (east.surprise(x, variance) > GATE || north.surprise(y, variance) > GATE) {
+            // Forget the prediction; the clock stays at the last good fix, so the next one predicts from there
+            east.restore();
+            north.restore();
+            if (++rejected < MAX_REJECTED) {
+                return false;
+            }
+            start(fix, variance);
+            return true;
+        }
+        east.correct(x, variance);
+        north.correct(y, variance);
+        timeMillis = fix.getTimeMillis();
+        rejected = 0;
+        return true;
+    }
+
+    public long getTimeMillis() { return timeMillis; }
+
+    public double getLatitude() {
+        return originLat + north.position / METERS_PER_DEGREE;
+    }
+
+    public double getLongitude() {
+        return originLng + east.position / metersPerDegreeLng;
+    }
+
+    // One standard deviation of the position estimate, on the less certain axis
+    public double getAccuracyMeters() {
+        return Math.sqrt(Math.max(east.p00, north.p00));
+    }
+
+    public double getSpeedMetersPerSecond() {
+        return Math.hypot(east.velocity, north.velocity);
+    }
+
+    // Direction of travel in degrees clockwise from north
+    public double getBearingDegrees() {
+        double degrees = Math.toDegrees(Math.atan2(east.velocity, north.velocity));
+        return degrees < 0 ? degrees + 360 : degrees;
+    }
+
+    private void start(LocationFix fix, double variance) {
+        initialized = true;
+        originLat = fix.getLatitude();
+        originLng = fix.getLongitude();
+        metersPerDegreeLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(originLat));
+        timeMillis = fix.getTimeMillis();
+        rejected = 0;
+        east.start(variance);
+        north.start(variance);
+    }
+
+    // Position and velocity along one axis with their 2x2 covariance
+    private static final class Axis {
+        double position;
+        double velocity;
+        double p00, p01, p11;
+        private double savedPosition, savedP00, savedP01, savedP11;
+
+        void start(double variance) {
+            position = 0;
+            velocity = 0;
+            p00 = variance;
+            p01 = 0;
+            p11 = INITIAL_SPEED_SIGMA * INITIAL_SPEED_SIGMA;
+        }
+
+        void predict(double dt) {
+            savedPosition = position;
+            savedP00 = p00;
+            savedP01 = p01;
+            savedP11 = p11;
+            position += velocity * dt;
+            // P = F P F' + Q for white-noise acceleration
+            double q = ACCELERATION_SIGMA * ACCELERATION_SIGMA;
+            double dt2 = dt * dt;
+            p00 += dt * (2 * p01 + dt * p11) + q * dt2 * dt2 / 4;
+            p01 += dt * p11 + q * dt2 * dt / 2;
+            p11 += q * dt2;
+        }
+
+        void restore() {
+            position = savedPosition;
+            p00 = savedP00;
+            p01 = savedP01;
+            p11 = savedP11;
+        }
+
+        // Squared innovation in standard deviations
+        double surprise(double measured, double variance) {
+            double innovation = measured - position;
+            return innovation * innovation / (p00 + variance);
+        }
+
+        void correct(double measured, double variance) {
+            double s = p00 + variance;
+            double k0 = p00 / s;
+            double k1 = p01 / s;
+            double innovation = measured - position;
+            position += k0 * innovation;
+            velocity += k1 * innovation;
+            p11 -= k1 * p01;
+            p01 -= k0 * p01;
+            p00 -= k0 * p00;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.ntumap;
+
+/**
+ * Immutable row of a list shown by {@link ItemListAdapter}. A changed row is
+ * a new instance with the same id, so the adapter's diff can tell an edit
+ * from an insertion by comparing ids first and then equals.
+ */
+public interface ListItem {
+
+    // Stable across versions of the same row
+    long getItemId();
+
+    // Text shown for the row; implementations build it once per instance
+    String getLabel();
+
+    // ARGB text colour
+    int getTextColor();
+}
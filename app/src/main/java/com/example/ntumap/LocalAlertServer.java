@@ -0,0 +1,117 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-process stand-in for the alert backend, readable both by polling and
+ * as a push feed. Only the latest revision of each alert is kept, so the
+ * log stays as small as the set of alerts ever published; republishing a
+ * revision the server already has is ignored. Pushed batches are delivered
+ * in publication order on a thread of their own, so publishers never wait
+ * for the listener. An optional delay simulates the network round trip of
+ * a poll.
+ */
+public class LocalAlertServer implements AlertServer, AlertFeed {
+
+    // Latest revision of every alert by sequence number
+    private final TreeMap<Long, EmergencyAlert> log = new TreeMap<>();
+    private final Map<Long, Long> sequenceOf = new HashMap<>();
+    private final long latencyMillis;
+    private long nextSequence = 1;
+    private ExecutorService delivery;
+    private Listener listener;
+
+    public LocalAlertServer(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void publish(EmergencyAlert alert) {
+        publish(Collections.singletonList(alert));
+    }
+
+    /** Publishes the revisions together; a push listener receives them as one batch. */
+    public synchronized void publish(Collection<EmergencyAlert> alerts) {
+        List<EmergencyAlert> published = new ArrayList<>();
+        for (EmergencyAlert alert : alerts) {
+            Long previous = sequenceOf.get(alert.getId());
+            if (previous != null) {
+                if (log.get(previous).getRevision() >= alert.getRevision()) {
+                    continue;
+                }
+                log.remove(previous);
+            }
+            long sequence = nextSequence++;
+            log.put(sequence, alert);
+            sequenceOf.put(alert.getId(), sequence);
+            published.add(alert);
+        }
+        if (listener != null && !published.isEmpty()) {
+            deliver(listener, published);
+        }
+    }
+
+    @Override
+    public Page poll(long cursor, int limit) throws IOException {
+        simulateLatency();
+        synchronized (this) {
+            List<EmergencyAlert> alerts = new ArrayList<>();
+            long last = cursor;
+            for (Map.Entry<Long, EmergencyAlert> entry : log.tailMap(cursor, false).entrySet()) {
+                if (alerts.size() == limit) {
+                    break;
+                }
+                alerts.add(entry.getValue());
+                last = entry.getKey();
+            }
+            return new Page(alerts, last);
+        }
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (delivery != null) {
+            return;
+        }
+        this.listener = listener;
+        delivery = Executors.newSingleThreadExecutor(task -> new Thread(task, "alert-push"));
+        if (!log.isEmpty()) {
+            deliver(listener, new ArrayList<>(log.values()));
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (delivery != null) {
+            delivery.shutdownNow();
+            delivery = null;
+            listener = null;
+        }
+    }
+
+    private void deliver(Listener listener, List<EmergencyAlert> batch) {
+        List<EmergencyAlert> alerts = Collections.unmodifiableList(batch);
+        delivery.execute(() -> listener.onAlerts(alerts));
+    }
+
+    private void simulateLatency() throws IOException {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Alert poll cancelled");
+        }
+    }
+}
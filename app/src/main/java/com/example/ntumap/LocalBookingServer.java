@@ -0,0 +1,78 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-process stand-in for the booking backend. Each room's schedule sits in
+ * an atomic slot and every change is a single compare-and-set, so
+ * concurrent clients race exactly as they would against a real server.
+ * An optional delay simulates the network round trip.
+ */
+public class LocalBookingServer implements BookingServer {
+
+    private final AtomicReferenceArray<RoomSchedule> schedules;
+    private final AtomicLong nextBookingId = new AtomicLong(1);
+    private final long latencyMillis;
+
+    public LocalBookingServer(int roomCount, long latencyMillis) {
+        schedules = new AtomicReferenceArray<>(roomCount);
+        for (int room = 0; room < roomCount; room++) {
+            schedules.set(room, RoomSchedule.EMPTY);
+        }
+        this.latencyMillis = latencyMillis;
+    }
+
+    @Override
+    public RoomSchedule fetch(int room) throws IOException {
+        simulateLatency();
+        return schedules.get(room);
+    }
+
+    @Override
+    public Response book(int room, long expectedVersion, long start, long end) throws IOException {
+        simulateLatency();
+        RoomSchedule current = schedules.get(room);
+        if (current.getVersion() != expectedVersion) {
+            return new Response(Status.STALE, current, 0);
+        }
+        if (!current.isFree(start, end)) {
+            return new Response(Status.CONFLICT, current, 0);
+        }
+        long bookingId = nextBookingId.getAndIncrement();
+        RoomSchedule next = current.withReservation(bookingId, start, end);
+        if (!schedules.compareAndSet(room, current, next)) {
+            // Another client got in between the version check and the write
+            return new Response(Status.STALE, schedules.get(room), 0);
+        }
+        return new Response(Status.OK, next, bookingId);
+    }
+
+    @Override
+    public Response cancel(int room, long expectedVersion, long bookingId) throws IOException {
+        simulateLatency();
+        RoomSchedule current = schedules.get(room);
+        if (current.getVersion() != expectedVersion) {
+            return new Response(Status.STALE, current, 0);
+        }
+        RoomSchedule next = current.withoutReservation(bookingId);
+        if (next != current && !schedules.compareAndSet(room, current, next)) {
+            return new Response(Status.STALE, schedules.get(room), 0);
+        }
+        return new Response(Status.OK, next, bookingId);
+    }
+
+    private void simulateLatency() throws IOException {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Booking request cancelled");
+        }
+    }
+}
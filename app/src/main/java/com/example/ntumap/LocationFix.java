@@ -0,0 +1,30 @@
+package com.example.ntumap;
+
+/**
+ * One raw position reported by the platform or read from a recorded trace.
+ */
+public final class LocationFix {
+
+    private final double latitude;
+    private final double longitude;
+    private final float accuracyMeters;
+    private final long timeMillis;
+
+    public LocationFix(double latitude, double longitude, float accuracyMeters, long timeMillis) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.accuracyMeters = accuracyMeters;
+        this.timeMillis = timeMillis;
+    }
+
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+    // Radius of 68% confidence, as android.location.Location reports it
+    public float getAccuracyMeters() { return accuracyMeters; }
+    public long getTimeMillis() { return timeMillis; }
+
+    @Override
+    public String toString() {
+        return timeMillis + "," + latitude + "," + longitude + "," + accuracyMeters;
+    }
+}
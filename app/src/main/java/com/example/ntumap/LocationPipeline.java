@@ -0,0 +1,166 @@
+package com.example.ntumap;
+
+/**
+ * Turns raw location fixes into walker positions on the campus walkways.
+ *
+ * Each fix goes through a {@link KalmanLocationFilter}, and the smoothed
+ * estimate is snapped to the nearest walkway found through a
+ * {@link WalkwayIndex}. A walkway that does not touch the one matched last
+ * has to be {@link #SWITCH_PENALTY_METERS} closer to win, so positions do
+ * not jump across to a parallel path on one noisy fix. Far from any
+ * walkway the smoothed estimate is used as it is.
+ *
+ * Positions are passed on only once the smoothed estimate has moved by
+ * the given distance, and by more than its own uncertainty, since the last
+ * one, or the walker has stepped on or off the walkways. While the filter
+ * reckons the walker is standing still, the drift has to add up to three
+ * times that. A walker waiting outside a lecture theatre costs the
+ * listener next to nothing however often fixes arrive. Not thread-safe:
+ * feed it from one thread.
+ */
+public class LocationPipeline {
+
+    /** Receives positions on the thread that feeds the fixes. */
+    public interface Listener {
+        void onPosition(Position position);
+    }
+
+    // Walkways are looked for this far away, or twice the estimate's uncertainty if that is more
+    static final double MATCH_RADIUS_METERS = 15;
+    private static final double MAX_MATCH_RADIUS_METERS = 50;
+    static final double SWITCH_PENALTY_METERS = 5;
+    // Estimated speeds below this, m/s, are more likely noise around someone standing than walking
+    static final double STANDING_SPEED = 0.8;
+    private static final double STANDING_DRIFT = 3;
+
+    private final WalkwayIndex index;
+    private final double minMoveMeters;
+    private final Listener listener;
+    private final KalmanLocationFilter filter = new KalmanLocationFilter();
+    private final WalkwayIndex.Visitor matcher = this::consider;
+    private Position last;
+    // Smoothed estimate behind the last position, before snapping
+    private double lastSmoothedLat;
+    private double lastSmoothedLng;
+    private int lastSegment = -1;
+
+    // Best candidate of the current match
+    private int bestSegment;
+    private double bestScore;
+    private double bestFraction;
+
+    public LocationPipeline(WalkwayIndex index, double minMoveMeters, Listener listener) {
+        this.index = index;
+        this.minMoveMeters = minMoveMeters;
+        this.listener = listener;
+    }
+
+    // Latest position passed to the listener, or null
+    public Position getLastPosition() {
+        return last;
+    }
+
+    public void reset() {
+        filter.reset();
+        last = null;
+        lastSegment = -1;
+    }
+
+    public void onFix(LocationFix fix) {
+        if (!filter.update(fix)) {
+            return;
+        }
+        double lat = filter.getLatitude();
+        double lng = filter.getLongitude();
+        double smoothedLat = lat;
+        double smoothedLng = lng;
+        double radius = Math.min(MAX_MATCH_RADIUS_METERS, Math.max(MATCH_RADIUS_METERS, 2 * filter.getAccuracyMeters()));
+        bestSegment = -1;
+        bestScore = Double.MAX_VALUE;
+        index.forEachWithin(lat, lng, radius, matcher);
+
+        int node = -1;
+        if (bestSegment >= 0) {
+            lat = index.latitudeAt(bestSegment, bestFraction);
+            lng = index.longitudeAt(bestSegment, bestFraction);
+            node = bestFraction < 0.5 ? index.segmentFrom(bestSegment) : index.segmentTo(bestSegment);
+        }
+        lastSegment = bestSegment;
+
+        // Movement within the estimate's own uncertainty is more likely noise than walking, and so is
+        // drift while the filter thinks we are standing still, unless it adds up to a real distance
+        boolean onWalkway = bestSegment >= 0;
+        if (last != null && last.isOnWalkway() == onWalkway) {
+            double threshold = Math.max(minMoveMeters, filter.getAccuracyMeters());
+            // Measured before snapping: around a junction snapping flips between walkways on its own
+            double moved = GeoUtils.haversine(lastSmoothedLat, lastSmoothedLng, smoothedLat, smoothedLng);
+            boolean standing = filter.getSpeedMetersPerSecond() < STANDING_SPEED;
+            if (moved < threshold || (standing && moved < STANDING_DRIFT * threshold)) {
+                return;
+            }
+        }
+        lastSmoothedLat = smoothedLat;
+        lastSmoothedLng = smoothedLng;
+        last = new Position(lat, lng, filter.getAccuracyMeters(), filter.getSpeedMetersPerSecond(),
+                filter.getBearingDegrees(), filter.getTimeMillis(), bestSegment, node);
+        listener.onPosition(last);
+    }
+
+    private void consider(int segment, double distanceMeters, double fraction) {
+        double score = distanceMeters;
+        if (lastSegment >= 0 && !touches(segment, lastSegment)) {
+            score += SWITCH_PENALTY_METERS;
+        }
+        if (score < bestScore) {
+            bestScore = score;
+            bestSegment = segment;
+            bestFraction = fraction;
+        }
+    }
+
+    private boolean touches(int a, int b) {
+        int a0 = index.segmentFrom(a), a1 = index.segmentTo(a);
+        int b0 = index.segmentFrom(b), b1 = index.segmentTo(b);
+        return a0 == b0 || a0 == b1 || a1 == b0 || a1 == b1;
+    }
+
+    public static final class Position {
+        private final double latitude;
+        private final double longitude;
+        private final double accuracyMeters;
+        private final double speedMetersPerSecond;
+        private final double bearingDegrees;
+        private final long timeMillis;
+        private final int segment;
+        private final int node;
+
+        Position(double latitude, double longitude, double accuracyMeters, double speedMetersPerSecond,
+                 double bearingDegrees, long timeMillis, int segment, int node) {
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.accuracyMeters = accuracyMeters;
+            this.speedMetersPerSecond = speedMetersPerSecond;
+            this.bearingDegrees = bearingDegrees;
+            this.timeMillis = timeMillis;
+            this.segment = segment;
+            this.node = node;
+        }
+
+        public double getLatitude() { return latitude; }
+        public double getLongitude() { return longitude; }
+        // One standard deviation of the smoothed estimate
+        public double getAccuracyMeters() { return accuracyMeters; }
+        public double getSpeedMetersPerSecond() { return speedMetersPerSecond; }
+        // Degrees clockwise from north
+        public double getBearingDegrees() { return bearingDegrees; }
+        public long getTimeMillis() { return timeMillis; }
+        // WalkwayIndex segment walked on, or -1 off the walkways
+        public int getSegment() { return segment; }
+        // Nearer end of that segment as a graph node, or -1
+        public int getNode() { return node; }
+
+        public boolean isOnWalkway() {
+            return segment >= 0;
+        }
+    }
+}
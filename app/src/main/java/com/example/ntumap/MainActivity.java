@@ -5,9 +5,14 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.ArrayAdapter;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageButton;
+import android.widget.ListPopupWindow;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -24,10 +29,15 @@ import com.google.android.gms.location.LocationServices;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
+import com.google.android.gms.maps.model.CameraPosition;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.LatLngBounds;
 import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.TileOverlay;
+import com.google.android.gms.maps.model.TileOverlayOptions;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -37,6 +47,16 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
     
     private static final int LOCATION_PERMISSION_REQUEST_CODE = 1001;
     private static final int BLUETOOTH_PERMISSION_REQUEST_CODE = 1002;
+    private static final int NEARBY_SUGGESTION_COUNT = 5;
+    private static final int SEARCH_SUGGESTION_COUNT = 5;
+    private static final int CLUSTER_CELL_SIZE_PX = 64;
+    // "All" plus the room types at the top of the filter dialog
+    private static final int FILTER_TYPE_OPTIONS = 6;
+    // Changed heatmap tiles are redrawn at most this often
+    private static final long HEATMAP_REFRESH_MILLIS = 3000;
+    private static final float HEATMAP_TRANSPARENCY = 0.3f;
+    private static final long AI_PROCESSING_MILLIS = 2000;
+    private static final String ROOM_SNIPPET = "Tap for details and navigation";
     
     // UI Components
     private EditText searchEditText;
@@ -47,13 +67,47 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
     private ImageButton filterButton;
     private TextView campusName;
     
+    // Search-as-you-type suggestions under the search bar
+    private ListPopupWindow suggestionPopup;
+    private ArrayAdapter<String> suggestionAdapter;
+    private final List<String> suggestionNames = new ArrayList<>();
+    private boolean ignoreSearchTextChange;
+    
     // Google Maps
     private GoogleMap mMap;
     private FusedLocationProviderClient fusedLocationClient;
     
-    // Occupancy data (simulated for demo)
-    private Map<String, RoomOccupancy> roomOccupancyMap;
-    private Map<Marker, String> markerToRoomMap;
+    // Background work of this screen, cancelled when it is destroyed
+    private TaskScheduler.Scope tasks;
+    
+    // Start-up work scheduled around the first frame
+    private StartupOrchestrator startup;
+    private StartupTimings startupTimings;
+    private volatile boolean showOnboarding;
+    private boolean started;
+    
+    // Occupancy data (simulated for demo), empty until the campus pack has been read
+    private Map<String, RoomOccupancy> roomOccupancyMap = new HashMap<>();
+    private OccupancyPipeline occupancyPipeline;
+    private OccupancyFeed occupancyFeed;
+    
+    // Occupancy heatmap; points are keyed by room name
+    private final HeatmapTileProvider heatmap = new HeatmapTileProvider();
+    private final Map<String, Integer> heatmapPoints = new HashMap<>();
+    // POIs of the tracked rooms, which key their markers
+    private final Map<String, Poi> roomPois = new HashMap<>();
+    private TileOverlay heatmapOverlay;
+    private boolean heatmapRefreshPending;
+    
+    // RoomTable rows of the tracked rooms, which key their occupancy history
+    private final Map<String, Integer> historyRows = new HashMap<>();
+    
+    // Room markers, kept in sync with the viewport, zoom and filters
+    private MarkerManager<Marker> markerManager;
+    private final MarkerClusterer markerClusterer = new MarkerClusterer(CLUSTER_CELL_SIZE_PX);
+    private RoomBitmap visibleRoomPois; // null shows every room
+    private Poi highlightedRoom;
+    private boolean showHighlightOnIdle;
     
     // NTU Clifton Campus coordinates
     private static final LatLng NTU_CLIFTON = new LatLng(52.9068, -1.1878);
@@ -63,31 +117,59 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         super.onCreate(savedInstanceState);
         EdgeToEdge.enable(this);
         setContentView(R.layout.activity_main);
+        tasks = NtuMapApplication.tasksFor(this);
         
-        // Check if this is the first launch
-        checkFirstLaunch();
-        
-        // Initialize UI components
+        // Only what the first map frame needs runs here; the rest is scheduled below
         initializeViews();
         setupClickListeners();
-        
-        // Initialize location services
-        fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
-        
-        // Initialize occupancy data
-        initializeOccupancyData();
-        
-        // Setup map
         setupMap();
         
-        // Request permissions
-        requestPermissions();
-        
         ViewCompat.setOnApplyWindowInsetsListener(findViewById(R.id.main), (v, insets) -> {
             Insets systemBars = insets.getInsets(WindowInsetsCompat.Type.systemBars());
             v.setPadding(systemBars.left, systemBars.top, systemBars.right, systemBars.bottom);
             return insets;
         });
+        
+        scheduleStartupTasks();
+    }
+    
+    private void scheduleStartupTasks() {
+        NtuMapApplication app = (NtuMapApplication) getApplication();
+        startupTimings = app.getStartupTimings();
+        startup = new StartupOrchestrator(ContextCompat.getMainExecutor(this),
+                app.getTaskScheduler().executor(TaskScheduler.BACKGROUND), startupTimings);
+        
+        // Campus pack sections are checksummed on first use, so touch them off the main thread
+        startup.add("campusPack", StartupOrchestrator.BACKGROUND, () -> {
+            CampusData.getPoiIndex();
+            CampusData.getRooms();
+        });
+        startup.add("occupancy", StartupOrchestrator.MAIN, this::initializeOccupancyData, "campusPack");
+        
+        // First launch check reads shared preferences from disk
+        startup.add("firstLaunch", StartupOrchestrator.BACKGROUND, this::checkFirstLaunch);
+        startup.add("onboarding", StartupOrchestrator.MAIN, this::showOnboardingIfNeeded, "firstLaunch");
+        
+        // Nothing on screen needs these before the first frame
+        startup.add("permissions", StartupOrchestrator.AFTER_FIRST_FRAME, this::requestPermissions);
+        startup.add("location", StartupOrchestrator.AFTER_FIRST_FRAME, () ->
+                fusedLocationClient = LocationServices.getFusedLocationProviderClient(this));
+        startup.add("searchIndex", StartupOrchestrator.BACKGROUND | StartupOrchestrator.AFTER_FIRST_FRAME,
+                CampusData::getSearchIndex, "campusPack");
+        startup.add("routeIndex", StartupOrchestrator.BACKGROUND | StartupOrchestrator.AFTER_FIRST_FRAME,
+                () -> CampusData.getRouteIndex(getAssets()::open), "campusPack");
+        
+        FirstDrawListener.register(getWindow().getDecorView(), () -> {
+            startupTimings.mark(StartupTimings.FIRST_FRAME, SystemClock.uptimeMillis());
+            startup.onFirstFrame();
+        });
+        startup.start();
+    }
+    
+    @Override
+    protected void onDestroy() {
+        startup.cancel();
+        super.onDestroy();
     }
     
     private void checkFirstLaunch() {
@@ -95,15 +177,19 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         boolean isFirstLaunch = preferences.getBoolean("is_first_launch", true);
         
         if (isFirstLaunch) {
-            // Show onboarding
-            Intent intent = new Intent(this, OnboardingActivity.class);
-            startActivity(intent);
-            
             // Mark as not first launch
             SharedPreferences.Editor editor = preferences.edit();
             editor.putBoolean("is_first_launch", false);
             editor.apply();
         }
+        showOnboarding = isFirstLaunch;
+    }
+    
+    private void showOnboardingIfNeeded() {
+        if (showOnboarding) {
+            Intent intent = new Intent(this, OnboardingActivity.class);
+            startActivity(intent);
+        }
     }
     
     private void initializeViews() {
@@ -155,26 +241,135 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         searchEditText.setOnEditorActionListener((v, actionId, event) -> {
             String query = searchEditText.getText().toString();
             if (!query.isEmpty()) {
+                suggestionPopup.dismiss();
                 searchLocation(query);
             }
             return true;
         });
+        
+        // Search as you type
+        suggestionAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, suggestionNames);
+        suggestionPopup = new ListPopupWindow(this);
+        suggestionPopup.setAnchorView(searchEditText);
+        suggestionPopup.setAdapter(suggestionAdapter);
+        suggestionPopup.setOnItemClickListener((parent, view, position, id) -> {
+            String selectedRoom = suggestionNames.get(position);
+            suggestionPopup.dismiss();
+            ignoreSearchTextChange = true;
+            searchEditText.setText(selectedRoom);
+            ignoreSearchTextChange = false;
+            searchLocation(selectedRoom);
+        });
+        searchEditText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                if (!ignoreSearchTextChange) {
+                    updateSearchSuggestions(s.toString());
+                }
+            }
+        });
+    }
+    
+    private void updateSearchSuggestions(String query) {
+        suggestionNames.clear();
+        for (SearchIndex.Match match : CampusData.getSearchIndex().search(query, SEARCH_SUGGESTION_COUNT)) {
+            suggestionNames.add(match.getName());
+        }
+        suggestionAdapter.notifyDataSetChanged();
+        
+        if (suggestionNames.isEmpty()) {
+            suggestionPopup.dismiss();
+        } else if (!suggestionPopup.isShowing()) {
+            suggestionPopup.show();
+        }
     }
     
     private void initializeOccupancyData() {
-        roomOccupancyMap = new HashMap<>();
-        markerToRoomMap = new HashMap<>();
-        
-        // Simulate real-time occupancy data for NTU buildings
-        roomOccupancyMap.put("Room A", new RoomOccupancy("Room A", 12, 20, "Lecture Hall"));
-        roomOccupancyMap.put("Room B", new RoomOccupancy("Room B", 3, 15, "Study Room"));
-        roomOccupancyMap.put("Library", new RoomOccupancy("Library", 45, 100, "Study Space"));
-        roomOccupancyMap.put("Computer Lab", new RoomOccupancy("Computer Lab", 8, 25, "Lab"));
-        roomOccupancyMap.put("Cafeteria", new RoomOccupancy("Cafeteria", 67, 80, "Dining"));
-        roomOccupancyMap.put("Gym", new RoomOccupancy("Gym", 12, 30, "Recreation"));
-        
-        // Update occupancy display
-        updateOccupancyDisplay();
+
+        // Rooms with live head counts and their opening counts come from the campus pack
+        RoomTable rooms = CampusData.getRooms();
+        for (int room = 0; room < rooms.size(); room++) {
+            if (rooms.hasFlag(room, RoomTable.TRACKED)) {
+                String name = rooms.getName(room);
+                roomOccupancyMap.put(name, new RoomOccupancy(name, rooms.getInitialOccupancy(room),
+                        rooms.getCapacity(room), rooms.getType(room)));
+                historyRows.put(name, room);
+            }
+        }
+        
+        // Stream live deltas on top of the initial counts; the display updates at most once per frame
+        OccupancyStore occupancyStore = CampusData.getOccupancyStore();
+        for (RoomOccupancy occupancy : roomOccupancyMap.values()) {
+            if (occupancyStore.contains(occupancy.getName())) {
+                // Already live from an earlier launch of this screen
+                roomOccupancyMap.put(occupancy.getName(), new RoomOccupancy(occupancy.getName(),
+                        occupancyStore.get(occupancy.getName()), occupancy.getMaxCapacity(), occupancy.getRoomType()));
+            } else {
+                occupancyStore.set(occupancy.getName(), occupancy.getCurrentOccupancy());
+            }
+        }
+        
+        // Rooms with a marker also glow on the heatmap, brighter the fuller they are
+        for (int room = 0; room < rooms.size(); room++) {
+            RoomOccupancy occupancy = roomOccupancyMap.get(rooms.getName(room));
+            if (occupancy != null && rooms.getPoiId(room) >= 0) {
+                Poi poi = CampusData.getPoi(rooms.getPoiId(room));
+                roomPois.put(occupancy.getName(), poi);
+                heatmapPoints.put(occupancy.getName(), heatmap.getTiles().addPoint(poi.getLatitude(),
+                        poi.getLongitude(), occupancy.getOccupancyPercentage() / 100));
+            }
+        }
+        scheduleHeatmapRefresh();
+        Map<String, Integer> counts = new HashMap<>();
+        for (RoomOccupancy occupancy : roomOccupancyMap.values()) {
+            counts.put(occupancy.getName(), occupancy.getCurrentOccupancy());
+        }
+        recordHistory(counts);
+        
+        occupancyPipeline = new OccupancyPipeline(occupancyStore, new ChoreographerFrameScheduler(),
+                this::updateOccupancyDisplay);
+        occupancyFeed = new ReplayOccupancyFeed(getAssets()::open, CampusData.OCCUPANCY_REPLAY_ASSET, 1.0, true);
+        if (started) {
+            occupancyFeed.start(occupancyPipeline);
+        }
+        refreshRoomMarkers();
+    }
+    
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        if (occupancyFeed != null) {
+            occupancyFeed.start(occupancyPipeline);
+        }
+    }
+    
+    @Override
+    protected void onStop() {
+        started = false;
+        if (occupancyFeed != null) {
+            occupancyFeed.stop();
+        }
+        
+        // The process may be killed while in the background, so write out what has been recorded
+        long now = System.currentTimeMillis();
+        NtuMapApplication app = (NtuMapApplication) getApplication();
+        app.getTaskScheduler().executor(TaskScheduler.BACKGROUND).execute(() -> {
+            try {
+                OccupancyHistory history = app.getOccupancyHistory();
+                history.advanceTo(now);
+                history.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+        super.onStop();
     }
     
     private void setupMap() {
@@ -189,9 +384,21 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
     public void onMapReady(GoogleMap googleMap) {
         mMap = googleMap;
         
+        // Time to first map frame, the screen's real first useful frame
+        mMap.setOnMapLoadedCallback(() -> {
+            startupTimings.mark(StartupTimings.FIRST_MAP_FRAME, SystemClock.uptimeMillis());
+            reportFullyDrawn();
+        });
+        
         // Set map type
         mMap.setMapType(GoogleMap.MAP_TYPE_NORMAL);
         
+        // Occupancy heatmap under the markers; tiles are rendered off the UI thread by the map
+        heatmapOverlay = mMap.addTileOverlay(new TileOverlayOptions()
+                .tileProvider(heatmap)
+                .transparency(HEATMAP_TRANSPARENCY)
+                .fadeIn(false));
+        
         // Add NTU Clifton campus marker
         mMap.addMarker(new MarkerOptions()
                 .position(NTU_CLIFTON)
@@ -207,44 +414,103 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
             mMap.setMyLocationEnabled(true);
         }
         
-        // Add room markers with occupancy data
-        addRoomMarkers();
+        // Add room markers with occupancy data, re-clustered whenever the camera settles
+        markerManager = new MarkerManager<>(new MarkerManager.Renderer<Marker>() {
+            @Override
+            public Marker add(MarkerSpec spec) {
+                Marker marker = mMap.addMarker(new MarkerOptions()
+                        .position(new LatLng(spec.getLatitude(), spec.getLongitude()))
+                        .title(spec.getTitle())
+                        .snippet(spec.getSnippet()));
+                if (marker != null) {
+                    marker.setTag(spec.getKey());
+                }
+                return marker;
+            }
+
+            @Override
+            public void update(Marker marker, MarkerSpec spec) {
+                marker.setPosition(new LatLng(spec.getLatitude(), spec.getLongitude()));
+                marker.setTitle(spec.getTitle());
+                marker.setSnippet(spec.getSnippet());
+            }
+
+            @Override
+            public void remove(Marker marker) {
+                marker.remove();
+            }
+        });
+        mMap.setOnCameraIdleListener(this::refreshRoomMarkers);
         
         // Set marker click listener for navigation
         mMap.setOnMarkerClickListener(marker -> {
-            String roomName = markerToRoomMap.get(marker);
-            if (roomName != null) {
-                showRoomDetails(roomName);
-                return true; // Consume the event
+            MarkerSpec spec = marker.getTag() instanceof String
+                    ? markerManager.getSpec((String) marker.getTag()) : null;
+            if (spec == null) {
+                return false; // Let default behavior handle it
+            }
+            if (spec.isCluster()) {
+                // Zoom in far enough to split the cluster
+                mMap.animateCamera(com.google.android.gms.maps.CameraUpdateFactory.newLatLngZoom(
+                    marker.getPosition(), mMap.getCameraPosition().zoom + 2));
+            } else {
+                showRoomDetails(spec.getMembers().get(0).getName());
             }
-            return false; // Let default behavior handle it
+            return true; // Consume the event
         });
     }
     
-    private void addRoomMarkers() {
-        // Add markers for different buildings/rooms on campus with larger tap areas
-        LatLng[] roomLocations = {
-            new LatLng(52.9068, -1.1878), // Main building
-            new LatLng(52.9070, -1.1880), // Library
-            new LatLng(52.9066, -1.1876), // Computer lab
-            new LatLng(52.9072, -1.1882), // Cafeteria
-            new LatLng(52.9064, -1.1874), // Gym
-        };
-        
-        String[] roomNames = {"Main Building", "Library", "Computer Lab", "Cafeteria", "Gym"};
-        
-        for (int i = 0; i < roomLocations.length; i++) {
-            Marker marker = mMap.addMarker(new MarkerOptions()
-                    .position(roomLocations[i])
-                    .title(roomNames[i])
-                    .snippet("Tap for details and navigation"));
-            
+    private void refreshRoomMarkers() {
+        if (mMap == null || markerManager == null) {
+            return;
+        }
+        CameraPosition camera = mMap.getCameraPosition();
+        LatLngBounds bounds = mMap.getProjection().getVisibleRegion().latLngBounds;
+        
+        // Pad the viewport by half a screen so short pans don't pop markers in
+        double latPad = (bounds.northeast.latitude - bounds.southwest.latitude) / 2;
+        double lngPad = (bounds.northeast.longitude - bounds.southwest.longitude) / 2;
+        List<Poi> rooms = new ArrayList<>();
+        for (Poi room : CampusData.getPoiIndex().inBounds(
+                bounds.southwest.latitude - latPad, bounds.southwest.longitude - lngPad,
+                bounds.northeast.latitude + latPad, bounds.northeast.longitude + lngPad,
+                Poi.Category.ROOM.mask())) {
+            if (isRoomVisible(room)) {
+                rooms.add(room);
+            }
+        }
+        markerManager.apply(markerClusterer.cluster(rooms, camera.zoom, this::roomMarkerTitle, ROOM_SNIPPET));
+        
+        if (showHighlightOnIdle && highlightedRoom != null) {
+            Marker marker = markerManager.getMarker(MarkerSpec.keyFor(highlightedRoom));
             if (marker != null) {
-                markerToRoomMap.put(marker, roomNames[i]);
+                marker.showInfoWindow();
+                showHighlightOnIdle = false;
             }
         }
     }
     
+    private String roomMarkerTitle(Poi room) {
+        if (isHighlighted(room)) {
+            return "📍 " + room.getName() + " (Found!)";
+        }
+        RoomOccupancy occupancy = roomOccupancyMap.get(room.getName());
+        if (occupancy != null) {
+            return String.format("%s (%d/%d)", room.getName(),
+                    occupancy.getCurrentOccupancy(), occupancy.getMaxCapacity());
+        }
+        return room.getName();
+    }
+    
+    private boolean isRoomVisible(Poi room) {
+        return visibleRoomPois == null || isHighlighted(room) || visibleRoomPois.contains(room.getId());
+    }
+    
+    // POIs are created per query, so compare by id
+    private boolean isHighlighted(Poi room) {
+        return highlightedRoom != null && room.getId() == highlightedRoom.getId();
+    }
+    
     private void showRoomDetails(String roomName) {
         // Show room details and navigation options
         RoomOccupancy occupancy = roomOccupancyMap.get(roomName);
@@ -301,30 +567,28 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         // Highlight matching markers on the map
         if (mMap != null) {
             // Clear previous highlights
-            mMap.clear();
+            highlightedRoom = null;
+            showHighlightOnIdle = false;
             
-            // Re-add all markers
-            addRoomMarkers();
-            
-            // Find and highlight matching markers
-            for (Map.Entry<Marker, String> entry : markerToRoomMap.entrySet()) {
-                Marker marker = entry.getKey();
-                String roomName = entry.getValue();
+            // Find and highlight the best matching room
+            List<SearchIndex.Match> matches = CampusData.getSearchIndex().search(query, 1);
+            if (!matches.isEmpty()) {
+                Poi room = CampusData.getPoi(matches.get(0).getId());
                 
-                if (roomName.toLowerCase().contains(query.toLowerCase())) {
-                    // Highlight the matching marker
-                    marker.setTitle("📍 " + roomName + " (Found!)");
-                    marker.showInfoWindow();
-                    
-                    // Move camera to the found location
-                    mMap.animateCamera(com.google.android.gms.maps.CameraUpdateFactory.newLatLngZoom(
-                        marker.getPosition(), 17));
-                    
-                    // Show room details
-                    showRoomDetails(roomName);
-                    return;
-                }
+                // Highlight the matching marker; its info window opens once the camera settles
+                highlightedRoom = room;
+                showHighlightOnIdle = true;
+                refreshRoomMarkers();
+                
+                // Move camera to the found location
+                mMap.animateCamera(com.google.android.gms.maps.CameraUpdateFactory.newLatLngZoom(
+                    new LatLng(room.getLatitude(), room.getLongitude()), 17));
+                
+                // Show room details
+                showRoomDetails(room.getName());
+                return;
             }
+            refreshRoomMarkers();
             
             // If no exact match found, show suggestions
             showSearchSuggestions(query);
@@ -334,16 +598,25 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
     private void showSearchSuggestions(String query) {
         List<String> suggestions = new ArrayList<>();
         
-        for (String roomName : roomOccupancyMap.keySet()) {
-            if (roomName.toLowerCase().contains(query.toLowerCase())) {
-                suggestions.add(roomName);
+        for (SearchIndex.Match match : CampusData.getSearchIndex().search(query, SEARCH_SUGGESTION_COUNT)) {
+            suggestions.add(match.getName());
+        }
+        
+        // Nothing matched by name: offer the rooms closest to the map centre instead
+        String title = "Search Results";
+        if (suggestions.isEmpty() && mMap != null) {
+            LatLng center = mMap.getCameraPosition().target;
+            for (Poi room : CampusData.getPoiIndex().nearest(center.latitude, center.longitude,
+                    NEARBY_SUGGESTION_COUNT, Poi.Category.ROOM.mask())) {
+                suggestions.add(room.getName());
             }
+            title = "No match for \"" + query + "\". Nearby rooms";
         }
         
         if (!suggestions.isEmpty()) {
             String[] suggestionArray = suggestions.toArray(new String[0]);
             new androidx.appcompat.app.AlertDialog.Builder(this)
-                .setTitle("Search Results")
+                .setTitle(title)
                 .setItems(suggestionArray, (dialog, which) -> {
                     String selectedRoom = suggestionArray[which];
                     searchEditText.setText(selectedRoom);
@@ -360,101 +633,171 @@ public class MainActivity extends AppCompatActivity implements OnMapReadyCallbac
         // TODO: Integrate with OpenAI API for intelligent navigation
         Toast.makeText(this, "AI analyzing best route to: " + query, Toast.LENGTH_SHORT).show();
         
-        // Simulate AI processing
-        new Thread(() -> {
-            try {
-                Thread.sleep(2000); // Simulate AI processing time
-                runOnUiThread(() -> {
-                    // Show AI-powered route
-                    Intent intent = new Intent(MainActivity.this, NavigationActivity.class);
-                    intent.putExtra("destination", query);
-                    intent.putExtra("ai_route", true);
-                    startActivity(intent);
-                });
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }).start();
+        // Simulate AI processing; nothing is delivered if the screen has gone
+        tasks.submitDelayed(TaskScheduler.INTERACTIVE, AI_PROCESSING_MILLIS, () -> query, destination -> {
+            // Show AI-powered route
+            Intent intent = new Intent(MainActivity.this, NavigationActivity.class);
+            intent.putExtra("destination", destination);
+            intent.putExtra("ai_route", true);
+            startActivity(intent);
+        });
     }
     
     private void showFilterDialog() {
-        // Implement filter dialog for room types
-        String[] roomTypes = {"All", "Lecture Hall", "Study Room", "Lab", "Dining", "Recreation"};
-        boolean[] checkedItems = {true, false, false, false, false, false};
+        // Room types first, then criteria that combine with whichever types are chosen
+        String[] options = {"All", "Lecture Hall", "Study Room", "Lab", "Dining", "Recreation",
+                "Step-free access", "Seats free now"};
+        boolean[] checkedItems = {true, false, false, false, false, false, false, false};
         
         new androidx.appcompat.app.AlertDialog.Builder(this)
-            .setTitle("Filter by Room Type")
-            .setMultiChoiceItems(roomTypes, checkedItems, (dialog, which, isChecked) -> {
+            .setTitle("Filter Rooms")
+            .setMultiChoiceItems(options, checkedItems, (dialog, which, isChecked) -> {
                 // Handle filter selection
                 if (which == 0) { // "All" option
-                    // If "All" is selected, uncheck others
+                    // If "All" is selected, uncheck other types
                     if (isChecked) {
-                        for (int i = 1; i < checkedItems.length; i++) {
+                        for (int i = 1; i < FILTER_TYPE_OPTIONS; i++) {
                             checkedItems[i] = false;
                         }
                     }
-                } else {
+                } else if (which < FILTER_TYPE_OPTIONS) {
                     // If specific type is selected, uncheck "All"
                     checkedItems[0] = false;
                 }
             })
             .setPositiveButton("Apply", (dialog, which) -> {
-                applyFilters(roomTypes, checkedItems);
+                applyFilters(options, checkedItems);
             })
             .setNegativeButton("Cancel", null)
             .show();
     }
     
-    private void applyFilters(String[] roomTypes, boolean[] checkedItems) {
+    private void applyFilters(String[] options, boolean[] checkedItems) {
         // Apply selected filters to the map
         if (mMap != null) {
-            mMap.clear();
-            
-            // Re-add markers based on filters
-            for (Map.Entry<Marker, String> entry : markerToRoomMap.entrySet()) {
-                Marker marker = entry.getKey();
-                String roomName = entry.getValue();
-                RoomOccupancy occupancy = roomOccupancyMap.get(roomName);
-                
-                if (occupancy != null) {
-                    boolean shouldShow = false;
-                    
-                    if (checkedItems[0]) { // "All" is selected
-                        shouldShow = true;
-                    } else {
-                        // Check if room type matches any selected filter
-                        for (int i = 1; i < checkedItems.length; i++) {
-                            if (checkedItems[i] && occupancy.getRoomType().equals(roomTypes[i])) {
-                                shouldShow = true;
-                                break;
-                            }
-                        }
-                    }
-                    
-                    if (shouldShow) {
-                        // Re-add the marker
-                        Marker newMarker = mMap.addMarker(new MarkerOptions()
-                                .position(marker.getPosition())
-                                .title(roomName)
-                                .snippet("Tap for details and navigation"));
-                        
-                        if (newMarker != null) {
-                            markerToRoomMap.put(newMarker, roomName);
-                        }
+            RoomQuery query = new RoomQuery();
+            boolean filtered = false;
+            if (!checkedItems[0]) {
+                List<String> types = new ArrayList<>();
+                for (int i = 1; i < FILTER_TYPE_OPTIONS; i++) {
+                    if (checkedItems[i]) {
+                        types.add(options[i]);
                     }
                 }
+                query.types(types.toArray(new String[0]));
+                filtered = true;
             }
+            if (checkedItems[FILTER_TYPE_OPTIONS]) {
+                query.withFlags(RoomTable.STEP_FREE);
+                filtered = true;
+            }
+            if (checkedItems[FILTER_TYPE_OPTIONS + 1]) {
+                query.minFreeSeats(1);
+                filtered = true;
+            }
+            visibleRoomPois = filtered ? findRoomPois(query) : null;
+            
+            // Only the markers whose visibility changed are touched
+            refreshRoomMarkers();
             
             Toast.makeText(this, "Filters applied successfully", Toast.LENGTH_SHORT).show();
         }
     }
     
-    private void updateOccupancyDisplay() {
-        // Update the visual occupancy indicators on the map
-        // This would update the colored overlays showing room availability
-        runOnUiThread(() -> {
-            // Update UI elements with real-time occupancy data
-            // TODO: Update map overlays with current occupancy
+    // POI ids of the rooms matching the query, using the head counts on screen
+    private RoomBitmap findRoomPois(RoomQuery query) {
+        RoomTable rooms = CampusData.getRooms();
+        RoomBitmap.Builder poiIds = new RoomBitmap.Builder();
+        try {
+            for (int room : CampusData.getRoomQueryEngine().find(query, row -> {
+                RoomOccupancy occupancy = roomOccupancyMap.get(rooms.getName(row));
+                return occupancy != null ? occupancy.getCurrentOccupancy() : rooms.getInitialOccupancy(row);
+            }, null)) {
+                if (rooms.getPoiId(room) >= 0) {
+                    poiIds.add(rooms.getPoiId(room));
+                }
+            }
+        } catch (IOException e) {
+            // Only time-window queries reach the booking server
+            e.printStackTrace();
+        }
+        return poiIds.build();
+    }
+    
+    private void updateOccupancyDisplay(Map<String, Integer> changedCounts) {
+        // Called on the UI thread with the rooms that changed since the last frame
+        boolean heatmapChanged = false;
+        for (Map.Entry<String, Integer> entry : changedCounts.entrySet()) {
+            RoomOccupancy previous = roomOccupancyMap.get(entry.getKey());
+            if (previous != null) {
+                RoomOccupancy current = new RoomOccupancy(previous.getName(),
+                        entry.getValue(), previous.getMaxCapacity(), previous.getRoomType());
+                roomOccupancyMap.put(entry.getKey(), current);
+                Integer point = heatmapPoints.get(entry.getKey());
+                if (point != null) {
+                    heatmapChanged |= heatmap.getTiles().setWeight(point, current.getOccupancyPercentage() / 100);
+                }
+            }
+        }
+        
+        // Only markers whose occupancy changed get new titles; clusters show no counts and are left alone
+        if (markerManager != null) {
+            for (String name : changedCounts.keySet()) {
+                Poi poi = roomPois.get(name);
+                MarkerSpec spec = poi != null ? markerManager.getSpec(MarkerSpec.keyFor(poi)) : null;
+                if (spec != null) {
+                    markerManager.update(MarkerSpec.forPoi(poi, roomMarkerTitle(poi), spec.getSnippet()));
+                }
+            }
+        }
+        if (heatmapChanged) {
+            scheduleHeatmapRefresh();
+        }
+        recordHistory(changedCounts);
+    }
+    
+    // Appends head counts to the occupancy history; runs on the shared scheduler so it outlives this screen
+    private void recordHistory(Map<String, Integer> counts) {
+        int[] rows = new int[counts.size()];
+        int[] values = new int[counts.size()];
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            Integer row = historyRows.get(entry.getKey());
+            if (row != null) {
+                rows[size] = row;
+                values[size] = entry.getValue();
+                size++;
+            }
+        }
+        if (size == 0) {
+            return;
+        }
+        int recorded = size;
+        long now = System.currentTimeMillis();
+        NtuMapApplication app = (NtuMapApplication) getApplication();
+        app.getTaskScheduler().executor(TaskScheduler.BACKGROUND).execute(() -> {
+            try {
+                OccupancyHistory history = app.getOccupancyHistory();
+                for (int i = 0; i < recorded; i++) {
+                    history.record(rows[i], now, values[i]);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        });
+    }
+    
+    // Batches heatmap changes; the map then re-requests its tiles, and only those the changes reached are redrawn
+    private void scheduleHeatmapRefresh() {
+        if (heatmapRefreshPending) {
+            return;
+        }
+        heatmapRefreshPending = true;
+        tasks.submitDelayed(TaskScheduler.BACKGROUND, HEATMAP_REFRESH_MILLIS, () -> null, ignored -> {
+            heatmapRefreshPending = false;
+            if (heatmapOverlay != null) {
+                heatmapOverlay.clearTileCache();
+            }
         });
     }
     
@@ -0,0 +1,83 @@
+package com.example.ntumap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups POIs into screen-space grid cells at a zoom level. POIs that share
+ * a cell become one cluster marker; cells are aligned to the Web Mercator
+ * pixel grid so cluster keys stay stable while the user pans.
+ */
+public class MarkerClusterer {
+
+    // Zoom level from which every POI gets its own marker
+    public static final int MAX_CLUSTER_ZOOM = 18;
+
+    private static final int TILE_SIZE = 256;
+
+    private final int cellSizePx;
+
+    public MarkerClusterer(int cellSizePx) {
+        this.cellSizePx = cellSizePx;
+    }
+
+    public interface TitleFormatter {
+        String title(Poi poi);
+    }
+
+    public List<MarkerSpec> cluster(List<Poi> pois, float zoom, TitleFormatter titles, String snippet) {
+        List<MarkerSpec> specs = new ArrayList<>();
+        int level = (int) Math.floor(zoom);
+        if (level >= MAX_CLUSTER_ZOOM) {
+            for (Poi poi : pois) {
+                specs.add(MarkerSpec.forPoi(poi, titles.title(poi), snippet));
+            }
+            return specs;
+        }
+
+        double worldSize = TILE_SIZE * Math.pow(2, level);
+        Map<Long, List<Poi>> cells = new HashMap<>();
+        List<Long> cellOrder = new ArrayList<>();
+        for (Poi poi : pois) {
+            long cellX = (long) Math.floor(mercatorX(poi.getLongitude(), worldSize) / cellSizePx);
+            long cellY = (long) Math.floor(mercatorY(poi.getLatitude(), worldSize) / cellSizePx);
+            Long cell = (cellX << 32) | (cellY & 0xFFFFFFFFL);
+            List<Poi> members = cells.get(cell);
+            if (members == null) {
+                members = new ArrayList<>();
+                cells.put(cell, members);
+                cellOrder.add(cell);
+            }
+            members.add(poi);
+        }
+
+        for (Long cell : cellOrder) {
+            List<Poi> members = cells.get(cell);
+            if (members.size() == 1) {
+                Poi poi = members.get(0);
+                specs.add(MarkerSpec.forPoi(poi, titles.title(poi), snippet));
+                continue;
+            }
+            double lat = 0;
+            double lng = 0;
+            for (Poi poi : members) {
+                lat += poi.getLatitude();
+                lng += poi.getLongitude();
+            }
+            specs.add(new MarkerSpec("cluster:" + level + ":" + cell, lat / members.size(), lng / members.size(),
+                    members.size() + " locations", "Tap to zoom in", members));
+        }
+        return specs;
+    }
+
+    private static double mercatorX(double lng, double worldSize) {
+        return (lng + 180) / 360 * worldSize;
+    }
+
+    private static double mercatorY(double lat, double worldSize) {
+        double sin = Math.sin(Math.toRadians(lat));
+        return (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * worldSize;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.ntumap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the markers on a map in sync with a desired set of {@link MarkerSpec}s.
+ * Each call to {@link #apply} only adds, updates or removes the markers whose
+ * spec changed, instead of clearing the map and rebuilding it.
+ *
+ * @param <H> marker handle type of the map implementation
+ */
+public class MarkerManager<H> {
+
+    /** Map operations used by the manager. */
+    public interface Renderer<H> {
+        H add(MarkerSpec spec);
+        void update(H marker, MarkerSpec spec);
+        void remove(H marker);
+    }
+
+    private final Renderer<H> renderer;
+    private final Map<String, H> markers = new HashMap<>();
+    private final Map<String, MarkerSpec> specs = new HashMap<>();
+
+    public MarkerManager(Renderer<H> renderer) {
+        this.renderer = renderer;
+    }
+
+    public void apply(List<MarkerSpec> desired) {
+        Set<String> wanted = new HashSet<>();
+        for (MarkerSpec spec : desired) {
+            wanted.add(spec.getKey());
+        }
+
+        // Remove markers that are no longer wanted first, so they are gone before new ones appear
+        Iterator<Map.Entry<String, H>> it = markers.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, H> entry = it.next();
+            if (!wanted.contains(entry.getKey())) {
+                renderer.remove(entry.getValue());
+                specs.remove(entry.getKey());
+                it.remove();
+            }
+        }
+
+        for (MarkerSpec spec : desired) {
+            H marker = markers.get(spec.getKey());
+            if (marker == null) {
+                marker = renderer.add(spec);
+                if (marker != null) {
+                    markers.put(spec.getKey(), marker);
+                    specs.put(spec.getKey(), spec);
+                }
+            } else {
+                if (!specs.get(spec.getKey()).sameAppearance(spec)) {
+                    renderer.update(marker, spec);
+                }
+                specs.put(spec.getKey(), spec);
+            }
+        }
+    }
+
+    /**
+     * Updates the marker with the spec's key in place, if it is on the map,
+     * without touching any other marker. Returns whether it was on the map.
+     */
+    public boolean update(MarkerSpec spec) {
+        H marker = markers.get(spec.getKey());
+        if (marker == null) {
+            return false;
+        }
+        if (!specs.get(spec.getKey()).sameAppearance(spec)) {
+            renderer.update(marker, spec);
+        }
+        specs.put(spec.getKey(), spec);
+        return true;
+    }
+
+    public H getMarker(String key) {
+        return markers.get(key);
+    }
+
+    public MarkerSpec getSpec(String key) {
+        return specs.get(key);
+    }
+
+    public int size() {
+        return markers.size();
+    }
+
+    public void clear() {
+        for (H marker : new ArrayList<>(markers.values())) {
+            renderer.remove(marker);
+        }
+        markers.clear();
+        specs.clear();
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.ntumap;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Desired state of one map marker: either a single POI or a cluster of POIs.
+ * The key is stable across refreshes so {@link MarkerManager} can tell which
+ * markers are already on the map.
+ */
+public final class MarkerSpec {
+
+    private final String key;
+    private final double latitude;
+    private final double longitude;
+    private final String title;
+    private final String snippet;
+    private final List<Poi> members;
+
+    public MarkerSpec(String key, double latitude, double longitude, String title, String snippet, List<Poi> members) {
+        this.key = key;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.title = title;
+        this.snippet = snippet;
+        this.members = Collections.unmodifiableList(members);
+    }
+
+    public String getKey() { return key; }
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+    public String getTitle() { return title; }
+    public String getSnippet() { return snippet; }
+    public List<Poi> getMembers() { return members; }
+    public boolean isCluster() { return members.size() > 1; }
+
+    public static String keyFor(Poi poi) {
+        return "poi:" + poi.getId();
+    }
+
+    // Single-POI marker with the given title
+    public static MarkerSpec forPoi(Poi poi, String title, String snippet) {
+        return new MarkerSpec(keyFor(poi), poi.getLatitude(), poi.getLongitude(),
+                title, snippet, Collections.singletonList(poi));
+    }
+
+    // True if a marker showing other can be updated in place to show this one
+    public boolean sameAppearance(MarkerSpec other) {
+        return latitude == other.latitude && longitude == other.longitude
+                && Objects.equals(title, other.title) && Objects.equals(snippet, other.snippet);
+    }
+}
@@ -1,27 +1,43 @@
 package com.example.ntumap;
 
+import android.Manifest;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
 import android.location.Location;
 import android.os.Bundle;
+import android.os.Looper;
+import android.view.View;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 
 import com.google.android.gms.location.FusedLocationProviderClient;
+import com.google.android.gms.location.LocationCallback;
+import com.google.android.gms.location.LocationRequest;
+import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
+import com.google.android.gms.location.Priority;
 import com.google.android.gms.maps.CameraUpdateFactory;
 import com.google.android.gms.maps.GoogleMap;
 import com.google.android.gms.maps.OnMapReadyCallback;
 import com.google.android.gms.maps.SupportMapFragment;
+import com.google.android.gms.maps.model.BitmapDescriptorFactory;
+import com.google.android.gms.maps.model.Dash;
+import com.google.android.gms.maps.model.Gap;
 import com.google.android.gms.maps.model.LatLng;
+import com.google.android.gms.maps.model.Marker;
 import com.google.android.gms.maps.model.MarkerOptions;
+import com.google.android.gms.maps.model.PatternItem;
+import com.google.android.gms.maps.model.Polyline;
 import com.google.android.gms.maps.model.PolylineOptions;
 import com.google.android.gms.maps.model.RoundCap;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class NavigationActivity extends AppCompatActivity implements OnMapReadyCallback {
@@ -35,6 +51,7 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
     private TextView destinationText;
     private TextView distanceText;
     private TextView timeText;
+    private TextView instructionText;
     private Button startNavigationButton;
     private Button accessibilityButton;
     
@@ -42,14 +59,66 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
     private LatLng currentLocation;
     private LatLng destinationLocation;
     private List<LatLng> routePoints;
+    private Polyline routeLine;
+    private ProfileRouter router;
+    private Route route;
+    // Route through the building to a room's door; null when the destination is not mapped indoors
+    private IndoorRouter indoorRouter;
+    private FloorRoute floorRoute;
+    private final List<Polyline> floorLines = new ArrayList<>();
+    private final List<Marker> levelMarkers = new ArrayList<>();
+    // Turn-by-turn guidance; null until navigation is started
+    private GuidanceEngine guidance;
+    
+    // Smoothed, walkway-snapped positions; null until the walkway index is built
+    private LocationPipeline locationPipeline;
+    private Marker positionMarker;
+    private boolean started;
+    private final LocationCallback locationCallback = new LocationCallback() {
+        @Override
+        public void onLocationResult(LocationResult result) {
+            if (locationPipeline == null) {
+                return;
+            }
+            for (Location location : result.getLocations()) {
+                locationPipeline.onFix(new LocationFix(location.getLatitude(), location.getLongitude(),
+                        location.getAccuracy(), location.getTime()));
+            }
+        }
+    };
+    
+    // Background work of this screen, cancelled when it is destroyed
+    private TaskScheduler.Scope tasks;
+    private TaskScheduler.Cancellable arrivalForecast;
+    
+    private SettingsStore settings;
+    // Re-plans whenever the route preferences change, here or on another screen
+    private final SettingsStore.Listener settingsListener = (current, previous) -> {
+        if (current.getRoutingProfile() != previous.getRoutingProfile()) {
+            router.setProfile(current.getRoutingProfile());
+            calculateRoute();
+        }
+    };
     
     // NTU Clifton Campus coordinates
     private static final LatLng NTU_CLIFTON = new LatLng(52.9068, -1.1878);
+    private static final long AI_PROCESSING_MILLIS = 2000;
+    // Fixes once a second while walking; positions reach the screen every few metres
+    private static final long LOCATION_INTERVAL_MILLIS = 1000;
+    private static final float LOCATION_MIN_MOVE_METERS = 2;
+    private static final double POSITION_MIN_MOVE_METERS = 3;
+    // Indoor legs are dashed and coloured by level, ground floor first
+    private static final int[] LEVEL_COLORS = {0xFF4CAF50, 0xFFFF9800, 0xFF9C27B0, 0xFFE91E63, 0xFF795548};
+    private static final float[] LEVEL_HUES = {BitmapDescriptorFactory.HUE_GREEN, BitmapDescriptorFactory.HUE_ORANGE,
+            BitmapDescriptorFactory.HUE_VIOLET, BitmapDescriptorFactory.HUE_RED, BitmapDescriptorFactory.HUE_YELLOW};
+    private static final List<PatternItem> INDOOR_PATTERN = Arrays.asList(new Dash(20), new Gap(10));
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_navigation);
+        tasks = NtuMapApplication.tasksFor(this);
+        settings = ((NtuMapApplication) getApplication()).getSettingsStore();
         
         // Get intent data
         Intent intent = getIntent();
@@ -59,18 +128,140 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
         // Initialize location services
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
         
+        // Initialize campus walkway router, weighed by the route preferences. A* answers until the
+        // precomputed shortcut index has loaded off the main thread, which may mean contracting the graph
+        router = new ProfileRouter(new AStarRouter(CampusData.getWalkwayGraph()));
+        tasks.submit(TaskScheduler.BACKGROUND,
+                () -> new ContractionHierarchyRouter(CampusData.getRouteIndex(getAssets()::open)),
+                router::setShortest);
+        router.setProfile(settings.get().getRoutingProfile());
+        // Only the building directory is read here; floors are read as routes reach them
+        indoorRouter = new IndoorRouter(router, CampusData.getIndoorMap());
+        
         // Initialize UI
         initializeViews();
         setupMap();
         
         // Calculate route
         calculateRoute();
+        buildLocationPipeline();
+        settings.addListener(settingsListener);
+    }
+    
+    @Override
+    protected void onDestroy() {
+        settings.removeListener(settingsListener);
+        super.onDestroy();
+    }
+    
+    @Override
+    protected void onStart() {
+        super.onStart();
+        started = true;
+        startLocationUpdates();
+    }
+    
+    @Override
+    protected void onStop() {
+        started = false;
+        fusedLocationClient.removeLocationUpdates(locationCallback);
+        super.onStop();
+    }
+    
+    private void buildLocationPipeline() {
+        tasks.submit(TaskScheduler.BACKGROUND, () -> new WalkwayIndex(CampusData.getWalkwayGraph()), index -> {
+            locationPipeline = new LocationPipeline(index, POSITION_MIN_MOVE_METERS, this::onPosition);
+            startLocationUpdates();
+        });
+    }
+    
+    private void startLocationUpdates() {
+        if (!started || locationPipeline == null || ContextCompat.checkSelfPermission(this,
+                Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        // The platform also skips fixes that barely move, which saves waking us up while standing still
+        LocationRequest request = new LocationRequest.Builder(Priority.PRIORITY_HIGH_ACCURACY, LOCATION_INTERVAL_MILLIS)
+                .setMinUpdateDistanceMeters(LOCATION_MIN_MOVE_METERS)
+                .build();
+        fusedLocationClient.requestLocationUpdates(request, locationCallback, Looper.getMainLooper());
+    }
+    
+    private void onPosition(LocationPipeline.Position position) {
+        boolean first = currentLocation == null;
+        currentLocation = new LatLng(position.getLatitude(), position.getLongitude());
+        if (first) {
+            // Route from where we really are rather than the campus centre
+            calculateRoute();
+        }
+        if (mMap == null) {
+            // onMapReady frames the camera around it
+            return;
+        }
+        if (positionMarker == null) {
+            positionMarker = mMap.addMarker(new MarkerOptions()
+                    .position(currentLocation)
+                    .title("You are here"));
+        } else {
+            positionMarker.setPosition(currentLocation);
+        }
+        if (first) {
+            frameCamera();
+        }
+        if (guidance != null) {
+            followRoute(position);
+        }
+    }
+    
+    private void followRoute(LocationPipeline.Position position) {
+        switch (guidance.update(position)) {
+            case GuidanceEngine.REROUTED:
+                route = guidance.getRoute();
+                showRoute(currentLocation);
+                Toast.makeText(this, "Off route - finding a new way", Toast.LENGTH_SHORT).show();
+                break;
+            case GuidanceEngine.ARRIVED:
+                Toast.makeText(this, floorRoute != null ? "Follow the dashed line inside to " + destination
+                        : "You have arrived at " + destination, Toast.LENGTH_LONG).show();
+                break;
+            default:
+                break;
+        }
+        showInstruction();
+    }
+    
+    private void showInstruction() {
+        if (guidance.hasArrived()) {
+            instructionText.setText("You have arrived at " + destination);
+        } else if (guidance.isOffRoute()) {
+            instructionText.setText("Off route - head back to the blue line");
+        } else {
+            int next = guidance.getNextManeuver();
+            instructionText.setText(String.format("In %d m: %s", Math.round(guidance.getDistanceToNextManeuver()),
+                    describeManeuver(guidance.getManeuverType(next))));
+        }
+    }
+    
+    private String describeManeuver(int type) {
+        switch (type) {
+            case GuidanceEngine.SLIGHT_LEFT: return "Bear left";
+            case GuidanceEngine.LEFT: return "Turn left";
+            case GuidanceEngine.SHARP_LEFT: return "Turn sharp left";
+            case GuidanceEngine.SLIGHT_RIGHT: return "Bear right";
+            case GuidanceEngine.RIGHT: return "Turn right";
+            case GuidanceEngine.SHARP_RIGHT: return "Turn sharp right";
+            case GuidanceEngine.STAIRS: return "Take the stairs";
+            case GuidanceEngine.ENTER_BUILDING: return "Enter the building";
+            case GuidanceEngine.LEAVE_BUILDING: return "Leave the building";
+            default: return "Arrive at " + destination;
+        }
     }
     
     private void initializeViews() {
         destinationText = findViewById(R.id.destinationText);
         distanceText = findViewById(R.id.distanceText);
         timeText = findViewById(R.id.timeText);
+        instructionText = findViewById(R.id.instructionText);
         startNavigationButton = findViewById(R.id.startNavigationButton);
         accessibilityButton = findViewById(R.id.accessibilityButton);
         
@@ -101,13 +292,22 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
         
         // Add destination marker
         if (destination != null) {
-            destinationLocation = getDestinationCoordinates(destination);
+            if (destinationLocation == null) {
+                destinationLocation = getDestinationCoordinates(destination);
+            }
             mMap.addMarker(new MarkerOptions()
                     .position(destinationLocation)
                     .title(destination)
                     .snippet("Your destination"));
         }
         
+        // The route is usually calculated before the map is ready
+        drawRoute();
+        
+        frameCamera();
+    }
+    
+    private void frameCamera() {
         // Move camera to show both current location and destination
         if (currentLocation != null && destinationLocation != null) {
             LatLng center = new LatLng(
@@ -121,28 +321,101 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
     }
     
     private void calculateRoute() {
-        // Simulate route calculation
         if (destination != null) {
             destinationLocation = getDestinationCoordinates(destination);
+            LatLng start = currentLocation != null ? currentLocation : NTU_CLIFTON;
             
-            // For demo purposes, use a simple route
-            routePoints = new ArrayList<>();
-            routePoints.add(NTU_CLIFTON); // Start at NTU
-            routePoints.add(destinationLocation); // End at destination
-            
-            // Calculate distance and time
-            double distance = calculateDistance(NTU_CLIFTON, destinationLocation);
-            int timeMinutes = (int) (distance / 1000 * 15); // Rough estimate: 15 min per km
-            
-            // Update UI
-            distanceText.setText(String.format("Distance: %.1f km", distance / 1000));
-            timeText.setText(String.format("Estimated time: %d minutes", timeMinutes));
-            
-            // Draw route on map
-            if (mMap != null) {
-                drawRoute();
+            // Walk the campus walkway graph between the nodes nearest to start and destination, or
+            // to the building's best entrance and on through its floors to the room's door
+            floorRoute = findFloorRoute(start);
+            if (floorRoute != null) {
+                route = floorRoute.getOutdoorRoute();
+                FloorRoute.Leg last = floorRoute.getLeg(floorRoute.getLegCount() - 1);
+                destinationLocation = new LatLng(last.getLatitude(last.getPointCount() - 1),
+                        last.getLongitude(last.getPointCount() - 1));
+            } else {
+                route = router.findRoute(start.latitude, start.longitude,
+                        destinationLocation.latitude, destinationLocation.longitude);
+            }
+            if (guidance != null && route != null) {
+                guidance.start(route);
+            }
+            showRoute(start);
+        }
+    }
+    
+    // Indoor route to the room named by the destination, if the room is mapped indoors
+    private FloorRoute findFloorRoute(LatLng start) {
+        int room = findRoom(destination);
+        IndoorMap indoor = indoorRouter.getIndoorMap();
+        int target = room >= 0 ? indoor.findRoomNode(room) : -1;
+        int source = router.getGraph().nearestNode(start.latitude, start.longitude);
+        if (target < 0 || source < 0) {
+            return null;
+        }
+        try {
+            return indoorRouter.findRoute(source, target);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    // RoomTable row of the destination: rooms by name first, then map rooms by alias
+    private int findRoom(String name) {
+        RoomTable rooms = CampusData.getRooms();
+        for (int room = 0; room < rooms.size(); room++) {
+            if (rooms.getName(room).equalsIgnoreCase(name)) {
+                return room;
+            }
+        }
+        List<SearchIndex.Match> matches = CampusData.getSearchIndex().search(name, 1);
+        return matches.isEmpty() ? -1 : rooms.findByPoi(matches.get(0).getId());
+    }
+    
+    private void showRoute(LatLng start) {
+        routePoints = new ArrayList<>();
+        addRoutePoint(start);
+        if (route != null) {
+            for (int i = 0; i < route.getNodeCount(); i++) {
+                addRoutePoint(new LatLng(route.getLatitude(i), route.getLongitude(i)));
+            }
+        }
+        if (floorRoute == null) {
+            addRoutePoint(destinationLocation);
+        }
+        
+        // Calculate distance and time along the route
+        double distance = 0;
+        for (int i = 1; i < routePoints.size(); i++) {
+            distance += calculateDistance(routePoints.get(i - 1), routePoints.get(i));
+        }
+        if (floorRoute != null) {
+            distance += floorRoute.getLengthMeters() - route.getLengthMeters();
+        }
+        long walkMillis = GeoUtils.walkingMillis(distance);
+        int timeMinutes = (int) (walkMillis / 60_000);
+        
+        // Update UI
+        distanceText.setText(String.format("Distance: %.1f km", distance / 1000));
+        String estimate = String.format("Estimated time: %d minutes", timeMinutes);
+        timeText.setText(estimate);
+        showArrivalForecast(walkMillis, estimate);
+        
+        // Draw route on map
+        if (mMap != null) {
+            drawRoute();
+        }
+    }
+    
+    private void addRoutePoint(LatLng point) {
+        if (!routePoints.isEmpty()) {
+            LatLng last = routePoints.get(routePoints.size() - 1);
+            if (last.latitude == point.latitude && last.longitude == point.longitude) {
+                return;
             }
         }
+        routePoints.add(point);
     }
     
     private void drawRoute() {
@@ -154,29 +427,110 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
                     .startCap(new RoundCap())
                     .endCap(new RoundCap());
             
-            mMap.addPolyline(polylineOptions);
+            if (routeLine != null) {
+                routeLine.remove();
+            }
+            routeLine = mMap.addPolyline(polylineOptions);
+        }
+        drawFloorRoute();
+    }
+    
+    // One dashed line per level inside, stacked by level, and a marker wherever the route changes floor
+    private void drawFloorRoute() {
+        for (Polyline line : floorLines) {
+            line.remove();
+        }
+        floorLines.clear();
+        for (Marker marker : levelMarkers) {
+            marker.remove();
         }
+        levelMarkers.clear();
+        if (floorRoute == null) {
+            return;
+        }
+        for (FloorRoute.Leg leg : floorRoute.getLegs()) {
+            if (!leg.isIndoor()) {
+                continue;
+            }
+            List<LatLng> points = new ArrayList<>();
+            for (int i = 0; i < leg.getPointCount(); i++) {
+                points.add(new LatLng(leg.getLatitude(i), leg.getLongitude(i)));
+            }
+            int shade = Math.floorMod(leg.getLevel(), LEVEL_COLORS.length);
+            if (points.size() >= 2) {
+                floorLines.add(mMap.addPolyline(new PolylineOptions()
+                        .addAll(points)
+                        .width(8)
+                        .color(LEVEL_COLORS[shade])
+                        .pattern(INDOOR_PATTERN)
+                        .zIndex(1 + leg.getLevel())));
+            }
+            if (leg.getConnectorType() >= 0) {
+                levelMarkers.add(mMap.addMarker(new MarkerOptions()
+                        .position(points.get(0))
+                        .title(describeConnector(leg.getConnectorType()) + " to " + describeLevel(leg.getLevel()))
+                        .icon(BitmapDescriptorFactory.defaultMarker(LEVEL_HUES[shade]))
+                        .zIndex(1 + leg.getLevel())));
+            }
+        }
+    }
+    
+    private static String describeConnector(int type) {
+        switch (type) {
+            case IndoorMap.STAIRS: return "Stairs";
+            case IndoorMap.LIFT: return "Lift";
+            default: return "Ramp";
+        }
+    }
+    
+    private static String describeLevel(int level) {
+        return level == 0 ? "Ground Floor" : "Floor " + level;
+    }
+    
+    // Adds how busy a destination room is expected to be by the time we get there
+    private void showArrivalForecast(long walkMillis, String estimate) {
+        // A forecast for an earlier route would describe the wrong trip
+        if (arrivalForecast != null) {
+            arrivalForecast.cancel();
+            arrivalForecast = null;
+        }
+        RoomTable rooms = CampusData.getRooms();
+        List<SearchIndex.Match> matches = CampusData.getSearchIndex().search(destination, 1);
+        int room = matches.isEmpty() ? -1 : rooms.findByPoi(matches.get(0).getId());
+        if (room < 0 || !rooms.hasFlag(room, RoomTable.TRACKED)) {
+            return;
+        }
+        String name = rooms.getName(room);
+        OccupancyStore store = CampusData.getOccupancyStore();
+        int live = store.contains(name) ? store.get(name) : rooms.getInitialOccupancy(room);
+        int capacity = rooms.getCapacity(room);
+        long now = System.currentTimeMillis();
+        NtuMapApplication app = (NtuMapApplication) getApplication();
+        arrivalForecast = tasks.submit(TaskScheduler.BACKGROUND, () -> {
+            try {
+                return app.getOccupancyForecaster().forecast(room, now, live, now + walkMillis);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }, expected -> {
+            arrivalForecast = null;
+            if (expected != null) {
+                timeText.setText(String.format("%s\nExpected on arrival: %d of %d seats taken",
+                        estimate, Math.min(expected, capacity), capacity));
+            }
+        });
     }
     
     private LatLng getDestinationCoordinates(String destination) {
-        // Simulate destination coordinates based on search query
-        // In a real app, this would use Google Places API
-        switch (destination.toLowerCase()) {
-            case "library":
-                return new LatLng(52.9070, -1.1880);
-            case "cafeteria":
-            case "canteen":
-                return new LatLng(52.9072, -1.1882);
-            case "gym":
-            case "fitness":
-                return new LatLng(52.9064, -1.1874);
-            case "computer lab":
-            case "lab":
-                return new LatLng(52.9066, -1.1876);
-            default:
-                // Default to a location near NTU
-                return new LatLng(52.9068, -1.1878);
+        // Resolve names and aliases such as "canteen" or "fitness" through the campus search index
+        List<SearchIndex.Match> matches = CampusData.getSearchIndex().search(destination, 1);
+        if (matches.isEmpty()) {
+            // Default to a location near NTU
+            return new LatLng(52.9068, -1.1878);
         }
+        Poi room = CampusData.getPoi(matches.get(0).getId());
+        return new LatLng(room.getLatitude(), room.getLongitude());
     }
     
     private double calculateDistance(LatLng start, LatLng end) {
@@ -187,26 +541,30 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
     }
     
     private void startTurnByTurnNavigation() {
-        // Start turn-by-turn navigation
+        if (route == null) {
+            Toast.makeText(this, "No walking route to " + destination, Toast.LENGTH_SHORT).show();
+            return;
+        }
         Toast.makeText(this, "Starting turn-by-turn navigation to " + destination, 
                       Toast.LENGTH_SHORT).show();
-        
-        // In a real app, this would start Google Maps navigation
-        // For now, just show a success message
-        Toast.makeText(this, "Navigation started! Follow the route on the map.", 
-                      Toast.LENGTH_LONG).show();
+        if (guidance == null) {
+            guidance = new GuidanceEngine(router);
+        }
+        guidance.start(route);
+        instructionText.setVisibility(View.VISIBLE);
+        showInstruction();
     }
     
     private void enableAccessibilityMode() {
         // Enable accessibility features for navigation
-        SharedPreferences preferences = getSharedPreferences("AccessibilitySettings", MODE_PRIVATE);
+        Settings current = settings.get();
         
-        if (AccessibilityActivity.isVoiceGuidanceEnabled(preferences)) {
+        if (current.has(Settings.VOICE_GUIDANCE)) {
             // Enable voice guidance for navigation
             Toast.makeText(this, "Voice guidance enabled for navigation", Toast.LENGTH_SHORT).show();
         }
         
-        if (AccessibilityActivity.isVibrationFeedbackEnabled(preferences)) {
+        if (current.has(Settings.VIBRATION_FEEDBACK)) {
             // Enable vibration feedback for turns
             Toast.makeText(this, "Vibration feedback enabled for navigation", Toast.LENGTH_SHORT).show();
         }
@@ -216,31 +574,51 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
     }
     
     private void showAccessibilityOptions() {
-        String[] options = {"Voice Guidance", "Vibration Feedback", "High Contrast Route", "Large Text"};
+        String[] options = {"Voice Guidance", "Vibration Feedback", "High Contrast Route", "Large Text",
+            "Step-free Route", "Avoid Steep Ramps", "Prefer Lifts", "Prefer Sheltered Paths"};
+        Settings current = settings.get();
+        RoutingProfile profile = current.getRoutingProfile();
         boolean[] checkedItems = {
-            AccessibilityActivity.isVoiceGuidanceEnabled(getSharedPreferences("AccessibilitySettings", MODE_PRIVATE)),
-            AccessibilityActivity.isVibrationFeedbackEnabled(getSharedPreferences("AccessibilitySettings", MODE_PRIVATE)),
-            AccessibilityActivity.isHighContrastEnabled(getSharedPreferences("AccessibilitySettings", MODE_PRIVATE)),
-            AccessibilityActivity.isLargeTextEnabled(getSharedPreferences("AccessibilitySettings", MODE_PRIVATE))
+            current.has(Settings.VOICE_GUIDANCE),
+            current.has(Settings.VIBRATION_FEEDBACK),
+            current.has(Settings.HIGH_CONTRAST),
+            current.has(Settings.LARGE_TEXT),
+            profile.has(RoutingProfile.STEP_FREE),
+            profile.has(RoutingProfile.AVOID_STEEP_RAMPS),
+            profile.has(RoutingProfile.PREFER_LIFTS),
+            profile.has(RoutingProfile.PREFER_SHELTER)
         };
         
         new androidx.appcompat.app.AlertDialog.Builder(this)
             .setTitle("Navigation Accessibility")
             .setMultiChoiceItems(options, checkedItems, (dialog, which, isChecked) -> {
-                // Handle accessibility option changes
-                SharedPreferences.Editor editor = getSharedPreferences("AccessibilitySettings", MODE_PRIVATE).edit();
+                // Handle accessibility option changes; route options re-plan through the settings listener,
+                // and a burst of toggles is written to disk once
+                SettingsStore.Editor editor = settings.edit();
                 switch (which) {
                     case 0: // Voice Guidance
-                        editor.putBoolean("voice_guidance", isChecked);
+                        editor.set(Settings.VOICE_GUIDANCE, isChecked);
                         break;
                     case 1: // Vibration Feedback
-                        editor.putBoolean("vibration_feedback", isChecked);
+                        editor.set(Settings.VIBRATION_FEEDBACK, isChecked);
                         break;
                     case 2: // High Contrast
-                        editor.putBoolean("high_contrast", isChecked);
+                        editor.set(Settings.HIGH_CONTRAST, isChecked);
                         break;
                     case 3: // Large Text
-                        editor.putBoolean("large_text", isChecked);
+                        editor.set(Settings.LARGE_TEXT, isChecked);
+                        break;
+                    case 4:
+                        editor.setRouting(RoutingProfile.STEP_FREE, isChecked);
+                        break;
+                    case 5:
+                        editor.setRouting(RoutingProfile.AVOID_STEEP_RAMPS, isChecked);
+                        break;
+                    case 6:
+                        editor.setRouting(RoutingProfile.PREFER_LIFTS, isChecked);
+                        break;
+                    case 7:
+                        editor.setRouting(RoutingProfile.PREFER_SHELTER, isChecked);
                         break;
                 }
                 editor.apply();
@@ -259,18 +637,11 @@ public class NavigationActivity extends AppCompatActivity implements OnMapReadyC
                           Toast.LENGTH_SHORT).show();
             
             // Simulate AI processing
-            new Thread(() -> {
-                try {
-                    Thread.sleep(2000);
-                    runOnUiThread(() -> {
-                        Toast.makeText(NavigationActivity.this, 
-                                      "AI route optimized! Considered accessibility, traffic, and energy efficiency.", 
-                                      Toast.LENGTH_LONG).show();
-                    });
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-            }).start();
+            tasks.submitDelayed(TaskScheduler.INTERACTIVE, AI_PROCESSING_MILLIS, () -> null, ignored -> {
+                Toast.makeText(NavigationActivity.this, 
+                              "AI route optimized! Considered accessibility, traffic, and energy efficiency.", 
+                              Toast.LENGTH_LONG).show();
+            });
         }
     }
 } 
\ No newline at end of file
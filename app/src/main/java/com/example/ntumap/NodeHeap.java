@@ -0,0 +1,112 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+
+/**
+ * Indexed binary min-heap of graph node ids keyed by a double priority.
+ * Supports decrease-key in O(log n) and is reused across searches so that
+ * route queries do not allocate.
+ */
+public final class NodeHeap {
+
+    private final int[] heap;
+    private final double[] keys;
+    private final int[] position;
+    private int size;
+
+    public NodeHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new double[capacity];
+        position = new int[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public boolean contains(int node) { return position[node] >= 0; }
+    public double peekKey() { return keys[heap[0]]; }
+
+    // Inserts the node or lowers its key if it is already queued
+    public void push(int node, double key) {
+        int pos = position[node];
+        if (pos < 0) {
+            pos = size++;
+            heap[pos] = node;
+            position[node] = pos;
+            keys[node] = key;
+            siftUp(pos);
+        } else if (key < keys[node]) {
+            keys[node] = key;
+            siftUp(pos);
+        }
+    }
+
+    // Sets the key of a queued node in either direction, or inserts it
+    public void update(int node, double key) {
+        int pos = position[node];
+        if (pos < 0) {
+            push(node, key);
+        } else if (key < keys[node]) {
+            keys[node] = key;
+            siftUp(pos);
+        } else {
+            keys[node] = key;
+            siftDown(pos);
+        }
+    }
+
+    public int poll() {
+        int top = heap[0];
+        position[top] = -1;
+        size--;
+        if (size > 0) {
+            int last = heap[size];
+            heap[0] = last;
+            position[last] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int pos) {
+        int node = heap[pos];
+        double key = keys[node];
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            int parentNode = heap[parent];
+            if (keys[parentNode] <= key) break;
+            heap[pos] = parentNode;
+            position[parentNode] = pos;
+            pos = parent;
+        }
+        heap[pos] = node;
+        position[node] = pos;
+    }
+
+    private void siftDown(int pos) {
+        int node = heap[pos];
+        double key = keys[node];
+        int half = size >>> 1;
+        while (pos < half) {
+            int child = 2 * pos + 1;
+            int right = child + 1;
+            if (right < size && keys[heap[right]] < keys[heap[child]]) {
+                child = right;
+            }
+            int childNode = heap[child];
+            if (key <= keys[childNode]) break;
+            heap[pos] = childNode;
+            position[childNode] = pos;
+            pos = child;
+        }
+        heap[pos] = node;
+        position[node] = pos;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.ntumap;
+
+import android.app.Application;
+import android.content.SharedPreferences;
+import android.content.res.AssetFileDescriptor;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.activity.ComponentActivity;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.TimeZone;
+
+/**
+ * Process-wide setup. Points {@link CampusData} at the campus pack, which is
+ * stored uncompressed in the APK and mapped in place, and owns the start-up
+ * timings, the shared background {@link TaskScheduler}, the user's
+ * settings and the occupancy history and forecasts.
+ */
+public class NtuMapApplication extends Application {
+
+    private static final String TAG = "NtuMapStartup";
+    private static final String TASKS_TAG = "NtuMapTasks";
+    private static final String HISTORY_DIRECTORY = "occupancy_history";
+    private static final String SETTINGS_FILE = "settings.properties";
+    // Where the settings lived before the settings store
+    private static final String LEGACY_PREFERENCES = "AccessibilitySettings";
+
+    private StartupTimings startupTimings;
+    private TaskScheduler taskScheduler;
+    private OccupancyHistory occupancyHistory;
+    private OccupancyForecaster occupancyForecaster;
+    private LocalAlertServer alertServer;
+    private SettingsStore settingsStore;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        startupTimings = new StartupTimings(Process.getStartUptimeMillis(), new StartupTimings.Reporter() {
+            @Override
+            public void onMilestone(String milestone, long millisSinceStart) {
+                Log.i(TAG, milestone + " " + millisSinceStart + " ms");
+            }
+
+            @Override
+            public void onTask(String task, boolean background, long durationMillis) {
+                Log.i(TAG, (background ? "background " : "main ") + task + " " + durationMillis + " ms");
+            }
+        });
+        // Leave a core free for the UI and render threads
+        int workers = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+        taskScheduler = new TaskScheduler(workers, ContextCompat.getMainExecutor(this),
+                error -> Log.w(TASKS_TAG, "Background task failed", error));
+        CampusData.setPackSource(this::mapCampusPack);
+    }
+
+    public StartupTimings getStartupTimings() {
+        return startupTimings;
+    }
+
+    public TaskScheduler getTaskScheduler() {
+        return taskScheduler;
+    }
+
+    // Reads the settings file, a few hundred bytes, on first use; after that settings are read from memory
+    public synchronized SettingsStore getSettingsStore() {
+        if (settingsStore == null) {
+            SettingsStore store = new SettingsStore(new File(getFilesDir(), SETTINGS_FILE), taskScheduler.newScope());
+            if (!store.isSaved()) {
+                migrateLegacySettings(store);
+            }
+            settingsStore = store;
+        }
+        return settingsStore;
+    }
+
+    // Carries settings over from SharedPreferences once, then empties them so they are not read again
+    private void migrateLegacySettings(SettingsStore store) {
+        SharedPreferences legacy = getSharedPreferences(LEGACY_PREFERENCES, MODE_PRIVATE);
+        if (legacy.getAll().isEmpty()) {
+            return;
+        }
+        SettingsStore.Editor editor = store.edit();
+        for (int i = 0; i < SettingsStore.OPTION_KEYS.length; i++) {
+            editor.set(1 << i, legacy.getBoolean(SettingsStore.OPTION_KEYS[i], false));
+        }
+        for (int i = 0; i < SettingsStore.ROUTING_KEYS.length; i++) {
+            editor.setRouting(1 << i, legacy.getBoolean(SettingsStore.ROUTING_KEYS[i], false));
+        }
+        editor.setTextSize(legacy.getInt(SettingsStore.TEXT_SIZE_KEY, Settings.DEFAULT_TEXT_SIZE));
+        editor.apply();
+        store.flush();
+        legacy.edit().clear().apply();
+    }
+
+    // Opened on first use, which reads the history index from disk, so call it off the main thread
+    public synchronized OccupancyHistory getOccupancyHistory() throws IOException {
+        if (occupancyHistory == null) {
+            occupancyHistory = new OccupancyHistory(new File(getFilesDir(), HISTORY_DIRECTORY));
+        }
+        return occupancyHistory;
+    }
+
+    // Learns from weeks of history on first use, so call it off the main thread too
+    public synchronized OccupancyForecaster getOccupancyForecaster() throws IOException {
+        if (occupancyForecaster == null) {
+            OccupancyForecaster forecaster = new OccupancyForecaster(CampusData.getRooms().size(), TimeZone.getDefault());
+            forecaster.attach(getOccupancyHistory(), System.currentTimeMillis());
+            occupancyForecaster = forecaster;
+        }
+        return occupancyForecaster;
+    }
+
+    // Stands in for the campus alert backend until there is one; shared so alerts outlive the screens showing them
+    public synchronized LocalAlertServer getAlertServer() {
+        if (alertServer == null) {
+            alertServer = new LocalAlertServer(0);
+        }
+        return alertServer;
+    }
+
+    /** Task scope for one screen, closed when the screen is destroyed. */
+    public static TaskScheduler.Scope tasksFor(ComponentActivity activity) {
+        TaskScheduler.Scope scope = ((NtuMapApplication) activity.getApplication()).getTaskScheduler().newScope();
+        activity.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onDestroy(LifecycleOwner owner) {
+                scope.close();
+            }
+        });
+        return scope;
+    }
+
+    private ByteBuffer mapCampusPack() throws IOException {
+        try (AssetFileDescriptor descriptor = getAssets().openFd(CampusData.CAMPUS_PACK_ASSET);
+             FileInputStream in = descriptor.createInputStream()) {
+            return in.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength());
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.ntumap;
+
+/**
+ * One change in a room's head count reported by the occupancy feed.
+ */
+public final class OccupancyDelta {
+
+    private final String roomId;
+    private final int change;
+    private final long timestampMillis;
+
+    public OccupancyDelta(String roomId, int change, long timestampMillis) {
+        this.roomId = roomId;
+        this.change = change;
+        this.timestampMillis = timestampMillis;
+    }
+
+    public String getRoomId() { return roomId; }
+    public int getChange() { return change; }
+    public long getTimestampMillis() { return timestampMillis; }
+
+    @Override
+    public String toString() {
+        return timestampMillis + "," + roomId + "," + change;
+    }
+}
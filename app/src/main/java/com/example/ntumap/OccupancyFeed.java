@@ -0,0 +1,17 @@
+package com.example.ntumap;
+
+import java.util.List;
+
+/**
+ * Source of occupancy delta events, delivered in batches on a background thread.
+ */
+public interface OccupancyFeed {
+
+    interface Listener {
+        void onDeltas(List<OccupancyDelta> batch);
+    }
+
+    void start(Listener listener);
+
+    void stop();
+}
@@ -0,0 +1,150 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Predicts each room's head count at a future time, e.g. when someone
+ * walking there would arrive.
+ *
+ * Every room has a damped Holt-Winters model over hourly averages: a
+ * level, a trend and a weekly profile of 168 hour-of-week offsets, all
+ * held in flat float arrays indexed by RoomTable row. Each closed hour
+ * from {@link OccupancyHistory} updates one room in constant time. A
+ * forecast starts from the live head count and moves along the weekly
+ * profile, with the gap between the live count and the model fading out
+ * over the following hours.
+ */
+public class OccupancyForecaster implements OccupancyHistory.BucketListener {
+
+    static final int SEASON_HOURS = 7 * 24;
+    private static final long HOUR_MILLIS = 60 * 60_000L;
+    // How many weeks of hourly history to learn from when attached
+    private static final long TRAINING_MILLIS = 8 * SEASON_HOURS * HOUR_MILLIS;
+
+    // Smoothing of the level, trend and weekly profile
+    private static final float ALPHA = 0.3f;
+    private static final float BETA = 0.05f;
+    private static final float GAMMA = 0.2f;
+    // Trend kept per hour ahead, so long forecasts level off instead of running away
+    private static final float PHI = 0.9f;
+    // Share of the live count's departure from the model still expected an hour later
+    private static final double RESIDUAL_DECAY = 0.5;
+
+    private final int roomCount;
+    private final TimeZone zone;
+    private final float[] level;
+    private final float[] trend;
+    // season[room * SEASON_HOURS + hourOfWeek]
+    private final float[] season;
+    // Hour number of each room's latest observation
+    private final long[] lastHour;
+    // Observations so far, capped once the first week has been seen
+    private final int[] seen;
+
+    public OccupancyForecaster(int roomCount, TimeZone zone) {
+        this.roomCount = roomCount;
+        this.zone = zone;
+        level = new float[roomCount];
+        trend = new float[roomCount];
+        season = new float[roomCount * SEASON_HOURS];
+        lastHour = new long[roomCount];
+        Arrays.fill(lastHour, Long.MIN_VALUE);
+        seen = new int[roomCount];
+    }
+
+    /**
+     * Learns from the recent hourly history of every room and then follows
+     * the history as new hours close. Holds the history's lock throughout,
+     * so no hour is missed or seen twice.
+     */
+    public void attach(OccupancyHistory history, long now) throws IOException {
+        synchronized (history) {
+            for (int room = 0; room < roomCount; room++) {
+                OccupancyHistory.Series hours = history.query(room, OccupancyHistory.HOUR, now - TRAINING_MILLIS, now);
+                for (int i = 0; i < hours.size(); i++) {
+                    observe(room, hours.getTime(i), hours.getCount(i));
+                }
+            }
+            history.setBucketListener(this);
+        }
+    }
+
+    @Override
+    public void onBucket(int room, int resolution, long time, int count) {
+        if (resolution == OccupancyHistory.HOUR && room < roomCount) {
+            observe(room, time, count);
+        }
+    }
+
+    /** Updates a room's model with the average head count of the hour starting at time. */
+    public synchronized void observe(int room, long time, int count) {
+        long hour = Math.floorDiv(time, HOUR_MILLIS);
+        int steps = lastHour[room] == Long.MIN_VALUE ? 1 : (int) Math.min(hour - lastHour[room], Integer.MAX_VALUE);
+        if (steps <= 0) {
+            return;
+        }
+        lastHour[room] = hour;
+        int slot = room * SEASON_HOURS + hourOfWeek(time);
+
+        if (seen[room] < SEASON_HOURS) {
+            // First week: the level is the running mean and each hour's offset is taken as seen
+            seen[room]++;
+            level[room] += (count - level[room]) / seen[room];
+            season[slot] = count - level[room];
+            return;
+        }
+        float previous = level[room];
+        float projected = previous + trend[room] * dampedSteps(steps);
+        level[room] = ALPHA * (count - season[slot]) + (1 - ALPHA) * projected;
+        trend[room] = BETA * (level[room] - previous) / steps + (1 - BETA) * trend[room] * (float) Math.pow(PHI, steps);
+        season[slot] = GAMMA * (count - level[room]) + (1 - GAMMA) * season[slot];
+    }
+
+    /** Expected head count of a room at the given time, from its live count now. */
+    public synchronized int forecast(int room, long now, int live, long at) {
+        if (seen[room] == 0) {
+            // Nothing learnt yet: assume it stays as it is
+            return live;
+        }
+        double residual = live - model(room, now);
+        double hoursAhead = Math.max(0, at - now) / (double) HOUR_MILLIS;
+        double expected = model(room, at) + residual * Math.pow(RESIDUAL_DECAY, hoursAhead);
+        return (int) Math.max(0, Math.round(expected));
+    }
+
+    /**
+     * Forecasts every room in one pass: out[room] is the expected head count
+     * at arrivals[room], given the live counts now.
+     */
+    public synchronized void forecastAll(long now, int[] live, long[] arrivals, int[] out) {
+        for (int room = 0; room < roomCount; room++) {
+            out[room] = forecast(room, now, live[room], arrivals[room]);
+        }
+    }
+
+    // Level, trend and profile at a time, with the profile interpolated between hour midpoints
+    private double model(int room, long time) {
+        double hours = (time - (lastHour[room] + 1) * HOUR_MILLIS) / (double) HOUR_MILLIS;
+        double value = level[room] + (hours > 0 ? trend[room] * dampedSteps(hours) : 0);
+        long shifted = time - HOUR_MILLIS / 2;
+        int slot = hourOfWeek(shifted);
+        double fraction = Math.floorMod(shifted + zone.getOffset(shifted), HOUR_MILLIS) / (double) HOUR_MILLIS;
+        int base = room * SEASON_HOURS;
+        return value + season[base + slot] * (1 - fraction)
+                + season[base + (slot + 1) % SEASON_HOURS] * fraction;
+    }
+
+    // PHI + PHI^2 + ... + PHI^steps
+    private static float dampedSteps(double steps) {
+        return (float) (PHI * (1 - Math.pow(PHI, steps)) / (1 - PHI));
+    }
+
+    // Local hour of the week, Monday midnight being 0
+    private int hourOfWeek(long time) {
+        long localHour = Math.floorDiv(time + zone.getOffset(time), HOUR_MILLIS);
+        // The epoch fell on a Thursday
+        return Math.floorMod(localHour + 3 * 24, SEASON_HOURS);
+    }
+}
@@ -0,0 +1,472 @@
+package com.example.ntumap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Occupancy history of every room, kept as time-weighted averages at
+ * one-minute, quarter-hour and hourly resolution.
+ *
+ * Head counts are recorded as they change. Each resolution's buckets are
+ * closed as time passes and packed into {@link SeriesChunk}s, which are
+ * appended to segment files covering a fixed span of buckets. Expired
+ * segments are deleted whole, so minutes are kept for a few days,
+ * quarter-hours for a month and hours for a year; at roughly 1.2 bytes per
+ * point a year of hourly history for 5,000 rooms is about 50 MB.
+ *
+ * Chunks already on disk are found through an in-memory index rebuilt on
+ * open, so a range query reads only the chunks it overlaps.
+ */
+public class OccupancyHistory implements Closeable {
+
+    public static final int MINUTE = 0;
+    public static final int QUARTER_HOUR = 1;
+    public static final int HOUR = 2;
+
+    private static final long[] BUCKET_MILLIS = {60_000L, 15 * 60_000L, 60 * 60_000L};
+    // Buckets per segment file: a day, a week and 30 days
+    private static final long[] SEGMENT_BUCKETS = {24 * 60, 7 * 24 * 4, 30 * 24};
+    // Segments kept, counting the one being written
+    private static final long[] RETAINED_SEGMENTS = {3, 5, 13};
+    // Points per chunk before it is sealed and written
+    private static final int CHUNK_POINTS = 256;
+
+    private static final String SEGMENT_SUFFIX = ".ts";
+
+    /** Told about each bucket as it closes, on the recording thread and under the history's lock. */
+    public interface BucketListener {
+        void onBucket(int room, int resolution, long time, int count);
+    }
+
+    private final File directory;
+    private final Map<Integer, RoomState> rooms = new HashMap<>();
+    // Open segments by resolution, then by segment number
+    private final List<TreeMap<Long, Segment>> segments = new ArrayList<>();
+    private BucketListener listener;
+
+    public OccupancyHistory(File directory) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        this.directory = directory;
+        for (int resolution = 0; resolution < BUCKET_MILLIS.length; resolution++) {
+            segments.add(new TreeMap<>());
+        }
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SEGMENT_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files);
+            for (File file : files) {
+                recover(file);
+            }
+        }
+        for (RoomState state : rooms.values()) {
+            for (List<ChunkRef> chunks : state.chunks) {
+                chunks.sort((a, b) -> Long.compare(a.first, b.first));
+            }
+        }
+    }
+
+    public synchronized void setBucketListener(BucketListener listener) {
+        this.listener = listener;
+    }
+
+    /** Records a room's head count from the given time on. */
+    public synchronized void record(int room, long time, int count) throws IOException {
+        RoomState state = rooms.computeIfAbsent(room, id -> new RoomState());
+        if (state.lastTime < 0) {
+            state.start(time);
+        } else {
+            // Late samples count from the latest time already seen
+            advance(room, state, Math.max(time, state.lastTime));
+        }
+        state.lastCount = Math.max(0, count);
+    }
+
+    /** Closes every bucket that ended by the given time, for rooms whose count hasn't changed. */
+    public synchronized void advanceTo(long time) throws IOException {
+        for (Map.Entry<Integer, RoomState> entry : rooms.entrySet()) {
+            RoomState state = entry.getValue();
+            if (state.lastTime >= 0 && time > state.lastTime) {
+                advance(entry.getKey(), state, time);
+            }
+        }
+    }
+
+    /**
+     * Average head count of each closed bucket starting in [from, to], at
+     * the given resolution, over the part of the bucket that was recorded.
+     * Times are bucket starts.
+     */
+    public synchronized Series query(int room, int resolution, long from, long to) throws IOException {
+        Series.Builder result = new Series.Builder();
+        RoomState state = rooms.get(room);
+        if (state == null) {
+            return result.build();
+        }
+        long bucketMillis = BUCKET_MILLIS[resolution];
+        long firstBucket = Math.floorDiv(from + bucketMillis - 1, bucketMillis);
+        long lastBucket = Math.floorDiv(to, bucketMillis);
+        SeriesChunk.PointSink sink = (bucket, count) -> result.add(bucket * bucketMillis, count);
+
+        List<ChunkRef> chunks = state.chunks.get(resolution);
+        int low = 0;
+        int high = chunks.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunks.get(mid).last < firstBucket) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < chunks.size() && chunks.get(i).first <= lastBucket; i++) {
+            SeriesChunk.decode(read(chunks.get(i)), firstBucket, lastBucket, sink);
+        }
+        OpenChunk open = state.open[resolution];
+        for (int i = 0; i < open.size; i++) {
+            if (open.times[i] >= firstBucket && open.times[i] <= lastBucket) {
+                sink.add(open.times[i], open.counts[i]);
+            }
+        }
+        return result.build();
+    }
+
+    /** Writes out every partly filled chunk, e.g. before the process may be killed. */
+    public synchronized void flush() throws IOException {
+        for (RoomState state : rooms.values()) {
+            for (int resolution = 0; resolution < BUCKET_MILLIS.length; resolution++) {
+                seal(state, resolution);
+            }
+        }
+        for (TreeMap<Long, Segment> byNumber : segments) {
+            for (Segment segment : byNumber.values()) {
+                segment.channel.force(false);
+            }
+        }
+    }
+
+    public synchronized long sizeOnDisk() {
+        long size = 0;
+        for (TreeMap<Long, Segment> byNumber : segments) {
+            for (Segment segment : byNumber.values()) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        for (TreeMap<Long, Segment> byNumber : segments) {
+            for (Segment segment : byNumber.values()) {
+                segment.channel.close();
+            }
+            byNumber.clear();
+        }
+    }
+
+    // Spreads the current count over the time up to now, closing the buckets it passes
+    private void advance(int room, RoomState state, long now) throws IOException {
+        for (int resolution = 0; resolution < BUCKET_MILLIS.length; resolution++) {
+            long bucketMillis = BUCKET_MILLIS[resolution];
+            long from = state.lastTime;
+            long bucket = state.bucket[resolution];
+            long nowBucket = Math.floorDiv(now, bucketMillis);
+
+            // After a long gap, skip straight to buckets that would still be retained
+            long oldestKept = nowBucket - SEGMENT_BUCKETS[resolution] * RETAINED_SEGMENTS[resolution];
+            if (bucket < oldestKept) {
+                bucket = oldestKept;
+                from = bucket * bucketMillis;
+                state.area[resolution] = 0;
+                state.covered[resolution] = 0;
+            }
+            while (bucket < nowBucket) {
+                long end = (bucket + 1) * bucketMillis;
+                state.area[resolution] += (long) state.lastCount * (end - from);
+                state.covered[resolution] += end - from;
+                emit(room, state, resolution, bucket,
+                        (int) Math.round((double) state.area[resolution] / state.covered[resolution]));
+                state.area[resolution] = 0;
+                state.covered[resolution] = 0;
+                from = end;
+                bucket++;
+            }
+            state.area[resolution] += (long) state.lastCount * (now - from);
+            state.covered[resolution] += now - from;
+            state.bucket[resolution] = bucket;
+        }
+        state.lastTime = now;
+    }
+
+    private void emit(int room, RoomState state, int resolution, long bucket, int count) throws IOException {
+        if (bucket <= state.written[resolution]) {
+            // Already on disk from before a restart
+            return;
+        }
+        OpenChunk open = state.open[resolution];
+        long segment = Math.floorDiv(bucket, SEGMENT_BUCKETS[resolution]);
+        if (open.size == CHUNK_POINTS || (open.size > 0 && open.segment != segment)) {
+            seal(state, resolution);
+        }
+        if (open.size == 0) {
+            open.room = room;
+            open.segment = segment;
+        }
+        open.times[open.size] = bucket;
+        open.counts[open.size] = count;
+        open.size++;
+        state.written[resolution] = bucket;
+        if (listener != null) {
+            listener.onBucket(room, resolution, bucket * BUCKET_MILLIS[resolution], count);
+        }
+    }
+
+    private void seal(RoomState state, int resolution) throws IOException {
+        OpenChunk open = state.open[resolution];
+        if (open.size == 0) {
+            return;
+        }
+        byte[] chunk = SeriesChunk.encode(open.times, open.counts, open.size);
+        long first = open.times[0];
+        long last = open.times[open.size - 1];
+        open.size = 0;
+        Segment segment = segment(resolution, open.segment);
+        if (segment == null) {
+            // Expired before it was written
+            return;
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(24);
+        SeriesChunk.writeVarLong(header, open.room);
+        SeriesChunk.writeVarLong(header, first);
+        SeriesChunk.writeVarLong(header, last - first);
+        SeriesChunk.writeVarLong(header, chunk.length);
+        ByteBuffer record = ByteBuffer.allocate(header.size() + chunk.length);
+        record.put(header.toByteArray()).put(chunk).flip();
+        long offset = segment.size;
+        while (record.hasRemaining()) {
+            segment.channel.write(record, offset + record.position());
+        }
+        segment.size += record.limit();
+        state.chunks.get(resolution).add(new ChunkRef(first, last, segment, offset + header.size(), chunk.length));
+    }
+
+    // Segment file to write to, opening it and dropping expired ones; null if already expired
+    private Segment segment(int resolution, long number) throws IOException {
+        TreeMap<Long, Segment> byNumber = segments.get(resolution);
+        Segment segment = byNumber.get(number);
+        if (segment != null) {
+            return segment;
+        }
+        long newest = byNumber.isEmpty() ? number : Math.max(number, byNumber.lastKey());
+        if (number <= newest - RETAINED_SEGMENTS[resolution]) {
+            return null;
+        }
+        segment = openSegment(new File(directory, resolution + "-" + number + SEGMENT_SUFFIX), resolution, number);
+        expire(resolution, newest - RETAINED_SEGMENTS[resolution]);
+        return segment;
+    }
+
+    private Segment openSegment(File file, int resolution, long number) throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+        Segment segment = new Segment(file, channel, channel.size());
+        segments.get(resolution).put(number, segment);
+        return segment;
+    }
+
+    // Deletes segments numbered up to and including newestExpired
+    private void expire(int resolution, long newestExpired) throws IOException {
+        Iterator<Map.Entry<Long, Segment>> expired = segments.get(resolution).headMap(newestExpired, true)
+                .entrySet().iterator();
+        while (expired.hasNext()) {
+            Segment segment = expired.next().getValue();
+            expired.remove();
+            segment.channel.close();
+            if (!segment.file.delete()) {
+                throw new IOException("Cannot delete " + segment.file);
+            }
+            for (RoomState state : rooms.values()) {
+                state.chunks.get(resolution).removeIf(chunk -> chunk.segment == segment);
+            }
+        }
+    }
+
+    private byte[] read(ChunkRef chunk) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(chunk.length);
+        while (buffer.hasRemaining()) {
+            if (chunk.segment.channel.read(buffer, chunk.offset + buffer.position()) < 0) {
+                throw new IOException("Chunk runs past the end of " + chunk.segment.file);
+            }
+        }
+        return buffer.array();
+    }
+
+    // Indexes the chunks of a segment file, cutting off a record left half-written by a crash
+    private void recover(File file) throws IOException {
+        String name = file.getName();
+        int dash = name.indexOf('-');
+        int resolution;
+        long number;
+        try {
+            resolution = Integer.parseInt(name.substring(0, dash));
+            number = Long.parseLong(name.substring(dash + 1, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            // Not one of ours
+            return;
+        }
+        if (resolution < 0 || resolution >= BUCKET_MILLIS.length) {
+            return;
+        }
+        Segment segment = openSegment(file, resolution, number);
+        byte[] data = new byte[(int) segment.size];
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining() && segment.channel.read(buffer, buffer.position()) >= 0) {
+            // Keep reading until the whole file is in
+        }
+
+        int[] pos = {0};
+        int complete = 0;
+        try {
+            while (pos[0] < data.length) {
+                int room = (int) SeriesChunk.readVarLong(data, pos);
+                long first = SeriesChunk.readVarLong(data, pos);
+                long last = first + SeriesChunk.readVarLong(data, pos);
+                int length = (int) SeriesChunk.readVarLong(data, pos);
+                if (pos[0] + length > data.length) {
+                    break;
+                }
+                RoomState state = rooms.computeIfAbsent(room, id -> new RoomState());
+                state.chunks.get(resolution).add(new ChunkRef(first, last, segment, pos[0], length));
+                state.written[resolution] = Math.max(state.written[resolution], last);
+                pos[0] += length;
+                complete = pos[0];
+            }
+        } catch (IllegalArgumentException e) {
+            // Torn header at the end of the file
+            e.printStackTrace();
+        }
+        if (complete < data.length) {
+            segment.channel.truncate(complete);
+            segment.size = complete;
+        }
+    }
+
+    private static final class Segment {
+        final File file;
+        final FileChannel channel;
+        long size;
+
+        Segment(File file, FileChannel channel, long size) {
+            this.file = file;
+            this.channel = channel;
+            this.size = size;
+        }
+    }
+
+    private static final class ChunkRef {
+        // First and last bucket in the chunk
+        final long first;
+        final long last;
+        final Segment segment;
+        final long offset;
+        final int length;
+
+        ChunkRef(long first, long last, Segment segment, long offset, int length) {
+            this.first = first;
+            this.last = last;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class OpenChunk {
+        final long[] times = new long[CHUNK_POINTS];
+        final int[] counts = new int[CHUNK_POINTS];
+        int size;
+        int room;
+        long segment;
+    }
+
+    private static final class RoomState {
+        long lastTime = -1;
+        int lastCount;
+        // Per resolution: the bucket being filled, its count-milliseconds so far and the milliseconds
+        // they cover, which is less than the whole bucket if recording started part way through
+        final long[] bucket = new long[BUCKET_MILLIS.length];
+        final long[] area = new long[BUCKET_MILLIS.length];
+        final long[] covered = new long[BUCKET_MILLIS.length];
+        // Per resolution: last bucket emitted, here or before a restart
+        final long[] written = new long[BUCKET_MILLIS.length];
+        final OpenChunk[] open = new OpenChunk[BUCKET_MILLIS.length];
+        final List<List<ChunkRef>> chunks = new ArrayList<>(BUCKET_MILLIS.length);
+
+        RoomState() {
+            Arrays.fill(written, Long.MIN_VALUE);
+            for (int resolution = 0; resolution < BUCKET_MILLIS.length; resolution++) {
+                open[resolution] = new OpenChunk();
+                chunks.add(new ArrayList<>());
+            }
+        }
+
+        void start(long time) {
+            lastTime = time;
+            for (int resolution = 0; resolution < BUCKET_MILLIS.length; resolution++) {
+                bucket[resolution] = Math.floorDiv(time, BUCKET_MILLIS[resolution]);
+                area[resolution] = 0;
+                covered[resolution] = 0;
+            }
+        }
+    }
+
+    /** Points of one room's series in time order. */
+    public static final class Series {
+        private final long[] times;
+        private final int[] counts;
+        private final int size;
+
+        private Series(long[] times, int[] counts, int size) {
+            this.times = times;
+            this.counts = counts;
+            this.size = size;
+        }
+
+        public int size() { return size; }
+        public long getTime(int i) { return times[i]; }
+        public int getCount(int i) { return counts[i]; }
+
+        static final class Builder {
+            private long[] times = new long[64];
+            private int[] counts = new int[64];
+            private int size;
+
+            void add(long time, int count) {
+                if (size == times.length) {
+                    times = Arrays.copyOf(times, size * 2);
+                    counts = Arrays.copyOf(counts, size * 2);
+                }
+                times[size] = time;
+                counts[size] = count;
+                size++;
+            }
+
+            Series build() {
+                return new Series(times, counts, size);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.ntumap;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Applies feed deltas to an {@link OccupancyStore} on the feed thread and
+ * tells the UI which rooms changed, at most once per frame. However many
+ * events arrive between two frames, each changed room is reported once
+ * with its latest count.
+ */
+public class OccupancyPipeline implements OccupancyFeed.Listener {
+
+    /** Receives coalesced changes on the UI thread. */
+    public interface Listener {
+        void onOccupancyChanged(Map<String, Integer> changedCounts);
+    }
+
+    private final OccupancyStore store;
+    private final FrameScheduler frameScheduler;
+    private final Listener listener;
+
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final AtomicLong eventCount = new AtomicLong();
+    private final Runnable flushTask = this::flush;
+
+    public OccupancyPipeline(OccupancyStore store, FrameScheduler frameScheduler, Listener listener) {
+        this.store = store;
+        this.frameScheduler = frameScheduler;
+        this.listener = listener;
+    }
+
+    public OccupancyStore getStore() {
+        return store;
+    }
+
+    // Number of delta events applied so far
+    public long getEventCount() {
+        return eventCount.get();
+    }
+
+    @Override
+    public void onDeltas(List<OccupancyDelta> batch) {
+        // One store write per batch, so snapshots never see half a batch
+        int[] roomIds = new int[batch.size()];
+        int[] changes = new int[batch.size()];
+        for (int i = 0; i < roomIds.length; i++) {
+            OccupancyDelta delta = batch.get(i);
+            roomIds[i] = store.intern(delta.getRoomId());
+            changes[i] = delta.getChange();
+        }
+        store.applyAll(roomIds, changes, roomIds.length);
+        for (OccupancyDelta delta : batch) {
+            dirtyRooms.add(delta.getRoomId());
+        }
+        eventCount.addAndGet(batch.size());
+        if (!batch.isEmpty() && frameScheduled.compareAndSet(false, true)) {
+            frameScheduler.scheduleFrame(flushTask);
+        }
+    }
+
+    private void flush() {
+        // Clear the flag first: deltas arriving during the flush schedule the next frame
+        frameScheduled.set(false);
+        Map<String, Integer> changed = new HashMap<>();
+        Iterator<String> it = dirtyRooms.iterator();
+        while (it.hasNext()) {
+            String roomId = it.next();
+            it.remove();
+            changed.put(roomId, store.get(roomId));
+        }
+        if (!changed.isEmpty()) {
+            listener.onOccupancyChanged(changed);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.ntumap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Current head count per room, updated lock-free by any number of writers
+ * (feed deltas, beacon scans) while readers take snapshots.
+ *
+ * Room ids are interned to dense ints; counts live in chunks of an
+ * {@link AtomicIntegerArray} so the store can grow without locking. Every
+ * write is bracketed by the begun and done counters. A reader that sees
+ * done == begun before copying, and begun unchanged afterwards, knows no
+ * write overlapped its copy, so the copy is a consistent snapshot.
+ */
+public class OccupancyStore {
+
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 256;
+    private static final int SNAPSHOT_ATTEMPTS = 64;
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final AtomicReferenceArray<AtomicIntegerArray> countChunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicReferenceArray<String> names = new AtomicReferenceArray<>(MAX_CHUNKS * CHUNK_SIZE);
+
+    private final AtomicLong begun = new AtomicLong();
+    private final AtomicLong done = new AtomicLong();
+
+    // Dense id for the room, assigned on first use
+    public int intern(String roomId) {
+        Integer id = ids.get(roomId);
+        if (id == null) {
+            id = ids.computeIfAbsent(roomId, name -> {
+                int next = nextId.getAndIncrement();
+                if (next >= MAX_CHUNKS * CHUNK_SIZE) {
+                    throw new IllegalStateException("Too many rooms: " + name);
+                }
+                chunk(next);
+                names.set(next, name);
+                return next;
+            });
+        }
+        return id;
+    }
+
+    public boolean contains(String roomId) {
+        return ids.containsKey(roomId);
+    }
+
+    // Number of interned rooms; ids run from 0 to roomCount() - 1
+    public int roomCount() {
+        return nextId.get();
+    }
+
+    public String roomName(int id) {
+        return names.get(id);
+    }
+
+    // Number of completed writes, usable as a cheap "anything changed?" check
+    public long version() {
+        return done.get();
+    }
+
+    public void set(String roomId, int count) {
+        int id = intern(roomId);
+        begun.incrementAndGet();
+        try {
+            chunk(id).set(id & (CHUNK_SIZE - 1), Math.max(0, count));
+        } finally {
+            done.incrementAndGet();
+        }
+    }
+
+    // Adds the change and returns the new count, which never drops below zero
+    public int apply(String roomId, int change) {
+        return apply(intern(roomId), change);
+    }
+
+    public int apply(int id, int change) {
+        begun.incrementAndGet();
+        try {
+            return add(id, change);
+        } finally {
+            done.incrementAndGet();
+        }
+    }
+
+    /**
+     * Applies several changes as one write, so no snapshot sees only some
+     * of them. Room ids come from {@link #intern}.
+     */
+    public void applyAll(int[] roomIds, int[] changes, int count) {
+        begun.incrementAndGet();
+        try {
+            for (int i = 0; i < count; i++) {
+                add(roomIds[i], changes[i]);
+            }
+        } finally {
+            done.incrementAndGet();
+        }
+    }
+
+    public int get(String roomId) {
+        Integer id = ids.get(roomId);
+        return id != null ? get(id) : 0;
+    }
+
+    public int get(int id) {
+        AtomicIntegerArray chunk = countChunks.get(id >>> CHUNK_BITS);
+        return chunk != null ? chunk.get(id & (CHUNK_SIZE - 1)) : 0;
+    }
+
+    /**
+     * Copies every room's count into {@code into}, indexed by room id, without
+     * allocating. Returns false if writers kept overlapping the copy; the
+     * array then holds a best-effort read.
+     */
+    public boolean snapshot(int[] into) {
+        int rooms = Math.min(into.length, roomCount());
+        for (int attempt = 0; attempt < SNAPSHOT_ATTEMPTS; attempt++) {
+            long doneBefore = done.get();
+            long begunBefore = begun.get();
+            if (doneBefore != begunBefore) {
+                Thread.yield();
+                continue;
+            }
+            for (int id = 0; id < rooms; id++) {
+                into[id] = get(id);
+            }
+            if (begun.get() == begunBefore) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Consistent counts by room name, for callers that don't mind allocating
+    public Map<String, Integer> snapshot() {
+        int[] counts = new int[roomCount()];
+        while (!snapshot(counts)) {
+            Thread.yield();
+        }
+        Map<String, Integer> snapshot = new HashMap<>();
+        for (int id = 0; id < counts.length; id++) {
+            String name = names.get(id);
+            if (name != null) {
+                snapshot.put(name, counts[id]);
+            }
+        }
+        return snapshot;
+    }
+
+    private int add(int id, int change) {
+        AtomicIntegerArray chunk = chunk(id);
+        int index = id & (CHUNK_SIZE - 1);
+        while (true) {
+            int current = chunk.get(index);
+            int next = Math.max(0, current + change);
+            if (chunk.compareAndSet(index, current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private AtomicIntegerArray chunk(int id) {
+        int index = id >>> CHUNK_BITS;
+        AtomicIntegerArray chunk = countChunks.get(index);
+        if (chunk == null) {
+            countChunks.compareAndSet(index, null, new AtomicIntegerArray(CHUNK_SIZE));
+            chunk = countChunks.get(index);
+        }
+        return chunk;
+    }
+}
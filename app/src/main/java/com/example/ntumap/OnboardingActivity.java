@@ -0,0 +1,19 @@
+package com.example.ntumap;
+
+import android.os.Bundle;
+import android.widget.Button;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+public class OnboardingActivity extends AppCompatActivity {
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_onboarding);
+        
+        // Back to the map, which is already loaded underneath
+        Button getStartedButton = findViewById(R.id.getStartedButton);
+        getStartedButton.setOnClickListener(v -> finish());
+    }
+}
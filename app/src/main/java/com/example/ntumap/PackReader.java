@@ -0,0 +1,74 @@
+package com.example.ntumap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Reads a campus pack section written by {@link PackWriter}. Arrays come
+ * back as views over the section's buffer, so nothing is copied and a
+ * memory-mapped pack is only paged in where it is actually queried.
+ */
+public final class PackReader {
+
+    private final ByteBuffer buffer;
+
+    public PackReader(ByteBuffer section) {
+        buffer = section.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public int getInt() {
+        return buffer.getInt();
+    }
+
+    public double getDouble() {
+        return buffer.getDouble();
+    }
+
+    public IntBuffer ints() {
+        int count = startArray(4);
+        return view(count * 4).asIntBuffer();
+    }
+
+    public DoubleBuffer doubles() {
+        int count = startArray(8);
+        return view(count * 8).asDoubleBuffer();
+    }
+
+    public LongBuffer longs() {
+        int count = startArray(8);
+        return view(count * 8).asLongBuffer();
+    }
+
+    public ByteBuffer bytes() {
+        int count = startArray(1);
+        return view(count);
+    }
+
+    public PackedStrings strings() {
+        IntBuffer offsets = ints();
+        ByteBuffer bytes = bytes();
+        if (offsets.limit() == 0 || offsets.get(offsets.limit() - 1) != bytes.limit()) {
+            throw new IllegalStateException("Malformed string table in campus pack");
+        }
+        return new PackedStrings(offsets, bytes);
+    }
+
+    private int startArray(int elementSize) {
+        int count = buffer.getInt();
+        buffer.position((buffer.position() + 7) & ~7);
+        if (count < 0 || (long) count * elementSize > buffer.remaining()) {
+            throw new IllegalStateException("Truncated array in campus pack");
+        }
+        return count;
+    }
+
+    private ByteBuffer view(int length) {
+        ByteBuffer view = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        view.limit(length);
+        buffer.position(buffer.position() + length);
+        return view;
+    }
+}
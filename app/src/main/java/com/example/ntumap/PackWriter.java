@@ -0,0 +1,116 @@
+package com.example.ntumap;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Growable little-endian buffer that lays out one section of a campus pack.
+ * Arrays are written as their length followed by their values, starting on
+ * an 8-byte boundary, so {@link PackReader} can hand out typed views over
+ * them without copying.
+ */
+public final class PackWriter {
+
+    private ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.LITTLE_ENDIAN);
+
+    public PackWriter putInt(int value) {
+        ensure(4);
+        buffer.putInt(value);
+        return this;
+    }
+
+    public PackWriter putDouble(double value) {
+        ensure(8);
+        buffer.putDouble(value);
+        return this;
+    }
+
+    public PackWriter putInts(int[] values, int count) {
+        startArray(count, 4);
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(values[i]);
+        }
+        return this;
+    }
+
+    public PackWriter putDoubles(double[] values, int count) {
+        startArray(count, 8);
+        for (int i = 0; i < count; i++) {
+            buffer.putDouble(values[i]);
+        }
+        return this;
+    }
+
+    public PackWriter putLongs(long[] values, int count) {
+        startArray(count, 8);
+        for (int i = 0; i < count; i++) {
+            buffer.putLong(values[i]);
+        }
+        return this;
+    }
+
+    public PackWriter putBytes(byte[] values, int count) {
+        startArray(count, 1);
+        buffer.put(values, 0, count);
+        return this;
+    }
+
+    // UTF-8 string table: end offsets of each string, then the concatenated bytes
+    public PackWriter putStrings(List<String> strings) {
+        byte[][] encoded = new byte[strings.size()][];
+        int[] offsets = new int[strings.size() + 1];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = strings.get(i).getBytes(StandardCharsets.UTF_8);
+            offsets[i + 1] = offsets[i] + encoded[i].length;
+        }
+        putInts(offsets, offsets.length);
+        startArray(offsets[encoded.length], 1);
+        for (byte[] bytes : encoded) {
+            buffer.put(bytes);
+        }
+        return this;
+    }
+
+    public int size() {
+        return buffer.position();
+    }
+
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    // Reads back what has been written so far, e.g. to build an in-memory index
+    public PackReader toReader() {
+        return new PackReader(ByteBuffer.wrap(toByteArray()));
+    }
+
+    private void startArray(int count, int elementSize) {
+        ensure(8 + 8 + (long) count * elementSize);
+        buffer.putInt(count);
+        align();
+    }
+
+    private void align() {
+        while ((buffer.position() & 7) != 0) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private void ensure(long bytes) {
+        long needed = buffer.position() + bytes;
+        if (needed > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Pack section too large");
+        }
+        if (needed > buffer.capacity()) {
+            int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(needed, buffer.capacity() * 2L));
+            ByteBuffer grown = ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
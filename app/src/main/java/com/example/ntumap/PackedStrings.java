@@ -0,0 +1,92 @@
+package com.example.ntumap;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * UTF-8 string table inside a campus pack. Strings are decoded only when
+ * asked for; comparisons work on the raw bytes, which order the same way as
+ * code points.
+ */
+public final class PackedStrings {
+
+    private final IntBuffer offsets;
+    private final ByteBuffer bytes;
+
+    PackedStrings(IntBuffer offsets, ByteBuffer bytes) {
+        this.offsets = offsets;
+        this.bytes = bytes;
+    }
+
+    public static PackedStrings of(List<String> strings) {
+        return new PackWriter().putStrings(strings).toReader().strings();
+    }
+
+    public int size() {
+        return offsets.limit() - 1;
+    }
+
+    public String get(int i) {
+        int start = offsets.get(i);
+        byte[] utf8 = new byte[offsets.get(i + 1) - start];
+        ByteBuffer source = bytes.duplicate();
+        source.position(start);
+        source.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    public int byteLength(int i) {
+        return offsets.get(i + 1) - offsets.get(i);
+    }
+
+    // Sign of string i minus the key, comparing unsigned bytes
+    public int compare(int i, byte[] key) {
+        int start = offsets.get(i);
+        int length = offsets.get(i + 1) - start;
+        int shared = Math.min(length, key.length);
+        for (int k = 0; k < shared; k++) {
+            int diff = (bytes.get(start + k) & 0xff) - (key[k] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return length - key.length;
+    }
+
+    public boolean startsWith(int i, byte[] prefix) {
+        int start = offsets.get(i);
+        if (offsets.get(i + 1) - start < prefix.length) {
+            return false;
+        }
+        for (int k = 0; k < prefix.length; k++) {
+            if (bytes.get(start + k) != prefix[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Byte order of two strings, matching compare(); used to sort strings before packing them
+    static int compareUtf8(String a, String b) {
+        byte[] x = utf8(a);
+        byte[] y = utf8(b);
+        int shared = Math.min(x.length, y.length);
+        for (int k = 0; k < shared; k++) {
+            int diff = (x[k] & 0xff) - (y[k] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return x.length - y.length;
+    }
+
+    static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private int start(int i) {
+        return i == 0 ? 0 : offsets.get(i);
+    }
+}
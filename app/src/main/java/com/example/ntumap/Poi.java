@@ -0,0 +1,42 @@
+package com.example.ntumap;
+
+/**
+ * Point of interest on a campus map: a room or building, an emergency exit
+ * or a safe space.
+ */
+public class Poi {
+
+    public enum Category {
+        ROOM,
+        EMERGENCY_EXIT,
+        SAFE_SPACE;
+
+        // Bit for this category in PoiIndex category masks
+        public int mask() { return 1 << ordinal(); }
+    }
+
+    private final int id;
+    private final String name;
+    private final Category category;
+    private final double latitude;
+    private final double longitude;
+
+    public Poi(int id, String name, Category category, double latitude, double longitude) {
+        this.id = id;
+        this.name = name;
+        this.category = category;
+        this.latitude = latitude;
+        this.longitude = longitude;
+    }
+
+    public int getId() { return id; }
+    public String getName() { return name; }
+    public Category getCategory() { return category; }
+    public double getLatitude() { return latitude; }
+    public double getLongitude() { return longitude; }
+
+    @Override
+    public String toString() {
+        return name + " (" + category + ")";
+    }
+}
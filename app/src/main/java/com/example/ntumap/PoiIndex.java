@@ -0,0 +1,492 @@
+package com.example.ntumap;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Static R-tree over campus points of interest, bulk loaded with the
+ * Sort-Tile-Recursive algorithm. Answers k-nearest, radius and bounding box
+ * queries in logarithmic time and is safe to query from several threads.
+ *
+ * Coordinates are projected onto a local plane around the mean latitude, so
+ * distances are metres and accurate at campus and city scale. The POIs and
+ * the tree are stored as buffer views in campus pack layout; {@link Poi}
+ * objects are only created for query results.
+ */
+public class PoiIndex {
+
+    // Category mask matching every POI
+    public static final int ALL = ~0;
+
+    private static final int NODE_CAPACITY = 16;
+    private static final Poi.Category[] CATEGORIES = Poi.Category.values();
+
+    private final double metersPerDegreeLng;
+    private final int root;
+
+    // POI columns, by position in the original list
+    private final IntBuffer poiIds;
+    private final PackedStrings poiNames;
+    private final ByteBuffer poiCategories;
+    private final DoubleBuffer poiLatitudes;
+    private final DoubleBuffer poiLongitudes;
+
+    // Items in tree order
+    private final DoubleBuffer itemX;
+    private final DoubleBuffer itemY;
+    private final IntBuffer itemPoi;
+
+    // Nodes of all levels; children of a node are the range [childStart, childEnd)
+    // of items (leaf nodes) or of nodes
+    private final DoubleBuffer nodeMinX;
+    private final DoubleBuffer nodeMinY;
+    private final DoubleBuffer nodeMaxX;
+    private final DoubleBuffer nodeMaxY;
+    private final IntBuffer nodeChildStart;
+    private final IntBuffer nodeChildEnd;
+    private final IntBuffer nodeMask;
+    private final ByteBuffer nodeLeaf;
+
+    public PoiIndex(List<Poi> pois) {
+        this(encode(pois));
+    }
+
+    private PoiIndex(PackReader in) {
+        metersPerDegreeLng = in.getDouble();
+        root = in.getInt();
+        poiIds = in.ints();
+        poiNames = in.strings();
+        poiCategories = in.bytes();
+        poiLatitudes = in.doubles();
+        poiLongitudes = in.doubles();
+        itemX = in.doubles();
+        itemY = in.doubles();
+        itemPoi = in.ints();
+        nodeMinX = in.doubles();
+        nodeMinY = in.doubles();
+        nodeMaxX = in.doubles();
+        nodeMaxY = in.doubles();
+        nodeChildStart = in.ints();
+        nodeChildEnd = in.ints();
+        nodeMask = in.ints();
+        nodeLeaf = in.bytes();
+    }
+
+    // Index stored by write, viewed in place
+    public static PoiIndex read(PackReader in) {
+        return new PoiIndex(in);
+    }
+
+    // Bulk loads the tree and writes the POIs and the tree in the layout read expects
+    public static void write(List<Poi> pois, PackWriter out) {
+        new StrLoader(pois).writeTo(out);
+    }
+
+    private static PackReader encode(List<Poi> pois) {
+        PackWriter out = new PackWriter();
+        write(pois, out);
+        return out.toReader();
+    }
+
+    // Read-only view; each call to get creates the Poi
+    public List<Poi> getPois() {
+        return new AbstractList<Poi>() {
+            @Override
+            public Poi get(int index) { return getPoi(index); }
+
+            @Override
+            public int size() { return PoiIndex.this.size(); }
+        };
+    }
+
+    // POI at the given position in the list the index was built from
+    public Poi getPoi(int index) {
+        return new Poi(poiIds.get(index), poiNames.get(index), CATEGORIES[poiCategories.get(index)],
+                poiLatitudes.get(index), poiLongitudes.get(index));
+    }
+
+    public int size() { return poiIds.limit(); }
+
+    // Tree nodes stored, for tests
+    int nodeCount() { return nodeLeaf.limit(); }
+
+    // Up to k POIs matching the category mask, closest first
+    public List<Poi> nearest(double lat, double lng, int k, int categoryMask) {
+        List<Poi> result = new ArrayList<>(Math.min(k, 16));
+        if (root < 0 || k <= 0) return result;
+        double qx = projectX(lng);
+        double qy = projectY(lat);
+
+        // Best-first search: nodes are encoded as ids >= 0, items as -(item + 1)
+        CandidateQueue queue = new CandidateQueue();
+        queue.add(boxDistanceSq(root, qx, qy), root);
+        while (!queue.isEmpty() && result.size() < k) {
+            int entry = queue.pollEntry();
+            if (entry < 0) {
+                result.add(getPoi(itemPoi.get(-entry - 1)));
+                continue;
+            }
+            int start = nodeChildStart.get(entry);
+            int end = nodeChildEnd.get(entry);
+            if (nodeLeaf.get(entry) != 0) {
+                for (int i = start; i < end; i++) {
+                    if ((categoryMask(itemPoi.get(i)) & categoryMask) == 0) continue;
+                    double dx = itemX.get(i) - qx;
+                    double dy = itemY.get(i) - qy;
+                    queue.add(dx * dx + dy * dy, -i - 1);
+                }
+            } else {
+                for (int child = start; child < end; child++) {
+                    if ((nodeMask.get(child) & categoryMask) == 0) continue;
+                    queue.add(boxDistanceSq(child, qx, qy), child);
+                }
+            }
+        }
+        return result;
+    }
+
+    // All POIs within radiusMeters matching the category mask, closest first
+    public List<Poi> withinRadius(double lat, double lng, double radiusMeters, int categoryMask) {
+        List<Poi> result = new ArrayList<>();
+        if (root < 0) return result;
+        double qx = projectX(lng);
+        double qy = projectY(lat);
+        double radiusSq = radiusMeters * radiusMeters;
+
+        CandidateQueue matches = new CandidateQueue();
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if ((nodeMask.get(node) & categoryMask) == 0 || boxDistanceSq(node, qx, qy) > radiusSq) continue;
+            if (nodeLeaf.get(node) != 0) {
+                for (int i = nodeChildStart.get(node); i < nodeChildEnd.get(node); i++) {
+                    if ((categoryMask(itemPoi.get(i)) & categoryMask) == 0) continue;
+                    double dx = itemX.get(i) - qx;
+                    double dy = itemY.get(i) - qy;
+                    double d = dx * dx + dy * dy;
+                    if (d <= radiusSq) matches.add(d, itemPoi.get(i));
+                }
+            } else {
+                for (int child = nodeChildStart.get(node); child < nodeChildEnd.get(node); child++) {
+                    if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = child;
+                }
+            }
+        }
+        while (!matches.isEmpty()) {
+            result.add(getPoi(matches.pollEntry()));
+        }
+        return result;
+    }
+
+    // All POIs inside the latitude/longitude box matching the category mask
+    public List<Poi> inBounds(double south, double west, double north, double east, int categoryMask) {
+        List<Poi> result = new ArrayList<>();
+        if (root < 0) return result;
+        double minX = projectX(west);
+        double maxX = projectX(east);
+        double minY = projectY(south);
+        double maxY = projectY(north);
+
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = root;
+        while (top > 0) {
+            int node = stack[--top];
+            if ((nodeMask.get(node) & categoryMask) == 0
+                    || nodeMaxX.get(node) < minX || nodeMinX.get(node) > maxX
+                    || nodeMaxY.get(node) < minY || nodeMinY.get(node) > maxY) continue;
+            if (nodeLeaf.get(node) != 0) {
+                for (int i = nodeChildStart.get(node); i < nodeChildEnd.get(node); i++) {
+                    if ((categoryMask(itemPoi.get(i)) & categoryMask) == 0) continue;
+                    double x = itemX.get(i);
+                    double y = itemY.get(i);
+                    if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                        result.add(getPoi(itemPoi.get(i)));
+                    }
+                }
+            } else {
+                for (int child = nodeChildStart.get(node); child < nodeChildEnd.get(node); child++) {
+                    if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = child;
+                }
+            }
+        }
+        return result;
+    }
+
+    // Planar distance in metres, consistent with the ordering of query results
+    public double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dx = projectX(lng1) - projectX(lng2);
+        double dy = projectY(lat1) - projectY(lat2);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private double projectX(double lng) { return lng * metersPerDegreeLng; }
+    private double projectY(double lat) { return lat * metersPerDegreeLat(); }
+
+    private int categoryMask(int poi) {
+        return 1 << poiCategories.get(poi);
+    }
+
+    private static double metersPerDegreeLat() {
+        return Math.toRadians(1) * GeoUtils.EARTH_RADIUS_METERS;
+    }
+
+    private double boxDistanceSq(int node, double x, double y) {
+        double dx = Math.max(0, Math.max(nodeMinX.get(node) - x, x - nodeMaxX.get(node)));
+        double dy = Math.max(0, Math.max(nodeMinY.get(node) - y, y - nodeMaxY.get(node)));
+        return dx * dx + dy * dy;
+    }
+
+    // Bulk loads the tree into growable arrays, then writes them out
+    private static final class StrLoader {
+        private final List<Poi> pois;
+        private final double metersPerDegreeLng;
+        private final double[] itemX;
+        private final double[] itemY;
+        private final int[] itemPoi;
+        private double[] nodeMinX;
+        private double[] nodeMinY;
+        private double[] nodeMaxX;
+        private double[] nodeMaxY;
+        private int[] nodeChildStart;
+        private int[] nodeChildEnd;
+        private int[] nodeMask;
+        private boolean[] nodeLeaf;
+        private int nodeCount;
+        private final int root;
+
+        StrLoader(List<Poi> pois) {
+            this.pois = new ArrayList<>(pois);
+            int n = pois.size();
+
+            double latSum = 0;
+            for (Poi poi : pois) latSum += poi.getLatitude();
+            double referenceLat = n > 0 ? latSum / n : 0;
+            metersPerDegreeLng = metersPerDegreeLat() * Math.cos(Math.toRadians(referenceLat));
+
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = pois.get(i).getLongitude() * metersPerDegreeLng;
+                y[i] = pois.get(i).getLatitude() * metersPerDegreeLat();
+            }
+            int[] order = strOrder(x, y, n);
+            itemX = new double[n];
+            itemY = new double[n];
+            itemPoi = new int[n];
+            for (int i = 0; i < n; i++) {
+                itemX[i] = x[order[i]];
+                itemY[i] = y[order[i]];
+                itemPoi[i] = order[i];
+            }
+
+            int capacity = Math.max(4, n / (NODE_CAPACITY - 1) + 1);
+            nodeMinX = new double[capacity];
+            nodeMinY = new double[capacity];
+            nodeMaxX = new double[capacity];
+            nodeMaxY = new double[capacity];
+            nodeChildStart = new int[capacity];
+            nodeChildEnd = new int[capacity];
+            nodeMask = new int[capacity];
+            nodeLeaf = new boolean[capacity];
+            root = n == 0 ? -1 : buildLevels(n);
+        }
+
+        void writeTo(PackWriter out) {
+            int n = pois.size();
+            int[] ids = new int[n];
+            List<String> names = new ArrayList<>(n);
+            byte[] categories = new byte[n];
+            double[] lats = new double[n];
+            double[] lngs = new double[n];
+            for (int i = 0; i < n; i++) {
+                Poi poi = pois.get(i);
+                ids[i] = poi.getId();
+                names.add(poi.getName());
+                categories[i] = (byte) poi.getCategory().ordinal();
+                lats[i] = poi.getLatitude();
+                lngs[i] = poi.getLongitude();
+            }
+            byte[] leaf = new byte[nodeCount];
+            for (int i = 0; i < nodeCount; i++) {
+                leaf[i] = (byte) (nodeLeaf[i] ? 1 : 0);
+            }
+            out.putDouble(metersPerDegreeLng).putInt(root)
+                    .putInts(ids, n).putStrings(names).putBytes(categories, n)
+                    .putDoubles(lats, n).putDoubles(lngs, n)
+                    .putDoubles(itemX, n).putDoubles(itemY, n).putInts(itemPoi, n)
+                    .putDoubles(nodeMinX, nodeCount).putDoubles(nodeMinY, nodeCount)
+                    .putDoubles(nodeMaxX, nodeCount).putDoubles(nodeMaxY, nodeCount)
+                    .putInts(nodeChildStart, nodeCount).putInts(nodeChildEnd, nodeCount)
+                    .putInts(nodeMask, nodeCount).putBytes(leaf, nodeCount);
+        }
+
+        // Packs leaves over the items, then each level over the one below, until one root remains
+        private int buildLevels(int itemCount) {
+            int levelStart = nodeCount;
+            for (int start = 0; start < itemCount; start += NODE_CAPACITY) {
+                int end = Math.min(itemCount, start + NODE_CAPACITY);
+                int node = appendNode(true, start, end);
+                for (int i = start; i < end; i++) {
+                    includePoint(node, itemX[i], itemY[i]);
+                    nodeMask[node] |= pois.get(itemPoi[i]).getCategory().mask();
+                }
+            }
+            int levelEnd = nodeCount;
+
+            while (levelEnd - levelStart > 1) {
+                // Sort this level into STR order in place; nothing points at its nodes yet
+                int count = levelEnd - levelStart;
+                double[] cx = new double[count];
+                double[] cy = new double[count];
+                for (int i = 0; i < count; i++) {
+                    int node = levelStart + i;
+                    cx[i] = (nodeMinX[node] + nodeMaxX[node]) / 2;
+                    cy[i] = (nodeMinY[node] + nodeMaxY[node]) / 2;
+                }
+                reorder(levelStart, strOrder(cx, cy, count));
+
+                for (int start = levelStart; start < levelEnd; start += NODE_CAPACITY) {
+                    int end = Math.min(levelEnd, start + NODE_CAPACITY);
+                    int parent = appendNode(false, start, end);
+                    for (int child = start; child < end; child++) {
+                        includePoint(parent, nodeMinX[child], nodeMinY[child]);
+                        includePoint(parent, nodeMaxX[child], nodeMaxY[child]);
+                        nodeMask[parent] |= nodeMask[child];
+                    }
+                }
+                levelStart = levelEnd;
+                levelEnd = nodeCount;
+            }
+            return levelStart;
+        }
+
+        private int appendNode(boolean leaf, int childStart, int childEnd) {
+            if (nodeCount == nodeMinX.length) {
+                int capacity = nodeCount * 2;
+                nodeMinX = Arrays.copyOf(nodeMinX, capacity);
+                nodeMinY = Arrays.copyOf(nodeMinY, capacity);
+                nodeMaxX = Arrays.copyOf(nodeMaxX, capacity);
+                nodeMaxY = Arrays.copyOf(nodeMaxY, capacity);
+                nodeChildStart = Arrays.copyOf(nodeChildStart, capacity);
+                nodeChildEnd = Arrays.copyOf(nodeChildEnd, capacity);
+                nodeMask = Arrays.copyOf(nodeMask, capacity);
+                nodeLeaf = Arrays.copyOf(nodeLeaf, capacity);
+            }
+            int node = nodeCount++;
+            nodeMinX[node] = Double.POSITIVE_INFINITY;
+            nodeMinY[node] = Double.POSITIVE_INFINITY;
+            nodeMaxX[node] = Double.NEGATIVE_INFINITY;
+            nodeMaxY[node] = Double.NEGATIVE_INFINITY;
+            nodeChildStart[node] = childStart;
+            nodeChildEnd[node] = childEnd;
+            nodeMask[node] = 0;
+            nodeLeaf[node] = leaf;
+            return node;
+        }
+
+        // Moves node first + order[i] to first + i
+        private void reorder(int first, int[] order) {
+            int end = first + order.length;
+            double[] minX = Arrays.copyOfRange(nodeMinX, first, end);
+            double[] minY = Arrays.copyOfRange(nodeMinY, first, end);
+            double[] maxX = Arrays.copyOfRange(nodeMaxX, first, end);
+            double[] maxY = Arrays.copyOfRange(nodeMaxY, first, end);
+            int[] childStart = Arrays.copyOfRange(nodeChildStart, first, end);
+            int[] childEnd = Arrays.copyOfRange(nodeChildEnd, first, end);
+            int[] mask = Arrays.copyOfRange(nodeMask, first, end);
+            boolean[] leaf = Arrays.copyOfRange(nodeLeaf, first, end);
+            for (int i = 0; i < order.length; i++) {
+                int from = order[i];
+                nodeMinX[first + i] = minX[from];
+                nodeMinY[first + i] = minY[from];
+                nodeMaxX[first + i] = maxX[from];
+                nodeMaxY[first + i] = maxY[from];
+                nodeChildStart[first + i] = childStart[from];
+                nodeChildEnd[first + i] = childEnd[from];
+                nodeMask[first + i] = mask[from];
+                nodeLeaf[first + i] = leaf[from];
+            }
+        }
+
+        private void includePoint(int node, double x, double y) {
+            nodeMinX[node] = Math.min(nodeMinX[node], x);
+            nodeMinY[node] = Math.min(nodeMinY[node], y);
+            nodeMaxX[node] = Math.max(nodeMaxX[node], x);
+            nodeMaxY[node] = Math.max(nodeMaxY[node], y);
+        }
+
+        // Sort-Tile-Recursive order: vertical slices by x, each slice sorted by y
+        private static int[] strOrder(double[] x, double[] y, int count) {
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Double.compare(x[a], x[b]));
+
+            int leafCount = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            int slices = (int) Math.ceil(Math.sqrt(leafCount));
+            int sliceSize = slices * NODE_CAPACITY;
+            for (int start = 0; start < count; start += sliceSize) {
+                Arrays.sort(order, start, Math.min(count, start + sliceSize), (a, b) -> Double.compare(y[a], y[b]));
+            }
+
+            int[] result = new int[count];
+            for (int i = 0; i < count; i++) result[i] = order[i];
+            return result;
+        }
+    }
+
+    // Min-heap of (distance, entry) pairs used by the queries
+    private static final class CandidateQueue {
+        private double[] keys = new double[32];
+        private int[] entries = new int[32];
+        private int size;
+
+        boolean isEmpty() { return size == 0; }
+
+        void add(double key, int entry) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            int pos = size++;
+            while (pos > 0) {
+                int parent = (pos - 1) >>> 1;
+                if (keys[parent] <= key) break;
+                keys[pos] = keys[parent];
+                entries[pos] = entries[parent];
+                pos = parent;
+            }
+            keys[pos] = key;
+            entries[pos] = entry;
+        }
+
+        int pollEntry() {
+            int top = entries[0];
+            size--;
+            double key = keys[size];
+            int entry = entries[size];
+            int pos = 0;
+            int half = size >>> 1;
+            while (pos < half) {
+                int child = 2 * pos + 1;
+                if (child + 1 < size && keys[child + 1] < keys[child]) child++;
+                if (key <= keys[child]) break;
+                keys[pos] = keys[child];
+                entries[pos] = entries[child];
+                pos = child;
+            }
+            keys[pos] = key;
+            entries[pos] = entry;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Alert feed that polls an {@link AlertServer} on a background thread.
+ * Pages are read back to back while the server has more, so a burst of
+ * alerts arrives as a few large batches rather than one poll interval per
+ * page, then the feed waits for the interval before asking again. Each
+ * start reads the server's log from the beginning, as a new listener has
+ * none of it yet.
+ */
+public class PollingAlertFeed implements AlertFeed {
+
+    private final AlertServer server;
+    private final long intervalMillis;
+    private final int pageSize;
+    private volatile long cursor;
+    private volatile Thread thread;
+
+    public PollingAlertFeed(AlertServer server, long intervalMillis, int pageSize) {
+        this.server = server;
+        this.intervalMillis = intervalMillis;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (thread != null && thread.isAlive()) {
+            return;
+        }
+        cursor = 0;
+        thread = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (!pollOnce(listener)) {
+                        Thread.sleep(intervalMillis);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // Stopped
+            }
+        }, "alert-poll");
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Reads one page on the calling thread and hands it to the listener.
+     * Returns whether a full page came back, meaning there may be more.
+     */
+    public boolean pollOnce(Listener listener) {
+        AlertServer.Page page;
+        try {
+            page = server.poll(cursor, pageSize);
+        } catch (InterruptedIOException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        if (!page.getAlerts().isEmpty()) {
+            listener.onAlerts(page.getAlerts());
+        }
+        cursor = page.getCursor();
+        return page.getAlerts().size() == pageSize;
+    }
+}
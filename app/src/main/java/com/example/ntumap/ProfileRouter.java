@@ -0,0 +1,90 @@
+package com.example.ntumap;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Routes under the current {@link RoutingProfile}, switching profiles
+ * without touching the graph.
+ *
+ * Plain shortest routes go to the given router, typically a
+ * {@link ContractionHierarchyRouter}, whose shortcuts only hold for plain
+ * walking distances. Every other profile gets its own {@link AStarRouter}
+ * the first time it is used, with its own search buffers and the last
+ * route it found, so switching a profile off and on again re-plans the
+ * same trip without searching. Not thread-safe, like the routers it wraps.
+ */
+public class ProfileRouter implements Router {
+
+    private Router shortest;
+    private final Map<RoutingProfile, Planner> planners = new HashMap<>();
+    private RoutingProfile profile = RoutingProfile.SHORTEST;
+    private Planner current;
+
+    public ProfileRouter(Router shortest) {
+        this.shortest = shortest;
+        current = new Planner(shortest);
+        planners.put(RoutingProfile.SHORTEST, current);
+    }
+
+    /**
+     * Replaces the router for plain shortest routes, e.g. with a faster one
+     * once its index has loaded. It must route over the same graph.
+     */
+    public void setShortest(Router shortest) {
+        if (shortest.getGraph() != this.shortest.getGraph()) {
+            throw new IllegalArgumentException("Router is for another graph");
+        }
+        this.shortest = shortest;
+        Planner planner = new Planner(shortest);
+        planners.put(RoutingProfile.SHORTEST, planner);
+        if (profile == RoutingProfile.SHORTEST) {
+            current = planner;
+        }
+    }
+
+    @Override
+    public CampusGraph getGraph() { return shortest.getGraph(); }
+
+    public RoutingProfile getProfile() { return profile; }
+
+    public void setProfile(RoutingProfile profile) {
+        this.profile = profile;
+        current = planners.get(profile);
+        if (current == null) {
+            current = new Planner(new AStarRouter(shortest.getGraph(), profile));
+            planners.put(profile, current);
+        }
+    }
+
+    @Override
+    public Route findRoute(int source, int target) {
+        return current.findRoute(source, target);
+    }
+
+    @Override
+    public double edgeCost(int edge) {
+        return current.router.edgeCost(edge);
+    }
+
+    // One profile's router and the last trip it planned
+    private static final class Planner {
+        final Router router;
+        int source = -1;
+        int target = -1;
+        Route route;
+
+        Planner(Router router) {
+            this.router = router;
+        }
+
+        Route findRoute(int source, int target) {
+            if (source != this.source || target != this.target) {
+                route = router.findRoute(source, target);
+                this.source = source;
+                this.target = target;
+            }
+            return route;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.ntumap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Fake occupancy feed that replays a recorded event file.
+ *
+ * The file has one event per line, {@code timestamp_ms,room_id,change},
+ * in timestamp order; blank lines and lines starting with # are ignored. A
+ * looping feed replays the changes again on top of the counts they left, so
+ * a recording meant to loop should net each room to zero. Events are replayed on
+ * a background thread at their recorded pace times the speed factor, with
+ * all events due at the same moment delivered as one batch.
+ */
+public class ReplayOccupancyFeed implements OccupancyFeed {
+
+    private final CampusData.AssetOpener assets;
+    private final String assetName;
+    private final double speed;
+    private final boolean loop;
+    private List<OccupancyDelta> events;
+    private volatile Thread thread;
+
+    public ReplayOccupancyFeed(List<OccupancyDelta> events, double speed, boolean loop) {
+        this.assets = null;
+        this.assetName = null;
+        this.events = events;
+        this.speed = speed;
+        this.loop = loop;
+    }
+
+    // Replays a bundled asset, parsed on the replay thread when the feed starts
+    public ReplayOccupancyFeed(CampusData.AssetOpener assets, String assetName, double speed, boolean loop) {
+        this.assets = assets;
+        this.assetName = assetName;
+        this.speed = speed;
+        this.loop = loop;
+    }
+
+    public static List<OccupancyDelta> parse(Reader source) throws IOException {
+        List<OccupancyDelta> events = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(source);
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length != 3) {
+                throw new IOException("Bad occupancy event on line " + lineNumber + ": " + line);
+            }
+            OccupancyDelta event;
+            try {
+                event = new OccupancyDelta(fields[1].trim(),
+                        Integer.parseInt(fields[2].trim()), Long.parseLong(fields[0].trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad occupancy event on line " + lineNumber + ": " + line, e);
+            }
+            if (!events.isEmpty() && event.getTimestampMillis() < events.get(events.size() - 1).getTimestampMillis()) {
+                throw new IOException("Occupancy event out of order on line " + lineNumber + ": " + line);
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    @Override
+    public synchronized void start(Listener listener) {
+        if (thread != null && thread.isAlive()) {
+            return;
+        }
+        thread = new Thread(() -> {
+            try {
+                if (!loadEvents()) {
+                    return;
+                }
+                do {
+                    replay(listener);
+                } while (loop && !Thread.currentThread().isInterrupted());
+            } catch (InterruptedException e) {
+                // Stopped
+            }
+        }, "occupancy-replay");
+        thread.start();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    private synchronized boolean loadEvents() {
+        if (events == null) {
+            try (InputStream in = assets.open(assetName)) {
+                events = parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replays the events once on the calling thread. A speed of
+     * {@code Double.POSITIVE_INFINITY} replays without waiting.
+     */
+    public void replay(Listener listener) throws InterruptedException {
+        List<OccupancyDelta> events = this.events;
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        long firstTimestamp = events.get(0).getTimestampMillis();
+        long startNanos = System.nanoTime();
+        int i = 0;
+        while (i < events.size()) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException();
+            }
+            long dueMillis = events.get(i).getTimestampMillis();
+            long waitNanos = startNanos + (long) ((dueMillis - firstTimestamp) * 1e6 / speed) - System.nanoTime();
+            if (waitNanos > 0) {
+                Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+            }
+
+            // Everything recorded up to now goes out together
+            long nowMillis = firstTimestamp + (long) ((System.nanoTime() - startNanos) / 1e6 * speed);
+            int end = i + 1;
+            while (end < events.size() && events.get(end).getTimestampMillis() <= Math.max(nowMillis, dueMillis)) {
+                end++;
+            }
+            listener.onDeltas(Collections.unmodifiableList(events.subList(i, end)));
+            i = end;
+        }
+    }
+}
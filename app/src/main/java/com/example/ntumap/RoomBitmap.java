@@ -0,0 +1,373 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed set of non-negative ints, laid out like a roaring
+ * bitmap: values are split by their high 16 bits into containers, and each
+ * container stores its low 16 bits either as a sorted char array (up to
+ * 4096 values) or as a 65536-bit bitmap. Sparse sets stay small and dense
+ * ones intersect a word at a time.
+ */
+public final class RoomBitmap {
+
+    public static final RoomBitmap EMPTY = new RoomBitmap(new int[0], new Object[0], new int[0]);
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    // Container i holds values whose high 16 bits are keys[i]: a char[] or a long[BITMAP_WORDS]
+    private final int[] keys;
+    private final Object[] containers;
+    private final int[] cardinalities;
+
+    private RoomBitmap(int[] keys, Object[] containers, int[] cardinalities) {
+        this.keys = keys;
+        this.containers = containers;
+        this.cardinalities = cardinalities;
+    }
+
+    public static RoomBitmap of(int... values) {
+        Builder builder = new Builder();
+        for (int value : values) {
+            builder.add(value);
+        }
+        return builder.build();
+    }
+
+    // Every value in [from, to)
+    public static RoomBitmap range(int from, int to) {
+        Builder builder = new Builder();
+        for (int value = from; value < to; value++) {
+            builder.add(value);
+        }
+        return builder.build();
+    }
+
+    public int cardinality() {
+        int total = 0;
+        for (int count : cardinalities) {
+            total += count;
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return keys.length == 0;
+    }
+
+    public boolean contains(int value) {
+        int i = Arrays.binarySearch(keys, value >>> 16);
+        if (i < 0) {
+            return false;
+        }
+        char low = (char) value;
+        Object container = containers[i];
+        if (container instanceof char[]) {
+            return Arrays.binarySearch((char[]) container, low) >= 0;
+        }
+        return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    /** Values in ascending order. */
+    public int[] toArray() {
+        int[] result = new int[cardinality()];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            int high = keys[i] << 16;
+            Object container = containers[i];
+            if (container instanceof char[]) {
+                for (char low : (char[]) container) {
+                    result[n++] = high | low;
+                }
+            } else {
+                long[] words = (long[]) container;
+                for (int w = 0; w < words.length; w++) {
+                    long word = words[w];
+                    while (word != 0) {
+                        result[n++] = high | (w << 6) | Long.numberOfTrailingZeros(word);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public RoomBitmap and(RoomBitmap other) {
+        Merger out = new Merger(Math.min(keys.length, other.keys.length));
+        int i = 0;
+        int j = 0;
+        while (i < keys.length && j < other.keys.length) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                out.add(keys[i], and(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return out.build();
+    }
+
+    public RoomBitmap or(RoomBitmap other) {
+        Merger out = new Merger(keys.length + other.keys.length);
+        int i = 0;
+        int j = 0;
+        while (i < keys.length || j < other.keys.length) {
+            if (j == other.keys.length || (i < keys.length && keys[i] < other.keys[j])) {
+                out.add(keys[i], containers[i]);
+                i++;
+            } else if (i == keys.length || keys[i] > other.keys[j]) {
+                out.add(other.keys[j], other.containers[j]);
+                j++;
+            } else {
+                out.add(keys[i], or(containers[i], other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return out.build();
+    }
+
+    // Values in this set but not in other
+    public RoomBitmap andNot(RoomBitmap other) {
+        Merger out = new Merger(keys.length);
+        int j = 0;
+        for (int i = 0; i < keys.length; i++) {
+            while (j < other.keys.length && other.keys[j] < keys[i]) {
+                j++;
+            }
+            if (j < other.keys.length && other.keys[j] == keys[i]) {
+                out.add(keys[i], andNot(containers[i], other.containers[j]));
+            } else {
+                out.add(keys[i], containers[i]);
+            }
+        }
+        return out.build();
+    }
+
+    private static Object and(Object a, Object b) {
+        if (a instanceof char[] && b instanceof char[]) {
+            char[] x = (char[]) a;
+            char[] y = (char[]) b;
+            char[] result = new char[Math.min(x.length, y.length)];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < x.length && j < y.length) {
+                if (x[i] < y[j]) {
+                    i++;
+                } else if (x[i] > y[j]) {
+                    j++;
+                } else {
+                    result[n++] = x[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+        if (a instanceof char[] || b instanceof char[]) {
+            char[] array = (char[]) (a instanceof char[] ? a : b);
+            long[] words = (long[]) (a instanceof char[] ? b : a);
+            char[] result = new char[array.length];
+            int n = 0;
+            for (char low : array) {
+                if ((words[low >>> 6] & (1L << low)) != 0) {
+                    result[n++] = low;
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+        long[] x = (long[]) a;
+        long[] y = (long[]) b;
+        long[] result = new long[BITMAP_WORDS];
+        for (int w = 0; w < BITMAP_WORDS; w++) {
+            result[w] = x[w] & y[w];
+        }
+        return result;
+    }
+
+    private static Object or(Object a, Object b) {
+        if (a instanceof char[] && b instanceof char[]) {
+            char[] x = (char[]) a;
+            char[] y = (char[]) b;
+            char[] result = new char[x.length + y.length];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while (i < x.length || j < y.length) {
+                if (j == y.length || (i < x.length && x[i] < y[j])) {
+                    result[n++] = x[i++];
+                } else if (i == x.length || x[i] > y[j]) {
+                    result[n++] = y[j++];
+                } else {
+                    result[n++] = x[i];
+                    i++;
+                    j++;
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+        long[] result = toWords(a);
+        if (b instanceof char[]) {
+            for (char low : (char[]) b) {
+                result[low >>> 6] |= 1L << low;
+            }
+        } else {
+            long[] y = (long[]) b;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                result[w] |= y[w];
+            }
+        }
+        return result;
+    }
+
+    private static Object andNot(Object a, Object b) {
+        if (a instanceof char[]) {
+            char[] x = (char[]) a;
+            char[] result = new char[x.length];
+            int n = 0;
+            for (char low : x) {
+                if (!containsLow(b, low)) {
+                    result[n++] = low;
+                }
+            }
+            return Arrays.copyOf(result, n);
+        }
+        long[] result = ((long[]) a).clone();
+        if (b instanceof char[]) {
+            for (char low : (char[]) b) {
+                result[low >>> 6] &= ~(1L << low);
+            }
+        } else {
+            long[] y = (long[]) b;
+            for (int w = 0; w < BITMAP_WORDS; w++) {
+                result[w] &= ~y[w];
+            }
+        }
+        return result;
+    }
+
+    private static boolean containsLow(Object container, char low) {
+        if (container instanceof char[]) {
+            return Arrays.binarySearch((char[]) container, low) >= 0;
+        }
+        return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+    }
+
+    private static long[] toWords(Object container) {
+        if (container instanceof long[]) {
+            return ((long[]) container).clone();
+        }
+        long[] words = new long[BITMAP_WORDS];
+        for (char low : (char[]) container) {
+            words[low >>> 6] |= 1L << low;
+        }
+        return words;
+    }
+
+    private static int cardinality(Object container) {
+        if (container instanceof char[]) {
+            return ((char[]) container).length;
+        }
+        int count = 0;
+        for (long word : (long[]) container) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // Collects result containers, dropping empty ones and switching representation at ARRAY_MAX
+    private static final class Merger {
+        private final int[] keys;
+        private final Object[] containers;
+        private final int[] cardinalities;
+        private int size;
+
+        Merger(int capacity) {
+            keys = new int[capacity];
+            containers = new Object[capacity];
+            cardinalities = new int[capacity];
+        }
+
+        void add(int key, Object container) {
+            int count = cardinality(container);
+            if (count == 0) {
+                return;
+            }
+            if (container instanceof long[] && count <= ARRAY_MAX) {
+                container = toArray((long[]) container, count);
+            } else if (container instanceof char[] && count > ARRAY_MAX) {
+                container = toWords(container);
+            }
+            keys[size] = key;
+            containers[size] = container;
+            cardinalities[size] = count;
+            size++;
+        }
+
+        RoomBitmap build() {
+            return new RoomBitmap(Arrays.copyOf(keys, size), Arrays.copyOf(containers, size),
+                    Arrays.copyOf(cardinalities, size));
+        }
+
+        private static char[] toArray(long[] words, int count) {
+            char[] result = new char[count];
+            int n = 0;
+            for (int w = 0; w < words.length; w++) {
+                long word = words[w];
+                while (word != 0) {
+                    result[n++] = (char) ((w << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return result;
+        }
+    }
+
+    /** Accumulates values in any order. */
+    public static class Builder {
+        private int[] values = new int[16];
+        private int size;
+
+        public Builder add(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Negative value " + value);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+            return this;
+        }
+
+        public RoomBitmap build() {
+            int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            Merger out = new Merger(size);
+            int i = 0;
+            while (i < sorted.length) {
+                int key = sorted[i] >>> 16;
+                int end = i;
+                while (end < sorted.length && sorted[end] >>> 16 == key) {
+                    end++;
+                }
+                char[] lows = new char[end - i];
+                int n = 0;
+                for (int k = i; k < end; k++) {
+                    char low = (char) sorted[k];
+                    if (n == 0 || lows[n - 1] != low) {
+                        lows[n++] = low;
+                    }
+                }
+                out.add(key, Arrays.copyOf(lows, n));
+                i = end;
+            }
+            return out.build();
+        }
+    }
+}
@@ -2,34 +2,65 @@ package com.example.ntumap;
 
 import android.content.Intent;
 import android.os.Bundle;
-import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
 import android.widget.Button;
-import android.widget.ListView;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.DividerItemDecoration;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
+import java.io.IOException;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 
 public class RoomBookingActivity extends AppCompatActivity {
     
+    private static final long SLOT_MILLIS = 60 * 60 * 1000;
+    private static final int SLOT_CHOICES = 8;
+    private static final int PAGE_SIZE = 50;
+    private static final int LARGE_ROOM_SEATS = 10;
+    // Walks are timed from the middle of campus
+    private static final double CAMPUS_LATITUDE = 52.9068;
+    private static final double CAMPUS_LONGITUDE = -1.1878;
+    
+    // Room types first, then the other criteria at the FILTER_ indexes below
+    private static final String[] FILTER_OPTIONS = {"Study Space", "Computer Lab", "Group Study", "Silent Study",
+            "Presentation", "Meeting", LARGE_ROOM_SEATS + "+ seats", "Seats free now", "Step-free access",
+            "Hearing loop", "Free for the next hour", "Most free seats first", "Most seats free when I get there"};
+    private static final int FILTER_ROOM_TYPES = 6;
+    private static final int FILTER_LARGE = 6;
+    private static final int FILTER_SEATS_FREE = 7;
+    private static final int FILTER_STEP_FREE = 8;
+    private static final int FILTER_HEARING_LOOP = 9;
+    private static final int FILTER_FREE_NEXT_HOUR = 10;
+    private static final int FILTER_MOST_SPACE = 11;
+    private static final int FILTER_MOST_SPACE_ON_ARRIVAL = 12;
+    
     private String searchQuery;
     private TextView searchResultsText;
-    private ListView roomListView;
+    private RecyclerView roomListView;
     private Button filterButton;
     private Button accessibilityButton;
     
-    private List<Room> availableRooms;
-    private ArrayAdapter<Room> roomAdapter;
+    private ItemListAdapter<RoomListItem> roomAdapter;
+    private RoomListPager roomPager;
+    private boolean loadingPage;
+    private final boolean[] filterChoices = new boolean[FILTER_OPTIONS.length];
+    
+    // Background work of this screen, cancelled when it is destroyed
+    private TaskScheduler.Scope tasks;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_room_booking);
+        tasks = NtuMapApplication.tasksFor(this);
         
         // Get search query from intent
         Intent intent = getIntent();
@@ -59,33 +90,138 @@ public class RoomBookingActivity extends AppCompatActivity {
         filterButton.setOnClickListener(v -> showFilterDialog());
         accessibilityButton.setOnClickListener(v -> enableAccessibilityMode());
         
-        roomListView.setOnItemClickListener((parent, view, position, id) -> {
-            Room selectedRoom = availableRooms.get(position);
-            showRoomDetails(selectedRoom);
-        });
     }
     
     private void loadAvailableRooms() {
-        availableRooms = new ArrayList<>();
-        
-        // Simulate real-time room availability data
-        // In a real app, this would come from a backend API
-        availableRooms.add(new Room("Study Room A", "Library - Floor 1", 15, 8, "Study Space", "Quiet study area with individual desks"));
-        availableRooms.add(new Room("Computer Lab B", "Technology Building - Floor 2", 25, 12, "Computer Lab", "Windows and Mac computers available"));
-        availableRooms.add(new Room("Group Study Room C", "Library - Floor 2", 20, 15, "Group Study", "Large table for group projects"));
-        availableRooms.add(new Room("Silent Study Room D", "Library - Floor 3", 10, 3, "Silent Study", "Completely silent study environment"));
-        availableRooms.add(new Room("Presentation Room E", "Main Building - Floor 1", 30, 0, "Presentation", "Projector and whiteboard available"));
-        availableRooms.add(new Room("Meeting Room F", "Business School - Floor 2", 12, 5, "Meeting", "Professional meeting space"));
-        
-        // Create custom adapter
-        roomAdapter = new RoomArrayAdapter(this, availableRooms);
+        RoomTable rooms = CampusData.getRooms();
+        roomPager = new RoomListPager(rooms, PAGE_SIZE);
+        roomAdapter = new ItemListAdapter<>(
+                ((NtuMapApplication) getApplication()).getTaskScheduler().executor(TaskScheduler.BACKGROUND),
+                item -> showRoomDetails(toRoom(rooms, item.getRow())));
+        roomAdapter.setNearEndListener(this::loadNextPage);
+        roomListView.setLayoutManager(new LinearLayoutManager(this));
+        roomListView.addItemDecoration(new DividerItemDecoration(this, DividerItemDecoration.VERTICAL));
         roomListView.setAdapter(roomAdapter);
+        
+        // Bookable rooms come from the campus pack; live head counts from the occupancy store
+        try {
+            showRooms(CampusData.getRoomQueryEngine().find(new RoomQuery().withFlags(RoomTable.BOOKABLE), null, null));
+        } catch (IOException e) {
+            // Queries without a time window never reach the booking server
+            e.printStackTrace();
+        }
+    }
+    
+    @Override
+    protected void onResume() {
+        super.onResume();
+        // Head counts may have moved while the screen was hidden; only changed rows are rebound
+        if (roomPager != null && !loadingPage) {
+            submitRooms(roomPager.refresh(roomOccupancy()));
+        }
+    }
+    
+    private void showRooms(List<Integer> rows) {
+        submitRooms(roomPager.setRows(rows, roomOccupancy()));
+    }
+    
+    private void loadNextPage() {
+        if (!loadingPage && roomPager.hasMore()) {
+            submitRooms(roomPager.loadMore(roomOccupancy()));
+        }
+    }
+    
+    private void submitRooms(List<RoomListItem> items) {
+        loadingPage = true;
+        roomAdapter.submitList(items, () -> loadingPage = false);
+    }
+    
+    // Live head count from the shared store, or the pack's figure for rooms nobody has reported yet
+    private static RoomQueryEngine.Occupancy roomOccupancy() {
+        RoomTable rooms = CampusData.getRooms();
+        OccupancyStore store = CampusData.getOccupancyStore();
+        return room -> {
+            String name = rooms.getName(room);
+            return store.contains(name) ? store.get(name) : rooms.getInitialOccupancy(room);
+        };
+    }
+    
+    private static Room toRoom(RoomTable rooms, int room) {
+        return new Room(room, rooms.getName(room), rooms.getLocation(room), rooms.getCapacity(room),
+                rooms.getInitialOccupancy(room), rooms.getType(room), rooms.getDescription(room));
     }
     
     private void showFilterDialog() {
-        // TODO: Implement filter dialog for room types, capacity, etc.
-        Toast.makeText(this, "Filter options: Study Space, Computer Lab, Group Study, Silent Study, Presentation, Meeting", 
-                      Toast.LENGTH_LONG).show();
+        // Checking no type shows every type; the other options narrow the list further
+        new android.app.AlertDialog.Builder(this)
+                .setTitle("Filter Rooms")
+                .setMultiChoiceItems(FILTER_OPTIONS, filterChoices, (dialog, which, isChecked) -> {
+                    filterChoices[which] = isChecked;
+                })
+                .setPositiveButton("Apply", (dialog, which) -> applyFilters())
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+    
+    private void applyFilters() {
+        RoomQuery query = new RoomQuery().withFlags(RoomTable.BOOKABLE);
+        List<String> types = new ArrayList<>();
+        for (int i = 0; i < FILTER_ROOM_TYPES; i++) {
+            if (filterChoices[i]) {
+                types.add(FILTER_OPTIONS[i]);
+            }
+        }
+        if (!types.isEmpty()) {
+            query.types(types.toArray(new String[0]));
+        }
+        if (filterChoices[FILTER_LARGE]) {
+            query.capacityBetween(LARGE_ROOM_SEATS, Integer.MAX_VALUE);
+        }
+        if (filterChoices[FILTER_SEATS_FREE]) {
+            query.minFreeSeats(1);
+        }
+        if (filterChoices[FILTER_STEP_FREE]) {
+            query.withFlags(RoomTable.STEP_FREE);
+        }
+        if (filterChoices[FILTER_HEARING_LOOP]) {
+            query.withFlags(RoomTable.HEARING_LOOP);
+        }
+        if (filterChoices[FILTER_FREE_NEXT_HOUR]) {
+            long start = nextSlotStart(System.currentTimeMillis());
+            query.freeBetween(start, start + SLOT_MILLIS);
+        }
+        if (filterChoices[FILTER_MOST_SPACE]) {
+            query.sortByFreeSeats();
+        }
+        long now = System.currentTimeMillis();
+        boolean byArrival = filterChoices[FILTER_MOST_SPACE_ON_ARRIVAL];
+        if (byArrival) {
+            query.sortByFreeSeatsOnArrival(CAMPUS_LATITUDE, CAMPUS_LONGITUDE, now);
+        }
+        
+        // Reservations may have to be fetched from the booking server, so query off the UI thread
+        RoomQueryEngine.Occupancy occupancy = roomOccupancy();
+        NtuMapApplication app = (NtuMapApplication) getApplication();
+        tasks.submit(TaskScheduler.INTERACTIVE, () -> {
+            try {
+                RoomQueryEngine.Forecast forecast = null;
+                if (byArrival) {
+                    OccupancyForecaster forecaster = app.getOccupancyForecaster();
+                    forecast = (room, time) -> forecaster.forecast(room, now, occupancy.get(room), time);
+                }
+                return CampusData.getRoomQueryEngine().find(query, occupancy, forecast, CampusData.getBookingEngine());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }, matches -> {
+            if (matches == null) {
+                Toast.makeText(this, "Booking service unavailable, please try again", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            showRooms(matches);
+            searchResultsText.setText(matches.size() + " rooms match your filters");
+        });
     }
     
     private void enableAccessibilityMode() {
@@ -109,123 +245,145 @@ public class RoomBookingActivity extends AppCompatActivity {
         details.append("Description: ").append(room.getDescription()).append("\n\n");
         
         if (room.getCurrentOccupancy() < room.getMaxCapacity()) {
-            details.append("Available for booking!");
-            showBookingDialog(room);
+            details.append("Free to use now.");
         } else {
             details.append("Room is currently full.");
         }
         
         Toast.makeText(this, details.toString(), Toast.LENGTH_LONG).show();
+        showBookingDialog(room);
     }
     
     private void showBookingDialog(Room room) {
-        // Show booking confirmation dialog
-        new android.app.AlertDialog.Builder(this)
-                .setTitle("Book Room")
-                .setMessage("Would you like to book " + room.getName() + "?")
-                .setPositiveButton("Book Now", (dialog, which) -> {
-                    bookRoom(room);
-                })
-                .setNegativeButton("Cancel", null)
-                .show();
+        // Offer the coming hours, marking the ones already reserved
+        BookingEngine engine = CampusData.getBookingEngine();
+        tasks.submit(TaskScheduler.INTERACTIVE, () -> {
+            try {
+                return engine.refresh(room.getTableRow());
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }, schedule -> {
+            if (schedule == null) {
+                Toast.makeText(this, "Booking service unavailable, please try again", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            long[] slotStarts = new long[SLOT_CHOICES];
+            String[] labels = new String[SLOT_CHOICES];
+            long start = nextSlotStart(System.currentTimeMillis());
+            for (int i = 0; i < SLOT_CHOICES; i++, start += SLOT_MILLIS) {
+                slotStarts[i] = start;
+                labels[i] = formatSlot(start, start + SLOT_MILLIS)
+                        + (schedule.isFree(start, start + SLOT_MILLIS) ? "" : " (booked)");
+            }
+            new android.app.AlertDialog.Builder(this)
+                    .setTitle("Book " + room.getName())
+                    .setItems(labels, (dialog, which) -> {
+                        bookRoom(room, slotStarts[which], slotStarts[which] + SLOT_MILLIS);
+                    })
+                    .setNeutralButton("Directions", (dialog, which) -> {
+                        // Routes through the building to the room's floor
+                        Intent intent = new Intent(this, NavigationActivity.class);
+                        intent.putExtra("destination", room.getName());
+                        startActivity(intent);
+                    })
+                    .setNegativeButton("Cancel", null)
+                    .show();
+        });
     }
     
-    private void bookRoom(Room room) {
-        // Simulate room booking process
-        Toast.makeText(this, "Booking " + room.getName() + "...", Toast.LENGTH_SHORT).show();
+    private void bookRoom(Room room, long start, long end) {
+        String slot = formatSlot(start, end);
+        Toast.makeText(this, "Booking " + room.getName() + " " + slot + "...", Toast.LENGTH_SHORT).show();
         
-        // In a real app, this would:
-        // - Send booking request to backend
-        // - Update room occupancy
-        // - Send confirmation email
-        // - Add to user's schedule
-        
-        new Thread(() -> {
+        // Double bookings are settled by the server's version check, not by this screen
+        BookingEngine engine = CampusData.getBookingEngine();
+        tasks.submit(TaskScheduler.INTERACTIVE, () -> {
             try {
-                Thread.sleep(2000); // Simulate booking process
-                runOnUiThread(() -> {
-                    Toast.makeText(RoomBookingActivity.this, 
-                                  "Successfully booked " + room.getName() + "! Check your email for confirmation.", 
-                                  Toast.LENGTH_LONG).show();
-                    
-                    // Update room occupancy
-                    room.setCurrentOccupancy(room.getCurrentOccupancy() + 1);
-                    roomAdapter.notifyDataSetChanged();
-                });
-            } catch (InterruptedException e) {
+                return engine.book(room.getTableRow(), start, end);
+            } catch (IOException e) {
                 e.printStackTrace();
+                return null;
+            }
+        }, response -> {
+            String message;
+            if (response == null) {
+                message = "Booking service unavailable, please try again";
+            } else if (response.getStatus() == BookingServer.Status.OK) {
+                message = "Successfully booked " + room.getName() + " " + slot + "! Check your email for confirmation.";
+            } else if (response.getStatus() == BookingServer.Status.CONFLICT) {
+                message = room.getName() + " was just booked for " + slot + ". Please pick another time.";
+            } else {
+                message = room.getName() + " is busy right now, please try again";
             }
-        }).start();
+            Toast.makeText(RoomBookingActivity.this, message, Toast.LENGTH_LONG).show();
+        });
     }
     
-    // Room data class
+    // Next full hour after now
+    private static long nextSlotStart(long now) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        calendar.add(Calendar.HOUR_OF_DAY, 1);
+        return calendar.getTimeInMillis();
+    }
+    
+    private static String formatSlot(long start, long end) {
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm", Locale.getDefault());
+        return format.format(new Date(start)) + "-" + format.format(new Date(end));
+    }
+    
+    // Room data class; the live head count is kept in the shared occupancy store
     public static class Room {
+        private final int tableRow;
         private final String name;
         private final String location;
         private final int maxCapacity;
-        private int currentOccupancy;
+        private final int occupancyId;
         private final String type;
         private final String description;
         
-        public Room(String name, String location, int maxCapacity, int currentOccupancy, String type, String description) {
+        public Room(int tableRow, String name, String location, int maxCapacity, int currentOccupancy, String type,
+                    String description) {
+            this.tableRow = tableRow;
             this.name = name;
             this.location = location;
             this.maxCapacity = maxCapacity;
-            this.currentOccupancy = currentOccupancy;
             this.type = type;
             this.description = description;
+            
+            // Seed the store only the first time this room is seen
+            OccupancyStore store = CampusData.getOccupancyStore();
+            if (!store.contains(name)) {
+                store.set(name, currentOccupancy);
+            }
+            this.occupancyId = store.intern(name);
         }
         
         // Getters
+        public int getTableRow() { return tableRow; }
         public String getName() { return name; }
         public String getLocation() { return location; }
         public int getMaxCapacity() { return maxCapacity; }
-        public int getCurrentOccupancy() { return currentOccupancy; }
+        public int getCurrentOccupancy() { return CampusData.getOccupancyStore().get(occupancyId); }
         public String getType() { return type; }
         public String getDescription() { return description; }
         
-        // Setters
-        public void setCurrentOccupancy(int currentOccupancy) { this.currentOccupancy = currentOccupancy; }
-        
         public double getOccupancyPercentage() {
-            return (double) currentOccupancy / maxCapacity * 100;
+            return (double) getCurrentOccupancy() / maxCapacity * 100;
         }
         
         public boolean isAvailable() {
-            return currentOccupancy < maxCapacity;
+            return getCurrentOccupancy() < maxCapacity;
         }
         
         @Override
         public String toString() {
-            return String.format("%s (%d/%d) - %s", name, currentOccupancy, maxCapacity, type);
-        }
-    }
-    
-    // Custom adapter for room list
-    private static class RoomArrayAdapter extends ArrayAdapter<Room> {
-        private final List<Room> rooms;
-        
-        public RoomArrayAdapter(RoomBookingActivity context, List<Room> rooms) {
-            super(context, android.R.layout.simple_list_item_1, rooms);
-            this.rooms = rooms;
-        }
-        
-        @Override
-        public View getView(int position, View convertView, android.view.ViewGroup parent) {
-            View view = super.getView(position, convertView, parent);
-            TextView textView = view.findViewById(android.R.id.text1);
-            
-            Room room = rooms.get(position);
-            textView.setText(room.toString());
-            
-            // Color code based on availability
-            if (room.isAvailable()) {
-                textView.setTextColor(android.graphics.Color.GREEN);
-            } else {
-                textView.setTextColor(android.graphics.Color.RED);
-            }
-            
-            return view;
+            return String.format("%s (%d/%d) - %s", name, getCurrentOccupancy(), maxCapacity, type);
         }
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,78 @@
+package com.example.ntumap;
+
+/**
+ * Snapshot of one room as shown in the booking list. The label is built on
+ * first bind and kept with the snapshot, so rebinding an unchanged room
+ * costs no formatting.
+ */
+public final class RoomListItem implements ListItem {
+
+    // Same values as android.graphics.Color.GREEN and RED
+    static final int AVAILABLE_COLOR = 0xFF00FF00;
+    static final int FULL_COLOR = 0xFFFF0000;
+
+    private final int row;
+    private final String name;
+    private final String type;
+    private final int capacity;
+    private final int occupancy;
+    private String label;
+
+    public RoomListItem(int row, String name, String type, int capacity, int occupancy) {
+        this.row = row;
+        this.name = name;
+        this.type = type;
+        this.capacity = capacity;
+        this.occupancy = occupancy;
+    }
+
+    public int getRow() { return row; }
+    public String getName() { return name; }
+    public String getType() { return type; }
+    public int getCapacity() { return capacity; }
+    public int getOccupancy() { return occupancy; }
+
+    public boolean isAvailable() {
+        return occupancy < capacity;
+    }
+
+    // This room with a new head count, or this instance if the count is unchanged
+    public RoomListItem withOccupancy(int occupancy) {
+        return occupancy == this.occupancy ? this : new RoomListItem(row, name, type, capacity, occupancy);
+    }
+
+    @Override
+    public long getItemId() {
+        return row;
+    }
+
+    @Override
+    public String getLabel() {
+        if (label == null) {
+            label = new StringBuilder(name.length() + type.length() + 16)
+                    .append(name).append(" (").append(occupancy).append('/').append(capacity).append(") - ")
+                    .append(type).toString();
+        }
+        return label;
+    }
+
+    @Override
+    public int getTextColor() {
+        return isAvailable() ? AVAILABLE_COLOR : FULL_COLOR;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof RoomListItem)) {
+            return false;
+        }
+        RoomListItem other = (RoomListItem) o;
+        return row == other.row && capacity == other.capacity && occupancy == other.occupancy
+                && name.equals(other.name) && type.equals(other.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return (row * 31 + capacity) * 31 + occupancy;
+    }
+}
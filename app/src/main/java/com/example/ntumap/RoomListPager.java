@@ -0,0 +1,62 @@
+package com.example.ntumap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Turns the rows of a room query into list items a page at a time, so only
+ * the part of a long result the user has scrolled to is ever materialised.
+ * Every method returns a fresh list for the adapter to diff against the one
+ * it shows. Not thread-safe; use from one thread.
+ */
+public class RoomListPager {
+
+    private final RoomTable rooms;
+    private final int pageSize;
+    private List<Integer> rows = Collections.emptyList();
+    private final List<RoomListItem> loaded = new ArrayList<>();
+
+    public RoomListPager(RoomTable rooms, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.rooms = rooms;
+        this.pageSize = pageSize;
+    }
+
+    // Starts over with new query results and loads their first page
+    public List<RoomListItem> setRows(List<Integer> rows, RoomQueryEngine.Occupancy occupancy) {
+        this.rows = new ArrayList<>(rows);
+        loaded.clear();
+        return loadMore(occupancy);
+    }
+
+    public boolean hasMore() {
+        return loaded.size() < rows.size();
+    }
+
+    // Number of rooms in the current results, loaded or not
+    public int getTotal() {
+        return rows.size();
+    }
+
+    public List<RoomListItem> loadMore(RoomQueryEngine.Occupancy occupancy) {
+        int end = Math.min(rows.size(), loaded.size() + pageSize);
+        for (int i = loaded.size(); i < end; i++) {
+            int room = rows.get(i);
+            loaded.add(new RoomListItem(room, rooms.getName(room), rooms.getType(room), rooms.getCapacity(room),
+                    occupancy.get(room)));
+        }
+        return new ArrayList<>(loaded);
+    }
+
+    // Re-reads head counts of the loaded rooms; unchanged rooms keep their items and cached labels
+    public List<RoomListItem> refresh(RoomQueryEngine.Occupancy occupancy) {
+        for (int i = 0; i < loaded.size(); i++) {
+            RoomListItem item = loaded.get(i);
+            loaded.set(i, item.withOccupancy(occupancy.get(item.getRow())));
+        }
+        return new ArrayList<>(loaded);
+    }
+}
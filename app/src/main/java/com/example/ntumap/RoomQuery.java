@@ -0,0 +1,115 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Criteria for {@link RoomQueryEngine}. Every criterion left unset matches
+ * all rooms; several values for one attribute match any of them.
+ */
+public class RoomQuery {
+
+    public static final int SORT_NONE = 0;
+    // Nearest first, from the point given to sortByDistanceFrom
+    public static final int SORT_DISTANCE = 1;
+    // Most free seats first
+    public static final int SORT_FREE_SEATS = 2;
+    // Most seats expected to be free on arrival, walking from the point given to sortByFreeSeatsOnArrival
+    public static final int SORT_FREE_SEATS_ON_ARRIVAL = 3;
+
+    Set<String> types;
+    Set<String> buildings;
+    Set<Integer> floors;
+    int requiredFlags;
+    int minCapacity = 0;
+    int maxCapacity = Integer.MAX_VALUE;
+    int minFreeSeats = Integer.MIN_VALUE;
+    long freeFrom;
+    long freeUntil;
+    int sort = SORT_NONE;
+    double latitude;
+    double longitude;
+    long departure;
+    int limit = Integer.MAX_VALUE;
+
+    public RoomQuery types(String... types) {
+        this.types = new HashSet<>(Arrays.asList(types));
+        return this;
+    }
+
+    public RoomQuery buildings(String... buildings) {
+        this.buildings = new HashSet<>(Arrays.asList(buildings));
+        return this;
+    }
+
+    public RoomQuery floors(int... floors) {
+        this.floors = new HashSet<>();
+        for (int floor : floors) {
+            this.floors.add(floor);
+        }
+        return this;
+    }
+
+    // RoomTable flags that must all be set, e.g. BOOKABLE | STEP_FREE
+    public RoomQuery withFlags(int flags) {
+        requiredFlags |= flags;
+        return this;
+    }
+
+    public RoomQuery capacityBetween(int min, int max) {
+        minCapacity = min;
+        maxCapacity = max;
+        return this;
+    }
+
+    // Seats not taken right now, from the live head count
+    public RoomQuery minFreeSeats(int seats) {
+        minFreeSeats = seats;
+        return this;
+    }
+
+    // No reservation overlapping [start, end)
+    public RoomQuery freeBetween(long start, long end) {
+        if (start >= end) {
+            throw new IllegalArgumentException("Empty or reversed time range");
+        }
+        freeFrom = start;
+        freeUntil = end;
+        return this;
+    }
+
+    public RoomQuery sortByDistanceFrom(double latitude, double longitude) {
+        sort = SORT_DISTANCE;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        return this;
+    }
+
+    public RoomQuery sortByFreeSeats() {
+        sort = SORT_FREE_SEATS;
+        return this;
+    }
+
+    // Leaving from (latitude, longitude) at departure, in epoch millis
+    public RoomQuery sortByFreeSeatsOnArrival(double latitude, double longitude, long departure) {
+        sort = SORT_FREE_SEATS_ON_ARRIVAL;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.departure = departure;
+        return this;
+    }
+
+    public RoomQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    boolean hasTimeWindow() {
+        return freeUntil != 0;
+    }
+
+    boolean needsOccupancy() {
+        return minFreeSeats != Integer.MIN_VALUE || sort == SORT_FREE_SEATS;
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Multi-criteria room search over a {@link RoomTable}.
+ *
+ * Static attributes (type, building, floor, flags, capacity band) each have
+ * a precomputed {@link RoomBitmap} per value, so a query is a handful of
+ * bitmap intersections. Only the rooms that survive them are checked
+ * against live data: exact capacity, free seats and reservations.
+ */
+public class RoomQueryEngine {
+
+    /** Live head count of a room, by RoomTable row. */
+    public interface Occupancy {
+        int get(int room);
+    }
+
+    /** Expected head count of a room at a given time, by RoomTable row. */
+    public interface Forecast {
+        int at(int room, long time);
+    }
+
+    // Capacity bands are bounded by at most this many thresholds
+    private static final int MAX_CAPACITY_THRESHOLDS = 32;
+
+    private final RoomTable rooms;
+    private final RoomBitmap allRooms;
+    private final Map<String, RoomBitmap> byType;
+    private final Map<String, RoomBitmap> byBuilding;
+    private final Map<Integer, RoomBitmap> byFloor;
+    // byFlag[b] holds the rooms with flag bit b set
+    private final RoomBitmap[] byFlag = new RoomBitmap[8];
+    // capacityAtLeast[i] holds the rooms seating at least capacityThresholds[i]
+    private final int[] capacityThresholds;
+    private final RoomBitmap[] capacityAtLeast;
+    // Where each room is, NaN if unknown
+    private final double[] latitudes;
+    private final double[] longitudes;
+
+    public RoomQueryEngine(RoomTable rooms, PoiIndex pois) {
+        this.rooms = rooms;
+        int count = rooms.size();
+        allRooms = RoomBitmap.range(0, count);
+
+        Map<String, RoomBitmap.Builder> types = new HashMap<>();
+        Map<String, RoomBitmap.Builder> buildings = new HashMap<>();
+        Map<Integer, RoomBitmap.Builder> floors = new HashMap<>();
+        RoomBitmap.Builder[] flags = new RoomBitmap.Builder[byFlag.length];
+        for (int bit = 0; bit < flags.length; bit++) {
+            flags[bit] = new RoomBitmap.Builder();
+        }
+        for (int room = 0; room < count; room++) {
+            types.computeIfAbsent(rooms.getType(room), key -> new RoomBitmap.Builder()).add(room);
+            buildings.computeIfAbsent(rooms.getBuilding(room), key -> new RoomBitmap.Builder()).add(room);
+            floors.computeIfAbsent(rooms.getFloor(room), key -> new RoomBitmap.Builder()).add(room);
+            for (int bit = 0; bit < flags.length; bit++) {
+                if (rooms.hasFlag(room, 1 << bit)) {
+                    flags[bit].add(room);
+                }
+            }
+        }
+        byType = buildAll(types);
+        byBuilding = buildAll(buildings);
+        byFloor = buildAll(floors);
+        for (int bit = 0; bit < flags.length; bit++) {
+            byFlag[bit] = flags[bit].build();
+        }
+
+        // Thresholds spread evenly over the distinct capacities, so bands hold similar numbers of rooms
+        int[] capacities = new int[count];
+        for (int room = 0; room < count; room++) {
+            capacities[room] = rooms.getCapacity(room);
+        }
+        int[] distinct = Arrays.stream(capacities).distinct().sorted().toArray();
+        int thresholds = Math.min(distinct.length, MAX_CAPACITY_THRESHOLDS);
+        capacityThresholds = new int[thresholds];
+        capacityAtLeast = new RoomBitmap[thresholds];
+        for (int i = 0; i < thresholds; i++) {
+            capacityThresholds[i] = distinct[(int) ((long) i * distinct.length / thresholds)];
+            RoomBitmap.Builder atLeast = new RoomBitmap.Builder();
+            for (int room = 0; room < count; room++) {
+                if (capacities[room] >= capacityThresholds[i]) {
+                    atLeast.add(room);
+                }
+            }
+            capacityAtLeast[i] = atLeast.build();
+        }
+
+        // Rooms without their own marker are placed at their building's marker, if it has one
+        Map<String, Poi> poisByName = new HashMap<>();
+        for (Poi poi : pois.getPois()) {
+            poisByName.put(poi.getName(), poi);
+        }
+        latitudes = new double[count];
+        longitudes = new double[count];
+        for (int room = 0; room < count; room++) {
+            Poi poi = rooms.getPoiId(room) >= 0 ? pois.getPoi(rooms.getPoiId(room))
+                    : poisByName.get(rooms.getBuilding(room));
+            latitudes[room] = poi != null ? poi.getLatitude() : Double.NaN;
+            longitudes[room] = poi != null ? poi.getLongitude() : Double.NaN;
+        }
+    }
+
+    /** Rooms matching the static criteria only, ignoring live occupancy and reservations. */
+    public RoomBitmap match(RoomQuery query) {
+        RoomBitmap result = allRooms;
+        if (query.types != null) {
+            result = result.and(union(byType, query.types));
+        }
+        if (query.buildings != null) {
+            result = result.and(union(byBuilding, query.buildings));
+        }
+        if (query.floors != null) {
+            result = result.and(union(byFloor, query.floors));
+        }
+        for (int bit = 0; bit < byFlag.length; bit++) {
+            if ((query.requiredFlags & (1 << bit)) != 0) {
+                result = result.and(byFlag[bit]);
+            }
+        }
+
+        // Capacity bands give a superset; exact bounds are checked per room in find
+        int low = bandAtOrBelow(query.minCapacity);
+        if (low > 0) {
+            result = result.and(capacityAtLeast[low]);
+        }
+        int high = bandAtOrBelow(query.maxCapacity) + 1;
+        if (query.maxCapacity != Integer.MAX_VALUE && high < capacityAtLeast.length) {
+            result = result.andNot(capacityAtLeast[high]);
+        }
+        return result;
+    }
+
+    /**
+     * Rows of the rooms matching every criterion, sorted as requested.
+     * Occupancy is needed for free-seat criteria and bookings for a time
+     * window; either may be null otherwise.
+     */
+    public List<Integer> find(RoomQuery query, Occupancy occupancy, BookingEngine bookings) throws IOException {
+        return find(query, occupancy, null, bookings);
+    }
+
+    /** As above, with the forecast needed to sort by free seats on arrival. */
+    public List<Integer> find(RoomQuery query, Occupancy occupancy, Forecast forecast, BookingEngine bookings)
+            throws IOException {
+        int[] candidates = match(query).toArray();
+        long[] keyed = new long[candidates.length];
+        int n = 0;
+        for (int room : candidates) {
+            int capacity = rooms.getCapacity(room);
+            if (capacity < query.minCapacity || capacity > query.maxCapacity) {
+                continue;
+            }
+            int freeSeats = query.needsOccupancy() ? capacity - occupancy.get(room) : 0;
+            if (freeSeats < query.minFreeSeats) {
+                continue;
+            }
+            if (query.hasTimeWindow() && !bookings.isFree(room, query.freeFrom, query.freeUntil)) {
+                continue;
+            }
+            keyed[n++] = ((long) sortKey(query, room, freeSeats, forecast) << 32) | room;
+        }
+
+        // The sort key sits in the high half of each entry and the row in the low half
+        Arrays.sort(keyed, 0, n);
+        List<Integer> result = new ArrayList<>(Math.min(n, query.limit));
+        for (int i = 0; i < n && result.size() < query.limit; i++) {
+            result.add((int) keyed[i]);
+        }
+        return result;
+    }
+
+    private int sortKey(RoomQuery query, int room, int freeSeats, Forecast forecast) {
+        switch (query.sort) {
+            case RoomQuery.SORT_DISTANCE:
+                if (Double.isNaN(latitudes[room])) {
+                    return Integer.MAX_VALUE;
+                }
+                // Centimetres: enough resolution and range for anything on Earth
+                double metres = GeoUtils.haversine(query.latitude, query.longitude, latitudes[room], longitudes[room]);
+                return (int) Math.min(Integer.MAX_VALUE - 1, metres * 100);
+            case RoomQuery.SORT_FREE_SEATS:
+                return -freeSeats;
+            case RoomQuery.SORT_FREE_SEATS_ON_ARRIVAL:
+                // Rooms we can't place are taken as reached straight away
+                long arrival = query.departure;
+                if (!Double.isNaN(latitudes[room])) {
+                    arrival += GeoUtils.walkingMillis(GeoUtils.haversine(query.latitude, query.longitude,
+                            latitudes[room], longitudes[room]));
+                }
+                return forecast.at(room, arrival) - rooms.getCapacity(room);
+            default:
+                return 0;
+        }
+    }
+
+    // Index of the highest capacity threshold not above capacity, or -1
+    private int bandAtOrBelow(int capacity) {
+        int i = Arrays.binarySearch(capacityThresholds, capacity);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    private static <K> RoomBitmap union(Map<K, RoomBitmap> index, Set<K> values) {
+        RoomBitmap result = RoomBitmap.EMPTY;
+        for (K value : values) {
+            RoomBitmap rooms = index.get(value);
+            if (rooms != null) {
+                result = result.or(rooms);
+            }
+        }
+        return result;
+    }
+
+    private static <K> Map<K, RoomBitmap> buildAll(Map<K, RoomBitmap.Builder> builders) {
+        Map<K, RoomBitmap> result = new HashMap<>();
+        for (Map.Entry<K, RoomBitmap.Builder> entry : builders.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().build());
+        }
+        return result;
+    }
+}
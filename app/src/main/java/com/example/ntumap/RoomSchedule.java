@@ -0,0 +1,106 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+
+/**
+ * Reservations of one room as parallel arrays of half-open
+ * {@code [start, end)} slots in epoch milliseconds, sorted by start. Slots
+ * never overlap, so ends are sorted too and every availability question is
+ * a binary search.
+ *
+ * Schedules are immutable; each change returns a copy with the next version,
+ * which is what the booking server compares and sets on.
+ */
+public final class RoomSchedule {
+
+    public static final RoomSchedule EMPTY = new RoomSchedule(0, new long[0], new long[0], new long[0]);
+
+    private final long version;
+    private final long[] starts;
+    private final long[] ends;
+    private final long[] bookingIds;
+
+    private RoomSchedule(long version, long[] starts, long[] ends, long[] bookingIds) {
+        this.version = version;
+        this.starts = starts;
+        this.ends = ends;
+        this.bookingIds = bookingIds;
+    }
+
+    public long getVersion() { return version; }
+    public int size() { return starts.length; }
+    public long getStart(int slot) { return starts[slot]; }
+    public long getEnd(int slot) { return ends[slot]; }
+    public long getBookingId(int slot) { return bookingIds[slot]; }
+
+    /** True if no reservation overlaps {@code [start, end)}. */
+    public boolean isFree(long start, long end) {
+        checkRange(start, end);
+        int slot = firstEndingAfter(start);
+        return slot == starts.length || starts[slot] >= end;
+    }
+
+    // Earliest start at or after from with duration free time after it
+    public long nextFreeStart(long from, long duration) {
+        long start = from;
+        for (int slot = firstEndingAfter(from); slot < starts.length && starts[slot] < start + duration; slot++) {
+            start = Math.max(start, ends[slot]);
+        }
+        return start;
+    }
+
+    /** Returns the schedule with one more reservation; the slot must be free. */
+    public RoomSchedule withReservation(long bookingId, long start, long end) {
+        if (!isFree(start, end)) {
+            throw new IllegalStateException("Slot overlaps an existing reservation");
+        }
+        int at = firstEndingAfter(start);
+        return new RoomSchedule(version + 1, insert(starts, at, start), insert(ends, at, end),
+                insert(bookingIds, at, bookingId));
+    }
+
+    // Returns the schedule without the reservation, or this schedule if it has no such reservation
+    public RoomSchedule withoutReservation(long bookingId) {
+        for (int slot = 0; slot < bookingIds.length; slot++) {
+            if (bookingIds[slot] == bookingId) {
+                return new RoomSchedule(version + 1, remove(starts, slot), remove(ends, slot),
+                        remove(bookingIds, slot));
+            }
+        }
+        return this;
+    }
+
+    // Index of the first reservation ending after time
+    private int firstEndingAfter(long time) {
+        int low = 0;
+        int high = ends.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (ends[mid] <= time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static void checkRange(long start, long end) {
+        if (start >= end) {
+            throw new IllegalArgumentException("Empty or reversed time range");
+        }
+    }
+
+    private static long[] insert(long[] values, int at, long value) {
+        long[] result = Arrays.copyOf(values, values.length + 1);
+        System.arraycopy(values, at, result, at + 1, values.length - at);
+        result[at] = value;
+        return result;
+    }
+
+    private static long[] remove(long[] values, int at) {
+        long[] result = Arrays.copyOf(values, values.length - 1);
+        System.arraycopy(values, at + 1, result, at, values.length - at - 1);
+        return result;
+    }
+}
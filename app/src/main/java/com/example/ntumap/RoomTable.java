@@ -0,0 +1,187 @@
+package com.example.ntumap;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Room metadata from the campus pack: type, capacity, opening head count,
+ * building and floor, accessibility, booking details and search aliases. Rooms are addressed by their row;
+ * strings are decoded only when read.
+ */
+public final class RoomTable {
+
+    // Head count is shown on the map and fed by the occupancy pipeline
+    public static final int TRACKED = 1;
+    // Listed on the room booking screen
+    public static final int BOOKABLE = 2;
+    // Accessibility: reachable without steps, induction loop fitted, accessible toilet nearby
+    public static final int STEP_FREE = 4;
+    public static final int HEARING_LOOP = 8;
+    public static final int ACCESSIBLE_TOILET = 16;
+
+    private final PackedStrings names;
+    private final PackedStrings types;
+    private final PackedStrings locations;
+    private final PackedStrings descriptions;
+    private final PackedStrings buildings;
+    private final IntBuffer floors;
+    private final IntBuffer poiIds;
+    private final IntBuffer capacities;
+    private final IntBuffer occupancies;
+    private final ByteBuffer flags;
+    private final IntBuffer aliasStart;
+    private final PackedStrings aliases;
+
+    private RoomTable(PackReader in) {
+        names = in.strings();
+        types = in.strings();
+        locations = in.strings();
+        descriptions = in.strings();
+        buildings = in.strings();
+        floors = in.ints();
+        poiIds = in.ints();
+        capacities = in.ints();
+        occupancies = in.ints();
+        flags = in.bytes();
+        aliasStart = in.ints();
+        aliases = in.strings();
+    }
+
+    // Table stored by Builder.writeTo, viewed in place
+    public static RoomTable read(PackReader in) {
+        return new RoomTable(in);
+    }
+
+    public int size() { return names.size(); }
+    public String getName(int room) { return names.get(room); }
+    public String getType(int room) { return types.get(room); }
+    public String getLocation(int room) { return locations.get(room); }
+    public String getDescription(int room) { return descriptions.get(room); }
+    public String getBuilding(int room) { return buildings.get(room); }
+    // Ground floor is 0
+    public int getFloor(int room) { return floors.get(room); }
+    // POI of the room on the map, or -1 for rooms inside a building without their own marker
+    public int getPoiId(int room) { return poiIds.get(room); }
+    public int getCapacity(int room) { return capacities.get(room); }
+    public int getInitialOccupancy(int room) { return occupancies.get(room); }
+
+    public boolean hasFlag(int room, int flag) {
+        return (flags.get(room) & flag) != 0;
+    }
+
+    public List<String> getAliases(int room) {
+        List<String> result = new ArrayList<>();
+        for (int i = aliasStart.get(room); i < aliasStart.get(room + 1); i++) {
+            result.add(aliases.get(i));
+        }
+        return result;
+    }
+
+    // Row of the room with the given POI id, or -1
+    public int findByPoi(int poiId) {
+        for (int room = 0; room < size(); room++) {
+            if (poiIds.get(room) == poiId) {
+                return room;
+            }
+        }
+        return -1;
+    }
+
+    public static class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final List<String> types = new ArrayList<>();
+        private final List<String> locations = new ArrayList<>();
+        private final List<String> descriptions = new ArrayList<>();
+        private final List<String> buildings = new ArrayList<>();
+        private final List<Integer> floors = new ArrayList<>();
+        private final List<Integer> poiIds = new ArrayList<>();
+        private final List<Integer> capacities = new ArrayList<>();
+        private final List<Integer> occupancies = new ArrayList<>();
+        private final List<Integer> flags = new ArrayList<>();
+        private final List<Integer> aliasStart = new ArrayList<>();
+        private final List<String> aliases = new ArrayList<>();
+
+        public Builder add(String name, String type, int poiId, int capacity, int occupancy, int flags) {
+            names.add(name);
+            types.add(type);
+            locations.add("");
+            descriptions.add("");
+            buildings.add("");
+            floors.add(0);
+            poiIds.add(poiId);
+            capacities.add(capacity);
+            occupancies.add(occupancy);
+            this.flags.add(flags);
+            aliasStart.add(aliases.size());
+            return this;
+        }
+
+        // Details of the last added room, shown on the booking screen
+        public Builder setDetails(String location, String description) {
+            int last = lastRoom();
+            locations.set(last, location);
+            descriptions.set(last, description);
+            return this;
+        }
+
+        // Where the last added room is
+        public Builder setPlace(String building, int floor) {
+            int last = lastRoom();
+            buildings.set(last, building);
+            floors.set(last, floor);
+            return this;
+        }
+
+        public Builder addAlias(String alias) {
+            lastRoom();
+            aliases.add(alias);
+            return this;
+        }
+
+        public RoomTable build() {
+            PackWriter out = new PackWriter();
+            writeTo(out);
+            return new RoomTable(out.toReader());
+        }
+
+        // Writes the table in the layout read expects
+        public void writeTo(PackWriter out) {
+            int count = names.size();
+            int[] starts = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                starts[i] = aliasStart.get(i);
+            }
+            starts[count] = aliases.size();
+            byte[] flagBytes = new byte[count];
+            for (int i = 0; i < count; i++) {
+                flagBytes[i] = (byte) (int) flags.get(i);
+            }
+            out.putStrings(names).putStrings(types).putStrings(locations).putStrings(descriptions)
+                    .putStrings(buildings)
+                    .putInts(toArray(floors), count)
+                    .putInts(toArray(poiIds), count)
+                    .putInts(toArray(capacities), count)
+                    .putInts(toArray(occupancies), count)
+                    .putBytes(flagBytes, count)
+                    .putInts(starts, count + 1)
+                    .putStrings(aliases);
+        }
+
+        private int lastRoom() {
+            if (names.isEmpty()) {
+                throw new IllegalStateException("No room to add details to");
+            }
+            return names.size() - 1;
+        }
+
+        private static int[] toArray(List<Integer> values) {
+            int[] result = new int[values.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = values.get(i);
+            }
+            return result;
+        }
+    }
+}
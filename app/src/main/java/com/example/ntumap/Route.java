@@ -0,0 +1,27 @@
+package com.example.ntumap;
+
+/**
+ * Result of a route query: the visited graph nodes in walking order and the
+ * total walking distance.
+ */
+public final class Route {
+
+    private final CampusGraph graph;
+    private final int[] nodes;
+    private final double lengthMeters;
+
+    public Route(CampusGraph graph, int[] nodes, double lengthMeters) {
+        this.graph = graph;
+        this.nodes = nodes;
+        this.lengthMeters = lengthMeters;
+    }
+
+    public int[] getNodes() { return nodes; }
+    public int getNodeCount() { return nodes.length; }
+    public double getLengthMeters() { return lengthMeters; }
+    public int getStartNode() { return nodes[0]; }
+    public int getEndNode() { return nodes[nodes.length - 1]; }
+
+    public double getLatitude(int index) { return graph.latitude(nodes[index]); }
+    public double getLongitude(int index) { return graph.longitude(nodes[index]); }
+}
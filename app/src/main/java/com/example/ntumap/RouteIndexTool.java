@@ -0,0 +1,34 @@
+package com.example.ntumap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Offline preprocessing step that contracts the walkway graph of the campus
+ * pack and writes the result to the route index asset. Run it through the
+ * {@code generateRouteIndex} Gradle task whenever the walkways change; the
+ * app rebuilds the index on the device if the asset is stale.
+ */
+public final class RouteIndexTool {
+
+    private RouteIndexTool() {}
+
+    public static void main(String[] args) throws IOException {
+        String packFile = args.length > 0 ? args[0] : "src/main/assets/" + CampusData.CAMPUS_PACK_ASSET;
+        String output = args.length > 1 ? args[1] : "src/main/assets/" + CampusData.ROUTE_INDEX_ASSET;
+        CampusData.setPackSource(() -> CampusPack.mapFile(new File(packFile)));
+        CampusGraph graph = CampusData.getWalkwayGraph();
+
+        long start = System.nanoTime();
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+        long elapsedMs = (System.nanoTime() - start) / 1000000;
+
+        try (OutputStream out = new FileOutputStream(output)) {
+            hierarchy.write(out);
+        }
+        System.out.printf("Contracted %d nodes / %d edges in %d ms (%d shortcuts) -> %s%n",
+                graph.nodeCount(), graph.edgeCount(), elapsedMs, hierarchy.getShortcutCount(), output);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.ntumap;
+
+/**
+ * Shortest-path query over the campus walkway graph.
+ */
+public interface Router {
+
+    CampusGraph getGraph();
+
+    // Returns the shortest route from source to target, or null if target is unreachable
+    Route findRoute(int source, int target);
+
+    // Cost the router minimises for an edge, infinite if it never uses it; routes still report metres
+    default double edgeCost(int edge) {
+        return getGraph().edgeWeight(edge);
+    }
+
+    // Routes between the graph nodes closest to the two coordinates
+    default Route findRoute(double fromLat, double fromLng, double toLat, double toLng) {
+        CampusGraph graph = getGraph();
+        int source = graph.nearestNode(fromLat, fromLng);
+        int target = graph.nearestNode(toLat, toLng);
+        if (source < 0 || target < 0) {
+            return null;
+        }
+        return findRoute(source, target);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.ntumap;
+
+/**
+ * Accessibility preferences for routing, expressed as walking-cost
+ * multipliers over the {@link CampusGraph} edge flags.
+ *
+ * A profile is a set of option bits. Each profile precomputes one
+ * multiplier per combination of edge flags, so weighing an edge is a table
+ * lookup and switching profiles leaves the graph untouched. Multipliers
+ * are never below one, "prefer" options penalise the alternatives instead,
+ * which keeps the straight-line heuristic of {@link AStarRouter} admissible.
+ * Ruled out edges cost infinity.
+ */
+public final class RoutingProfile {
+
+    // Options
+    public static final int STEP_FREE = 1;
+    public static final int AVOID_STEEP_RAMPS = 1 << 1;
+    public static final int PREFER_LIFTS = 1 << 2;
+    public static final int PREFER_SHELTER = 1 << 3;
+    private static final int OPTION_COUNT = 4;
+
+    static final double STEEP_RAMP_PENALTY = 4;
+    // Stairs cost this much more for someone who would rather take the lift
+    static final double STAIRS_PENALTY = 3;
+    static final double EXPOSED_PENALTY = 1.5;
+
+    public static final RoutingProfile SHORTEST = new RoutingProfile(0);
+
+    private static final RoutingProfile[] PROFILES = new RoutingProfile[1 << OPTION_COUNT];
+
+    private final int options;
+    private final double[] multipliers = new double[1 << CampusGraph.FLAG_BITS];
+
+    private RoutingProfile(int options) {
+        this.options = options;
+        for (int flags = 0; flags < multipliers.length; flags++) {
+            multipliers[flags] = multiplier(options, flags);
+        }
+    }
+
+    // Profiles are shared: there is one per combination of options
+    public static synchronized RoutingProfile of(int options) {
+        if (options < 0 || options >= PROFILES.length) {
+            throw new IllegalArgumentException("Unknown routing options " + options);
+        }
+        if (options == 0) {
+            return SHORTEST;
+        }
+        if (PROFILES[options] == null) {
+            PROFILES[options] = new RoutingProfile(options);
+        }
+        return PROFILES[options];
+    }
+
+    public int getOptions() { return options; }
+    public boolean has(int option) { return (options & option) != 0; }
+
+    public RoutingProfile with(int option, boolean enabled) {
+        return of(enabled ? options | option : options & ~option);
+    }
+
+    // Walking cost of the edge under this profile, or infinity if it may not be used
+    public double cost(CampusGraph graph, int edge) {
+        return cost(graph.edgeWeight(edge), graph.edgeFlags(edge));
+    }
+
+    // Same for a link that is not a graph edge, such as a lift between floors
+    public double cost(double weight, int flags) {
+        return weight * multipliers[flags & (multipliers.length - 1)];
+    }
+
+    private static double multiplier(int options, int flags) {
+        boolean stairs = (flags & CampusGraph.STAIRS) != 0;
+        double multiplier = 1;
+        if (stairs && (options & STEP_FREE) != 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        if (stairs && (options & PREFER_LIFTS) != 0) {
+            multiplier *= STAIRS_PENALTY;
+        }
+        if ((flags & CampusGraph.STEEP) != 0 && (options & AVOID_STEEP_RAMPS) != 0) {
+            multiplier *= STEEP_RAMP_PENALTY;
+        }
+        if ((flags & (CampusGraph.INDOOR | CampusGraph.SHELTERED)) == 0 && (options & PREFER_SHELTER) != 0) {
+            multiplier *= EXPOSED_PENALTY;
+        }
+        return multiplier;
+    }
+}
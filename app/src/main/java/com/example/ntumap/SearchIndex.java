@@ -0,0 +1,747 @@
+package com.example.ntumap;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Type-ahead search over room names, buildings, room types and aliases.
+ *
+ * Terms are kept in one sorted dictionary, so every term starting with a
+ * prefix is a contiguous range of term ids (a flattened trie). Query words
+ * that match no term prefix fall back to trigram candidates checked with a
+ * bounded edit distance, which tolerates typos such as "libary" or "gim".
+ * Every query word must match; results are ranked by match quality and the
+ * field that matched. Postings are stored in ranking order, so even a one
+ * letter prefix stops reading once its top matches can no longer change.
+ *
+ * The index is stored in campus pack layout and queried through buffer
+ * views, so an index read from the pack is used without being rebuilt.
+ */
+public class SearchIndex {
+
+    public enum Field {
+        NAME(4),
+        ALIAS(3),
+        BUILDING(2),
+        TYPE(1);
+
+        private final int weight;
+
+        Field(int weight) { this.weight = weight; }
+    }
+
+    /** One ranked search result. */
+    public static final class Match {
+        private final int id;
+        private final String name;
+        private final int score;
+
+        Match(int id, String name, int score) {
+            this.id = id;
+            this.name = name;
+            this.score = score;
+        }
+
+        public int getId() { return id; }
+        public String getName() { return name; }
+        public int getScore() { return score; }
+
+        @Override
+        public String toString() {
+            return name + " (" + score + ")";
+        }
+    }
+
+    private static final int EXACT = 3;
+    private static final int PREFIX = 2;
+    private static final int FUZZY = 1;
+    // Added when the whole query is a prefix of the entry's name
+    private static final int NAME_PREFIX_BONUS = 8;
+    // Above any score a single word's posting can bound
+    private static final int MAX_BOUND = EXACT * 4 + NAME_PREFIX_BONUS + 1;
+
+    private final PackedStrings names;
+    private final PackedStrings normalizedNames;
+    private final IntBuffer entryIds;
+
+    // Sorted term dictionary and term -> entries postings
+    private final PackedStrings terms;
+    private final IntBuffer postingStart;
+    private final IntBuffer postingEntry;
+    private final ByteBuffer postingWeight;
+
+    // Entry -> (term id, field weight) forward index for filtering by later words
+    private final IntBuffer entryTermStart;
+    private final IntBuffer entryTerm;
+    private final ByteBuffer entryTermWeight;
+    // Term id of the first word of each name, or -1 for names without words
+    private final IntBuffer entryFirstTerm;
+
+    // Sorted trigram keys and trigram -> terms postings
+    private final LongBuffer trigramKeys;
+    private final IntBuffer trigramStart;
+    private final IntBuffer trigramTerm;
+
+    // Per-query scratch state, allocated by the first query and reused after that
+    private int[] entryScore;
+    private int[] entryStamp;
+    // Seed word cursors: a heap of term ids, and per term its next posting, match quality and heap key
+    private int[] cursorTerm;
+    private int cursorCount;
+    private int[] cursorAt;
+    private int[] cursorQuality;
+    private long[] cursorKey;
+    private int cursorBonus;
+    private int[] termStamp;
+    private int[] termShared;
+    private int stamp;
+
+    private SearchIndex(PackReader in) {
+        names = in.strings();
+        normalizedNames = in.strings();
+        entryIds = in.ints();
+        terms = in.strings();
+        postingStart = in.ints();
+        postingEntry = in.ints();
+        postingWeight = in.bytes();
+        entryTermStart = in.ints();
+        entryTerm = in.ints();
+        entryTermWeight = in.bytes();
+        entryFirstTerm = in.ints();
+        trigramKeys = in.longs();
+        trigramStart = in.ints();
+        trigramTerm = in.ints();
+    }
+
+    // Index stored by Builder.writeTo, viewed in place
+    public static SearchIndex read(PackReader in) {
+        return new SearchIndex(in);
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Returns up to {@code limit} entries matching every word of the query,
+     * best first. Not thread-safe: queries share scratch arrays.
+     */
+    public List<Match> search(String query, int limit) {
+        String[] words = tokenize(query);
+        if (words.length == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        if (entryScore == null) {
+            allocateScratch();
+        }
+        byte[][] keys = new byte[words.length][];
+        for (int w = 0; w < words.length; w++) {
+            keys[w] = PackedStrings.utf8(words[w]);
+        }
+
+        // Resolve each word to a term range, or to fuzzy terms when no term has it as a prefix
+        int[] lo = new int[words.length];
+        int[] hi = new int[words.length];
+        int[][] fuzzy = new int[words.length][];
+        long[] cost = new long[words.length];
+        for (int w = 0; w < words.length; w++) {
+            lo[w] = lowerBound(keys[w]);
+            hi[w] = prefixEnd(keys[w], lo[w]);
+            if (lo[w] == hi[w]) {
+                fuzzy[w] = fuzzyTerms(words[w]);
+                if (fuzzy[w].length == 0) {
+                    return Collections.emptyList();
+                }
+            }
+            cost[w] = postingCount(lo[w], hi[w], fuzzy[w]);
+        }
+
+        // Walk the most selective word's postings, and score each entry in full when first reached
+        int seed = 0;
+        for (int w = 1; w < words.length; w++) {
+            if (cost[w] < cost[seed]) {
+                seed = w;
+            }
+        }
+        byte[] phrase = words.length > 1 ? PackedStrings.utf8(String.join(" ", words)) : null;
+        // A lone word earns the name prefix bonus only through the name's first word, so only
+        // name postings can carry it; with more words any entry might start with the phrase
+        int rest = phrase != null ? NAME_PREFIX_BONUS : 0;
+        for (int w = 0; w < words.length; w++) {
+            if (w != seed) {
+                rest += Field.NAME.weight * bestQuality(keys[w], lo[w], hi[w], fuzzy[w]);
+            }
+        }
+        cursorBonus = phrase == null && fuzzy[0] == null ? NAME_PREFIX_BONUS : 0;
+        openCursors(keys[seed], lo[seed], hi[seed], fuzzy[seed]);
+
+        // Postings come best bound first: once the weakest kept match beats the next bound, stop
+        nextStamp();
+        int[] heap = new int[Math.min(limit, names.size())];
+        int size = 0;
+        while (cursorCount > 0) {
+            int term = cursorTerm[0];
+            long key = cursorKey[term];
+            int entry = (int) key;
+            if (size == heap.length && ranksAbove(heap[0], MAX_BOUND - (int) (key >>> 56) + rest, entry)) {
+                break;
+            }
+            if (++cursorAt[term] == postingStart.get(term + 1)) {
+                cursorTerm[0] = cursorTerm[--cursorCount];
+            } else {
+                cursorKey[term] = cursorKey(term);
+            }
+            siftDownCursor(0);
+            if (entryStamp[entry] == stamp) {
+                continue;
+            }
+            entryStamp[entry] = stamp;
+            int score = score(entry, keys, lo, hi, fuzzy, phrase);
+            if (score == 0) {
+                continue;
+            }
+            entryScore[entry] = score;
+            if (size < heap.length) {
+                heap[size] = entry;
+                siftUp(heap, size++);
+            } else if (better(entry, heap[0])) {
+                heap[0] = entry;
+                siftDown(heap, size);
+            }
+        }
+
+        Match[] result = new Match[size];
+        while (size > 0) {
+            int entry = heap[0];
+            heap[0] = heap[--size];
+            siftDown(heap, size);
+            result[size] = new Match(entryIds.get(entry), names.get(entry), entryScore[entry]);
+        }
+        return Collections.unmodifiableList(Arrays.asList(result));
+    }
+
+    // Sum of each word's best term score, or 0 when some word does not match the entry
+    private int score(int entry, byte[][] keys, int[] lo, int[] hi, int[][] fuzzy, byte[] phrase) {
+        int score = 0;
+        for (int w = 0; w < keys.length; w++) {
+            int wordScore = bestTermScore(entry, keys[w], lo[w], hi[w], fuzzy[w]);
+            if (wordScore == 0) {
+                return 0;
+            }
+            score += wordScore;
+        }
+        if (phrase == null) {
+            // Same test as below without touching strings: the name's first word is in the prefix range
+            int first = entryFirstTerm.get(entry);
+            if (fuzzy[0] == null && first >= lo[0] && first < hi[0]) {
+                score += NAME_PREFIX_BONUS;
+            }
+        } else if (normalizedNames.startsWith(entry, phrase)) {
+            score += NAME_PREFIX_BONUS;
+        }
+        return score;
+    }
+
+    private int bestTermScore(int entry, byte[] word, int lo, int hi, int[] fuzzy) {
+        int best = 0;
+        for (int i = entryTermStart.get(entry); i < entryTermStart.get(entry + 1); i++) {
+            int term = entryTerm.get(i);
+            int quality = 0;
+            if (fuzzy == null) {
+                if (term >= lo && term < hi) {
+                    quality = terms.byteLength(term) == word.length ? EXACT : PREFIX;
+                }
+            } else if (Arrays.binarySearch(fuzzy, term) >= 0) {
+                quality = FUZZY;
+            }
+            best = Math.max(best, quality * entryTermWeight.get(i));
+        }
+        return best;
+    }
+
+    // Best match quality any term of the word can have; an exact term sorts first in its prefix range
+    private int bestQuality(byte[] word, int lo, int hi, int[] fuzzy) {
+        if (fuzzy != null) {
+            return FUZZY;
+        }
+        return lo < hi && terms.byteLength(lo) == word.length ? EXACT : PREFIX;
+    }
+
+    // One cursor per matching term, kept in a heap on the bound of its next posting
+    private void openCursors(byte[] word, int lo, int hi, int[] fuzzy) {
+        cursorCount = 0;
+        if (fuzzy == null) {
+            for (int t = lo; t < hi; t++) {
+                addCursor(t, terms.byteLength(t) == word.length ? EXACT : PREFIX);
+            }
+        } else {
+            for (int t : fuzzy) {
+                addCursor(t, FUZZY);
+            }
+        }
+        for (int i = cursorCount / 2 - 1; i >= 0; i--) {
+            siftDownCursor(i);
+        }
+    }
+
+    private void addCursor(int term, int quality) {
+        if (postingStart.get(term) < postingStart.get(term + 1)) {
+            cursorAt[term] = postingStart.get(term);
+            cursorQuality[term] = quality;
+            cursorKey[term] = cursorKey(term);
+            cursorTerm[cursorCount++] = term;
+        }
+    }
+
+    // Next posting of the term packed so that smaller keys come first: higher score bound,
+    // then shorter name, then lower entry, the entry itself in the low bits
+    private long cursorKey(int term) {
+        int p = cursorAt[term];
+        int entry = postingEntry.get(p);
+        int weight = postingWeight.get(p);
+        int bound = cursorQuality[term] * weight + (weight == Field.NAME.weight ? cursorBonus : 0);
+        return (long) (MAX_BOUND - bound) << 56 | (long) normalizedNames.byteLength(entry) << 32 | entry;
+    }
+
+    private boolean cursorBefore(int a, int b) {
+        return cursorKey[a] < cursorKey[b];
+    }
+
+    private void siftDownCursor(int i) {
+        if (cursorCount == 0) {
+            return;
+        }
+        int term = cursorTerm[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= cursorCount) {
+                break;
+            }
+            if (child + 1 < cursorCount && cursorBefore(cursorTerm[child + 1], cursorTerm[child])) {
+                child++;
+            }
+            if (!cursorBefore(cursorTerm[child], term)) {
+                break;
+            }
+            cursorTerm[i] = cursorTerm[child];
+            i = child;
+        }
+        cursorTerm[i] = term;
+    }
+
+    // Highest score first; ties go to the shorter name, then to insertion order
+    private boolean better(int a, int b) {
+        return ranksAbove(a, entryScore[b], b);
+    }
+
+    // Whether entry a ranks above entry b were b to score the given score
+    private boolean ranksAbove(int a, int score, int b) {
+        if (entryScore[a] != score) {
+            return entryScore[a] > score;
+        }
+        int lengthA = normalizedNames.byteLength(a);
+        int lengthB = normalizedNames.byteLength(b);
+        if (lengthA != lengthB) {
+            return lengthA < lengthB;
+        }
+        return a < b;
+    }
+
+    // Min-heap on ranking, so the root is the weakest kept match
+    private void siftUp(int[] heap, int i) {
+        int entry = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!better(heap[parent], entry)) {
+                break;
+            }
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = entry;
+    }
+
+    private void siftDown(int[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+        int entry = heap[0];
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && better(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!better(entry, heap[child])) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = entry;
+    }
+
+    private long postingCount(int lo, int hi, int[] fuzzy) {
+        if (fuzzy == null) {
+            return postingStart.get(hi) - postingStart.get(lo);
+        }
+        long count = 0;
+        for (int t : fuzzy) {
+            count += postingStart.get(t + 1) - postingStart.get(t);
+        }
+        return count;
+    }
+
+    // First term not less than the word
+    private int lowerBound(byte[] word) {
+        int lo = 0;
+        int hi = terms.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms.compare(mid, word) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // First term at or after from that does not start with the prefix
+    private int prefixEnd(byte[] prefix, int from) {
+        int lo = from;
+        int hi = terms.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (terms.startsWith(mid, prefix)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Sorted ids of terms within a small edit distance of the word, or of a prefix of the same length
+    private int[] fuzzyTerms(String word) {
+        long[] wordTrigrams = trigrams(word);
+        int maxEdits = word.length() <= 4 ? 1 : 2;
+        // Each edit destroys at most three trigrams
+        int minShared = Math.max(1, wordTrigrams.length - 3 * maxEdits);
+
+        nextStamp();
+        List<Integer> candidates = new ArrayList<>();
+        for (long key : wordTrigrams) {
+            int k = findTrigram(key);
+            if (k < 0) {
+                continue;
+            }
+            for (int p = trigramStart.get(k); p < trigramStart.get(k + 1); p++) {
+                int term = trigramTerm.get(p);
+                if (termStamp[term] != stamp) {
+                    termStamp[term] = stamp;
+                    termShared[term] = 0;
+                    candidates.add(term);
+                }
+                termShared[term]++;
+            }
+        }
+
+        int[] matches = new int[candidates.size()];
+        int count = 0;
+        for (int term : candidates) {
+            if (termShared[term] < minShared) {
+                continue;
+            }
+            String text = terms.get(term);
+            String head = text.length() > word.length() ? text.substring(0, word.length()) : text;
+            if (editDistance(word, head, maxEdits) <= maxEdits || editDistance(word, text, maxEdits) <= maxEdits) {
+                matches[count++] = term;
+            }
+        }
+        matches = Arrays.copyOf(matches, count);
+        Arrays.sort(matches);
+        return matches;
+    }
+
+    private int findTrigram(long key) {
+        int lo = 0;
+        int hi = trigramKeys.limit() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midKey = trigramKeys.get(mid);
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private void allocateScratch() {
+        entryScore = new int[names.size()];
+        entryStamp = new int[names.size()];
+        cursorTerm = new int[terms.size()];
+        cursorAt = new int[terms.size()];
+        cursorQuality = new int[terms.size()];
+        cursorKey = new long[terms.size()];
+        termStamp = new int[terms.size()];
+        termShared = new int[terms.size()];
+    }
+
+    private void nextStamp() {
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            Arrays.fill(entryStamp, 0);
+            Arrays.fill(termStamp, 0);
+            stamp = 1;
+        }
+    }
+
+    // Levenshtein distance, or max + 1 as soon as it must exceed max
+    static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int substitute = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitute, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    // Distinct trigrams of the word, padded at the start so short words still get some
+    static long[] trigrams(String word) {
+        String padded = "  " + word;
+        long[] keys = new long[word.length()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = ((long) padded.charAt(i) << 32) | ((long) padded.charAt(i + 1) << 16) | padded.charAt(i + 2);
+        }
+        Arrays.sort(keys);
+        int count = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (count == 0 || keys[count - 1] != keys[i]) {
+                keys[count++] = keys[i];
+            }
+        }
+        return Arrays.copyOf(keys, count);
+    }
+
+    static String normalize(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        boolean space = true;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+                space = false;
+            } else if (!space) {
+                sb.append(' ');
+                space = true;
+            }
+        }
+        int length = sb.length();
+        if (length > 0 && sb.charAt(length - 1) == ' ') {
+            sb.setLength(length - 1);
+        }
+        return sb.toString();
+    }
+
+    static String[] tokenize(String text) {
+        String normalized = normalize(text);
+        return normalized.isEmpty() ? new String[0] : normalized.split(" ");
+    }
+
+    public static class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final List<Integer> ids = new ArrayList<>();
+        private final List<List<String>> entryTerms = new ArrayList<>();
+        private final List<List<Integer>> entryWeights = new ArrayList<>();
+        private final Map<String, Integer> termIds = new HashMap<>();
+
+        // Adds an entry searchable by its name; id is returned in matches
+        public Builder add(int id, String name) {
+            names.add(name);
+            ids.add(id);
+            entryTerms.add(new ArrayList<>());
+            entryWeights.add(new ArrayList<>());
+            return addText(Field.NAME, name);
+        }
+
+        // Makes the last added entry searchable by more text, e.g. its room type or an alias
+        public Builder addText(Field field, String text) {
+            if (names.isEmpty()) {
+                throw new IllegalStateException("No entry to add text to");
+            }
+            if (text == null) {
+                return this;
+            }
+            List<String> entry = entryTerms.get(entryTerms.size() - 1);
+            List<Integer> weights = entryWeights.get(entryWeights.size() - 1);
+            for (String word : tokenize(text)) {
+                termIds.putIfAbsent(word, termIds.size());
+                entry.add(word);
+                weights.add(field.weight);
+            }
+            return this;
+        }
+
+        public SearchIndex build() {
+            PackWriter out = new PackWriter();
+            writeTo(out);
+            return new SearchIndex(out.toReader());
+        }
+
+        // Writes the index in the layout read expects
+        public void writeTo(PackWriter out) {
+            int entryCount = names.size();
+            List<String> normalizedNames = new ArrayList<>(entryCount);
+            int[] entryIds = new int[entryCount];
+            for (int i = 0; i < entryCount; i++) {
+                normalizedNames.add(normalize(names.get(i)));
+                entryIds[i] = ids.get(i);
+            }
+
+            // Sorted by UTF-8 bytes, the order PackedStrings compares in
+            String[] terms = termIds.keySet().toArray(new String[0]);
+            Arrays.sort(terms, PackedStrings::compareUtf8);
+            Map<String, Integer> sortedIds = new HashMap<>();
+            for (int t = 0; t < terms.length; t++) {
+                sortedIds.put(terms[t], t);
+            }
+
+            // Forward index, with each term kept once per entry at its best field weight
+            int[] entryTermStart = new int[entryCount + 1];
+            int[] entryFirstTerm = new int[entryCount];
+            List<Integer> forwardTerms = new ArrayList<>();
+            List<Integer> forwardWeights = new ArrayList<>();
+            int[] termCounts = new int[terms.length];
+            for (int e = 0; e < entryCount; e++) {
+                entryTermStart[e] = forwardTerms.size();
+                String[] nameWords = tokenize(names.get(e));
+                entryFirstTerm[e] = nameWords.length > 0 ? sortedIds.get(nameWords[0]) : -1;
+                List<String> entryTerms = this.entryTerms.get(e);
+                List<Integer> entryWeights = this.entryWeights.get(e);
+                for (int i = 0; i < entryTerms.size(); i++) {
+                    int term = sortedIds.get(entryTerms.get(i));
+                    int weight = entryWeights.get(i);
+                    int existing = forwardTerms.subList(entryTermStart[e], forwardTerms.size()).indexOf(term);
+                    if (existing >= 0) {
+                        int at = entryTermStart[e] + existing;
+                        forwardWeights.set(at, Math.max(forwardWeights.get(at), weight));
+                    } else {
+                        forwardTerms.add(term);
+                        forwardWeights.add(weight);
+                        termCounts[term]++;
+                    }
+                }
+            }
+            entryTermStart[entryCount] = forwardTerms.size();
+            int[] entryTerm = new int[forwardTerms.size()];
+            byte[] entryTermWeight = new byte[forwardTerms.size()];
+            for (int i = 0; i < entryTerm.length; i++) {
+                entryTerm[i] = forwardTerms.get(i);
+                entryTermWeight[i] = (byte) (int) forwardWeights.get(i);
+            }
+
+            // Inverted index in ranking order within each term: heaviest field first, then shorter
+            // name, then insertion order, so a query can stop as soon as its top matches are known
+            int[] postingStart = new int[terms.length + 1];
+            for (int t = 0; t < terms.length; t++) {
+                postingStart[t + 1] = postingStart[t] + termCounts[t];
+            }
+            int[] nameLengths = new int[entryCount];
+            Integer[] byName = new Integer[entryCount];
+            for (int e = 0; e < entryCount; e++) {
+                nameLengths[e] = PackedStrings.utf8(normalizedNames.get(e)).length;
+                byName[e] = e;
+            }
+            Arrays.sort(byName, (a, b) -> nameLengths[a] != nameLengths[b]
+                    ? Integer.compare(nameLengths[a], nameLengths[b]) : Integer.compare(a, b));
+            int[] postingEntry = new int[entryTerm.length];
+            byte[] postingWeight = new byte[entryTerm.length];
+            int[] fill = Arrays.copyOf(postingStart, terms.length);
+            for (int weight = Field.NAME.weight; weight >= Field.TYPE.weight; weight--) {
+                for (int e : byName) {
+                    for (int i = entryTermStart[e]; i < entryTermStart[e + 1]; i++) {
+                        if (entryTermWeight[i] == weight) {
+                            int p = fill[entryTerm[i]]++;
+                            postingEntry[p] = e;
+                            postingWeight[p] = entryTermWeight[i];
+                        }
+                    }
+                }
+            }
+
+            // Trigram postings: sort (trigram, term) pairs and split them into runs of equal trigrams
+            List<long[]> pairs = new ArrayList<>();
+            for (int t = 0; t < terms.length; t++) {
+                for (long key : trigrams(terms[t])) {
+                    pairs.add(new long[] {key, t});
+                }
+            }
+            Collections.sort(pairs, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+            int keyCount = 0;
+            for (int i = 0; i < pairs.size(); i++) {
+                if (i == 0 || pairs.get(i)[0] != pairs.get(i - 1)[0]) {
+                    keyCount++;
+                }
+            }
+            long[] trigramKeys = new long[keyCount];
+            int[] trigramStart = new int[keyCount + 1];
+            int[] trigramTerm = new int[pairs.size()];
+            int key = -1;
+            for (int i = 0; i < pairs.size(); i++) {
+                long[] pair = pairs.get(i);
+                if (i == 0 || pair[0] != pairs.get(i - 1)[0]) {
+                    trigramKeys[++key] = pair[0];
+                    trigramStart[key] = i;
+                }
+                trigramTerm[i] = (int) pair[1];
+            }
+            trigramStart[keyCount] = pairs.size();
+
+            out.putStrings(names).putStrings(normalizedNames).putInts(entryIds, entryCount)
+                    .putStrings(Arrays.asList(terms))
+                    .putInts(postingStart, postingStart.length)
+                    .putInts(postingEntry, postingEntry.length)
+                    .putBytes(postingWeight, postingWeight.length)
+                    .putInts(entryTermStart, entryTermStart.length)
+                    .putInts(entryTerm, entryTerm.length)
+                    .putBytes(entryTermWeight, entryTermWeight.length)
+                    .putInts(entryFirstTerm, entryCount)
+                    .putLongs(trigramKeys, keyCount)
+                    .putInts(trigramStart, trigramStart.length)
+                    .putInts(trigramTerm, trigramTerm.length);
+        }
+    }
+}
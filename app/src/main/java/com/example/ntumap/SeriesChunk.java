@@ -0,0 +1,124 @@
+package com.example.ntumap;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compressed block of (time, count) points from one room's series. Times
+ * are bucket numbers and are stored as delta-of-delta bits: a regular
+ * series costs one bit per point, and a gap costs 33. Counts follow as
+ * zig-zag varint deltas, a byte each while they move by less than 64.
+ */
+public final class SeriesChunk {
+
+    private SeriesChunk() {}
+
+    public static byte[] encode(long[] times, int[] counts, int n) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 + n + n / 8);
+        writeVarLong(out, n);
+        if (n == 0) {
+            return out.toByteArray();
+        }
+        writeVarLong(out, times[0]);
+
+        byte[] bits = new byte[(n * 33 + 7) / 8];
+        int bit = 0;
+        long previousDelta = 0;
+        for (int i = 1; i < n; i++) {
+            long delta = times[i] - times[i - 1];
+            long deltaOfDelta = delta - previousDelta;
+            previousDelta = delta;
+            if (deltaOfDelta == 0) {
+                bit++;
+            } else {
+                if (deltaOfDelta != (int) deltaOfDelta) {
+                    throw new IllegalArgumentException("Gap too long at point " + i);
+                }
+                bits[bit >>> 3] |= 1 << (bit & 7);
+                bit++;
+                int zigzag = ((int) deltaOfDelta << 1) ^ ((int) deltaOfDelta >> 31);
+                for (int b = 0; b < 32; b++, bit++) {
+                    if ((zigzag & (1 << b)) != 0) {
+                        bits[bit >>> 3] |= 1 << (bit & 7);
+                    }
+                }
+            }
+        }
+        int bitBytes = (bit + 7) / 8;
+        writeVarLong(out, bitBytes);
+        out.write(bits, 0, bitBytes);
+
+        int previous = 0;
+        for (int i = 0; i < n; i++) {
+            int delta = counts[i] - previous;
+            previous = counts[i];
+            writeVarLong(out, (delta << 1) ^ (delta >> 31));
+        }
+        return out.toByteArray();
+    }
+
+    // Receives decoded points in time order
+    public interface PointSink {
+        void add(long time, int count);
+    }
+
+    /** Passes the points of an encoded chunk with times in [from, to] to the sink. */
+    public static void decode(byte[] chunk, long from, long to, PointSink into) {
+        int[] pos = {0};
+        int n = (int) readVarLong(chunk, pos);
+        if (n == 0) {
+            return;
+        }
+        long[] times = new long[n];
+        times[0] = readVarLong(chunk, pos);
+        int bitBytes = (int) readVarLong(chunk, pos);
+        int bit = pos[0] * 8;
+        long delta = 0;
+        for (int i = 1; i < n; i++) {
+            if ((chunk[bit >>> 3] & (1 << (bit & 7))) != 0) {
+                bit++;
+                int zigzag = 0;
+                for (int b = 0; b < 32; b++, bit++) {
+                    if ((chunk[bit >>> 3] & (1 << (bit & 7))) != 0) {
+                        zigzag |= 1 << b;
+                    }
+                }
+                delta += (zigzag >>> 1) ^ -(zigzag & 1);
+            } else {
+                bit++;
+            }
+            times[i] = times[i - 1] + delta;
+        }
+        pos[0] += bitBytes;
+
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int zigzag = (int) readVarLong(chunk, pos);
+            count += (zigzag >>> 1) ^ -(zigzag & 1);
+            if (times[i] >= from && times[i] <= to) {
+                into.add(times[i], count);
+            }
+        }
+    }
+
+    static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarLong(byte[] in, int[] pos) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (pos[0] >= in.length) {
+                throw new IllegalArgumentException("Truncated varint");
+            }
+            byte b = in[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
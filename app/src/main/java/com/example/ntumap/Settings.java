@@ -0,0 +1,61 @@
+package com.example.ntumap;
+
+/**
+ * Immutable snapshot of the user's settings, handed out by
+ * {@link SettingsStore}. On/off settings are option bits and route
+ * preferences are a shared {@link RoutingProfile}, so reading a setting is
+ * a field load and a bit test.
+ */
+public final class Settings {
+
+    // Options
+    public static final int VOICE_GUIDANCE = 1;
+    public static final int HIGH_CONTRAST = 1 << 1;
+    public static final int SCREEN_READER = 1 << 2;
+    public static final int LARGE_TEXT = 1 << 3;
+    public static final int VIBRATION_FEEDBACK = 1 << 4;
+
+    public static final int MIN_TEXT_SIZE = 12;
+    public static final int MAX_TEXT_SIZE = 24;
+    public static final int DEFAULT_TEXT_SIZE = 16;
+
+    public static final Settings DEFAULTS = new Settings(0, DEFAULT_TEXT_SIZE, RoutingProfile.SHORTEST);
+
+    private final int options;
+    private final int textSize;
+    private final RoutingProfile routingProfile;
+
+    Settings(int options, int textSize, RoutingProfile routingProfile) {
+        this.options = options;
+        this.textSize = textSize;
+        this.routingProfile = routingProfile;
+    }
+
+    public int getOptions() { return options; }
+    public boolean has(int option) { return (options & option) != 0; }
+    // Text size in sp
+    public int getTextSize() { return textSize; }
+    public RoutingProfile getRoutingProfile() { return routingProfile; }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Settings)) {
+            return false;
+        }
+        Settings settings = (Settings) other;
+        // Profiles are shared, one per combination of options
+        return options == settings.options && textSize == settings.textSize
+                && routingProfile == settings.routingProfile;
+    }
+
+    @Override
+    public int hashCode() {
+        return (options * 31 + textSize) * 31 + routingProfile.getOptions();
+    }
+
+    @Override
+    public String toString() {
+        return "Settings{options=" + options + ", textSize=" + textSize
+                + ", routing=" + routingProfile.getOptions() + "}";
+    }
+}
@@ -0,0 +1,255 @@
+package com.example.ntumap;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The user's settings, kept in memory as an immutable {@link Settings}
+ * snapshot and saved to a small properties file.
+ *
+ * Reads return the current snapshot, so hot paths never touch a map or the
+ * disk. Changes are made through an {@link Editor}, which only records the
+ * settings it sets and merges them into whatever is current when applied,
+ * so editors on different threads do not undo each other. Applying swaps
+ * the snapshot, tells the listeners and schedules a write a little later;
+ * every change made before the write runs goes out with it, so a burst of
+ * toggles costs one write. The file is replaced by renaming a synced
+ * temporary file over it, so a crash leaves either the old settings or the
+ * new ones, never half of each.
+ */
+public class SettingsStore {
+
+    /** Told about each change, on the thread that applied it. */
+    public interface Listener {
+        void onSettingsChanged(Settings settings, Settings previous);
+    }
+
+    static final long WRITE_DELAY_MILLIS = 300;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    // Keys, as the settings were named in SharedPreferences
+    static final String[] OPTION_KEYS = {"voice_guidance", "high_contrast", "screen_reader", "large_text",
+            "vibration_feedback"};
+    static final String[] ROUTING_KEYS = {"step_free", "avoid_steep_ramps", "prefer_lifts", "prefer_sheltered"};
+    static final String TEXT_SIZE_KEY = "text_size";
+
+    private final File file;
+    private final TaskScheduler.Scope writes;
+    private final long writeDelayMillis;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Object writeLock = new Object();
+    private volatile Settings settings;
+    // Guarded by this
+    private boolean writePending;
+    private int writeCount;
+
+    public SettingsStore(File file, TaskScheduler.Scope writes) {
+        this(file, writes, WRITE_DELAY_MILLIS);
+    }
+
+    SettingsStore(File file, TaskScheduler.Scope writes, long writeDelayMillis) {
+        this.file = file;
+        this.writes = writes;
+        this.writeDelayMillis = writeDelayMillis;
+        settings = read(file);
+    }
+
+    public Settings get() {
+        return settings;
+    }
+
+    // Whether the settings file exists yet, e.g. to migrate older settings into a new store
+    public boolean isSaved() {
+        return file.exists();
+    }
+
+    public Editor edit() {
+        return new Editor();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Writes pending changes now rather than after the delay. Does disk I/O. */
+    public void flush() {
+        write();
+    }
+
+    // Times the file has been written, for tests
+    synchronized int getWriteCount() {
+        return writeCount;
+    }
+
+    private void apply(Editor editor) {
+        Settings previous;
+        Settings next;
+        synchronized (this) {
+            previous = settings;
+            next = editor.mergeInto(previous);
+            if (next.equals(previous)) {
+                return;
+            }
+            settings = next;
+            if (!writePending) {
+                writePending = true;
+                writes.submitDelayed(TaskScheduler.BACKGROUND, writeDelayMillis, () -> {
+                    write();
+                    return null;
+                }, null);
+            }
+        }
+        for (Listener listener : listeners) {
+            listener.onSettingsChanged(next, previous);
+        }
+    }
+
+    private void write() {
+        Settings snapshot;
+        synchronized (this) {
+            if (!writePending) {
+                return;
+            }
+            writePending = false;
+            snapshot = settings;
+        }
+        // One writer at a time, so an older snapshot never lands after a newer one
+        synchronized (writeLock) {
+            if (snapshot != settings) {
+                // A newer change is pending and will be written by its own task
+                return;
+            }
+            try {
+                replace(file, format(snapshot));
+                synchronized (this) {
+                    writeCount++;
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static void replace(File file, byte[] contents) throws IOException {
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(contents);
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    static byte[] format(Settings settings) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < OPTION_KEYS.length; i++) {
+            text.append(OPTION_KEYS[i]).append('=').append(settings.has(1 << i)).append('\n');
+        }
+        for (int i = 0; i < ROUTING_KEYS.length; i++) {
+            text.append(ROUTING_KEYS[i]).append('=').append(settings.getRoutingProfile().has(1 << i)).append('\n');
+        }
+        text.append(TEXT_SIZE_KEY).append('=').append(settings.getTextSize()).append('\n');
+        return text.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    // Missing or unreadable settings fall back to the defaults, one setting at a time
+    static Settings read(File file) {
+        if (!file.exists()) {
+            return Settings.DEFAULTS;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            properties.load(in);
+        } catch (IOException | IllegalArgumentException e) {
+            e.printStackTrace();
+            return Settings.DEFAULTS;
+        }
+        int options = 0;
+        for (int i = 0; i < OPTION_KEYS.length; i++) {
+            if (Boolean.parseBoolean(properties.getProperty(OPTION_KEYS[i]))) {
+                options |= 1 << i;
+            }
+        }
+        int routing = 0;
+        for (int i = 0; i < ROUTING_KEYS.length; i++) {
+            if (Boolean.parseBoolean(properties.getProperty(ROUTING_KEYS[i]))) {
+                routing |= 1 << i;
+            }
+        }
+        int textSize = Settings.DEFAULT_TEXT_SIZE;
+        try {
+            textSize = clampTextSize(Integer.parseInt(
+                    properties.getProperty(TEXT_SIZE_KEY, String.valueOf(textSize)).trim()));
+        } catch (NumberFormatException e) {
+            e.printStackTrace();
+        }
+        return new Settings(options, textSize, RoutingProfile.of(routing));
+    }
+
+    private static int clampTextSize(int size) {
+        return Math.max(Settings.MIN_TEXT_SIZE, Math.min(Settings.MAX_TEXT_SIZE, size));
+    }
+
+    /** Changes to apply together; only the settings set here are changed. */
+    public final class Editor {
+        private int optionMask;
+        private int optionValues;
+        private int routingMask;
+        private int routingValues;
+        private int textSize = -1;
+
+        private Editor() {}
+
+        // Settings option bits
+        public Editor set(int option, boolean enabled) {
+            optionMask |= option;
+            optionValues = enabled ? optionValues | option : optionValues & ~option;
+            return this;
+        }
+
+        // RoutingProfile option bits
+        public Editor setRouting(int option, boolean enabled) {
+            routingMask |= option;
+            routingValues = enabled ? routingValues | option : routingValues & ~option;
+            return this;
+        }
+
+        public Editor setTextSize(int size) {
+            textSize = clampTextSize(size);
+            return this;
+        }
+
+        // Every setting back to its default
+        public Editor reset() {
+            optionMask = -1;
+            optionValues = Settings.DEFAULTS.getOptions();
+            routingMask = -1;
+            routingValues = Settings.DEFAULTS.getRoutingProfile().getOptions();
+            textSize = Settings.DEFAULTS.getTextSize();
+            return this;
+        }
+
+        public void apply() {
+            SettingsStore.this.apply(this);
+        }
+
+        Settings mergeInto(Settings current) {
+            int options = current.getOptions() & ~optionMask | optionValues;
+            int routing = current.getRoutingProfile().getOptions() & ~routingMask | routingValues;
+            return new Settings(options, textSize >= 0 ? textSize : current.getTextSize(), RoutingProfile.of(routing));
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.ntumap;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs start-up work as a graph of named tasks. A task starts once all of
+ * its dependencies have finished, on the main executor unless it is marked
+ * {@link #BACKGROUND}. Tasks marked {@link #AFTER_FIRST_FRAME} also wait for
+ * {@link #onFirstFrame()}, so only the work needed to draw the first frame
+ * sits on the critical path.
+ *
+ * A task that throws is reported and its dependents are skipped; other
+ * branches carry on.
+ */
+public class StartupOrchestrator {
+
+    // Task flags
+    public static final int MAIN = 0;
+    public static final int BACKGROUND = 1;
+    public static final int AFTER_FIRST_FRAME = 2;
+
+    /** Instrumentation hook, called on the thread that ran the task. */
+    public interface Listener {
+        void onTaskFinished(String name, boolean background, long durationNanos);
+        void onTaskFailed(String name, Throwable error);
+    }
+
+    private static final class Task {
+        final String name;
+        final int flags;
+        final Runnable work;
+        final String[] dependsOn;
+        final List<Task> dependents = new ArrayList<>();
+        int waitingFor;
+        boolean dispatched;
+        boolean skipped;
+
+        Task(String name, int flags, Runnable work, String[] dependsOn) {
+            this.name = name;
+            this.flags = flags;
+            this.work = work;
+            this.dependsOn = dependsOn;
+        }
+
+        boolean isBackground() { return (flags & BACKGROUND) != 0; }
+        boolean isDeferred() { return (flags & AFTER_FIRST_FRAME) != 0; }
+    }
+
+    private final Executor mainExecutor;
+    private final Executor backgroundExecutor;
+    private final Listener listener;
+    private final Map<String, Task> tasks = new HashMap<>();
+    private final List<Task> order = new ArrayList<>();
+    private boolean started;
+    private boolean firstFrameDrawn;
+    private boolean cancelled;
+    private int remaining;
+
+    public StartupOrchestrator(Executor mainExecutor, Executor backgroundExecutor, Listener listener) {
+        this.mainExecutor = mainExecutor;
+        this.backgroundExecutor = backgroundExecutor;
+        this.listener = listener;
+    }
+
+    // Declares a task; dependencies may be declared before or after it, up to start()
+    public synchronized StartupOrchestrator add(String name, int flags, Runnable work, String... dependsOn) {
+        if (started) {
+            throw new IllegalStateException("Cannot add " + name + " after start");
+        }
+        if (tasks.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate startup task " + name);
+        }
+        Task task = new Task(name, flags, work, dependsOn);
+        tasks.put(name, task);
+        order.add(task);
+        return this;
+    }
+
+    /** Checks the graph and starts every task without dependencies. */
+    public void start() {
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            if (started) {
+                throw new IllegalStateException("Already started");
+            }
+            for (Task task : order) {
+                for (String dependency : task.dependsOn) {
+                    Task required = tasks.get(dependency);
+                    if (required == null) {
+                        throw new IllegalStateException(task.name + " depends on unknown task " + dependency);
+                    }
+                    required.dependents.add(task);
+                    task.waitingFor++;
+                }
+            }
+            checkAcyclic();
+            started = true;
+            remaining = order.size();
+            for (Task task : order) {
+                collectIfReady(task, ready);
+            }
+        }
+        dispatch(ready);
+    }
+
+    /** Releases the deferred tasks; call it once the first frame has been drawn. */
+    public void onFirstFrame() {
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            if (firstFrameDrawn) {
+                return;
+            }
+            firstFrameDrawn = true;
+            if (started) {
+                for (Task task : order) {
+                    collectIfReady(task, ready);
+                }
+            }
+        }
+        dispatch(ready);
+    }
+
+    // Tasks not yet running are dropped, e.g. when the activity that declared them is destroyed
+    public synchronized void cancel() {
+        cancelled = true;
+    }
+
+    // True once every task has run or been skipped
+    public synchronized boolean isFinished() {
+        return started && remaining == 0;
+    }
+
+    private void collectIfReady(Task task, List<Task> ready) {
+        if (!cancelled && !task.dispatched && !task.skipped && task.waitingFor == 0 && (firstFrameDrawn || !task.isDeferred())) {
+            task.dispatched = true;
+            ready.add(task);
+        }
+    }
+
+    private void dispatch(List<Task> ready) {
+        for (Task task : ready) {
+            Executor executor = task.isBackground() ? backgroundExecutor : mainExecutor;
+            executor.execute(() -> run(task));
+        }
+    }
+
+    private void run(Task task) {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+        }
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            task.work.run();
+        } catch (RuntimeException e) {
+            error = e;
+        }
+
+        List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            remaining--;
+            for (Task dependent : task.dependents) {
+                if (error != null) {
+                    skip(dependent);
+                } else {
+                    dependent.waitingFor--;
+                    collectIfReady(dependent, ready);
+                }
+            }
+        }
+        if (error != null) {
+            listener.onTaskFailed(task.name, error);
+        } else {
+            listener.onTaskFinished(task.name, task.isBackground(), System.nanoTime() - start);
+        }
+        dispatch(ready);
+    }
+
+    private void skip(Task task) {
+        if (task.skipped || task.dispatched) {
+            return;
+        }
+        task.skipped = true;
+        remaining--;
+        for (Task dependent : task.dependents) {
+            skip(dependent);
+        }
+    }
+
+    // Kahn's algorithm over the declared edges
+    private void checkAcyclic() {
+        Map<Task, Integer> waiting = new HashMap<>();
+        List<Task> queue = new ArrayList<>();
+        for (Task task : order) {
+            waiting.put(task, task.waitingFor);
+            if (task.waitingFor == 0) {
+                queue.add(task);
+            }
+        }
+        for (int i = 0; i < queue.size(); i++) {
+            for (Task dependent : queue.get(i).dependents) {
+                int left = waiting.get(dependent) - 1;
+                waiting.put(dependent, left);
+                if (left == 0) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        if (queue.size() != order.size()) {
+            List<String> cycle = new ArrayList<>();
+            for (Task task : order) {
+                if (waiting.get(task) > 0) {
+                    cycle.add(task.name);
+                }
+            }
+            throw new IllegalStateException("Startup tasks have a dependency cycle: " + cycle);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.ntumap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start-up milestones measured from process start, plus the duration of
+ * every {@link StartupOrchestrator} task. Each milestone is recorded once per
+ * process and handed to a {@link Reporter}, so a slower time-to-first-map-frame
+ * shows up in logs or a metrics backend.
+ */
+public class StartupTimings implements StartupOrchestrator.Listener {
+
+    // First frame of the launch activity's window
+    public static final String FIRST_FRAME = "first_frame";
+    // Google Map has its style and visible tiles rendered
+    public static final String FIRST_MAP_FRAME = "first_map_frame";
+
+    /** Receives each measurement as it is taken. */
+    public interface Reporter {
+        void onMilestone(String milestone, long millisSinceStart);
+        void onTask(String task, boolean background, long durationMillis);
+    }
+
+    private final long processStartMillis;
+    private final Reporter reporter;
+    private final Map<String, Long> milestones = new LinkedHashMap<>();
+
+    // Both times are on the same clock, SystemClock.uptimeMillis() on the device
+    public StartupTimings(long processStartMillis, Reporter reporter) {
+        this.processStartMillis = processStartMillis;
+        this.reporter = reporter;
+    }
+
+    /** Records a milestone reached at the given time; later calls for the same one are ignored. */
+    public void mark(String milestone, long nowMillis) {
+        long elapsed = nowMillis - processStartMillis;
+        synchronized (this) {
+            if (milestones.containsKey(milestone)) {
+                return;
+            }
+            milestones.put(milestone, elapsed);
+        }
+        reporter.onMilestone(milestone, elapsed);
+    }
+
+    // Milliseconds from process start, or -1 if the milestone has not been reached
+    public synchronized long get(String milestone) {
+        Long elapsed = milestones.get(milestone);
+        return elapsed != null ? elapsed : -1;
+    }
+
+    @Override
+    public void onTaskFinished(String name, boolean background, long durationNanos) {
+        reporter.onTask(name, background, TimeUnit.NANOSECONDS.toMillis(durationNanos));
+    }
+
+    @Override
+    public void onTaskFailed(String name, Throwable error) {
+        // Dependents are skipped; the screen carries on without them
+        error.printStackTrace();
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.ntumap;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * App-wide background task scheduler with a fixed number of worker threads.
+ *
+ * Queued tasks run in priority order, then in submission order. Emergency
+ * tasks also go to a reserved worker, so they start straight away even when
+ * every general worker is busy with search or booking work.
+ *
+ * Work is submitted through a {@link Scope}, normally one per screen.
+ * Results are delivered on the result executor (the main thread on the
+ * device) only while the scope is open, so closing the scope in onDestroy
+ * cancels pending work and guarantees nothing reaches a destroyed screen.
+ * A task that throws delivers no result; the exception goes to the
+ * scheduler's {@link ErrorHandler} instead.
+ */
+public class TaskScheduler {
+
+    // Priorities, most urgent first
+    public static final int EMERGENCY = 0;
+    public static final int INTERACTIVE = 1;
+    public static final int BACKGROUND = 2;
+
+    private static final long IDLE_TIMEOUT_SECONDS = 30;
+
+    /** Receives a task's result on the result executor. */
+    public interface Callback<T> {
+        void onResult(T result);
+    }
+
+    /** Told about tasks that threw, on the worker thread that ran them. */
+    public interface ErrorHandler {
+        void onError(Throwable error);
+    }
+
+    /** Handle to a submitted task. */
+    public interface Cancellable {
+        // Drops the task if it has not started, interrupts it if it has, and suppresses its result
+        void cancel();
+
+        boolean isCancelled();
+    }
+
+    private final ThreadPoolExecutor workers;
+    private final ThreadPoolExecutor emergencyWorker;
+    private final ScheduledThreadPoolExecutor timer;
+    private final Executor resultExecutor;
+    private final ErrorHandler errorHandler;
+    private final AtomicLong sequence = new AtomicLong();
+
+    // Failed tasks are dropped without a trace
+    public TaskScheduler(int workerThreads, Executor resultExecutor) {
+        this(workerThreads, resultExecutor, error -> { });
+    }
+
+    public TaskScheduler(int workerThreads, Executor resultExecutor, ErrorHandler errorHandler) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("Need at least one worker thread");
+        }
+        this.resultExecutor = resultExecutor;
+        this.errorHandler = errorHandler;
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), threadFactory("ntumap-worker"));
+        workers.allowCoreThreadTimeOut(true);
+        emergencyWorker = new ThreadPoolExecutor(1, 1, IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), threadFactory("ntumap-emergency"));
+        emergencyWorker.allowCoreThreadTimeOut(true);
+
+        // Only hands delayed tasks over to the workers, never runs them
+        timer = new ScheduledThreadPoolExecutor(1, threadFactory("ntumap-timer"));
+        timer.setKeepAliveTime(IDLE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        timer.allowCoreThreadTimeOut(true);
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    public Scope newScope() {
+        return new Scope();
+    }
+
+    // Fire-and-forget executor at a fixed priority, for code that takes a plain Executor
+    public Executor executor(int priority) {
+        return command -> dispatch(new Job<>(null, priority, () -> {
+            command.run();
+            return null;
+        }, null));
+    }
+
+    // Threads currently alive across the worker pools and the timer
+    public int getThreadCount() {
+        return workers.getPoolSize() + emergencyWorker.getPoolSize() + timer.getPoolSize();
+    }
+
+    public int getLargestThreadCount() {
+        return workers.getLargestPoolSize() + emergencyWorker.getLargestPoolSize() + timer.getLargestPoolSize();
+    }
+
+    public void shutdown() {
+        timer.shutdownNow();
+        workers.shutdownNow();
+        emergencyWorker.shutdownNow();
+    }
+
+    private void dispatch(Job<?> job) {
+        workers.execute(job);
+        if (job.priority == EMERGENCY) {
+            // Whichever worker gets to it first runs it
+            emergencyWorker.execute(job);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Group of tasks that is cancelled together, e.g. everything one Activity
+     * started.
+     */
+    public final class Scope {
+        private final Set<Job<?>> jobs = ConcurrentHashMap.newKeySet();
+        private volatile boolean closed;
+
+        private Scope() {}
+
+        /** Runs {@code work} on a worker and passes its result to {@code callback}, which may be null. */
+        public <T> Cancellable submit(int priority, Callable<T> work, Callback<T> callback) {
+            return submitDelayed(priority, 0, work, callback);
+        }
+
+        /** Like {@link #submit}, but the task only becomes runnable after the delay. */
+        public <T> Cancellable submitDelayed(int priority, long delayMillis, Callable<T> work, Callback<T> callback) {
+            Job<T> job = new Job<>(this, priority, work, callback);
+            jobs.add(job);
+            if (closed) {
+                job.cancel();
+            } else if (delayMillis > 0) {
+                job.timerFuture = timer.schedule(() -> dispatch(job), delayMillis, TimeUnit.MILLISECONDS);
+            } else {
+                dispatch(job);
+            }
+            return job;
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        // Cancels every task of the scope; call it on the result thread so no result slips through
+        public void close() {
+            closed = true;
+            for (Job<?> job : jobs) {
+                job.cancel();
+            }
+        }
+
+        // Tasks submitted through the scope that have not finished yet
+        public int pendingCount() {
+            return jobs.size();
+        }
+    }
+
+    private final class Job<T> implements Runnable, Comparable<Job<?>>, Cancellable {
+        private static final int PENDING = 0;
+        private static final int RUNNING = 1;
+        private static final int DELIVERING = 2;
+        private static final int DONE = 3;
+        private static final int CANCELLED = 4;
+
+        final Scope scope;
+        final int priority;
+        final long order = sequence.getAndIncrement();
+        final Callable<T> work;
+        final Callback<T> callback;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        volatile Future<?> timerFuture;
+        private Thread runner;
+        private T result;
+
+        Job(Scope scope, int priority, Callable<T> work, Callback<T> callback) {
+            this.scope = scope;
+            this.priority = priority;
+            this.work = work;
+            this.callback = callback;
+        }
+
+        @Override
+        public void run() {
+            if (!state.compareAndSet(PENDING, RUNNING)) {
+                return; // Cancelled, or already claimed by the other emergency queue
+            }
+            synchronized (this) {
+                runner = Thread.currentThread();
+            }
+            try {
+                result = work.call();
+            } catch (Exception e) {
+                if (state.get() != CANCELLED) {
+                    errorHandler.onError(e);
+                    finish(DONE);
+                }
+                return;
+            } finally {
+                synchronized (this) {
+                    runner = null;
+                }
+                // Don't leave a late cancel()'s interrupt on the pooled thread
+                Thread.interrupted();
+            }
+
+            if (callback == null) {
+                finish(DONE);
+            } else if (state.compareAndSet(RUNNING, DELIVERING)) {
+                resultExecutor.execute(this::deliver);
+            }
+        }
+
+        private void deliver() {
+            // The scope may have closed while the result was in flight
+            if ((scope == null || !scope.closed) && state.compareAndSet(DELIVERING, DONE)) {
+                forget();
+                callback.onResult(result);
+            } else {
+                cancel();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            int current;
+            do {
+                current = state.get();
+                if (current == DONE || current == CANCELLED) {
+                    return;
+                }
+            } while (!state.compareAndSet(current, CANCELLED));
+
+            Future<?> scheduled = timerFuture;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            if (current == PENDING) {
+                workers.remove(this);
+                emergencyWorker.remove(this);
+            } else if (current == RUNNING) {
+                synchronized (this) {
+                    if (runner != null) {
+                        runner.interrupt();
+                    }
+                }
+            }
+            forget();
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        @Override
+        public int compareTo(Job<?> other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority, other.priority);
+            }
+            return Long.compare(order, other.order);
+        }
+
+        private void finish(int finalState) {
+            if (state.compareAndSet(RUNNING, finalState)) {
+                forget();
+            }
+        }
+
+        private void forget() {
+            if (scope != null) {
+                scope.jobs.remove(this);
+            }
+        }
+
+    }
+}
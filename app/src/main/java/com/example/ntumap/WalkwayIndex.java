@@ -0,0 +1,208 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the walkway segments of a {@link CampusGraph}, for
+ * finding the walkways near a point without looking at all of them.
+ *
+ * Each two-way walkway is one segment, filed under every grid cell its
+ * bounding box touches, with the cells stored in compressed sparse row
+ * form like the graph itself. Distances are measured in a flat projection
+ * around the campus, which is exact to well under a metre at campus scale.
+ */
+public class WalkwayIndex {
+
+    static final double CELL_METERS = 25;
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_RADIUS_METERS;
+
+    /** Receives the segments near a point, with the closest point on each. */
+    public interface Visitor {
+        // fraction is how far along from segmentFrom to segmentTo the closest point lies
+        void visit(int segment, double distanceMeters, double fraction);
+    }
+
+    private final CampusGraph graph;
+    private final double originLat;
+    private final double originLng;
+    private final double metersPerDegreeLng;
+    // End nodes of each segment, and the projected node coordinates
+    private final int[] segmentFrom;
+    private final int[] segmentTo;
+    private final double[] x;
+    private final double[] y;
+    private final int columns;
+    private final int rows;
+    private final double minX;
+    private final double minY;
+    private final int[] cellStart;
+    private final int[] cellSegments;
+    // Visit stamps, so segments spanning several cells are reported once
+    private final int[] seen;
+    private int stamp;
+
+    public WalkwayIndex(CampusGraph graph) {
+        this.graph = graph;
+        int n = graph.nodeCount();
+        originLat = n == 0 ? 0 : graph.latitude(0);
+        originLng = n == 0 ? 0 : graph.longitude(0);
+        metersPerDegreeLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(originLat));
+        x = new double[n];
+        y = new double[n];
+        double lowX = 0, lowY = 0, highX = 0, highY = 0;
+        for (int node = 0; node < n; node++) {
+            x[node] = (graph.longitude(node) - originLng) * metersPerDegreeLng;
+            y[node] = (graph.latitude(node) - originLat) * METERS_PER_DEGREE;
+            lowX = Math.min(lowX, x[node]);
+            lowY = Math.min(lowY, y[node]);
+            highX = Math.max(highX, x[node]);
+            highY = Math.max(highY, y[node]);
+        }
+        minX = lowX;
+        minY = lowY;
+        columns = (int) ((highX - lowX) / CELL_METERS) + 1;
+        rows = (int) ((highY - lowY) / CELL_METERS) + 1;
+
+        // One segment per walkway: an edge is skipped if its reverse is filed instead
+        int[] from = new int[graph.edgeCount()];
+        int[] to = new int[graph.edgeCount()];
+        int count = 0;
+        for (int node = 0; node < n; node++) {
+            for (int e = graph.firstEdge(node), end = graph.endEdge(node); e < end; e++) {
+                int target = graph.edgeTarget(e);
+                if (target == node || (target < node && hasEdge(target, node))) {
+                    continue;
+                }
+                from[count] = node;
+                to[count] = target;
+                count++;
+            }
+        }
+        segmentFrom = Arrays.copyOf(from, count);
+        segmentTo = Arrays.copyOf(to, count);
+
+        // Two passes over the cells each segment touches: count, then fill
+        cellStart = new int[columns * rows + 1];
+        for (int s = 0; s < count; s++) {
+            forEachCell(s, null);
+        }
+        for (int cell = 0; cell < columns * rows; cell++) {
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        cellSegments = new int[cellStart[columns * rows]];
+        int[] cursor = Arrays.copyOf(cellStart, columns * rows);
+        for (int s = 0; s < count; s++) {
+            forEachCell(s, cursor);
+        }
+        seen = new int[count];
+    }
+
+    public CampusGraph getGraph() { return graph; }
+    public int segmentCount() { return segmentFrom.length; }
+    public int segmentFrom(int segment) { return segmentFrom[segment]; }
+    public int segmentTo(int segment) { return segmentTo[segment]; }
+
+    /**
+     * Calls the visitor for every segment that passes within radiusMeters
+     * of the point. Not thread-safe: each thread needs its own index.
+     */
+    public void forEachWithin(double lat, double lng, double radiusMeters, Visitor visitor) {
+        if (segmentFrom.length == 0) {
+            return;
+        }
+        if (++stamp == 0) {
+            Arrays.fill(seen, 0);
+            stamp = 1;
+        }
+        double px = (lng - originLng) * metersPerDegreeLng;
+        double py = (lat - originLat) * METERS_PER_DEGREE;
+        int firstColumn = Math.max(0, column(px - radiusMeters));
+        int lastColumn = Math.min(columns - 1, column(px + radiusMeters));
+        int firstRow = Math.max(0, row(py - radiusMeters));
+        int lastRow = Math.min(rows - 1, row(py + radiusMeters));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                for (int i = cellStart[cell], end = cellStart[cell + 1]; i < end; i++) {
+                    int segment = cellSegments[i];
+                    if (seen[segment] == stamp) {
+                        continue;
+                    }
+                    seen[segment] = stamp;
+                    double fraction = closestFraction(segment, px, py);
+                    double distance = distanceTo(segment, fraction, px, py);
+                    if (distance <= radiusMeters) {
+                        visitor.visit(segment, distance, fraction);
+                    }
+                }
+            }
+        }
+    }
+
+    public double latitudeAt(int segment, double fraction) {
+        double a = graph.latitude(segmentFrom[segment]);
+        return a + (graph.latitude(segmentTo[segment]) - a) * fraction;
+    }
+
+    public double longitudeAt(int segment, double fraction) {
+        double a = graph.longitude(segmentFrom[segment]);
+        return a + (graph.longitude(segmentTo[segment]) - a) * fraction;
+    }
+
+    private double closestFraction(int segment, double px, double py) {
+        int a = segmentFrom[segment];
+        int b = segmentTo[segment];
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        double lengthSquared = dx * dx + dy * dy;
+        if (lengthSquared == 0) {
+            return 0;
+        }
+        double t = ((px - x[a]) * dx + (py - y[a]) * dy) / lengthSquared;
+        return Math.max(0, Math.min(1, t));
+    }
+
+    private double distanceTo(int segment, double fraction, double px, double py) {
+        int a = segmentFrom[segment];
+        int b = segmentTo[segment];
+        return Math.hypot(x[a] + (x[b] - x[a]) * fraction - px, y[a] + (y[b] - y[a]) * fraction - py);
+    }
+
+    // Counts the segment into cellStart when cursor is null, otherwise files it under each cell
+    private void forEachCell(int segment, int[] cursor) {
+        int a = segmentFrom[segment];
+        int b = segmentTo[segment];
+        int firstColumn = column(Math.min(x[a], x[b]));
+        int lastColumn = column(Math.max(x[a], x[b]));
+        int firstRow = row(Math.min(y[a], y[b]));
+        int lastRow = row(Math.max(y[a], y[b]));
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                if (cursor == null) {
+                    cellStart[cell + 1]++;
+                } else {
+                    cellSegments[cursor[cell]++] = segment;
+                }
+            }
+        }
+    }
+
+    private int column(double px) {
+        return (int) Math.floor((px - minX) / CELL_METERS);
+    }
+
+    private int row(double py) {
+        return (int) Math.floor((py - minY) / CELL_METERS);
+    }
+
+    private boolean hasEdge(int from, int to) {
+        for (int e = graph.firstEdge(from), end = graph.endEdge(from); e < end; e++) {
+            if (graph.edgeTarget(e) == to) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.ntumap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AStarRouterTest {
+
+    private static final double EPSILON = 1e-6;
+
+    @BeforeClass
+    public static void useCampusPack() {
+        CampusPackTest.useAssetPack();
+    }
+
+    @Test
+    public void routesMatchDijkstraOnGeneratedCampuses() {
+        Random random = new Random(42);
+        for (int seed = 0; seed < 5; seed++) {
+            CampusGraph graph = GraphTestUtils.randomCampus(30, 30, seed);
+            AStarRouter router = new AStarRouter(graph);
+            for (int query = 0; query < 40; query++) {
+                int source = random.nextInt(graph.nodeCount());
+                int target = random.nextInt(graph.nodeCount());
+                double expected = GraphTestUtils.dijkstra(graph, source)[target];
+
+                Route route = router.findRoute(source, target);
+                if (Double.isInfinite(expected)) {
+                    assertNull(route);
+                    continue;
+                }
+                assertNotNull(route);
+                assertEquals(expected, route.getLengthMeters(), EPSILON);
+                assertEquals(source, route.getStartNode());
+                assertEquals(target, route.getEndNode());
+                assertEquals(route.getLengthMeters(),
+                        GraphTestUtils.pathLength(graph, route.getNodes()), EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void unreachableTargetReturnsNull() {
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+        int a = builder.addNode(52.9068, -1.1878);
+        int b = builder.addNode(52.9070, -1.1880);
+        int c = builder.addNode(52.9072, -1.1882);
+        builder.addWalkway(a, b);
+        AStarRouter router = new AStarRouter(builder.build());
+
+        assertNull(router.findRoute(a, c));
+        assertNotNull(router.findRoute(b, a));
+    }
+
+    @Test
+    public void sameSourceAndTargetIsSingleNodeRoute() {
+        CampusGraph graph = GraphTestUtils.randomCampus(5, 5, 7);
+        Route route = new AStarRouter(graph).findRoute(12, 12);
+
+        assertEquals(1, route.getNodeCount());
+        assertEquals(0, route.getLengthMeters(), 0);
+    }
+
+    @Test
+    public void coordinateQueriesSnapToNearestNodes() {
+        CampusGraph graph = CampusData.getWalkwayGraph();
+        AStarRouter router = new AStarRouter(graph);
+
+        // Main building to gym
+        Route route = router.findRoute(52.9068, -1.1878, 52.9064, -1.1874);
+
+        assertNotNull(route);
+        assertEquals(graph.nearestNode(52.9068, -1.1878), route.getStartNode());
+        assertEquals(graph.nearestNode(52.9064, -1.1874), route.getEndNode());
+        assertTrue(route.getLengthMeters() >= GeoUtils.haversine(52.9068, -1.1878, 52.9064, -1.1874));
+    }
+}
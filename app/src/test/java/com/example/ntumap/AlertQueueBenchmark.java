@@ -0,0 +1,31 @@
+package com.example.ntumap;
+
+import java.util.List;
+
+/**
+ * Times ingesting bursts of 500 alerts, many of them repeats, into the
+ * alert queue. Not part of the unit test run; start it from the IDE.
+ */
+public final class AlertQueueBenchmark {
+
+    private static final int BURSTS = 100;
+
+    public static void main(String[] args) {
+        List<List<EmergencyAlert>> bursts = AlertQueueTest.bursts(BURSTS, 9);
+        // Warm up the JIT before timing
+        ingest(bursts);
+        long start = System.nanoTime();
+        AlertQueue queue = ingest(bursts);
+        double perBurstMs = (System.nanoTime() - start) / 1e6 / bursts.size();
+        System.out.printf("alerts: 500-alert burst ingested in %.2f ms, %d active%n", perBurstMs, queue.size());
+    }
+
+    private static AlertQueue ingest(List<List<EmergencyAlert>> bursts) {
+        AlertQueue queue = new AlertQueue();
+        for (int b = 0; b < bursts.size(); b++) {
+            queue.offer(bursts.get(b), AlertQueueTest.NOW + b * 1000);
+            queue.peek();
+        }
+        return queue;
+    }
+}
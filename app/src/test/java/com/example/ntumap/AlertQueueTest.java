@@ -0,0 +1,220 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AlertQueueTest {
+
+    static final long NOW = 1_700_000_000_000L;
+    private static final long MINUTE = 60 * 1000;
+
+    static EmergencyAlert alert(long id, int revision, EmergencyAlert.Severity severity, long issued, long ttl) {
+        return new EmergencyAlert.Builder(id, "Alert " + id, severity)
+                .revision(revision).issuedAt(issued).ttl(ttl).build();
+    }
+
+    @Test
+    public void mostUrgentAlertIsOnTop() {
+        AlertQueue queue = new AlertQueue();
+        assertNull(queue.peek());
+        queue.offer(Arrays.asList(
+                alert(1, 0, EmergencyAlert.Severity.LOW, NOW, 60 * MINUTE),
+                alert(2, 0, EmergencyAlert.Severity.HIGH, NOW - MINUTE, 60 * MINUTE),
+                alert(3, 0, EmergencyAlert.Severity.HIGH, NOW, 60 * MINUTE),
+                alert(4, 0, EmergencyAlert.Severity.MEDIUM, NOW, 60 * MINUTE)), NOW);
+        // Newest of the most severe
+        assertEquals(3, queue.peek().getId());
+        List<EmergencyAlert> order = queue.snapshot();
+        assertEquals(Arrays.asList(3L, 2L, 4L, 1L), Arrays.asList(order.get(0).getId(), order.get(1).getId(),
+                order.get(2).getId(), order.get(3).getId()));
+    }
+
+    @Test
+    public void duplicatesAndStaleRevisionsAreIgnored() {
+        AlertQueue queue = new AlertQueue();
+        EmergencyAlert first = alert(7, 1, EmergencyAlert.Severity.LOW, NOW, 60 * MINUTE);
+        AlertQueue.Changes changes = queue.offer(Arrays.asList(first, first), NOW);
+        assertEquals(Collections.singletonList(first), changes.getAdded());
+        assertTrue(queue.offer(Collections.singletonList(first), NOW).isEmpty());
+        assertTrue(queue.offer(Collections.singletonList(alert(7, 0, EmergencyAlert.Severity.HIGH, NOW, MINUTE)), NOW).isEmpty());
+        assertEquals(1, queue.size());
+
+        // Escalation replaces the alert in place
+        EmergencyAlert escalated = alert(7, 2, EmergencyAlert.Severity.HIGH, NOW + MINUTE, 60 * MINUTE);
+        changes = queue.offer(Collections.singletonList(escalated), NOW + MINUTE);
+        assertEquals(Collections.singletonList(first), changes.getRemoved());
+        assertEquals(Collections.singletonList(escalated), changes.getAdded());
+        assertSame(escalated, queue.peek());
+        assertEquals(1, queue.size());
+
+        // Several revisions in one batch are reported as one change
+        EmergencyAlert third = alert(7, 3, EmergencyAlert.Severity.MEDIUM, NOW + MINUTE, 60 * MINUTE);
+        EmergencyAlert fourth = alert(7, 4, EmergencyAlert.Severity.LOW, NOW + MINUTE, 60 * MINUTE);
+        changes = queue.offer(Arrays.asList(third, fourth), NOW + MINUTE);
+        assertEquals(Collections.singletonList(escalated), changes.getRemoved());
+        assertEquals(Collections.singletonList(fourth), changes.getAdded());
+    }
+
+    @Test
+    public void alertsExpireAndWithdrawnAlertsStayGone() {
+        AlertQueue queue = new AlertQueue();
+        EmergencyAlert shortLived = alert(1, 0, EmergencyAlert.Severity.HIGH, NOW, 5 * MINUTE);
+        EmergencyAlert longLived = alert(2, 0, EmergencyAlert.Severity.LOW, NOW, 30 * MINUTE);
+        queue.offer(Arrays.asList(shortLived, longLived), NOW);
+        assertEquals(NOW + 5 * MINUTE, queue.nextExpiry());
+
+        assertTrue(queue.expire(NOW + 4 * MINUTE).isEmpty());
+        AlertQueue.Changes changes = queue.expire(NOW + 5 * MINUTE);
+        assertEquals(Collections.singletonList(shortLived), changes.getRemoved());
+        assertSame(longLived, queue.peek());
+        // A late copy of the expired alert does not bring it back
+        assertTrue(queue.offer(Collections.singletonList(shortLived), NOW + 6 * MINUTE).isEmpty());
+
+        // Withdrawn by a revision that has already expired
+        EmergencyAlert allClear = new EmergencyAlert.Builder(2, "All clear", EmergencyAlert.Severity.LOW)
+                .revision(1).issuedAt(NOW + 7 * MINUTE).expiresAt(NOW + 7 * MINUTE).build();
+        changes = queue.offer(Collections.singletonList(allClear), NOW + 7 * MINUTE);
+        assertEquals(Collections.singletonList(longLived), changes.getRemoved());
+        assertTrue(changes.getAdded().isEmpty());
+        assertNull(queue.peek());
+        assertEquals(Long.MAX_VALUE, queue.nextExpiry());
+        assertTrue(queue.offer(Collections.singletonList(longLived), NOW + 8 * MINUTE).isEmpty());
+
+        // Once the tombstone is forgotten a new revision is accepted again
+        long later = NOW + 7 * MINUTE + AlertQueue.TOMBSTONE_MILLIS;
+        EmergencyAlert reissued = alert(2, 2, EmergencyAlert.Severity.MEDIUM, later, 10 * MINUTE);
+        assertEquals(Collections.singletonList(reissued), queue.offer(Collections.singletonList(reissued), later).getAdded());
+    }
+
+    @Test
+    public void heapsMatchAReferenceUnderRandomTraffic() {
+        Random random = new Random(5);
+        AlertQueue queue = new AlertQueue();
+        Map<Long, EmergencyAlert> expected = new HashMap<>();
+        EmergencyAlert.Severity[] severities = EmergencyAlert.Severity.values();
+        long now = NOW;
+        for (int step = 0; step < 2000; step++) {
+            now += random.nextInt(10_000);
+            List<EmergencyAlert> batch = new ArrayList<>();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                long id = random.nextInt(300);
+                EmergencyAlert current = expected.get(id);
+                int revision = current == null ? 1_000 * step : current.getRevision() + 1;
+                batch.add(alert(id, revision, severities[random.nextInt(3)], now - random.nextInt(60_000),
+                        random.nextInt(10) == 0 ? 0 : random.nextInt(20 * 60_000)));
+            }
+            queue.offer(batch, now);
+            for (EmergencyAlert alert : batch) {
+                EmergencyAlert current = expected.get(alert.getId());
+                if (current == null || alert.getRevision() > current.getRevision()) {
+                    expected.put(alert.getId(), alert);
+                }
+            }
+            final long at = now;
+            expected.values().removeIf(alert -> alert.isExpired(at));
+
+            assertEquals(expected.size(), queue.size());
+            List<EmergencyAlert> sorted = new ArrayList<>(expected.values());
+            sorted.sort((a, b) -> a.getSeverity() != b.getSeverity() ? b.getSeverity().compareTo(a.getSeverity())
+                    : a.getIssuedAtMillis() != b.getIssuedAtMillis() ? Long.compare(b.getIssuedAtMillis(), a.getIssuedAtMillis())
+                    : Long.compare(a.getId(), b.getId()));
+            assertEquals(sorted, queue.snapshot());
+            assertSame(sorted.isEmpty() ? null : sorted.get(0), queue.peek());
+            long nextExpiry = Long.MAX_VALUE;
+            for (EmergencyAlert alert : sorted) {
+                nextExpiry = Math.min(nextExpiry, alert.getExpiresAtMillis());
+            }
+            assertEquals(nextExpiry, queue.nextExpiry());
+        }
+    }
+
+    // Bursts of 500 alerts a second, many of them repeats, for an ingest loop to chew on
+    static List<List<EmergencyAlert>> bursts(int count, long seed) {
+        Random random = new Random(seed);
+        EmergencyAlert.Severity[] severities = EmergencyAlert.Severity.values();
+        List<List<EmergencyAlert>> bursts = new ArrayList<>();
+        for (int b = 0; b < count; b++) {
+            List<EmergencyAlert> burst = new ArrayList<>();
+            for (int i = 0; i < 500; i++) {
+                burst.add(alert(random.nextInt(5000), b, severities[random.nextInt(3)],
+                        NOW + b * 1000 - random.nextInt(60_000), 1 + random.nextInt(10 * 60_000)));
+            }
+            bursts.add(burst);
+        }
+        return bursts;
+    }
+
+    @Test
+    public void burstsKeepOneAlertPerId() {
+        AlertQueue queue = new AlertQueue();
+        List<List<EmergencyAlert>> bursts = bursts(100, 9);
+        for (int b = 0; b < bursts.size(); b++) {
+            queue.offer(bursts.get(b), NOW + b * 1000);
+            queue.peek();
+        }
+        assertTrue(queue.size() > 0);
+        assertTrue(queue.size() <= 5000);
+    }
+
+    @Test
+    public void pollingFeedReadsTheServerInPages() {
+        LocalAlertServer server = new LocalAlertServer(0);
+        List<EmergencyAlert> published = new ArrayList<>();
+        for (int i = 0; i < 250; i++) {
+            published.add(alert(i, 0, EmergencyAlert.Severity.MEDIUM, NOW, 60 * MINUTE));
+        }
+        server.publish(published);
+        // Republishing an old revision is ignored, a new one moves to the end of the log
+        server.publish(published.get(0));
+        EmergencyAlert revised = alert(3, 1, EmergencyAlert.Severity.HIGH, NOW, 60 * MINUTE);
+        server.publish(revised);
+
+        PollingAlertFeed feed = new PollingAlertFeed(server, 1000, 100);
+        List<List<EmergencyAlert>> batches = new ArrayList<>();
+        assertTrue(feed.pollOnce(batches::add));
+        assertTrue(feed.pollOnce(batches::add));
+        assertFalse(feed.pollOnce(batches::add));
+        assertFalse(feed.pollOnce(batches::add));
+        assertEquals(3, batches.size());
+        assertEquals(50, batches.get(2).size());
+        assertSame(revised, batches.get(2).get(49));
+
+        AlertQueue queue = new AlertQueue();
+        for (List<EmergencyAlert> batch : batches) {
+            queue.offer(batch, NOW);
+        }
+        assertEquals(250, queue.size());
+        assertSame(revised, queue.peek());
+    }
+
+    @Test
+    public void pushFeedDeliversBacklogThenNewAlerts() throws InterruptedException {
+        LocalAlertServer server = new LocalAlertServer(0);
+        server.publish(alert(1, 0, EmergencyAlert.Severity.LOW, NOW, 60 * MINUTE));
+        AlertQueue queue = new AlertQueue();
+        CountDownLatch batches = new CountDownLatch(2);
+        server.start(batch -> {
+            queue.offer(batch, NOW);
+            batches.countDown();
+        });
+        try {
+            server.publish(alert(2, 0, EmergencyAlert.Severity.HIGH, NOW, 60 * MINUTE));
+            assertTrue(batches.await(5, TimeUnit.SECONDS));
+        } finally {
+            server.stop();
+        }
+        assertEquals(2, queue.size());
+        assertEquals(2, queue.peek().getId());
+    }
+}
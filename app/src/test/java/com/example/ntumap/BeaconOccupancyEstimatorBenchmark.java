@@ -0,0 +1,30 @@
+package com.example.ntumap;
+
+/**
+ * Times the estimator on 10k-sighting batches from 2500 devices in 50
+ * rooms, the load of a busy campus scan round. Not part of the unit test
+ * run; start it from the IDE.
+ */
+public final class BeaconOccupancyEstimatorBenchmark {
+
+    private static final long WINDOW = 60000;
+    private static final int ROUNDS = 100;
+
+    public static void main(String[] args) {
+        BeaconOccupancyEstimatorTest.Campus campus = new BeaconOccupancyEstimatorTest.Campus(50, 2500, 3);
+        BeaconOccupancyEstimator estimator = new BeaconOccupancyEstimator(campus.store, WINDOW);
+        BeaconSightings batch = new BeaconSightings(16);
+        campus.scan(batch, 0);
+
+        // Warm up the JIT before timing
+        for (int round = 0; round < 50; round++) {
+            estimator.process(batch, 10);
+        }
+        long start = System.nanoTime();
+        for (int round = 0; round < ROUNDS; round++) {
+            estimator.process(batch, 10);
+        }
+        double averageMs = (System.nanoTime() - start) / 1e6 / ROUNDS;
+        System.out.printf("beacon batch of %d sightings: %.3f ms%n", batch.size(), averageMs);
+    }
+}
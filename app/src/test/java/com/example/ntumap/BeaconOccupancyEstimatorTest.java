@@ -0,0 +1,157 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BeaconOccupancyEstimatorTest {
+
+    private static final long WINDOW = 60000;
+
+    /** Devices sitting in a row of rooms; each scan round every scanner reports what it hears. */
+    static class Campus {
+        final OccupancyStore store = new OccupancyStore();
+        final int[] roomIds;
+        final int[] deviceRoom;
+        final boolean[] present;
+        final Random random;
+
+        Campus(int rooms, int devices, long seed) {
+            random = new Random(seed);
+            roomIds = new int[rooms];
+            for (int r = 0; r < rooms; r++) {
+                roomIds[r] = store.intern("Room " + r);
+            }
+            deviceRoom = new int[devices];
+            present = new boolean[devices];
+            for (int d = 0; d < devices; d++) {
+                deviceRoom[d] = random.nextInt(rooms);
+                present[d] = true;
+            }
+        }
+
+        // Own room hears a device around -55 dBm, neighbours around -72, with duplicates
+        void scan(BeaconSightings batch, long time) {
+            batch.clear();
+            for (int d = 0; d < deviceRoom.length; d++) {
+                if (!present[d]) {
+                    continue;
+                }
+                long hash = 0x5DEECE66DL * (d + 1);
+                int room = deviceRoom[d];
+                if (room > 0) {
+                    batch.add(roomIds[room - 1], hash, -72 + random.nextInt(13) - 6, time);
+                }
+                batch.add(roomIds[room], hash, -55 + random.nextInt(13) - 6, time);
+                batch.add(roomIds[room], hash, -55 + random.nextInt(13) - 6, time + 5);
+                if (room + 1 < roomIds.length) {
+                    batch.add(roomIds[room + 1], hash, -72 + random.nextInt(13) - 6, time);
+                }
+            }
+        }
+
+        int truth(int room) {
+            int count = 0;
+            for (int d = 0; d < deviceRoom.length; d++) {
+                if (present[d] && deviceRoom[d] == room) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        void assertCounts(BeaconOccupancyEstimator estimator) {
+            for (int r = 0; r < roomIds.length; r++) {
+                assertEquals("Room " + r, truth(r), estimator.getCount(roomIds[r]));
+                assertEquals("Room " + r, truth(r), store.get(roomIds[r]));
+            }
+        }
+    }
+
+    @Test
+    public void countsEachDeviceOnceInItsLoudestRoom() {
+        Campus campus = new Campus(20, 3000, 1);
+        BeaconOccupancyEstimator estimator = new BeaconOccupancyEstimator(campus.store, WINDOW);
+        BeaconSightings batch = new BeaconSightings(16);
+
+        for (long time = 0; time < 10000; time += 2000) {
+            campus.scan(batch, time);
+            estimator.process(batch, time + 10);
+        }
+        campus.assertCounts(estimator);
+        assertEquals(3000, estimator.getTrackedDevices());
+    }
+
+    @Test
+    public void devicesMoveAndExpire() {
+        Campus campus = new Campus(10, 500, 2);
+        BeaconOccupancyEstimator estimator = new BeaconOccupancyEstimator(campus.store, WINDOW);
+        BeaconSightings batch = new BeaconSightings(16);
+        long time = 0;
+        for (; time < 10000; time += 2000) {
+            campus.scan(batch, time);
+            estimator.process(batch, time);
+        }
+
+        // Lecture changeover: a third of the devices leave, a third walk to another room
+        for (int d = 0; d < 500; d++) {
+            if (d % 3 == 0) {
+                campus.present[d] = false;
+            } else if (d % 3 == 1) {
+                campus.deviceRoom[d] = (campus.deviceRoom[d] + 5) % 10;
+            }
+        }
+        for (; time < 10000 + WINDOW + 4000; time += 2000) {
+            campus.scan(batch, time);
+            estimator.process(batch, time);
+        }
+        campus.assertCounts(estimator);
+        assertEquals(500 - 167, estimator.getTrackedDevices());
+
+        // Everyone leaves
+        batch.clear();
+        estimator.process(batch, time + WINDOW);
+        assertEquals(0, estimator.getTrackedDevices());
+        for (int r = 0; r < 10; r++) {
+            assertEquals(0, campus.store.get(campus.roomIds[r]));
+        }
+    }
+
+    @Test
+    public void sharesTheStoreWithOtherWriters() {
+        OccupancyStore store = new OccupancyStore();
+        store.set("Library", 40);
+        int library = store.intern("Library");
+        BeaconOccupancyEstimator estimator = new BeaconOccupancyEstimator(store, WINDOW);
+
+        BeaconSightings batch = new BeaconSightings(4);
+        batch.add(library, 1, -50, 0);
+        batch.add(library, 2, -50, 0);
+        batch.add(library, 2, -52, 1);
+        estimator.process(batch, 1);
+        assertEquals(42, store.get(library));
+
+        // A booking lands in between; the estimator only moves its own share
+        store.apply(library, 1);
+        batch.clear();
+        estimator.process(batch, WINDOW + 1);
+        assertEquals(41, store.get(library));
+    }
+
+    @Test
+    public void tenThousandSightingBatchesCountEveryDevice() {
+        Campus campus = new Campus(50, 2500, 3);
+        BeaconOccupancyEstimator estimator = new BeaconOccupancyEstimator(campus.store, WINDOW);
+        BeaconSightings batch = new BeaconSightings(16);
+
+        campus.scan(batch, 0);
+        assertTrue(batch.size() >= 9500);
+        // The same batch again changes nothing
+        for (int round = 0; round < 3; round++) {
+            estimator.process(batch, 10);
+            campus.assertCounts(estimator);
+        }
+    }
+}
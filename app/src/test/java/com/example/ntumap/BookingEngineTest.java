@@ -0,0 +1,179 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BookingEngineTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long DAY_START = 1_700_000_000_000L;
+
+    private static long at(double hour) {
+        return DAY_START + (long) (hour * HOUR);
+    }
+
+    private static RoomTable rooms() {
+        return new RoomTable.Builder()
+                .add("Library", "Library", 0, 200, 0, RoomTable.TRACKED)
+                .add("Study Room A", "Study Space", -1, 6, 0, RoomTable.BOOKABLE)
+                .add("Seminar Room", "Group Study", -1, 12, 0, RoomTable.BOOKABLE)
+                .add("Meeting Room", "Meeting", -1, 10, 0, RoomTable.BOOKABLE)
+                .add("Lecture Theatre", "Presentation", -1, 80, 0, RoomTable.BOOKABLE)
+                .build();
+    }
+
+    @Test
+    public void scheduleAnswersOverlapQueries() {
+        RoomSchedule schedule = RoomSchedule.EMPTY
+                .withReservation(1, at(9), at(10))
+                .withReservation(2, at(14), at(16))
+                .withReservation(3, at(12), at(13));
+        assertEquals(3, schedule.getVersion());
+        assertEquals(at(12), schedule.getStart(1));
+
+        assertTrue(schedule.isFree(at(10), at(12)));
+        assertTrue(schedule.isFree(at(13), at(14)));
+        assertFalse(schedule.isFree(at(9.5), at(9.75)));
+        assertFalse(schedule.isFree(at(8), at(17)));
+        assertFalse(schedule.isFree(at(15.99), at(18)));
+        assertTrue(schedule.isFree(at(16), at(18)));
+
+        assertEquals(at(10), schedule.nextFreeStart(at(9), HOUR));
+        assertEquals(at(16), schedule.nextFreeStart(at(12), 2 * HOUR));
+        assertEquals(at(13), schedule.nextFreeStart(at(12.5), HOUR));
+
+        RoomSchedule cancelled = schedule.withoutReservation(3);
+        assertEquals(4, cancelled.getVersion());
+        assertTrue(cancelled.isFree(at(12), at(13)));
+        assertSame(cancelled, cancelled.withoutReservation(3));
+        try {
+            schedule.withReservation(4, at(15), at(17));
+            fail("Overlapping reservation was accepted");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void scheduleMatchesBruteForce() {
+        Random random = new Random(7);
+        RoomSchedule schedule = RoomSchedule.EMPTY;
+        List<long[]> slots = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            long start = at(random.nextInt(24 * 60) / 60.0);
+            long end = start + (1 + random.nextInt(120)) * 60_000L;
+            boolean free = true;
+            for (long[] slot : slots) {
+                if (slot[0] < end && start < slot[1]) {
+                    free = false;
+                }
+            }
+            assertEquals(free, schedule.isFree(start, end));
+            if (free) {
+                schedule = schedule.withReservation(i + 1, start, end);
+                slots.add(new long[]{start, end});
+            }
+        }
+        assertEquals(slots.size(), schedule.size());
+    }
+
+    @Test
+    public void findsFreeRoomsBySizeAndTime() throws IOException {
+        RoomTable table = rooms();
+        BookingEngine engine = new BookingEngine(new LocalBookingServer(table.size(), 0), table);
+        assertEquals(BookingServer.Status.OK, engine.book(2, at(14), at(15)).getStatus());
+
+        // Free for two hours from 14:00 with at least 10 seats: the seminar room is taken
+        assertEquals(Arrays.asList(3, 4), engine.findFreeRooms(at(14), at(16), 10));
+        assertEquals(Arrays.asList(1, 3, 2, 4), engine.findFreeRooms(at(15), at(17), 1));
+        assertEquals(Collections.emptyList(), engine.findFreeRooms(at(14), at(16), 100));
+        // Rooms that are not bookable never appear
+        assertFalse(engine.findFreeRooms(at(9), at(10), 100).contains(0));
+    }
+
+    @Test
+    public void staleClientRetriesAndSeesConflicts() throws IOException {
+        RoomTable table = rooms();
+        LocalBookingServer server = new LocalBookingServer(table.size(), 0);
+        BookingEngine alice = new BookingEngine(server, table);
+        BookingEngine bob = new BookingEngine(server, table);
+        alice.getSchedule(1);
+        bob.getSchedule(1);
+
+        assertEquals(BookingServer.Status.OK, bob.book(1, at(9), at(10)).getStatus());
+
+        // Alice's copy is out of date: her 10:00 booking is retried on the fresh schedule
+        BookingServer.Response morning = alice.book(1, at(10), at(11));
+        assertEquals(BookingServer.Status.OK, morning.getStatus());
+        assertEquals(2, morning.getSchedule().getVersion());
+
+        // ...while overlapping Bob's slot is refused outright
+        BookingServer.Response clash = alice.book(1, at(9.5), at(10.5));
+        assertEquals(BookingServer.Status.CONFLICT, clash.getStatus());
+        assertEquals(0, clash.getBookingId());
+
+        assertEquals(BookingServer.Status.OK, alice.cancel(1, morning.getBookingId()).getStatus());
+        assertTrue(bob.refresh(1).isFree(at(10), at(11)));
+    }
+
+    @Test
+    public void concurrentBookingsNeverDoubleBook() throws Exception {
+        RoomTable table = rooms();
+        LocalBookingServer server = new LocalBookingServer(table.size(), 0);
+        int clients = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<List<BookingServer.Response>>> results = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            BookingEngine client = new BookingEngine(server, table);
+            int seed = c;
+            results.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                List<BookingServer.Response> responses = new ArrayList<>();
+                go.await();
+                // Everyone goes for the same busy afternoon in the same two rooms
+                for (int i = 0; i < 200; i++) {
+                    int room = 1 + random.nextInt(2);
+                    long start = at(12 + random.nextInt(16) / 4.0);
+                    responses.add(client.book(room, start, start + HOUR / 2 + random.nextInt(4) * HOUR / 4));
+                }
+                return responses;
+            }));
+        }
+        go.countDown();
+
+        int booked = 0;
+        for (Future<List<BookingServer.Response>> result : results) {
+            for (BookingServer.Response response : result.get(30, TimeUnit.SECONDS)) {
+                if (response.getStatus() == BookingServer.Status.OK) {
+                    booked++;
+                }
+            }
+        }
+        pool.shutdown();
+
+        // Every accepted booking is on the server, and no two of them overlap
+        int stored = 0;
+        for (int room = 1; room <= 2; room++) {
+            RoomSchedule schedule = server.fetch(room);
+            stored += schedule.size();
+            for (int slot = 1; slot < schedule.size(); slot++) {
+                assertTrue(schedule.getEnd(slot - 1) <= schedule.getStart(slot));
+            }
+        }
+        assertEquals(booked, stored);
+        assertTrue(booked > 0);
+    }
+}
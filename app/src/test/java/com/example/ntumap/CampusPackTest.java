@@ -0,0 +1,195 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CampusPackTest {
+
+    // Paths are relative to the app module, where Gradle runs unit tests
+    private static final String PACK_FILE = "src/main/assets/" + CampusData.CAMPUS_PACK_ASSET;
+    private static final String CAMPUS_JSON = "src/main/campus/campus.json";
+
+    private static final String SMALL_CAMPUS = "{\"version\": 7,"
+            + " \"pois\": ["
+            + "  {\"name\": \"Hall\", \"category\": \"ROOM\", \"lat\": 52.0, \"lng\": -1.0},"
+            + "  {\"name\": \"North Exit\", \"category\": \"EMERGENCY_EXIT\", \"lat\": 52.001, \"lng\": -1.0}],"
+            + " \"walkways\": {"
+            + "  \"nodes\": [{\"id\": \"a\", \"lat\": 52.0, \"lng\": -1.0}, {\"id\": \"b\", \"lat\": 52.001, \"lng\": -1.0}],"
+            + "  \"paths\": [[\"a\", \"b\"], [\"b\", \"a\", 500, [\"stairs\", \"indoor\"]]]},"
+            + " \"rooms\": ["
+            + "  {\"name\": \"Hall\", \"type\": \"Lecture Hall\", \"capacity\": 90, \"occupancy\": 10,"
+            + "   \"tracked\": true, \"aliases\": [\"auditorium\"]},"
+            + "  {\"name\": \"Pod \\u00e9 1\", \"type\": \"Study Pod\", \"capacity\": 2, \"bookable\": true,"
+            + "   \"location\": \"Hall - Floor 2\", \"description\": \"Two seats\"}],"
+            + " \"buildings\": [{\"name\": \"Hall\", \"entrances\": [[\"a\", \"door\"]],"
+            + "  \"floors\": ["
+            + "   {\"level\": 0, \"nodes\": [{\"id\": \"door\", \"lat\": 52.0, \"lng\": -1.0},"
+            + "     {\"id\": \"s0\", \"lat\": 52.0001, \"lng\": -1.0}, {\"id\": \"l0\", \"lat\": 52.0, \"lng\": -1.0001}],"
+            + "    \"paths\": [[\"door\", \"s0\"], [\"door\", \"l0\", 12]]},"
+            + "   {\"level\": 1, \"nodes\": [{\"id\": \"s1\", \"lat\": 52.0001, \"lng\": -1.0},"
+            + "     {\"id\": \"l1\", \"lat\": 52.0, \"lng\": -1.0001}, {\"id\": \"pod\", \"lat\": 52.0001, \"lng\": -1.0001,"
+            + "      \"room\": \"Pod \\u00e9 1\"}],"
+            + "    \"paths\": [[\"s1\", \"pod\"], [\"l1\", \"pod\"]]},"
+            + "   {\"level\": 2, \"nodes\": [{\"id\": \"l2\", \"lat\": 52.0, \"lng\": -1.0001}], \"paths\": []}],"
+            + "  \"connectors\": [[\"stairs\", \"s0\", \"s1\"], [\"lift\", \"l0\", \"l1\", \"l2\"]]}]}";
+
+    // Points CampusData at the generated pack asset, mapped like on the device
+    static void useAssetPack() {
+        CampusData.setPackSource(() -> CampusPack.mapFile(new File(PACK_FILE)));
+    }
+
+    @Test
+    public void generatedPackRoundTrips() throws IOException {
+        CampusPack pack = CampusPack.open(ByteBuffer.wrap(CampusPackTool.buildPack(SMALL_CAMPUS)));
+        assertEquals(7, pack.getDataVersion());
+
+        PoiIndex pois = pack.getPoiIndex();
+        assertEquals(2, pois.size());
+        Poi exit = pois.nearest(52.002, -1.0, 1, Poi.Category.EMERGENCY_EXIT.mask()).get(0);
+        assertEquals("North Exit", exit.getName());
+        assertEquals(1, exit.getId());
+
+        CampusGraph graph = pack.getWalkwayGraph();
+        assertEquals(2, graph.nodeCount());
+        assertEquals(4, graph.edgeCount());
+        double straight = GeoUtils.haversine(52.0, -1.0, 52.001, -1.0);
+        assertEquals(straight, graph.edgeWeight(graph.firstEdge(0)), 1e-9);
+        assertEquals(500, graph.edgeWeight(graph.firstEdge(0) + 1), 1e-9);
+        assertEquals(0, graph.edgeFlags(graph.firstEdge(0)));
+        assertEquals(CampusGraph.STAIRS | CampusGraph.INDOOR, graph.edgeFlags(graph.firstEdge(0) + 1));
+        assertEquals(graph.firstEdge(0), graph.findEdge(0, 1));
+
+        RoomTable rooms = pack.getRooms();
+        assertEquals(2, rooms.size());
+        assertEquals(0, rooms.getPoiId(0));
+        assertEquals(-1, rooms.getPoiId(1));
+        assertTrue(rooms.hasFlag(0, RoomTable.TRACKED));
+        assertFalse(rooms.hasFlag(0, RoomTable.BOOKABLE));
+        assertEquals(Arrays.asList("auditorium"), rooms.getAliases(0));
+        assertEquals("Pod é 1", rooms.getName(1));
+        assertEquals("Hall - Floor 2", rooms.getLocation(1));
+        assertEquals(0, rooms.getInitialOccupancy(1));
+        assertTrue(rooms.hasFlag(1, RoomTable.BOOKABLE));
+
+        List<SearchIndex.Match> matches = pack.getSearchIndex().search("auditorium", 5);
+        assertEquals(1, matches.size());
+        assertEquals("Hall", matches.get(0).getName());
+
+        IndoorMap indoor = pack.getIndoorMap();
+        assertEquals(1, indoor.buildingCount());
+        assertEquals(3, indoor.floorCount());
+        assertEquals(7, indoor.nodeCount());
+        assertEquals(0, indoor.getLoadedFloorCount());
+        // A stairwell joins neighbouring floors, a lift every pair
+        assertEquals(4, indoor.connectorCount());
+        assertEquals(IndoorMap.STAIRS, indoor.getConnectorType(0));
+        assertEquals(IndoorMap.defaultConnectorCost(IndoorMap.LIFT, 2), indoor.getConnectorCost(2), 1e-9);
+        assertEquals(0, indoor.getEntranceWalkway(0));
+        assertEquals(0, indoor.getEntranceNode(0));
+        int pod = indoor.findRoomNode(1);
+        assertEquals(5, pod);
+        assertEquals(1, indoor.floorOf(pod));
+        assertEquals(-1, indoor.findRoomNode(0));
+
+        CampusGraph floor = indoor.getFloor(indoor.findFloor(0, 1));
+        assertEquals(1, indoor.getLoadedFloorCount());
+        assertEquals(3, floor.nodeCount());
+        assertEquals(CampusGraph.INDOOR, floor.edgeFlags(floor.firstEdge(0)));
+        assertEquals(12, indoor.getFloor(0).edgeWeight(indoor.getFloor(0).findEdge(0, 2)), 1e-9);
+    }
+
+    @Test
+    public void assetPackIsUpToDateWithCampusJson() throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(CAMPUS_JSON)), StandardCharsets.UTF_8);
+        byte[] expected = CampusPackTool.buildPack(json);
+        assertArrayEquals("Run the generateCampusPack task", expected, Files.readAllBytes(Paths.get(PACK_FILE)));
+
+        useAssetPack();
+        assertEquals(7, CampusData.getPois(Poi.Category.EMERGENCY_EXIT).size()
+                + CampusData.getPois(Poi.Category.SAFE_SPACE).size());
+        assertEquals(10, CampusData.getWalkwayGraph().nodeCount());
+        assertEquals("Cafeteria", CampusData.getSearchIndex().search("canteen", 1).get(0).getName());
+        assertEquals(3, CampusData.getIndoorMap().buildingCount());
+    }
+
+    @Test
+    public void pathsShorterThanTheStraightLineAreRejected() throws IOException {
+        // 500 m stands for a detour of the 111 m straight line; indoors 12 m for 7 m
+        String[] tooShort = {
+                SMALL_CAMPUS.replace("\"a\", 500,", "\"a\", 100,"),
+                SMALL_CAMPUS.replace("\"l0\", 12]", "\"l0\", 5]")};
+        for (String json : tooShort) {
+            assertNotEquals(SMALL_CAMPUS, json);
+            try {
+                CampusPackTool.buildPack(json);
+                fail("Path shorter than the straight line was accepted");
+            } catch (IllegalArgumentException expected) {
+                assertTrue(expected.getMessage().contains("apart"));
+            }
+        }
+    }
+
+    @Test
+    public void corruptSectionsAreRejectedWhenUsed() throws IOException {
+        byte[] pack = CampusPackTool.buildPack(SMALL_CAMPUS);
+
+        // Flip one byte in the search section, the fourth in the table: the rest still opens
+        int searchOffset = ByteBuffer.wrap(pack).order(ByteOrder.LITTLE_ENDIAN).getInt(16 + 3 * 16 + 4);
+        byte[] corrupt = pack.clone();
+        corrupt[searchOffset + 12] ^= 0x40;
+        CampusPack opened = CampusPack.open(ByteBuffer.wrap(corrupt));
+        assertEquals(2, opened.getWalkwayGraph().nodeCount());
+        try {
+            opened.getSearchIndex();
+            fail("Corrupt search section was accepted");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("checksum"));
+        }
+
+        // A damaged header is rejected up front
+        byte[] badHeader = pack.clone();
+        badHeader[20] ^= 1;
+        try {
+            CampusPack.open(ByteBuffer.wrap(badHeader));
+            fail("Corrupt header was accepted");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("checksum"));
+        }
+
+        byte[] notAPack = Arrays.copyOf("{\"version\": 1}".getBytes(StandardCharsets.UTF_8), 64);
+        try {
+            CampusPack.open(ByteBuffer.wrap(notAPack));
+            fail("Arbitrary bytes were accepted");
+        } catch (IOException expected) {
+            assertEquals("Not a campus pack", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void mappedFileIsReadInPlace() throws IOException {
+        File file = File.createTempFile("campus", ".pack");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(CampusPackTool.buildPack(SMALL_CAMPUS));
+        }
+        ByteBuffer mapped = CampusPack.mapFile(file);
+        assertTrue(mapped.isDirect());
+
+        CampusPack pack = CampusPack.open(mapped);
+        assertEquals("Hall", pack.getPoiIndex().getPoi(0).getName());
+        assertEquals("Two seats", pack.getRooms().getDescription(1));
+    }
+}
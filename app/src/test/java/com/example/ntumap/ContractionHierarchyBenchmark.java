@@ -0,0 +1,73 @@
+package com.example.ntumap;
+
+import java.util.Random;
+
+/**
+ * Compares contraction hierarchy queries with point-to-point Dijkstra that
+ * stops at the target, on synthetic campuses of roughly 10k, 100k and 1M
+ * directed edges. Not part of the unit test run; start it from the IDE or
+ * pass grid widths as arguments.
+ *
+ * <pre>
+ * edges   fixed witness limits        per-edge limits, lazy dense updates
+ * 10k     0.6 s,   14,059 shortcuts   0.6-0.8 s,  14,227 shortcuts
+ * 100k    9.6 s,  189,459 shortcuts   3.4-5.1 s, 188,286 shortcuts
+ * 1M      did not finish              101-153 s, 2.24M shortcuts
+ * </pre>
+ *
+ * Even unlimited witness searches leave about 1.4 shortcuts per edge on
+ * these grids, since the random detours make many two-hop paths the
+ * shortest, so the shortcut count cannot drop below the edge count here.
+ */
+public final class ContractionHierarchyBenchmark {
+
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) {
+        int[] widths = {50, 156, 494};
+        if (args.length > 0) {
+            widths = new int[args.length];
+            for (int i = 0; i < args.length; i++) widths[i] = Integer.parseInt(args[i]);
+        }
+        System.out.println("nodes\tedges\tbuild ms\tshortcuts\tdijkstra us\tch us\tspeedup");
+        for (int width : widths) {
+            run(width);
+        }
+    }
+
+    private static void run(int width) {
+        CampusGraph graph = GraphTestUtils.randomCampus(width, width, width);
+
+        long buildStart = System.nanoTime();
+        ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+        long buildMs = (System.nanoTime() - buildStart) / 1000000;
+        ContractionHierarchyRouter router = new ContractionHierarchyRouter(hierarchy);
+
+        Random random = new Random(1);
+        int[] sources = new int[QUERIES];
+        int[] targets = new int[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            sources[i] = random.nextInt(graph.nodeCount());
+            targets[i] = random.nextInt(graph.nodeCount());
+        }
+
+        // Warm up the JIT before timing
+        for (int i = 0; i < QUERIES; i++) router.findRoute(sources[i], targets[i]);
+
+        long dijkstraStart = System.nanoTime();
+        int dijkstraQueries = Math.min(QUERIES, 20);
+        for (int i = 0; i < dijkstraQueries; i++) {
+            GraphTestUtils.dijkstra(graph, sources[i], targets[i]);
+        }
+        double dijkstraUs = (System.nanoTime() - dijkstraStart) / 1000.0 / dijkstraQueries;
+
+        long chStart = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            router.findRoute(sources[i], targets[i]);
+        }
+        double chUs = (System.nanoTime() - chStart) / 1000.0 / QUERIES;
+
+        System.out.printf("%d\t%d\t%d\t%d\t%.0f\t%.1f\t%.0fx%n", graph.nodeCount(), graph.edgeCount(),
+                buildMs, hierarchy.getShortcutCount(), dijkstraUs, chUs, dijkstraUs / chUs);
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.ntumap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ContractionHierarchyTest {
+
+    private static final double EPSILON = 1e-6;
+
+    @BeforeClass
+    public static void useCampusPack() {
+        CampusPackTest.useAssetPack();
+    }
+
+    @Test
+    public void queriesMatchDijkstraOnGeneratedCampuses() {
+        Random random = new Random(3);
+        for (int seed = 0; seed < 4; seed++) {
+            CampusGraph graph = GraphTestUtils.randomCampus(25, 25, seed);
+            ContractionHierarchyRouter router = new ContractionHierarchyRouter(ContractionHierarchy.build(graph));
+            for (int query = 0; query < 40; query++) {
+                int source = random.nextInt(graph.nodeCount());
+                int target = random.nextInt(graph.nodeCount());
+                double expected = GraphTestUtils.dijkstra(graph, source)[target];
+
+                Route route = router.findRoute(source, target);
+                if (Double.isInfinite(expected)) {
+                    assertNull(route);
+                    continue;
+                }
+                assertNotNull(route);
+                assertEquals(expected, route.getLengthMeters(), EPSILON);
+                assertEquals(source, route.getStartNode());
+                assertEquals(target, route.getEndNode());
+                // Shortcuts must unpack to real walkway edges of the same total length
+                assertEquals(expected, GraphTestUtils.pathLength(graph, route.getNodes()), EPSILON);
+            }
+        }
+    }
+
+    @Test
+    public void indexSurvivesBinaryRoundTrip() throws IOException {
+        CampusGraph graph = GraphTestUtils.randomCampus(15, 15, 11);
+        ContractionHierarchy built = ContractionHierarchy.build(graph);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        built.write(out);
+
+        ContractionHierarchy loaded = ContractionHierarchy.read(new ByteArrayInputStream(out.toByteArray()), graph);
+
+        assertEquals(built.getEdgeCount(), loaded.getEdgeCount());
+        ContractionHierarchyRouter router = new ContractionHierarchyRouter(loaded);
+        double[] expected = GraphTestUtils.dijkstra(graph, 0);
+        for (int target = 0; target < graph.nodeCount(); target++) {
+            Route route = router.findRoute(0, target);
+            if (Double.isInfinite(expected[target])) {
+                assertNull(route);
+            } else {
+                assertEquals(expected[target], route.getLengthMeters(), EPSILON);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void indexForDifferentGraphIsRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ContractionHierarchy.build(GraphTestUtils.randomCampus(10, 10, 1)).write(out);
+
+        ContractionHierarchy.read(new ByteArrayInputStream(out.toByteArray()), GraphTestUtils.randomCampus(10, 10, 2));
+    }
+
+    @Test
+    public void campusIndexAgreesWithAStar() {
+        CampusGraph graph = CampusData.getWalkwayGraph();
+        Router hierarchy = new ContractionHierarchyRouter(ContractionHierarchy.build(graph));
+        Router aStar = new AStarRouter(graph);
+        for (int source = 0; source < graph.nodeCount(); source++) {
+            for (int target = 0; target < graph.nodeCount(); target++) {
+                assertEquals(aStar.findRoute(source, target).getLengthMeters(),
+                        hierarchy.findRoute(source, target).getLengthMeters(), EPSILON);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.ntumap;
+
+/**
+ * Times balancing over 10k people in 180 rooms of an 80 x 80 walkway grid,
+ * and simulating the result against sending everyone to the nearest exit.
+ * Not part of the unit test run; start it from the IDE.
+ */
+public final class EvacuationBalancerBenchmark {
+
+    private static final int SIZE = 80;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        CampusGraph graph = GraphTestUtils.grid(SIZE, EvacuationBalancerTest.LAT, EvacuationBalancerTest.LNG,
+                EvacuationBalancerTest.STEP);
+        int[] exits = EvacuationBalancerTest.exitsOf(SIZE);
+        double[] throughput = EvacuationBalancerTest.doors(exits.length);
+        double corridor = EvacuationBalancerTest.CORRIDOR_PEOPLE_PER_SECOND;
+        EvacuationBalancer balancer = new EvacuationBalancer(graph, exits, throughput, corridor);
+        EvacuationSimulator simulator = new EvacuationSimulator(graph, exits, throughput, corridor);
+        EvacuationBalancerTest.Campus campus = new EvacuationBalancerTest.Campus(SIZE, 180, 3);
+
+        EvacuationBalancer.Plan nearest = balancer.planNearest(campus.roomNodes, campus.occupants, null);
+        EvacuationBalancer.Plan balanced = null;
+        long planNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            balanced = balancer.plan(campus.roomNodes, campus.occupants, null);
+            planNanos = Math.min(planNanos, System.nanoTime() - start);
+        }
+        long start = System.nanoTime();
+        EvacuationSimulator.Result naive = simulator.run(nearest);
+        EvacuationSimulator.Result result = simulator.run(balanced);
+        double simulateMs = (System.nanoTime() - start) / 1e6 / 2;
+        System.out.printf("evacuation of %d people: nearest exit %.0f s, balanced %.0f s; plan %.0f ms, simulate %.0f ms%n",
+                campus.total, naive.getClearanceSeconds(), result.getClearanceSeconds(), planNanos / 1e6, simulateMs);
+    }
+}
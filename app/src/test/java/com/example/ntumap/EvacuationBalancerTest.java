@@ -0,0 +1,126 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.IntPredicate;
+
+import static org.junit.Assert.*;
+
+public class EvacuationBalancerTest {
+
+    static final double LAT = 52.9068;
+    static final double LNG = -1.1878;
+    // Roughly ten metres between neighbouring grid nodes
+    static final double STEP = 0.00009;
+    private static final double DOOR_PEOPLE_PER_SECOND = 2.5;
+    static final double CORRIDOR_PEOPLE_PER_SECOND = 4;
+
+    static int[] exitsOf(int size) {
+        // Corners and the middle of two sides
+        return new int[]{0, size - 1, size * (size - 1), size * size - 1, size * (size / 2), size * (size / 2) + size - 1};
+    }
+
+    static double[] doors(int exits) {
+        double[] throughput = new double[exits];
+        Arrays.fill(throughput, DOOR_PEOPLE_PER_SECOND);
+        return throughput;
+    }
+
+    static final class Campus {
+        final int[] roomNodes;
+        final int[] occupants;
+        final int total;
+
+        // Rooms mostly bunched up in one corner, as around a lecture block at the end of a lecture
+        Campus(int size, int rooms, long seed) {
+            Random random = new Random(seed);
+            roomNodes = new int[rooms];
+            occupants = new int[rooms];
+            int sum = 0;
+            for (int room = 0; room < rooms; room++) {
+                boolean bunched = random.nextInt(4) > 0;
+                int span = bunched ? size / 3 : size;
+                roomNodes[room] = random.nextInt(span) * size + random.nextInt(span);
+                occupants[room] = 20 + random.nextInt(100);
+                sum += occupants[room];
+            }
+            total = sum;
+        }
+    }
+
+    @Test
+    public void everyoneIsSentSomewhere() {
+        int size = 30;
+        CampusGraph graph = GraphTestUtils.grid(size, LAT, LNG, STEP);
+        int[] exits = exitsOf(size);
+        EvacuationBalancer balancer = new EvacuationBalancer(graph, exits, doors(exits.length), CORRIDOR_PEOPLE_PER_SECOND);
+        Campus campus = new Campus(size, 40, 1);
+        EvacuationBalancer.Plan plan = balancer.plan(campus.roomNodes, campus.occupants, null);
+
+        double[] perRoom = new double[campus.roomNodes.length];
+        double perExit = 0;
+        for (EvacuationBalancer.Group group : plan.getGroups()) {
+            perRoom[group.getRoom()] += group.getPeople();
+            int[] path = group.getPath();
+            assertEquals(campus.roomNodes[group.getRoom()], path[0]);
+            assertEquals(exits[group.getExit()], path[path.length - 1]);
+        }
+        for (int room = 0; room < perRoom.length; room++) {
+            assertEquals(campus.occupants[room], perRoom[room], 1e-6);
+        }
+        for (int exit = 0; exit < exits.length; exit++) {
+            perExit += plan.getExitLoad(exit);
+        }
+        assertEquals(campus.total, perExit, 1e-6);
+        assertNotNull(plan.largestGroupFrom(0));
+    }
+
+    @Test
+    public void avoidsExitsInClosedAreas() {
+        int size = 30;
+        CampusGraph graph = GraphTestUtils.grid(size, LAT, LNG, STEP);
+        int[] exits = exitsOf(size);
+        EvacuationBalancer balancer = new EvacuationBalancer(graph, exits, doors(exits.length), CORRIDOR_PEOPLE_PER_SECOND);
+        Campus campus = new Campus(size, 40, 2);
+        // Fire next to the corner exit most people would use; only those already in it leave that way
+        IntPredicate closed = node -> node / size < 3 && node % size < 3;
+        EvacuationBalancer.Plan plan = balancer.plan(campus.roomNodes, campus.occupants, closed);
+        int inside = 0;
+        for (int room = 0; room < campus.roomNodes.length; room++) {
+            if (closed.test(campus.roomNodes[room])) {
+                inside += campus.occupants[room];
+            }
+        }
+        assertTrue(plan.getExitLoad(0) <= inside + 1e-6);
+        assertTrue(balancer.plan(campus.roomNodes, campus.occupants, null).getExitLoad(0) > inside);
+    }
+
+    @Test
+    public void balancingEmptiesACrowdedCampusSooner() {
+        int size = 80;
+        CampusGraph graph = GraphTestUtils.grid(size, LAT, LNG, STEP);
+        int[] exits = exitsOf(size);
+        double[] throughput = doors(exits.length);
+        EvacuationBalancer balancer = new EvacuationBalancer(graph, exits, throughput, CORRIDOR_PEOPLE_PER_SECOND);
+        EvacuationSimulator simulator = new EvacuationSimulator(graph, exits, throughput, CORRIDOR_PEOPLE_PER_SECOND);
+        Campus campus = new Campus(size, 180, 3);
+        assertTrue(campus.total > 10_000);
+
+        EvacuationBalancer.Plan nearest = balancer.planNearest(campus.roomNodes, campus.occupants, null);
+        EvacuationBalancer.Plan balanced = balancer.plan(campus.roomNodes, campus.occupants, null);
+        EvacuationSimulator.Result naive = simulator.run(nearest);
+        EvacuationSimulator.Result result = simulator.run(balanced);
+        assertTrue(result.getClearanceSeconds() < 0.75 * naive.getClearanceSeconds());
+
+        // The simulator is deterministic
+        assertEquals(result.getClearanceSeconds(), simulator.run(balanced).getClearanceSeconds(), 0);
+        List<EvacuationBalancer.Group> again = balancer.plan(campus.roomNodes, campus.occupants, null).getGroups();
+        assertEquals(balanced.getGroups().size(), again.size());
+        for (int i = 0; i < again.size(); i++) {
+            assertEquals(balanced.getGroups().get(i).getPeople(), again.get(i).getPeople(), 0);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.ntumap;
+
+import java.util.Random;
+
+/**
+ * Times closing and reopening hazard zones on a 300 x 300 walkway grid,
+ * reporting the slowest single update. Not part of the unit test run;
+ * start it from the IDE or pass grid sizes as arguments.
+ */
+public final class EvacuationPlannerBenchmark {
+
+    private static final double LAT = 52.9068;
+    private static final double LNG = -1.1878;
+    private static final double STEP = 0.00009;
+    private static final int ZONES = 20;
+
+    public static void main(String[] args) {
+        int[] sizes = {300};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) sizes[i] = Integer.parseInt(args[i]);
+        }
+        for (int size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(int size) {
+        CampusGraph graph = GraphTestUtils.grid(size, LAT, LNG, STEP, new Random(4));
+        int[] exits = {0, size - 1, size * (size - 1), size * size - 1, size / 2, size * size - size / 2};
+        EvacuationPlanner planner = new EvacuationPlanner(graph, exits);
+
+        Random random = new Random(8);
+        long slowest = 0;
+        int[] zones = new int[ZONES];
+        for (int i = 0; i < zones.length; i++) {
+            int node = random.nextInt(graph.nodeCount());
+            long start = System.nanoTime();
+            zones[i] = planner.closeZone(graph.latitude(node), graph.longitude(node), 30 + random.nextInt(60));
+            slowest = Math.max(slowest, System.nanoTime() - start);
+        }
+        for (int i = 0; i < zones.length; i += 2) {
+            long start = System.nanoTime();
+            planner.openZone(zones[i]);
+            slowest = Math.max(slowest, System.nanoTime() - start);
+        }
+        System.out.printf("evacuation: %d nodes, slowest hazard update %.1f ms%n",
+                graph.nodeCount(), slowest / 1e6);
+    }
+}
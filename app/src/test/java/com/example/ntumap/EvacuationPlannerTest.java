@@ -0,0 +1,182 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class EvacuationPlannerTest {
+
+    private static final double LAT = 52.9068;
+    private static final double LNG = -1.1878;
+    // Roughly ten metres between neighbouring grid nodes
+    private static final double STEP = 0.00009;
+
+    private static double[] latLng(CampusGraph graph, int node) {
+        return new double[]{graph.latitude(node), graph.longitude(node)};
+    }
+
+    // Plain Dijkstra over the reversed graph, for comparison
+    private static double[] reference(CampusGraph graph, int[] exits, boolean[] closed) {
+        int n = graph.nodeCount();
+        double[] distance = new double[n];
+        Arrays.fill(distance, Double.POSITIVE_INFINITY);
+        // Reversed adjacency as lists of forward edges
+        int[][] incoming = new int[n][];
+        int[] counts = new int[n];
+        for (int e = 0; e < graph.edgeCount(); e++) {
+            counts[graph.edgeTarget(e)]++;
+        }
+        for (int node = 0; node < n; node++) {
+            incoming[node] = new int[counts[node]];
+            counts[node] = 0;
+        }
+        int[] sources = new int[graph.edgeCount()];
+        for (int node = 0; node < n; node++) {
+            for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+                sources[e] = node;
+                int target = graph.edgeTarget(e);
+                incoming[target][counts[target]++] = e;
+            }
+        }
+        PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        for (int exit : exits) {
+            distance[exit] = 0;
+            queue.add(new double[]{0, exit});
+        }
+        while (!queue.isEmpty()) {
+            double[] top = queue.poll();
+            int node = (int) top[1];
+            if (top[0] > distance[node]) {
+                continue;
+            }
+            for (int edge : incoming[node]) {
+                double cost = graph.edgeWeight(edge) + (closed[node] ? EvacuationPlanner.CLOSED_PENALTY_METERS : 0);
+                int source = sources[edge];
+                if (distance[node] + cost < distance[source]) {
+                    distance[source] = distance[node] + cost;
+                    queue.add(new double[]{distance[source], source});
+                }
+            }
+        }
+        return distance;
+    }
+
+    private static boolean[] closedNodes(EvacuationPlanner planner) {
+        boolean[] closed = new boolean[planner.getGraph().nodeCount()];
+        for (int node = 0; node < closed.length; node++) {
+            closed[node] = planner.isClosed(node);
+        }
+        return closed;
+    }
+
+    private static void assertMatchesReference(EvacuationPlanner planner, int[] exits) {
+        double[] expected = reference(planner.getGraph(), exits, closedNodes(planner));
+        for (int node = 0; node < expected.length; node++) {
+            assertEquals(expected[node], planner.distanceToExit(node), 1e-6);
+        }
+    }
+
+    @Test
+    public void leadsEveryoneToTheNearestExit() {
+        CampusGraph graph = GraphTestUtils.grid(20, LAT, LNG, STEP, new Random(1));
+        int[] exits = {0, 19, 399};
+        EvacuationPlanner planner = new EvacuationPlanner(graph, exits);
+        assertMatchesReference(planner, exits);
+
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            Route route = planner.routeFrom(node);
+            if (route == null) {
+                // Cut off by the missing walkways
+                assertEquals(Double.POSITIVE_INFINITY, planner.distanceToExit(node), 0);
+                continue;
+            }
+            assertEquals(node, route.getStartNode());
+            assertTrue(route.getEndNode() == 0 || route.getEndNode() == 19 || route.getEndNode() == 399);
+            assertEquals(planner.distanceToExit(node), route.getLengthMeters(), 1e-6);
+        }
+        // Next to an exit, the route is the exit itself
+        assertEquals(1, planner.routeFrom(0).getNodeCount());
+        double[] nearExit = latLng(graph, 399);
+        assertEquals(399, planner.routeFrom(nearExit[0], nearExit[1]).getEndNode());
+    }
+
+    @Test
+    public void routesAroundHazardsAndOutOfThem() {
+        CampusGraph graph = GraphTestUtils.grid(30, LAT, LNG, STEP, new Random(2));
+        int[] exits = {0, 29, 870, 899};
+        EvacuationPlanner planner = new EvacuationPlanner(graph, exits);
+
+        // A fire around the middle of the grid
+        double[] middle = latLng(graph, 15 * 30 + 15);
+        int fire = planner.closeZone(middle[0], middle[1], 40);
+        assertTrue(planner.isClosed(15 * 30 + 15));
+        assertMatchesReference(planner, exits);
+
+        for (int node = 0; node < graph.nodeCount(); node++) {
+            Route route = planner.routeFrom(node);
+            if (route == null) {
+                continue;
+            }
+            // Anyone outside stays outside, anyone inside only walks through closed nodes on the way out
+            boolean leftZone = !planner.isClosed(node);
+            for (int i = 1; i < route.getNodeCount(); i++) {
+                boolean closed = planner.isClosed(route.getNodes()[i]);
+                assertFalse(leftZone && closed);
+                leftZone |= !closed;
+            }
+        }
+
+        // An exit inside a hazard is avoided by those who are not standing at it
+        double[] corner = latLng(graph, 899);
+        int blockedExit = planner.closeZone(corner[0], corner[1], 25);
+        assertMatchesReference(planner, exits);
+        assertEquals(0, planner.distanceToExit(899), 0);
+        Route nearCorner = planner.routeFrom(28 * 30 + 27);
+        assertNotEquals(899, nearCorner.getEndNode());
+
+        // Lifting the hazards restores the original routes
+        planner.openZone(fire);
+        planner.openZone(blockedExit);
+        assertMatchesReference(planner, exits);
+        assertFalse(planner.isClosed(15 * 30 + 15));
+    }
+
+    @Test
+    public void overlappingZonesStayClosedUntilBothAreLifted() {
+        CampusGraph graph = GraphTestUtils.grid(10, LAT, LNG, STEP, new Random(3));
+        int[] exits = {0};
+        EvacuationPlanner planner = new EvacuationPlanner(graph, exits);
+        double[] at = latLng(graph, 55);
+        int first = planner.closeZone(at[0], at[1], 15);
+        int second = planner.closeZone(at[0], at[1], 15);
+        planner.openZone(first);
+        assertTrue(planner.isClosed(55));
+        assertMatchesReference(planner, exits);
+        planner.openZone(second);
+        assertFalse(planner.isClosed(55));
+        assertMatchesReference(planner, exits);
+    }
+
+    @Test
+    public void hazardUpdatesOnALargeCampusMatchTheReference() {
+        int size = 300;
+        CampusGraph graph = GraphTestUtils.grid(size, LAT, LNG, STEP, new Random(4));
+        int[] exits = {0, size - 1, size * (size - 1), size * size - 1, size / 2, size * size - size / 2};
+        EvacuationPlanner planner = new EvacuationPlanner(graph, exits);
+
+        Random random = new Random(8);
+        int[] zones = new int[20];
+        for (int i = 0; i < zones.length; i++) {
+            double[] at = latLng(graph, random.nextInt(graph.nodeCount()));
+            zones[i] = planner.closeZone(at[0], at[1], 30 + random.nextInt(60));
+        }
+        for (int i = 0; i < zones.length; i += 2) {
+            planner.openZone(zones[i]);
+        }
+        assertMatchesReference(planner, exits);
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.ntumap;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Synthetic campus graphs and a reference Dijkstra for routing tests.
+ */
+public final class GraphTestUtils {
+
+    // Roughly 11 m between neighbouring grid nodes around NTU Clifton
+    private static final double ORIGIN_LAT = 52.9000;
+    private static final double ORIGIN_LNG = -1.1900;
+    private static final double SPACING_DEG = 0.0001;
+
+    private GraphTestUtils() {}
+
+    /**
+     * Jittered grid with a few missing walkways and detour factors on edge
+     * weights, so shortest paths are not simply straight lines.
+     */
+    public static CampusGraph randomCampus(int width, int height, long seed) {
+        Random random = new Random(seed);
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double lat = ORIGIN_LAT + (y + random.nextDouble() * 0.4) * SPACING_DEG;
+                double lng = ORIGIN_LNG + (x + random.nextDouble() * 0.4) * SPACING_DEG;
+                builder.addNode(lat, lng);
+            }
+        }
+        CampusGraph plain = builder.build();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int node = y * width + x;
+                if (x + 1 < width && random.nextInt(10) != 0) {
+                    addDetourWalkway(builder, plain, node, node + 1, random);
+                }
+                if (y + 1 < height && random.nextInt(10) != 0) {
+                    addDetourWalkway(builder, plain, node, node + width, random);
+                }
+                if (x + 1 < width && y + 1 < height && random.nextInt(4) == 0) {
+                    addDetourWalkway(builder, plain, node, node + width + 1, random);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Square grid of straight walkways from (lat, lng), rows step degrees of
+     * latitude apart and columns about as far apart, node id row * size + column.
+     */
+    public static CampusGraph grid(int size, double lat, double lng, double step) {
+        return grid(size, lat, lng, step, null);
+    }
+
+    // The same grid with about one walkway in ten missing, picked by random
+    public static CampusGraph grid(int size, double lat, double lng, double step, Random random) {
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                builder.addNode(lat + row * step, lng + column * step * 1.66);
+            }
+        }
+        for (int row = 0; row < size; row++) {
+            for (int column = 0; column < size; column++) {
+                int node = row * size + column;
+                if (column + 1 < size && (random == null || random.nextInt(10) > 0)) {
+                    builder.addWalkway(node, node + 1);
+                }
+                if (row + 1 < size && (random == null || random.nextInt(10) > 0)) {
+                    builder.addWalkway(node, node + size);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private static void addDetourWalkway(CampusGraph.Builder builder, CampusGraph nodes,
+                                         int a, int b, Random random) {
+        double straight = GeoUtils.haversine(nodes.latitude(a), nodes.longitude(a),
+                nodes.latitude(b), nodes.longitude(b));
+        builder.addWalkway(a, b, straight * (1.0 + random.nextDouble() * 0.5));
+    }
+
+    // Plain Dijkstra from source; unreachable nodes are left at infinity
+    public static double[] dijkstra(CampusGraph graph, int source) {
+        return search(graph, source, -1);
+    }
+
+    // Distance from source to target, settling only the nodes closer than target
+    public static double dijkstra(CampusGraph graph, int source, int target) {
+        return search(graph, source, target)[target];
+    }
+
+    // Stops once target is settled; a negative target settles every node
+    private static double[] search(CampusGraph graph, int source, int target) {
+        double[] dist = new double[graph.nodeCount()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[source] = 0;
+        PriorityQueue<double[]> queue = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        queue.add(new double[] {0, source});
+        while (!queue.isEmpty()) {
+            double[] top = queue.poll();
+            int node = (int) top[1];
+            if (top[0] > dist[node]) continue;
+            if (node == target) break;
+            for (int e = graph.firstEdge(node); e < graph.endEdge(node); e++) {
+                int next = graph.edgeTarget(e);
+                double candidate = dist[node] + graph.edgeWeight(e);
+                if (candidate < dist[next]) {
+                    dist[next] = candidate;
+                    queue.add(new double[] {candidate, next});
+                }
+            }
+        }
+        return dist;
+    }
+
+    // Sum of the cheapest edge between each consecutive pair of route nodes
+    public static double pathLength(CampusGraph graph, int[] nodes) {
+        double total = 0;
+        for (int i = 1; i < nodes.length; i++) {
+            double best = Double.POSITIVE_INFINITY;
+            for (int e = graph.firstEdge(nodes[i - 1]); e < graph.endEdge(nodes[i - 1]); e++) {
+                if (graph.edgeTarget(e) == nodes[i]) {
+                    best = Math.min(best, graph.edgeWeight(e));
+                }
+            }
+            total += best;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.ntumap;
+
+import java.util.List;
+
+/**
+ * Times an hour of one-a-second position updates along a route across a
+ * 60 x 60 campus, reporting the mean and slowest update. Not part of the
+ * unit test run; start it from the IDE.
+ */
+public final class GuidanceEngineBenchmark {
+
+    private static final int POSITIONS = 3600;
+
+    public static void main(String[] args) {
+        CampusGraph graph = GraphTestUtils.randomCampus(60, 60, 7);
+        Router router = new AStarRouter(graph);
+        Route route = router.findRoute(0, 60 * 60 - 1);
+        GuidanceEngine guidance = new GuidanceEngine(router);
+        List<double[]> points = GuidanceEngineTest.walk(graph, route.getNodes());
+
+        // Warm up the JIT before timing
+        for (int warm = 0; warm < 5; warm++) {
+            GuidanceEngineTest.replay(guidance, route, points, POSITIONS);
+        }
+        long start = System.nanoTime();
+        long worst = GuidanceEngineTest.replay(guidance, route, points, POSITIONS);
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("guidance: %d positions on a %d node route, %.2f us per position, worst %.1f us%n",
+                POSITIONS, route.getNodeCount(), elapsed / 1e3 / POSITIONS, worst / 1e3);
+    }
+}
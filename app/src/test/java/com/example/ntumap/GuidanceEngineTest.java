@@ -0,0 +1,232 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GuidanceEngineTest {
+
+    private static final double LAT = 52.9068;
+    private static final double LNG = -1.1878;
+    // Thirty metres north, and thirty metres east
+    private static final double NORTH = 0.00027;
+    private static final double EAST = 0.00027 * 1.66;
+
+    // Points every metre along the route, as a walker would report them
+    static List<double[]> walk(CampusGraph graph, int[] path) {
+        List<double[]> points = new ArrayList<>();
+        for (int i = 1; i < path.length; i++) {
+            double aLat = graph.latitude(path[i - 1]), aLng = graph.longitude(path[i - 1]);
+            double bLat = graph.latitude(path[i]), bLng = graph.longitude(path[i]);
+            double length = GeoUtils.haversine(aLat, aLng, bLat, bLng);
+            for (double walked = 0; walked < length; walked += 1) {
+                double t = walked / length;
+                points.add(new double[]{aLat + (bLat - aLat) * t, aLng + (bLng - aLng) * t, path[t < 0.5 ? i - 1 : i]});
+            }
+        }
+        int last = path[path.length - 1];
+        points.add(new double[]{graph.latitude(last), graph.longitude(last), last});
+        return points;
+    }
+
+    @Test
+    public void maneuversFollowTurnsAndWalkwayFlags() {
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+        int a = builder.addNode(LAT, LNG);
+        int b = builder.addNode(LAT + NORTH, LNG);
+        // A slight bend, then a right turn onto stairs, then into a building and out again to the left
+        int c = builder.addNode(LAT + 2 * NORTH, LNG + 0.6 * EAST);
+        int d = builder.addNode(LAT + 2 * NORTH, LNG + 1.6 * EAST);
+        int e = builder.addNode(LAT + 2 * NORTH, LNG + 2.6 * EAST);
+        int f = builder.addNode(LAT + 2 * NORTH, LNG + 3.6 * EAST);
+        int g = builder.addNode(LAT + 3 * NORTH, LNG + 3.6 * EAST);
+        builder.addWalkway(a, b).addWalkway(b, c);
+        builder.addWalkway(c, d, 35, CampusGraph.STAIRS);
+        builder.addWalkway(d, e, 35, CampusGraph.INDOOR);
+        builder.addWalkway(e, f, 35, CampusGraph.INDOOR);
+        builder.addWalkway(f, g, 35, 0);
+        CampusGraph graph = builder.build();
+
+        GuidanceEngine guidance = new GuidanceEngine(new AStarRouter(graph));
+        guidance.start(new AStarRouter(graph).findRoute(a, g));
+        int[] expected = {GuidanceEngine.SLIGHT_RIGHT, GuidanceEngine.STAIRS, GuidanceEngine.ENTER_BUILDING,
+                GuidanceEngine.LEAVE_BUILDING, GuidanceEngine.ARRIVE};
+        int[] vertices = {1, 2, 3, 5, 6};
+        assertEquals(expected.length, guidance.getManeuverCount());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], guidance.getManeuverType(i));
+            assertEquals(vertices[i], guidance.getManeuverVertex(i));
+        }
+
+        assertEquals(0, GuidanceEngine.turn(10));
+        assertEquals(GuidanceEngine.LEFT, GuidanceEngine.turn(-90));
+        assertEquals(GuidanceEngine.SHARP_RIGHT, GuidanceEngine.turn(150));
+    }
+
+    @Test
+    public void walkingTheRouteAnnouncesEachManeuverAndArrives() {
+        CampusGraph graph = GraphTestUtils.randomCampus(20, 20, 5);
+        Router router = new AStarRouter(graph);
+        Route route = router.findRoute(0, 399);
+        GuidanceEngine guidance = new GuidanceEngine(router);
+        guidance.start(route);
+        int maneuvers = guidance.getManeuverCount();
+
+        int announced = 0;
+        int arrived = 0;
+        double lastRemaining = Double.MAX_VALUE;
+        for (double[] point : walk(graph, route.getNodes())) {
+            int change = guidance.update(point[0], point[1], 3, (int) point[2]);
+            assertNotEquals(GuidanceEngine.OFF_ROUTE, change);
+            assertNotEquals(GuidanceEngine.REROUTED, change);
+            if (change == GuidanceEngine.NEXT_MANEUVER) {
+                announced++;
+            } else if (change == GuidanceEngine.ARRIVED) {
+                arrived++;
+            }
+            assertTrue(guidance.getOffsetMeters() < 1);
+            assertTrue(guidance.getRemainingMeters() <= lastRemaining + 1e-9);
+            lastRemaining = guidance.getRemainingMeters();
+        }
+        assertEquals(1, arrived);
+        assertTrue(guidance.hasArrived());
+        assertEquals(maneuvers - 1, guidance.getNextManeuver());
+        // Maneuvers close to the end may be passed in the same update that arrives
+        assertTrue(announced >= 1 && announced <= maneuvers - 1);
+    }
+
+    @Test
+    public void strayingFarReroutesOntoAShortestRoute() {
+        CampusGraph graph = GraphTestUtils.randomCampus(30, 30, 6);
+        Router router = new AStarRouter(graph);
+        // Far corner, or the nearest node to it that can be reached
+        double[] reachable = GraphTestUtils.dijkstra(graph, 0);
+        int destination = 30 * 30 - 1;
+        while (reachable[destination] == Double.POSITIVE_INFINITY) {
+            destination--;
+        }
+        Route route = router.findRoute(0, destination);
+        GuidanceEngine guidance = new GuidanceEngine(router);
+        guidance.start(route);
+
+        // Wobbling up to fifteen metres off the route is not straying
+        List<double[]> points = walk(graph, route.getNodes());
+        for (int i = 0; i < 60; i++) {
+            double[] point = points.get(i);
+            double wobble = (i % 2 == 0 ? 15 : 12) / (Math.toRadians(1) * GeoUtils.EARTH_RADIUS_METERS);
+            assertNotEquals(GuidanceEngine.REROUTED, guidance.update(point[0] + wobble, point[1], 3, -1));
+            assertFalse(guidance.isOffRoute());
+        }
+        assertEquals(0, guidance.getRerouteCount());
+
+        // Then off along the bottom row of the grid, away from the route
+        int far = 29;
+        while (reachable[far] == Double.POSITIVE_INFINITY) {
+            far--;
+        }
+        int[] detour = router.findRoute(route.getNodes()[2], far).getNodes();
+        int rerouted = 0;
+        for (double[] point : walk(graph, detour)) {
+            if (guidance.update(point[0], point[1], 3, (int) point[2]) == GuidanceEngine.REROUTED) {
+                rerouted++;
+                Route fresh = guidance.getRoute();
+                int from = fresh.getStartNode();
+                assertEquals(destination, fresh.getEndNode());
+                assertEquals(GraphTestUtils.dijkstra(graph, from)[destination], fresh.getLengthMeters(), 1e-6);
+                assertEquals(fresh.getLengthMeters(), GraphTestUtils.pathLength(graph, fresh.getNodes()), 1e-6);
+            }
+        }
+        assertTrue(rerouted >= 1);
+        assertEquals(rerouted, guidance.getRerouteCount());
+
+        // The new route leads there
+        Route fresh = guidance.getRoute();
+        for (double[] point : walk(graph, fresh.getNodes())) {
+            guidance.update(point[0], point[1], 3, (int) point[2]);
+        }
+        assertTrue(guidance.hasArrived());
+        assertEquals(rerouted, guidance.getRerouteCount());
+    }
+
+    @Test
+    public void failedRerouteIsRetriedFromLaterPositions() {
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+        int a = builder.addNode(LAT, LNG);
+        int b = builder.addNode(LAT + NORTH, LNG);
+        int c = builder.addNode(LAT + 2 * NORTH, LNG);
+        // A side path off the route, and a spot with no walkway to anywhere
+        int side = builder.addNode(LAT + NORTH, LNG + 2 * EAST);
+        int island = builder.addNode(LAT + NORTH, LNG + 4 * EAST);
+        builder.addWalkway(a, b).addWalkway(b, c).addWalkway(b, side);
+        CampusGraph graph = builder.build();
+        Router router = new AStarRouter(graph);
+        GuidanceEngine guidance = new GuidanceEngine(router);
+        guidance.start(router.findRoute(a, c));
+
+        // Nothing leads back from the island, so the first reroute fails
+        int change = GuidanceEngine.NO_CHANGE;
+        for (int i = 0; i < GuidanceEngine.OFF_ROUTE_POSITIONS; i++) {
+            change = guidance.update(graph.latitude(island), graph.longitude(island), 3, island);
+        }
+        assertEquals(GuidanceEngine.OFF_ROUTE, change);
+        assertTrue(guidance.isOffRoute());
+
+        // Still off route, but back on the walkways: a later position finds the way back
+        int positions = 0;
+        do {
+            change = guidance.update(graph.latitude(side), graph.longitude(side), 3, side);
+            positions++;
+        } while (change == GuidanceEngine.NO_CHANGE && positions <= GuidanceEngine.REROUTE_RETRY_POSITIONS);
+        assertEquals(GuidanceEngine.REROUTED, change);
+        assertEquals(GuidanceEngine.REROUTE_RETRY_POSITIONS, positions);
+        assertArrayEquals(new int[]{side, b, c}, guidance.getRoute().getNodes());
+        assertFalse(guidance.isOffRoute());
+        assertEquals(1, guidance.getRerouteCount());
+    }
+
+    @Test
+    public void anHourOfPositionsAllocatesNothing() {
+        CampusGraph graph = GraphTestUtils.randomCampus(60, 60, 7);
+        Router router = new AStarRouter(graph);
+        Route route = router.findRoute(0, 60 * 60 - 1);
+        GuidanceEngine guidance = new GuidanceEngine(router);
+        List<double[]> points = walk(graph, route.getNodes());
+        // An hour at one position a second, round and round the same route
+        int positions = 3600;
+        for (int warm = 0; warm < 5; warm++) {
+            replay(guidance, route, points, positions);
+        }
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = allocations != null ? allocations.getThreadAllocatedBytes(threadId) : 0;
+        replay(guidance, route, points, positions);
+        long allocated = allocations != null ? allocations.getThreadAllocatedBytes(threadId) - allocatedBefore : 0;
+        // Some slack for the allocation counter itself
+        assertTrue(allocated < 1024);
+        assertEquals(0, guidance.getRerouteCount());
+    }
+
+    // Feeds positions in, starting over with each lap of the route; returns the slowest update in nanoseconds
+    static long replay(GuidanceEngine guidance, Route route, List<double[]> points, int positions) {
+        long worst = 0;
+        for (int i = 0; i < positions; i++) {
+            double[] point = points.get(i % points.size());
+            if (i % points.size() == 0) {
+                // The route fits the buffers already, so this allocates nothing either
+                guidance.start(route);
+            }
+            long before = System.nanoTime();
+            guidance.update(point[0], point[1], 3, (int) point[2]);
+            worst = Math.max(worst, System.nanoTime() - before);
+        }
+        return worst;
+    }
+}
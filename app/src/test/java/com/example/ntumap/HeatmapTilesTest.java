@@ -0,0 +1,143 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HeatmapTilesTest {
+
+    private static final int SIZE = 256;
+    private static final int ZOOM = 17;
+
+    // Two rooms a few tiles apart at zoom 17
+    private static final double LIBRARY_LAT = 52.9070;
+    private static final double LIBRARY_LNG = -1.1870;
+    private static final double MAIN_LAT = 52.9060;
+    private static final double MAIN_LNG = -1.1950;
+
+    // Keeps the raw pixels so tests can look at them
+    private static HeatmapTiles tiles() {
+        return new HeatmapTiles(SIZE, 20, 64, (argb, size) -> {
+            byte[] bytes = new byte[argb.length * 4];
+            for (int i = 0; i < argb.length; i++) {
+                bytes[i * 4] = (byte) (argb[i] >>> 24);
+                bytes[i * 4 + 1] = (byte) (argb[i] >>> 16);
+                bytes[i * 4 + 2] = (byte) (argb[i] >>> 8);
+                bytes[i * 4 + 3] = (byte) argb[i];
+            }
+            return bytes;
+        });
+    }
+
+    private static int[] tileOf(double lat, double lng, int zoom) {
+        double scale = 1 << zoom;
+        double sin = Math.sin(Math.toRadians(lat));
+        double x = (lng + 180) / 360 * scale;
+        double y = (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * scale;
+        return new int[]{(int) x, (int) y, (int) ((x - (int) x) * SIZE), (int) ((y - (int) y) * SIZE)};
+    }
+
+    private static int alpha(byte[] tile, int px, int py) {
+        return tile[(py * SIZE + px) * 4] & 0xFF;
+    }
+
+    private static int red(byte[] tile, int px, int py) {
+        return tile[(py * SIZE + px) * 4 + 1] & 0xFF;
+    }
+
+    @Test
+    public void drawsPointsWhereTheyAre() {
+        HeatmapTiles heatmap = tiles();
+        heatmap.addPoint(LIBRARY_LAT, LIBRARY_LNG, 0.9);
+        int[] at = tileOf(LIBRARY_LAT, LIBRARY_LNG, ZOOM);
+
+        byte[] tile = heatmap.getTile(at[0], at[1], ZOOM);
+        assertNotNull(tile);
+        assertTrue(alpha(tile, at[2], at[3]) > 0);
+        // Busy rooms are red at the centre, fading out with distance
+        assertTrue(red(tile, at[2], at[3]) > 200);
+        int outsideX = at[2] < SIZE / 2 ? at[2] + 30 : at[2] - 30;
+        assertEquals(0, alpha(tile, outsideX, at[3]));
+
+        // Far away tiles are empty
+        assertNull(heatmap.getTile(at[0] + 10, at[1], ZOOM));
+    }
+
+    @Test
+    public void changesRedrawOnlyTheTilesTheyReach() {
+        HeatmapTiles heatmap = tiles();
+        int library = heatmap.addPoint(LIBRARY_LAT, LIBRARY_LNG, 0.2);
+        heatmap.addPoint(MAIN_LAT, MAIN_LNG, 0.5);
+        int[] libraryTile = tileOf(LIBRARY_LAT, LIBRARY_LNG, ZOOM);
+        int[] mainTile = tileOf(MAIN_LAT, MAIN_LNG, ZOOM);
+        assertNotEquals(libraryTile[0], mainTile[0]);
+
+        byte[] before = heatmap.getTile(libraryTile[0], libraryTile[1], ZOOM);
+        byte[] main = heatmap.getTile(mainTile[0], mainTile[1], ZOOM);
+        assertEquals(2, heatmap.getRenderCount());
+
+        // Served from the cache until something on them changes
+        assertSame(before, heatmap.getTile(libraryTile[0], libraryTile[1], ZOOM));
+        assertFalse(heatmap.setWeight(library, 0.2));
+        assertSame(before, heatmap.getTile(libraryTile[0], libraryTile[1], ZOOM));
+        assertEquals(2, heatmap.getRenderCount());
+
+        assertTrue(heatmap.setWeight(library, 1.0));
+        byte[] after = heatmap.getTile(libraryTile[0], libraryTile[1], ZOOM);
+        assertEquals(3, heatmap.getRenderCount());
+        assertTrue(red(after, libraryTile[2], libraryTile[3]) > red(before, libraryTile[2], libraryTile[3]));
+        assertSame(main, heatmap.getTile(mainTile[0], mainTile[1], ZOOM));
+        assertEquals(3, heatmap.getRenderCount());
+
+        // An empty room disappears from the map
+        heatmap.setWeight(library, 0);
+        assertNull(heatmap.getTile(libraryTile[0], libraryTile[1], ZOOM));
+    }
+
+    @Test
+    public void cacheKeepsTheMostRecentlyUsedTiles() {
+        HeatmapTiles heatmap = tiles();
+        heatmap.addPoint(LIBRARY_LAT, LIBRARY_LNG, 0.5);
+        int[] at = tileOf(LIBRARY_LAT, LIBRARY_LNG, ZOOM);
+        for (int i = 0; i < 100; i++) {
+            heatmap.getTile(at[0] + i, at[1], ZOOM);
+            heatmap.getTile(at[0], at[1], ZOOM);
+        }
+        assertEquals(64, heatmap.getCachedTileCount());
+        // The point's own tile was used throughout, so it was rendered once
+        assertEquals(100, heatmap.getRenderCount());
+    }
+
+    @Test
+    public void rendersConcurrently() throws Exception {
+        HeatmapTiles heatmap = tiles();
+        for (int i = 0; i < 200; i++) {
+            heatmap.addPoint(LIBRARY_LAT + (i % 20) * 0.0005, LIBRARY_LNG + (i / 20) * 0.0008, (i % 10) / 10.0);
+        }
+        int[] at = tileOf(LIBRARY_LAT, LIBRARY_LNG, ZOOM);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            int dx = i % 8;
+            int dy = i / 8;
+            results.add(pool.submit(() -> heatmap.getTile(at[0] + dx, at[1] - dy, ZOOM)));
+        }
+        // Same bytes as a single-threaded render
+        HeatmapTiles reference = tiles();
+        for (int p = 0; p < 200; p++) {
+            reference.addPoint(LIBRARY_LAT + (p % 20) * 0.0005, LIBRARY_LNG + (p / 20) * 0.0008, (p % 10) / 10.0);
+        }
+        for (int i = 0; i < 64; i++) {
+            assertArrayEquals(reference.getTile(at[0] + i % 8, at[1] - i / 8, ZOOM),
+                    results.get(i).get(10, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class IndoorRouterTest {
+
+    private static final String CAMPUS_JSON = "src/main/campus/campus.json";
+
+    private static CampusPack campusPack() throws IOException {
+        String json = new String(Files.readAllBytes(Paths.get(CAMPUS_JSON)), StandardCharsets.UTF_8);
+        return CampusPack.open(ByteBuffer.wrap(CampusPackTool.buildPack(json)));
+    }
+
+    private static int room(RoomTable rooms, String name) {
+        for (int room = 0; room < rooms.size(); room++) {
+            if (rooms.getName(room).equals(name)) {
+                return room;
+            }
+        }
+        throw new AssertionError("No room " + name);
+    }
+
+    @Test
+    public void routesIntoUpperFloorsReadingOnlyThatBuilding() throws IOException {
+        CampusPack pack = campusPack();
+        IndoorMap indoor = pack.getIndoorMap();
+        CampusGraph walkways = pack.getWalkwayGraph();
+        ProfileRouter outdoor = new ProfileRouter(new AStarRouter(walkways));
+        IndoorRouter router = new IndoorRouter(outdoor, indoor);
+        assertEquals(0, indoor.getLoadedFloorCount());
+
+        int library = indoor.findBuilding("Library");
+        int target = indoor.findRoomNode(room(pack.getRooms(), "Silent Study Room D"));
+        FloorRoute route = router.findRoute(walkways.nearestNode(52.9072, -1.1882), target);
+        assertNotNull(route);
+        int loaded = indoor.getLoadedFloorCount();
+        assertTrue(loaded >= 1 && loaded <= indoor.endFloor(library) - indoor.firstFloor(library));
+        // Nothing outside the Library was paged in
+        int elsewhere = indoor.firstFloor(indoor.findBuilding("Main Building"));
+        indoor.getFloor(elsewhere);
+        assertEquals(loaded + 1, indoor.getLoadedFloorCount());
+
+        // Outdoors to an entrance, then up level by level on the stairs, which beat waiting for the lift
+        assertFalse(route.getLeg(0).isIndoor());
+        assertEquals(5, route.getLegCount());
+        for (int i = 1; i < route.getLegCount(); i++) {
+            FloorRoute.Leg leg = route.getLeg(i);
+            assertEquals(library, leg.getBuilding());
+            assertEquals(i - 1, leg.getLevel());
+            assertEquals(i == 1 ? -1 : IndoorMap.STAIRS, leg.getConnectorType());
+        }
+        FloorRoute.Leg last = route.getLeg(route.getLegCount() - 1);
+        int floor = indoor.floorOf(target);
+        CampusGraph graph = indoor.getFloor(floor);
+        assertEquals(graph.latitude(target - indoor.floorBase(floor)), last.getLatitude(last.getPointCount() - 1), 0);
+        int door = route.getOutdoorRoute().getEndNode();
+        assertEquals(walkways.latitude(door), route.getLeg(1).getLatitude(0), 0);
+        assertEquals(walkways.longitude(door), route.getLeg(1).getLongitude(0), 0);
+        assertSame(route, router.findRoute(walkways.nearestNode(52.9072, -1.1882), target));
+
+        // Step-free takes the lift straight up: one ride, no stairs
+        outdoor.setProfile(RoutingProfile.of(RoutingProfile.STEP_FREE));
+        FloorRoute stepFree = router.findRoute(walkways.nearestNode(52.9072, -1.1882), target);
+        assertNotSame(route, stepFree);
+        assertEquals(3, stepFree.getLegCount());
+        assertEquals(IndoorMap.LIFT, stepFree.getLeg(2).getConnectorType());
+        assertEquals(3, stepFree.getLeg(2).getLevel());
+        assertTrue(stepFree.getCost() > route.getCost());
+    }
+
+    @Test
+    public void costsMatchASearchOverTheFlattenedCampus() throws IOException {
+        CampusGraph outdoor = GraphTestUtils.randomCampus(8, 8, 11);
+        IndoorMap.Builder builder = new IndoorMap.Builder();
+        for (int b = 0; b < 2; b++) {
+            builder.addBuilding("Building " + b);
+            int first = builder.floorCount();
+            for (int level = 0; level < 3; level++) {
+                builder.addFloor(level, GraphTestUtils.randomCampus(4, 4, 100 + 10 * b + level));
+            }
+            for (int level = 1; level < 3; level++) {
+                builder.addConnector(IndoorMap.STAIRS, first + level - 1, 0, first + level, 0);
+                builder.addConnector(IndoorMap.RAMP, first + level - 1, 5, first + level, 5, 70);
+            }
+            builder.addConnector(IndoorMap.LIFT, first, 15, first + 2, 15);
+            builder.addConnector(IndoorMap.LIFT, first, 15, first + 1, 15);
+            builder.addEntrance(first, 0, b == 0 ? 0 : 63);
+            builder.addEntrance(first, 15, b == 0 ? 7 : 56);
+        }
+        IndoorMap indoor = builder.build();
+
+        int[] profiles = {0, RoutingProfile.STEP_FREE, RoutingProfile.PREFER_LIFTS | RoutingProfile.PREFER_SHELTER};
+        for (int options : profiles) {
+            RoutingProfile profile = RoutingProfile.of(options);
+            CampusGraph flat = flatten(outdoor, indoor, profile);
+            ProfileRouter walkways = new ProfileRouter(new AStarRouter(outdoor));
+            walkways.setProfile(profile);
+            IndoorRouter router = new IndoorRouter(walkways, indoor);
+            for (int source : new int[]{0, 27, 63}) {
+                double[] expected = GraphTestUtils.dijkstra(flat, source);
+                for (int target = 0; target < indoor.nodeCount(); target++) {
+                    FloorRoute route = router.findRoute(source, target);
+                    double reference = expected[outdoor.nodeCount() + target];
+                    if (reference == Double.POSITIVE_INFINITY) {
+                        assertNull(route);
+                        continue;
+                    }
+                    assertNotNull(route);
+                    assertEquals(reference, route.getCost(), 1e-6);
+                    FloorRoute.Leg last = route.getLeg(route.getLegCount() - 1);
+                    assertEquals(indoor.getLevel(indoor.floorOf(target)), last.getLevel());
+                    if (options == RoutingProfile.STEP_FREE) {
+                        for (FloorRoute.Leg leg : route.getLegs()) {
+                            assertNotEquals(IndoorMap.STAIRS, leg.getConnectorType());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // One graph of walkways, every floor, connectors and doorsteps, weighed by the profile
+    private static CampusGraph flatten(CampusGraph outdoor, IndoorMap indoor, RoutingProfile profile) throws IOException {
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+        int offset = outdoor.nodeCount();
+        for (int n = 0; n < outdoor.nodeCount(); n++) {
+            builder.addNode(outdoor.latitude(n), outdoor.longitude(n));
+        }
+        for (int f = 0; f < indoor.floorCount(); f++) {
+            CampusGraph floor = indoor.getFloor(f);
+            for (int n = 0; n < floor.nodeCount(); n++) {
+                builder.addNode(floor.latitude(n), floor.longitude(n));
+            }
+        }
+        addWeighted(builder, outdoor, 0, profile);
+        for (int f = 0; f < indoor.floorCount(); f++) {
+            addWeighted(builder, indoor.getFloor(f), offset + indoor.floorBase(f), profile);
+        }
+        for (int c = 0; c < indoor.connectorCount(); c++) {
+            double cost = profile.cost(indoor.getConnectorCost(c), indoor.connectorFlags(c));
+            if (cost < Double.POSITIVE_INFINITY) {
+                builder.addWalkway(offset + indoor.connectorFrom(c), offset + indoor.connectorTo(c), cost, 0);
+            }
+        }
+        for (int e = 0; e < indoor.entranceCount(); e++) {
+            int walkway = indoor.getEntranceWalkway(e);
+            int node = indoor.getEntranceNode(e);
+            CampusGraph floor = indoor.getFloor(indoor.floorOf(node));
+            int local = node - indoor.floorBase(indoor.floorOf(node));
+            // The door is only ever walked in
+            builder.addEdge(walkway, offset + node, GeoUtils.haversine(outdoor.latitude(walkway),
+                    outdoor.longitude(walkway), floor.latitude(local), floor.longitude(local)));
+        }
+        return builder.build();
+    }
+
+    private static void addWeighted(CampusGraph.Builder builder, CampusGraph graph, int offset, RoutingProfile profile) {
+        for (int n = 0; n < graph.nodeCount(); n++) {
+            for (int e = graph.firstEdge(n); e < graph.endEdge(n); e++) {
+                double cost = profile.cost(graph, e);
+                if (cost < Double.POSITIVE_INFINITY) {
+                    builder.addEdge(offset + n, offset + graph.edgeTarget(e), cost);
+                }
+            }
+        }
+    }
+}
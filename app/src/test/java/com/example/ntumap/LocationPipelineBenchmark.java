@@ -0,0 +1,34 @@
+package com.example.ntumap;
+
+/**
+ * Times the location pipeline, filter and walkway snapping, on a noisy
+ * walk across a campus grid. Not part of the unit test run; start it from
+ * the IDE.
+ */
+public final class LocationPipelineBenchmark {
+
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) {
+        CampusGraph graph = GraphTestUtils.grid(LocationPipelineTest.SIZE, LocationPipelineTest.LAT,
+                LocationPipelineTest.LNG, LocationPipelineTest.STEP);
+        LocationPipelineTest.Walk walk = LocationPipelineTest.walk(graph,
+                new int[]{0, 1, 2, 3, 4, 5, 15, 25, 35, 45}, 120, 3);
+        WalkwayIndex index = new WalkwayIndex(graph);
+
+        long elapsed = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            // The first half of the rounds warms up the JIT
+            LocationPipeline pipeline = new LocationPipeline(index, 3, position -> { });
+            long start = System.nanoTime();
+            for (LocationFix fix : walk.fixes) {
+                pipeline.onFix(fix);
+            }
+            if (round >= ROUNDS / 2) {
+                elapsed += System.nanoTime() - start;
+            }
+        }
+        System.out.printf("location: %d fixes, %.1f us per fix%n", walk.fixes.size(),
+                elapsed / 1e3 / (ROUNDS / 2) / walk.fixes.size());
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LocationPipelineTest {
+
+    static final double LAT = 52.9068;
+    static final double LNG = -1.1878;
+    // Roughly thirty metres between neighbouring grid nodes
+    static final double STEP = 0.00027;
+    static final int SIZE = 10;
+    private static final long START = 1_700_000_000_000L;
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_RADIUS_METERS;
+
+    // A walk along the walkways: true positions once a second, then the same with GPS noise
+    static final class Walk {
+        final Map<Long, double[]> truth = new HashMap<>();
+        final List<LocationFix> fixes = new ArrayList<>();
+        long standingSince;
+    }
+
+    static Walk walk(CampusGraph graph, int[] path, int standSeconds, long seed) {
+        Random random = new Random(seed);
+        Walk walk = new Walk();
+        long time = START;
+        double speed = 1.4;
+        for (int i = 1; i < path.length; i++) {
+            double aLat = graph.latitude(path[i - 1]), aLng = graph.longitude(path[i - 1]);
+            double bLat = graph.latitude(path[i]), bLng = graph.longitude(path[i]);
+            double length = GeoUtils.haversine(aLat, aLng, bLat, bLng);
+            for (double walked = 0; walked < length; walked += speed) {
+                double t = walked / length;
+                walk.truth.put(time, new double[]{aLat + (bLat - aLat) * t, aLng + (bLng - aLng) * t});
+                time += 1000;
+            }
+        }
+        walk.standingSince = time;
+        int last = path[path.length - 1];
+        for (int s = 0; s < standSeconds; s++) {
+            walk.truth.put(time, new double[]{graph.latitude(last), graph.longitude(last)});
+            time += 1000;
+        }
+        double metersPerDegreeLng = METERS_PER_DEGREE * Math.cos(Math.toRadians(LAT));
+        for (long at = START; at < time; at += 1000) {
+            double[] where = walk.truth.get(at);
+            double sigma = 6;
+            double noiseLat = random.nextGaussian() * sigma / METERS_PER_DEGREE;
+            double noiseLng = random.nextGaussian() * sigma / metersPerDegreeLng;
+            walk.fixes.add(new LocationFix(where[0] + noiseLat, where[1] + noiseLng, 8, at));
+        }
+        return walk;
+    }
+
+    private static double error(double[] truth, double lat, double lng) {
+        return GeoUtils.haversine(truth[0], truth[1], lat, lng);
+    }
+
+    @Test
+    public void indexFindsTheSameWalkwaysAsAFullScan() {
+        CampusGraph graph = GraphTestUtils.randomCampus(30, 30, 4);
+        WalkwayIndex index = new WalkwayIndex(graph);
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            double lat = graph.latitude(0) + random.nextDouble() * 0.003;
+            double lng = graph.longitude(0) + random.nextDouble() * 0.003;
+            double radius = 5 + random.nextInt(40);
+            double[] nearest = {Double.MAX_VALUE};
+            index.forEachWithin(lat, lng, radius, (segment, distance, fraction) -> {
+                nearest[0] = Math.min(nearest[0], distance);
+                double onLat = index.latitudeAt(segment, fraction);
+                double onLng = index.longitudeAt(segment, fraction);
+                assertEquals(distance, GeoUtils.haversine(lat, lng, onLat, onLng), 0.5);
+            });
+
+            // Dense sampling of every walkway
+            double expected = Double.MAX_VALUE;
+            for (int s = 0; s < index.segmentCount(); s++) {
+                for (int k = 0; k <= 50; k++) {
+                    double t = k / 50.0;
+                    expected = Math.min(expected, GeoUtils.haversine(lat, lng,
+                            index.latitudeAt(s, t), index.longitudeAt(s, t)));
+                }
+            }
+            if (expected <= radius - 1) {
+                assertEquals(expected, nearest[0], 1);
+            } else if (expected > radius + 1) {
+                assertEquals(Double.MAX_VALUE, nearest[0], 0);
+            }
+        }
+    }
+
+    @Test
+    public void gpxTracesRoundTrip() throws IOException {
+        CampusGraph graph = GraphTestUtils.grid(SIZE, LAT, LNG, STEP);
+        Walk walk = walk(graph, new int[]{0, 1, 2}, 0, 2);
+        StringWriter gpx = new StringWriter();
+        GpxTrace.write(walk.fixes, gpx);
+        List<LocationFix> read = GpxTrace.parse(new StringReader(gpx.toString()));
+        assertEquals(walk.fixes.size(), read.size());
+        for (int i = 0; i < read.size(); i++) {
+            assertEquals(walk.fixes.get(i).getTimeMillis(), read.get(i).getTimeMillis());
+            assertEquals(walk.fixes.get(i).getLatitude(), read.get(i).getLatitude(), 1e-6);
+            assertEquals(walk.fixes.get(i).getLongitude(), read.get(i).getLongitude(), 1e-6);
+            assertEquals(walk.fixes.get(i).getAccuracyMeters(), read.get(i).getAccuracyMeters(), 0.1);
+        }
+
+        // Other writers use offsets, fractions and no hdop
+        String foreign = "<gpx xmlns=\"http://www.topografix.com/GPX/1/0\"><trk><trkseg>"
+                + "<trkpt lat=\"52.9\" lon=\"-1.18\"><ele>50</ele><time>2024-03-05T11:15:30.5+01:00</time></trkpt>"
+                + "<trkpt lat=\"52.9\" lon=\"-1.18\"></trkpt>"
+                + "</trkseg></trk></gpx>";
+        List<LocationFix> fixes = GpxTrace.parse(new StringReader(foreign));
+        assertEquals(1, fixes.size());
+        assertEquals(GpxTrace.parseTime("2024-03-05T10:15:30Z") + 500, fixes.get(0).getTimeMillis());
+        assertEquals(GpxTrace.DEFAULT_ACCURACY_METERS, fixes.get(0).getAccuracyMeters(), 0);
+    }
+
+    @Test
+    public void replayedWalkIsSmoothedOntoTheWalkways() throws IOException {
+        CampusGraph graph = GraphTestUtils.grid(SIZE, LAT, LNG, STEP);
+        // Along the bottom row, up the middle, and then a wait at the end
+        int[] path = {0, 1, 2, 3, 4, 5, 15, 25, 35, 45};
+        Walk walk = walk(graph, path, 120, 3);
+        // One wild fix, as from a reflection off a building
+        LocationFix bad = walk.fixes.get(40);
+        walk.fixes.set(40, new LocationFix(bad.getLatitude() + 0.0015, bad.getLongitude(), 8, bad.getTimeMillis()));
+
+        StringWriter gpx = new StringWriter();
+        GpxTrace.write(walk.fixes, gpx);
+        List<LocationFix> replay = GpxTrace.parse(new StringReader(gpx.toString()));
+
+        List<LocationPipeline.Position> positions = new ArrayList<>();
+        LocationPipeline pipeline = new LocationPipeline(new WalkwayIndex(graph), 3, positions::add);
+        double rawError = 0;
+        for (LocationFix fix : replay) {
+            pipeline.onFix(fix);
+            rawError += error(walk.truth.get(fix.getTimeMillis()), fix.getLatitude(), fix.getLongitude());
+        }
+        rawError /= replay.size();
+
+        double error = 0;
+        double worst = 0;
+        int whileStanding = 0;
+        for (int i = 0; i < positions.size(); i++) {
+            LocationPipeline.Position position = positions.get(i);
+            assertTrue(position.isOnWalkway());
+            double e = error(walk.truth.get(position.getTimeMillis()), position.getLatitude(), position.getLongitude());
+            error += e;
+            worst = Math.max(worst, e);
+            if (position.getTimeMillis() >= walk.standingSince + 10_000) {
+                whileStanding++;
+            }
+        }
+        error /= positions.size();
+
+        assertTrue(error < 0.6 * rawError);
+        // The wild fix never shows
+        assertTrue(worst < 25);
+        // Standing still the position settles instead of wandering
+        assertTrue(whileStanding <= 5);
+        assertTrue(positions.size() < replay.size() / 2);
+        LocationPipeline.Position last = pipeline.getLastPosition();
+        assertTrue(GeoUtils.haversine(last.getLatitude(), last.getLongitude(),
+                graph.latitude(45), graph.longitude(45)) < 10);
+    }
+
+    @Test
+    public void filterFollowsAGenuineJump() {
+        KalmanLocationFilter filter = new KalmanLocationFilter();
+        filter.update(new LocationFix(LAT, LNG, 5, START));
+        for (int s = 1; s <= 10; s++) {
+            filter.update(new LocationFix(LAT, LNG, 5, START + s * 1000));
+        }
+        // Dropped off somewhere else entirely, e.g. after leaving a building by another door
+        double farLat = LAT + 0.003;
+        assertFalse(filter.update(new LocationFix(farLat, LNG, 5, START + 11_000)));
+        assertFalse(filter.update(new LocationFix(farLat, LNG, 5, START + 12_000)));
+        assertTrue(filter.update(new LocationFix(farLat, LNG, 5, START + 13_000)));
+        assertEquals(farLat, filter.getLatitude(), 1e-9);
+        // And after a long gap it starts again straight away
+        assertTrue(filter.update(new LocationFix(LAT, LNG, 5, START + 120_000)));
+        assertEquals(LAT, filter.getLatitude(), 1e-9);
+    }
+}
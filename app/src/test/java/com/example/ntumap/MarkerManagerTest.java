@@ -0,0 +1,164 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MarkerManagerTest {
+
+    private static class FakeRenderer implements MarkerManager.Renderer<String> {
+        final Set<String> onMap = new HashSet<>();
+        int adds;
+        int updates;
+        int removes;
+
+        @Override
+        public String add(MarkerSpec spec) {
+            adds++;
+            String handle = spec.getKey() + "#" + adds;
+            onMap.add(handle);
+            return handle;
+        }
+
+        @Override
+        public void update(String marker, MarkerSpec spec) {
+            assertTrue(onMap.contains(marker));
+            updates++;
+        }
+
+        @Override
+        public void remove(String marker) {
+            assertTrue(onMap.remove(marker));
+            removes++;
+        }
+    }
+
+    private static List<MarkerSpec> specs(List<Poi> pois, Poi highlighted) {
+        List<MarkerSpec> specs = new ArrayList<>();
+        for (Poi poi : pois) {
+            String title = poi == highlighted ? poi.getName() + " (Found!)" : poi.getName();
+            specs.add(MarkerSpec.forPoi(poi, title, null));
+        }
+        return specs;
+    }
+
+    private static List<Poi> rooms(int count) {
+        List<Poi> rooms = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rooms.add(new Poi(i, "Room " + i, Poi.Category.ROOM, 52.9 + i * 1e-4, -1.18));
+        }
+        return rooms;
+    }
+
+    @Test
+    public void reapplyingSameSetTouchesNothing() {
+        FakeRenderer renderer = new FakeRenderer();
+        MarkerManager<String> manager = new MarkerManager<>(renderer);
+        List<Poi> rooms = rooms(200);
+
+        manager.apply(specs(rooms, null));
+        manager.apply(specs(rooms, null));
+
+        assertEquals(200, renderer.adds);
+        assertEquals(0, renderer.updates);
+        assertEquals(0, renderer.removes);
+        assertEquals(200, manager.size());
+    }
+
+    @Test
+    public void onlyChangedMarkersAreAddedOrRemoved() {
+        FakeRenderer renderer = new FakeRenderer();
+        MarkerManager<String> manager = new MarkerManager<>(renderer);
+        List<Poi> rooms = rooms(10);
+
+        manager.apply(specs(rooms.subList(0, 6), null));
+        manager.apply(specs(rooms.subList(4, 10), null));
+
+        assertEquals(6 + 4, renderer.adds);
+        assertEquals(4, renderer.removes);
+        assertEquals(6, manager.size());
+        assertEquals(6, renderer.onMap.size());
+        assertNull(manager.getMarker(MarkerSpec.keyFor(rooms.get(0))));
+        assertNotNull(manager.getMarker(MarkerSpec.keyFor(rooms.get(9))));
+    }
+
+    @Test
+    public void changedTitleUpdatesInPlace() {
+        FakeRenderer renderer = new FakeRenderer();
+        MarkerManager<String> manager = new MarkerManager<>(renderer);
+        List<Poi> rooms = rooms(5);
+
+        manager.apply(specs(rooms, null));
+        String before = manager.getMarker(MarkerSpec.keyFor(rooms.get(2)));
+        manager.apply(specs(rooms, rooms.get(2)));
+
+        assertEquals(1, renderer.updates);
+        assertEquals(5, renderer.adds);
+        assertSame(before, manager.getMarker(MarkerSpec.keyFor(rooms.get(2))));
+        assertEquals("Room 2 (Found!)", manager.getSpec(MarkerSpec.keyFor(rooms.get(2))).getTitle());
+    }
+
+    @Test
+    public void singleUpdateTouchesOnlyThatMarker() {
+        FakeRenderer renderer = new FakeRenderer();
+        MarkerManager<String> manager = new MarkerManager<>(renderer);
+        List<Poi> rooms = rooms(5);
+
+        manager.apply(specs(rooms.subList(0, 4), null));
+        assertTrue(manager.update(MarkerSpec.forPoi(rooms.get(1), "Room 1 (3/40)", null)));
+        assertTrue(manager.update(MarkerSpec.forPoi(rooms.get(1), "Room 1 (3/40)", null)));
+        // Rooms without a marker stay off the map
+        assertFalse(manager.update(MarkerSpec.forPoi(rooms.get(4), "Room 4 (1/10)", null)));
+
+        assertEquals(1, renderer.updates);
+        assertEquals(4, renderer.adds);
+        assertEquals(4, manager.size());
+        assertEquals("Room 1 (3/40)", manager.getSpec(MarkerSpec.keyFor(rooms.get(1))).getTitle());
+    }
+
+    @Test
+    public void repeatedFilteringDoesNotGrow() {
+        FakeRenderer renderer = new FakeRenderer();
+        MarkerManager<String> manager = new MarkerManager<>(renderer);
+        List<Poi> rooms = rooms(50);
+
+        for (int round = 0; round < 100; round++) {
+            manager.apply(specs(round % 2 == 0 ? rooms : rooms.subList(0, 10), null));
+        }
+        manager.apply(Collections.<MarkerSpec>emptyList());
+
+        assertEquals(0, manager.size());
+        assertTrue(renderer.onMap.isEmpty());
+    }
+
+    @Test
+    public void nearbyRoomsClusterUntilZoomedIn() {
+        MarkerClusterer clusterer = new MarkerClusterer(64);
+        List<Poi> rooms = Arrays.asList(
+                new Poi(0, "A", Poi.Category.ROOM, 52.9068, -1.1878),
+                new Poi(1, "B", Poi.Category.ROOM, 52.9069, -1.1877),
+                new Poi(2, "C", Poi.Category.ROOM, 52.9300, -1.1500));
+
+        List<MarkerSpec> far = clusterer.cluster(rooms, 14f, Poi::getName, null);
+        assertEquals(2, far.size());
+        assertTrue(far.get(0).isCluster());
+        assertEquals(2, far.get(0).getMembers().size());
+        assertEquals(MarkerSpec.keyFor(rooms.get(2)), far.get(1).getKey());
+
+        // Cluster keys depend only on the grid cell, so re-clustering is stable
+        assertEquals(far.get(0).getKey(), clusterer.cluster(rooms, 14.6f, Poi::getName, null).get(0).getKey());
+
+        List<MarkerSpec> near = clusterer.cluster(rooms, MarkerClusterer.MAX_CLUSTER_ZOOM, Poi::getName, null);
+        assertEquals(3, near.size());
+        for (MarkerSpec spec : near) {
+            assertFalse(spec.isCluster());
+        }
+    }
+}
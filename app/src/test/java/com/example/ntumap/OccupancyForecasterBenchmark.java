@@ -0,0 +1,22 @@
+package com.example.ntumap;
+
+/**
+ * Times forecasting every room of a 5000-room campus in one pass, best of
+ * 20 runs. Not part of the unit test run; start it from the IDE.
+ */
+public final class OccupancyForecasterBenchmark {
+
+    private static final int ROUNDS = 20;
+
+    public static void main(String[] args) {
+        OccupancyForecasterTest.Campus campus = new OccupancyForecasterTest.Campus(5000, 5);
+        int[] expected = new int[campus.rooms];
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            campus.forecaster.forecastAll(campus.now, campus.live, campus.arrivals, expected);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.printf("forecast: %d rooms in %.2f ms%n", campus.rooms, best / 1e6);
+    }
+}
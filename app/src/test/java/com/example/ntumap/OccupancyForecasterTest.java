@@ -0,0 +1,167 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class OccupancyForecasterTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    private static final long WEEK = 7 * DAY;
+    // A Monday at midnight, UTC
+    private static final long START = 1_700_438_400_000L;
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    // Busy in working hours on weekdays, nearly empty otherwise
+    private static int lectures(long time) {
+        long day = (time - START) / DAY % 7;
+        long hour = (time - START) / HOUR % 24;
+        return day < 5 && hour >= 9 && hour < 17 ? 30 : 2;
+    }
+
+    private static void train(OccupancyForecaster forecaster, int room, long from, long to) {
+        for (long time = from; time < to; time += HOUR) {
+            forecaster.observe(room, time, lectures(time));
+        }
+    }
+
+    @Test
+    public void learnsTheWeeklyPattern() {
+        OccupancyForecaster forecaster = new OccupancyForecaster(1, UTC);
+        train(forecaster, 0, START, START + 6 * WEEK);
+
+        // Tuesday before the first lecture: quiet now, busy in a few hours, quiet again at night
+        long now = START + 6 * WEEK + DAY + 7 * HOUR;
+        assertEquals(2, forecaster.forecast(0, now, 2, now));
+        assertEquals(30, forecaster.forecast(0, now, 2, now + 5 * HOUR), 3);
+        assertEquals(2, forecaster.forecast(0, now, 2, now + 15 * HOUR), 3);
+        // Saturday stays quiet
+        assertEquals(2, forecaster.forecast(0, now, 2, now + 4 * DAY + 5 * HOUR), 3);
+    }
+
+    @Test
+    public void liveCountsOutweighThePatternForShortWalks() {
+        OccupancyForecaster forecaster = new OccupancyForecaster(1, UTC);
+        train(forecaster, 0, START, START + 4 * WEEK);
+
+        // A lecture was cancelled: the room is nearly empty in the middle of the morning
+        long now = START + 4 * WEEK + 11 * HOUR;
+        int soon = forecaster.forecast(0, now, 3, now + 5 * MINUTE);
+        assertTrue(soon < 10);
+        // Later on the usual pattern wins again
+        int later = forecaster.forecast(0, now, 3, now + 4 * HOUR);
+        assertTrue(later > 20);
+
+        // Rooms with no history are expected to stay as they are
+        assertEquals(7, new OccupancyForecaster(1, UTC).forecast(0, now, 7, now + HOUR));
+    }
+
+    @Test
+    public void followsTheHistoryItIsAttachedTo() throws IOException {
+        File directory = Files.createTempDirectory("forecast").toFile();
+        try (OccupancyHistory history = new OccupancyHistory(directory)) {
+            for (long time = START; time < START + 3 * WEEK; time += HOUR) {
+                history.record(4, time, lectures(time));
+            }
+            long now = START + 3 * WEEK;
+            OccupancyForecaster attached = new OccupancyForecaster(5, UTC);
+            attached.attach(history, now);
+
+            // Same model as feeding the hours in directly; the last hour is still open in the history
+            OccupancyForecaster direct = new OccupancyForecaster(5, UTC);
+            train(direct, 4, START, now - HOUR);
+            assertEquals(direct.forecast(4, now, 2, now + 10 * HOUR), attached.forecast(4, now, 2, now + 10 * HOUR));
+
+            // New hours reach the forecaster as they close
+            history.record(4, now, 40);
+            history.advanceTo(now + 2 * HOUR);
+            direct.observe(4, now - HOUR, lectures(now - HOUR));
+            direct.observe(4, now, 40);
+            direct.observe(4, now + HOUR, 40);
+            assertEquals(direct.forecast(4, now, 2, now + 10 * HOUR), attached.forecast(4, now, 2, now + 10 * HOUR));
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    @Test
+    public void ranksRoomsByFreeSeatsOnArrival() throws IOException {
+        // The far room is empty now but a lecture starts just as we would get there
+        PoiIndex pois = new PoiIndex(Arrays.asList(
+                new Poi(0, "Far Hall", Poi.Category.ROOM, 52.9340, -1.1870),
+                new Poi(1, "Near Lab", Poi.Category.ROOM, 52.9070, -1.1870)));
+        RoomTable rooms = new RoomTable.Builder()
+                .add("Far Hall", "Lecture Hall", 0, 50, 2, RoomTable.TRACKED)
+                .add("Near Lab", "Lab", 1, 50, 20, RoomTable.TRACKED)
+                .build();
+        RoomQueryEngine engine = new RoomQueryEngine(rooms, pois);
+        OccupancyForecaster forecaster = new OccupancyForecaster(2, UTC);
+        train(forecaster, 0, START, START + 4 * WEEK);
+        for (long time = START; time < START + 4 * WEEK; time += HOUR) {
+            forecaster.observe(1, time, 20);
+        }
+
+        long now = START + 4 * WEEK + 8 * HOUR + 30 * MINUTE;
+        int[] live = {2, 20};
+        RoomQueryEngine.Occupancy occupancy = room -> live[room];
+        RoomQueryEngine.Forecast forecast = (room, time) -> forecaster.forecast(room, now, live[room], time);
+
+        List<Integer> byLiveSeats = engine.find(new RoomQuery().sortByFreeSeats(), occupancy, null);
+        assertEquals(List.of(0, 1), byLiveSeats);
+        List<Integer> byArrival = engine.find(
+                new RoomQuery().sortByFreeSeatsOnArrival(52.9070, -1.1870, now), occupancy, forecast, null);
+        assertEquals(List.of(1, 0), byArrival);
+    }
+
+    // A campus of rooms with two weeks of hourly history, and live counts and arrival times for each
+    static final class Campus {
+        final int rooms;
+        final OccupancyForecaster forecaster;
+        final long now = START + 2 * WEEK + 10 * HOUR;
+        final int[] live;
+        final long[] arrivals;
+
+        Campus(int rooms, long seed) {
+            this.rooms = rooms;
+            forecaster = new OccupancyForecaster(rooms, UTC);
+            Random random = new Random(seed);
+            for (long time = START; time < START + 2 * WEEK; time += HOUR) {
+                int base = lectures(time);
+                for (int room = 0; room < rooms; room++) {
+                    forecaster.observe(room, time, base + random.nextInt(5));
+                }
+            }
+            live = new int[rooms];
+            arrivals = new long[rooms];
+            for (int room = 0; room < rooms; room++) {
+                live[room] = random.nextInt(40);
+                arrivals[room] = now + GeoUtils.walkingMillis(random.nextInt(1500));
+            }
+        }
+    }
+
+    @Test
+    public void scoresTheWholeCampusInOnePass() {
+        Campus campus = new Campus(5000, 5);
+        OccupancyForecaster forecaster = campus.forecaster;
+        int[] expected = new int[campus.rooms];
+        forecaster.forecastAll(campus.now, campus.live, campus.arrivals, expected);
+        for (int room = 0; room < campus.rooms; room += 97) {
+            assertEquals(forecaster.forecast(room, campus.now, campus.live[room], campus.arrivals[room]),
+                    expected[room]);
+        }
+    }
+}
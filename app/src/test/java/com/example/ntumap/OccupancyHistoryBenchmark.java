@@ -0,0 +1,34 @@
+package com.example.ntumap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Records 90 days of five-minute counts for 40 rooms, then times range
+ * queries over all of it at each resolution and reports the size on disk.
+ * Not part of the unit test run; start it from the IDE.
+ */
+public final class OccupancyHistoryBenchmark {
+
+    private static final int ROOMS = 40;
+    private static final int DAYS = 90;
+
+    public static void main(String[] args) throws IOException {
+        File directory = OccupancyHistoryTest.tempDirectory();
+        try (OccupancyHistory history = new OccupancyHistory(directory)) {
+            OccupancyHistoryTest.recordDays(history, ROOMS, DAYS, new Random(9));
+
+            // Warm up the JIT before timing
+            OccupancyHistoryTest.queryAll(history, ROOMS, DAYS);
+            long start = System.nanoTime();
+            long points = OccupancyHistoryTest.queryAll(history, ROOMS, DAYS);
+            double queryMs = (System.nanoTime() - start) / 1e6 / (ROOMS * 3);
+            double bytesPerPoint = (double) history.sizeOnDisk() / points;
+            System.out.printf("history: %.2f bytes/point, %.1f MB for a year of hours for 5000 rooms, %.3f ms/query%n",
+                    bytesPerPoint, bytesPerPoint * 5000 * 365 * 24 / 1e6, queryMs);
+        } finally {
+            OccupancyHistoryTest.deleteAll(directory);
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OccupancyHistoryTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+    // A Monday at midnight, UTC
+    private static final long START = 1_700_438_400_000L;
+
+    static File tempDirectory() throws IOException {
+        File directory = Files.createTempDirectory("history").toFile();
+        directory.deleteOnExit();
+        return directory;
+    }
+
+    static void deleteAll(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static List<Integer> counts(OccupancyHistory.Series series) {
+        List<Integer> counts = new ArrayList<>();
+        for (int i = 0; i < series.size(); i++) {
+            counts.add(series.getCount(i));
+        }
+        return counts;
+    }
+
+    @Test
+    public void chunksRoundTrip() {
+        Random random = new Random(3);
+        for (int round = 0; round < 50; round++) {
+            int n = 1 + random.nextInt(300);
+            long[] times = new long[n];
+            int[] counts = new int[n];
+            times[0] = random.nextInt(1_000_000);
+            for (int i = 1; i < n; i++) {
+                // Mostly regular, with the odd gap
+                times[i] = times[i - 1] + (random.nextInt(10) == 0 ? 1 + random.nextInt(5000) : 1);
+            }
+            for (int i = 0; i < n; i++) {
+                counts[i] = random.nextInt(10) == 0 ? random.nextInt(100_000) : random.nextInt(40);
+            }
+            byte[] chunk = SeriesChunk.encode(times, counts, n);
+
+            List<long[]> decoded = new ArrayList<>();
+            SeriesChunk.decode(chunk, Long.MIN_VALUE, Long.MAX_VALUE, (time, count) -> decoded.add(new long[]{time, count}));
+            assertEquals(n, decoded.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(times[i], decoded.get(i)[0]);
+                assertEquals(counts[i], decoded.get(i)[1]);
+            }
+        }
+    }
+
+    @Test
+    public void rollsUpTimeWeightedAverages() throws IOException {
+        File directory = tempDirectory();
+        try (OccupancyHistory history = new OccupancyHistory(directory)) {
+            history.record(7, START, 10);
+            history.record(7, START + 30 * MINUTE, 20);
+            history.record(7, START + 90 * MINUTE + 30_000, 0);
+            history.advanceTo(START + 3 * HOUR);
+
+            OccupancyHistory.Series hours = history.query(7, OccupancyHistory.HOUR, START, START + 3 * HOUR);
+            // The bucket still being filled at the end isn't reported
+            assertEquals(3, hours.size());
+            assertEquals(START + HOUR, hours.getTime(1));
+            assertEquals(List.of(15, 10, 0), counts(hours));
+
+            OccupancyHistory.Series quarters = history.query(7, OccupancyHistory.QUARTER_HOUR, START, START + 2 * HOUR);
+            assertEquals(List.of(10, 10, 20, 20, 20, 20, 1, 0, 0), counts(quarters));
+
+            // The minute in which the room emptied averages the two counts
+            OccupancyHistory.Series minutes = history.query(7, OccupancyHistory.MINUTE,
+                    START + 89 * MINUTE, START + 91 * MINUTE);
+            assertEquals(List.of(20, 10, 0), counts(minutes));
+            assertEquals(0, history.query(8, OccupancyHistory.HOUR, START, START + DAY).size());
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void survivesRestartsAndTornWrites() throws IOException {
+        File directory = tempDirectory();
+        try {
+            try (OccupancyHistory history = new OccupancyHistory(directory)) {
+                for (int hour = 0; hour < 10; hour++) {
+                    history.record(1, START + hour * HOUR, hour);
+                }
+            }
+            // A crash in the middle of appending a record leaves junk at the end of a file
+            File[] files = directory.listFiles();
+            assertNotNull(files);
+            try (FileOutputStream out = new FileOutputStream(files[0], true)) {
+                out.write(new byte[]{1, (byte) 0x80});
+            }
+
+            try (OccupancyHistory history = new OccupancyHistory(directory)) {
+                assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8),
+                        counts(history.query(1, OccupancyHistory.HOUR, START, START + DAY)));
+                // Picking up part way through an hour averages over the part that was recorded,
+                // and buckets already on disk aren't repeated
+                history.record(1, START + 9 * HOUR + 30 * MINUTE, 4);
+                history.advanceTo(START + 11 * HOUR);
+                assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 4, 4),
+                        counts(history.query(1, OccupancyHistory.HOUR, START, START + DAY)));
+            }
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    @Test
+    public void expiredSegmentsAreDeleted() throws IOException {
+        File directory = tempDirectory();
+        try (OccupancyHistory history = new OccupancyHistory(directory)) {
+            for (long time = START; time < START + 10 * DAY; time += HOUR) {
+                history.record(3, time, (int) ((time - START) / HOUR % 24));
+            }
+            history.flush();
+
+            long end = START + 10 * DAY;
+            OccupancyHistory.Series minutes = history.query(3, OccupancyHistory.MINUTE, START, end);
+            assertTrue(minutes.getTime(0) >= end - 3 * DAY);
+            assertTrue(minutes.getTime(0) <= end - 2 * DAY);
+            // Hours are kept much longer
+            assertEquals(10 * 24 - 1, history.query(3, OccupancyHistory.HOUR, START, end).size());
+
+            int minuteFiles = 0;
+            for (String name : directory.list()) {
+                if (name.startsWith(OccupancyHistory.MINUTE + "-")) {
+                    minuteFiles++;
+                }
+            }
+            assertEquals(3, minuteFiles);
+        } finally {
+            deleteAll(directory);
+        }
+    }
+
+    // Counts change every few minutes in the daytime and sit at zero overnight
+    static void recordDays(OccupancyHistory history, int rooms, int days, Random random) throws IOException {
+        for (long time = START; time < START + days * DAY; time += 5 * MINUTE) {
+            int hour = (int) ((time - START) / HOUR % 24);
+            for (int room = 0; room < rooms; room++) {
+                int busy = hour >= 8 && hour < 20 ? 20 + random.nextInt(30) : 0;
+                history.record(room, time, busy);
+            }
+        }
+        history.flush();
+    }
+
+    // Points in every resolution of every room over the days recorded
+    static long queryAll(OccupancyHistory history, int rooms, int days) throws IOException {
+        long end = START + days * DAY;
+        long points = 0;
+        for (int room = 0; room < rooms; room++) {
+            points += history.query(room, OccupancyHistory.HOUR, START, end).size();
+            points += history.query(room, OccupancyHistory.QUARTER_HOUR, START, end).size();
+            points += history.query(room, OccupancyHistory.MINUTE, START, end).size();
+        }
+        return points;
+    }
+
+    @Test
+    public void monthsOfHistoryAreCompact() throws IOException {
+        File directory = tempDirectory();
+        int rooms = 40;
+        int days = 90;
+        try (OccupancyHistory history = new OccupancyHistory(directory)) {
+            recordDays(history, rooms, days, new Random(9));
+            double bytesPerPoint = (double) history.sizeOnDisk() / queryAll(history, rooms, days);
+            assertTrue(bytesPerPoint < 1.5);
+
+            // Weekday noon is busy, 3 a.m. is empty
+            OccupancyHistory.Series noon = history.query(5, OccupancyHistory.HOUR, START + 12 * HOUR, START + 12 * HOUR);
+            assertTrue(noon.getCount(0) >= 20);
+            OccupancyHistory.Series night = history.query(5, OccupancyHistory.HOUR, START + 3 * HOUR, START + 3 * HOUR);
+            assertEquals(0, night.getCount(0));
+        } finally {
+            deleteAll(directory);
+        }
+    }
+}
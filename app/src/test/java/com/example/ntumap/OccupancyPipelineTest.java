@@ -0,0 +1,170 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class OccupancyPipelineTest {
+
+    // Frames only run when the test says so
+    private static class ManualFrameScheduler implements FrameScheduler {
+        final List<Runnable> pending = new ArrayList<>();
+
+        @Override
+        public synchronized void scheduleFrame(Runnable task) {
+            pending.add(task);
+        }
+
+        synchronized void runFrame() {
+            List<Runnable> tasks = new ArrayList<>(pending);
+            pending.clear();
+            for (Runnable task : tasks) {
+                task.run();
+            }
+        }
+    }
+
+    private static List<OccupancyDelta> recording() throws IOException {
+        // Unit tests run from the module directory
+        try (InputStream in = new FileInputStream("src/main/assets/" + CampusData.OCCUPANCY_REPLAY_ASSET)) {
+            return ReplayOccupancyFeed.parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void burstIsCoalescedIntoOneFrame() {
+        ManualFrameScheduler frames = new ManualFrameScheduler();
+        List<Map<String, Integer>> updates = new ArrayList<>();
+        OccupancyPipeline pipeline = new OccupancyPipeline(new OccupancyStore(), frames, updates::add);
+
+        for (int i = 0; i < 1000; i++) {
+            pipeline.onDeltas(Arrays.asList(
+                    new OccupancyDelta("Library", 1, i),
+                    new OccupancyDelta("Gym", i % 2 == 0 ? 1 : -1, i)));
+        }
+        assertEquals(1, frames.pending.size());
+        assertTrue(updates.isEmpty());
+
+        frames.runFrame();
+        assertEquals(1, updates.size());
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("Library", 1000);
+        expected.put("Gym", 0);
+        assertEquals(expected, updates.get(0));
+
+        // Nothing changed, so no frame is requested
+        frames.runFrame();
+        assertEquals(1, updates.size());
+
+        pipeline.onDeltas(Arrays.asList(new OccupancyDelta("Gym", 3, 2000)));
+        frames.runFrame();
+        assertEquals(2, updates.size());
+        assertEquals(Integer.valueOf(3), updates.get(1).get("Gym"));
+        assertEquals(1, updates.get(1).size());
+    }
+
+    @Test
+    public void countsNeverGoNegative() {
+        OccupancyStore store = new OccupancyStore();
+        store.set("Room A", 2);
+        assertEquals(0, store.apply("Room A", -5));
+        assertEquals(1, store.apply("Room A", 1));
+        assertEquals(0, store.get("Unknown room"));
+    }
+
+    @Test
+    public void parsesEventFiles() throws IOException {
+        List<OccupancyDelta> events = ReplayOccupancyFeed.parse(new StringReader(
+                "# timestamp_ms,room_id,change\n\n10,Library,1\n12, Computer Lab ,-2\n"));
+        assertEquals(2, events.size());
+        assertEquals("Computer Lab", events.get(1).getRoomId());
+        assertEquals(-2, events.get(1).getChange());
+        assertEquals(12, events.get(1).getTimestampMillis());
+
+        try {
+            ReplayOccupancyFeed.parse(new StringReader("10,Library\n"));
+            fail("Expected a parse error");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("line 1"));
+        }
+        try {
+            ReplayOccupancyFeed.parse(new StringReader("10,Library,1\n9,Library,-1\n"));
+            fail("Expected an ordering error");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("line 2"));
+        }
+    }
+
+    @Test
+    public void loopedRecordingReturnsToTheOpeningCounts() throws Exception {
+        CampusPackTest.useAssetPack();
+        OccupancyStore store = new OccupancyStore();
+        RoomTable rooms = CampusData.getRooms();
+        for (int room = 0; room < rooms.size(); room++) {
+            if (rooms.hasFlag(room, RoomTable.TRACKED)) {
+                store.set(rooms.getName(room), rooms.getInitialOccupancy(room));
+            }
+        }
+        Map<String, Integer> opening = store.snapshot();
+
+        OccupancyPipeline pipeline = new OccupancyPipeline(store, Runnable::run, changed -> { });
+        ReplayOccupancyFeed feed = new ReplayOccupancyFeed(recording(), Double.POSITIVE_INFINITY, true);
+        for (int pass = 0; pass < 2; pass++) {
+            feed.replay(pipeline);
+            assertEquals(opening, store.snapshot());
+        }
+    }
+
+    @Test
+    public void replayedRecordingMatchesSequentialSum() throws Exception {
+        List<OccupancyDelta> events = recording();
+        assertTrue(events.size() > 5000);
+
+        // Seed high enough that clamping at zero never kicks in
+        Map<String, Integer> expected = new HashMap<>();
+        OccupancyStore store = new OccupancyStore();
+        for (OccupancyDelta event : events) {
+            if (!expected.containsKey(event.getRoomId())) {
+                expected.put(event.getRoomId(), 10000);
+                store.set(event.getRoomId(), 10000);
+            }
+            expected.put(event.getRoomId(), expected.get(event.getRoomId()) + event.getChange());
+        }
+
+        // Replay on this thread while frames run on a separate "UI" thread, as on a device
+        ExecutorService ui = Executors.newSingleThreadExecutor();
+        AtomicInteger frameCount = new AtomicInteger();
+        Map<String, Integer> displayed = new HashMap<>();
+        OccupancyPipeline pipeline = new OccupancyPipeline(store, ui::execute, changed -> {
+            frameCount.incrementAndGet();
+            displayed.putAll(changed);
+        });
+
+        ReplayOccupancyFeed feed = new ReplayOccupancyFeed(events, 2000, false);
+        feed.replay(pipeline);
+        ui.submit(() -> { }).get();
+        ui.shutdown();
+        assertTrue(ui.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(events.size(), pipeline.getEventCount());
+        assertEquals(expected, store.snapshot());
+        assertEquals(expected, displayed);
+        assertTrue(frameCount.get() < events.size());
+    }
+}
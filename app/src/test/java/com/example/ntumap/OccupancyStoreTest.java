@@ -0,0 +1,194 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Stress tests in the spirit of jcstress: many writers hammer the store
+ * concurrently and the final and observed states are checked.
+ */
+public class OccupancyStoreTest {
+
+    private static final int WRITERS = 8;
+    private static final int ROOMS = 300; // more than one chunk
+    private static final int OPERATIONS = 100000;
+
+    // Runs the tasks on their own threads, all released at once
+    private static <T> List<T> runConcurrently(List<Callable<T>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (Callable<T> task : tasks) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return task.call();
+            }));
+        }
+        start.countDown();
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get(60, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        return results;
+    }
+
+    @Test
+    public void noLostUpdatesUnderEightWriters() throws Exception {
+        OccupancyStore store = new OccupancyStore();
+        for (int room = 0; room < ROOMS; room++) {
+            store.set("Room " + room, 1000000);
+        }
+
+        List<Callable<long[]>> writers = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            long seed = w;
+            writers.add(() -> {
+                // Each writer mixes single updates and batches, and remembers what it added
+                Random random = new Random(seed);
+                long[] added = new long[ROOMS];
+                int[] ids = new int[4];
+                int[] changes = new int[4];
+                for (int op = 0; op < OPERATIONS; op++) {
+                    if (op % 4 == 0) {
+                        for (int i = 0; i < ids.length; i++) {
+                            int room = random.nextInt(ROOMS);
+                            ids[i] = store.intern("Room " + room);
+                            changes[i] = random.nextInt(5) - 2;
+                            added[room] += changes[i];
+                        }
+                        store.applyAll(ids, changes, ids.length);
+                    } else {
+                        int room = random.nextInt(ROOMS);
+                        int change = random.nextInt(5) - 2;
+                        store.apply("Room " + room, change);
+                        added[room] += change;
+                    }
+                }
+                return added;
+            });
+        }
+
+        long[] expected = new long[ROOMS];
+        for (long[] added : runConcurrently(writers)) {
+            for (int room = 0; room < ROOMS; room++) {
+                expected[room] += added[room];
+            }
+        }
+        for (int room = 0; room < ROOMS; room++) {
+            assertEquals("Room " + room, 1000000 + expected[room], store.get("Room " + room));
+        }
+        // One write per set, apply and applyAll
+        assertEquals(ROOMS + (long) WRITERS * OPERATIONS, store.version());
+    }
+
+    @Test
+    public void snapshotsNeverSeeHalfATransfer() throws Exception {
+        OccupancyStore store = new OccupancyStore();
+        for (int room = 0; room < ROOMS; room++) {
+            store.set("Room " + room, 1000000);
+        }
+        long total = 1000000L * ROOMS;
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            long seed = w;
+            tasks.add(() -> {
+                // Move people between rooms: the campus total never changes
+                Random random = new Random(seed);
+                int[] ids = new int[2];
+                int[] changes = {-1, 1};
+                for (int op = 0; op < OPERATIONS; op++) {
+                    ids[0] = random.nextInt(ROOMS);
+                    ids[1] = random.nextInt(ROOMS);
+                    store.applyAll(ids, changes, 2);
+                }
+                return 0;
+            });
+        }
+        tasks.add(() -> {
+            int consistent = 0;
+            int[] counts = new int[ROOMS];
+            while (true) {
+                // One last snapshot after the writers finish, which must succeed
+                boolean last = !writing.get();
+                if (store.snapshot(counts)) {
+                    long sum = 0;
+                    for (int count : counts) {
+                        sum += count;
+                    }
+                    assertEquals(total, sum);
+                    consistent++;
+                } else {
+                    assertFalse(last);
+                }
+                if (last) {
+                    return consistent;
+                }
+            }
+        });
+
+        // The reader stops once every write has landed
+        ExecutorService watcher = Executors.newSingleThreadExecutor();
+        Future<List<Integer>> results = watcher.submit(() -> runConcurrently(tasks));
+        while (!results.isDone()) {
+            if (store.version() >= ROOMS + (long) WRITERS * OPERATIONS) {
+                writing.set(false);
+            }
+            Thread.sleep(1);
+        }
+        watcher.shutdown();
+        List<Integer> counts = results.get();
+        assertTrue(counts.get(WRITERS) > 0);
+
+        int[] finalCounts = new int[ROOMS];
+        assertTrue(store.snapshot(finalCounts));
+        long sum = 0;
+        for (int count : finalCounts) {
+            sum += count;
+        }
+        assertEquals(total, sum);
+    }
+
+    @Test
+    public void internIsStableAcrossThreads() throws Exception {
+        OccupancyStore store = new OccupancyStore();
+        List<Callable<int[]>> tasks = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            boolean reverse = w % 2 == 1;
+            tasks.add(() -> {
+                int[] ids = new int[1000];
+                for (int i = 0; i < ids.length; i++) {
+                    int room = reverse ? ids.length - 1 - i : i;
+                    ids[room] = store.intern("Room " + room);
+                }
+                return ids;
+            });
+        }
+        List<int[]> results = runConcurrently(tasks);
+        boolean[] seen = new boolean[1000];
+        for (int room = 0; room < 1000; room++) {
+            int id = results.get(0)[room];
+            for (int[] ids : results) {
+                assertEquals(id, ids[room]);
+            }
+            assertFalse(seen[id]);
+            seen[id] = true;
+            assertEquals("Room " + room, store.roomName(id));
+        }
+        assertEquals(1000, store.roomCount());
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.ntumap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PoiIndexTest {
+
+    // Three campuses a few kilometres apart
+    private static final double[][] CAMPUS_CENTRES = {
+        {52.9068, -1.1878}, {52.9580, -1.1580}, {53.0180, -1.1050}
+    };
+
+    @BeforeClass
+    public static void useCampusPack() {
+        CampusPackTest.useAssetPack();
+    }
+
+    private static List<Poi> randomPois(int count, long seed) {
+        Random random = new Random(seed);
+        Poi.Category[] categories = Poi.Category.values();
+        List<Poi> pois = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            double[] centre = CAMPUS_CENTRES[random.nextInt(CAMPUS_CENTRES.length)];
+            pois.add(new Poi(i, "POI " + i, categories[random.nextInt(categories.length)],
+                    centre[0] + (random.nextDouble() - 0.5) * 0.01,
+                    centre[1] + (random.nextDouble() - 0.5) * 0.015));
+        }
+        return pois;
+    }
+
+    @Test
+    public void nearestMatchesBruteForce() {
+        List<Poi> pois = randomPois(20000, 1);
+        PoiIndex index = new PoiIndex(pois);
+        Random random = new Random(2);
+        for (int query = 0; query < 100; query++) {
+            double[] centre = CAMPUS_CENTRES[random.nextInt(CAMPUS_CENTRES.length)];
+            double lat = centre[0] + (random.nextDouble() - 0.5) * 0.02;
+            double lng = centre[1] + (random.nextDouble() - 0.5) * 0.02;
+            int mask = query % 2 == 0 ? PoiIndex.ALL : Poi.Category.EMERGENCY_EXIT.mask();
+
+            List<Poi> expected = new ArrayList<>();
+            for (Poi poi : pois) {
+                if ((poi.getCategory().mask() & mask) != 0) expected.add(poi);
+            }
+            expected.sort(Comparator.comparingDouble(
+                    p -> index.distanceMeters(lat, lng, p.getLatitude(), p.getLongitude())));
+
+            List<Poi> actual = index.nearest(lat, lng, 8, mask);
+            assertEquals(8, actual.size());
+            for (int i = 0; i < actual.size(); i++) {
+                assertEquals(distance(index, lat, lng, expected.get(i)), distance(index, lat, lng, actual.get(i)), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void radiusAndBoundsMatchBruteForce() {
+        List<Poi> pois = randomPois(5000, 3);
+        PoiIndex index = new PoiIndex(pois);
+        double lat = 52.9068;
+        double lng = -1.1878;
+
+        List<Poi> inRadius = index.withinRadius(lat, lng, 150, PoiIndex.ALL);
+        Set<Integer> expectedRadius = new HashSet<>();
+        for (Poi poi : pois) {
+            if (distance(index, lat, lng, poi) <= 150) expectedRadius.add(poi.getId());
+        }
+        assertEquals(expectedRadius, ids(inRadius));
+        for (int i = 1; i < inRadius.size(); i++) {
+            assertTrue(distance(index, lat, lng, inRadius.get(i - 1)) <= distance(index, lat, lng, inRadius.get(i)));
+        }
+
+        int mask = Poi.Category.ROOM.mask() | Poi.Category.SAFE_SPACE.mask();
+        List<Poi> inBounds = index.inBounds(52.905, -1.190, 52.908, -1.186, mask);
+        Set<Integer> expectedBounds = new HashSet<>();
+        for (Poi poi : pois) {
+            if ((poi.getCategory().mask() & mask) != 0
+                    && poi.getLatitude() >= 52.905 && poi.getLatitude() <= 52.908
+                    && poi.getLongitude() >= -1.190 && poi.getLongitude() <= -1.186) {
+                expectedBounds.add(poi.getId());
+            }
+        }
+        assertFalse(expectedBounds.isEmpty());
+        assertEquals(expectedBounds, ids(inBounds));
+    }
+
+    @Test
+    public void onlyTreeNodesAreStored() {
+        for (int n : new int[]{1, 16, 17, 300, 20000}) {
+            // Each level packs the one below into nodes of up to 16
+            int expected = 0;
+            int level = n;
+            do {
+                level = (level + 15) / 16;
+                expected += level;
+            } while (level > 1);
+            assertEquals(expected, new PoiIndex(randomPois(n, n)).nodeCount());
+        }
+    }
+
+    @Test
+    public void emptyIndexReturnsNothing() {
+        PoiIndex index = new PoiIndex(new ArrayList<>());
+
+        assertTrue(index.nearest(52.9, -1.18, 3, PoiIndex.ALL).isEmpty());
+        assertTrue(index.withinRadius(52.9, -1.18, 1000, PoiIndex.ALL).isEmpty());
+        assertTrue(index.inBounds(52, -2, 53, -1, PoiIndex.ALL).isEmpty());
+    }
+
+    @Test
+    public void campusNearestExitIsClosestExit() {
+        PoiIndex index = CampusData.getPoiIndex();
+        Poi exit = index.nearest(52.9064, -1.1873, 1, Poi.Category.EMERGENCY_EXIT.mask()).get(0);
+
+        assertEquals("Gym Exit", exit.getName());
+    }
+
+    private static double distance(PoiIndex index, double lat, double lng, Poi poi) {
+        return index.distanceMeters(lat, lng, poi.getLatitude(), poi.getLongitude());
+    }
+
+    private static Set<Integer> ids(List<Poi> pois) {
+        Set<Integer> ids = new HashSet<>();
+        for (Poi poi : pois) ids.add(poi.getId());
+        return ids;
+    }
+}
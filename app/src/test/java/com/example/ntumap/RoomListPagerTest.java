@@ -0,0 +1,77 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RoomListPagerTest {
+
+    private static RoomTable rooms(int count) {
+        RoomTable.Builder builder = new RoomTable.Builder();
+        for (int room = 0; room < count; room++) {
+            builder.add("Room " + room, "Study Space", -1, 10, room % 11, RoomTable.BOOKABLE);
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void loadsResultsOnePageAtATime() {
+        RoomTable rooms = rooms(120);
+        List<Integer> rows = new ArrayList<>();
+        for (int room = 119; room >= 0; room -= 2) {
+            rows.add(room);
+        }
+        RoomListPager pager = new RoomListPager(rooms, 25);
+
+        List<RoomListItem> first = pager.setRows(rows, rooms::getInitialOccupancy);
+        assertEquals(25, first.size());
+        assertEquals(60, pager.getTotal());
+        assertEquals(119, first.get(0).getRow());
+        assertTrue(pager.hasMore());
+
+        List<RoomListItem> second = pager.loadMore(rooms::getInitialOccupancy);
+        assertEquals(50, second.size());
+        // Earlier pages are handed back as the same items, so their cached labels survive
+        assertSame(first.get(24), second.get(24));
+        assertEquals(60, pager.loadMore(rooms::getInitialOccupancy).size());
+        assertFalse(pager.hasMore());
+        assertEquals(60, pager.loadMore(rooms::getInitialOccupancy).size());
+
+        // New results start again from their first page
+        assertEquals(Arrays.asList(3, 4), rowsOf(pager.setRows(Arrays.asList(3, 4), rooms::getInitialOccupancy)));
+    }
+
+    @Test
+    public void refreshOnlyReplacesChangedRooms() {
+        RoomTable rooms = rooms(5);
+        RoomListPager pager = new RoomListPager(rooms, 10);
+        List<RoomListItem> before = pager.setRows(Arrays.asList(0, 1, 2, 3, 4), rooms::getInitialOccupancy);
+        String label = before.get(1).getLabel();
+        assertEquals("Room 1 (1/10) - Study Space", label);
+        assertSame(label, before.get(1).getLabel());
+
+        List<RoomListItem> after = pager.refresh(room -> room == 3 ? 10 : rooms.getInitialOccupancy(room));
+        assertNotSame(before, after);
+        assertSame(before.get(1), after.get(1));
+        assertNotSame(before.get(3), after.get(3));
+
+        // Same room, new contents: the diff rebinds the row instead of moving it
+        assertEquals(before.get(3).getItemId(), after.get(3).getItemId());
+        assertNotEquals(before.get(3), after.get(3));
+        assertFalse(after.get(3).isAvailable());
+        assertEquals(RoomListItem.FULL_COLOR, after.get(3).getTextColor());
+        assertEquals(RoomListItem.AVAILABLE_COLOR, after.get(2).getTextColor());
+    }
+
+    private static List<Integer> rowsOf(List<RoomListItem> items) {
+        List<Integer> rows = new ArrayList<>();
+        for (RoomListItem item : items) {
+            rows.add(item.getRow());
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.ntumap;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times random filter queries over 50k rooms. Not part of the unit test
+ * run; start it from the IDE.
+ */
+public final class RoomQueryEngineBenchmark {
+
+    private static final int QUERIES = 200;
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(5);
+        RoomTable rooms = RoomQueryEngineTest.randomRooms(50000, random);
+        RoomQueryEngine engine = new RoomQueryEngine(rooms, new PoiIndex(Collections.emptyList()));
+        RoomQueryEngine.Occupancy occupancy = rooms::getInitialOccupancy;
+        List<RoomQuery> queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            queries.add(RoomQueryEngineTest.randomQuery(random));
+        }
+
+        // Warm up the JIT before timing
+        for (int warmup = 0; warmup < 5; warmup++) {
+            for (RoomQuery query : queries) {
+                engine.find(query, occupancy, null);
+            }
+        }
+        long start = System.nanoTime();
+        for (RoomQuery query : queries) {
+            engine.find(query, occupancy, null);
+        }
+        double averageMs = (System.nanoTime() - start) / 1e6 / queries.size();
+        System.out.printf("room query over %d rooms: %.3f ms%n", rooms.size(), averageMs);
+    }
+}
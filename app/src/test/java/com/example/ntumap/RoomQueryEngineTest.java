@@ -0,0 +1,214 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RoomQueryEngineTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+    private static final long DAY_START = 1_700_000_000_000L;
+
+    private static final String[] TYPES = {"Lecture Hall", "Study Space", "Lab", "Group Study", "Meeting"};
+    private static final String[] BUILDINGS = {"Main Building", "Library", "Technology Building", "Business School"};
+
+    private static RoomBitmap randomBitmap(Random random, BitSet expected, int count, int bound) {
+        RoomBitmap.Builder builder = new RoomBitmap.Builder();
+        for (int i = 0; i < count; i++) {
+            int value = random.nextInt(bound);
+            builder.add(value);
+            expected.set(value);
+        }
+        return builder.build();
+    }
+
+    private static void assertSameSet(BitSet expected, RoomBitmap actual) {
+        assertArrayEquals(expected.stream().toArray(), actual.toArray());
+        assertEquals(expected.cardinality(), actual.cardinality());
+    }
+
+    @Test
+    public void bitmapMatchesBitSet() {
+        Random random = new Random(11);
+        for (int round = 0; round < 20; round++) {
+            // Alternate sparse sets (array containers) with dense ones (bitmap containers)
+            int count = round % 2 == 0 ? 3000 : 150000;
+            BitSet a = new BitSet();
+            BitSet b = new BitSet();
+            RoomBitmap x = randomBitmap(random, a, count, 200000);
+            RoomBitmap y = randomBitmap(random, b, 3000 + random.nextInt(count), 200000);
+            assertSameSet(a, x);
+
+            BitSet and = (BitSet) a.clone();
+            and.and(b);
+            assertSameSet(and, x.and(y));
+            BitSet or = (BitSet) a.clone();
+            or.or(b);
+            assertSameSet(or, x.or(y));
+            BitSet andNot = (BitSet) a.clone();
+            andNot.andNot(b);
+            assertSameSet(andNot, x.andNot(y));
+
+            for (int probe = 0; probe < 1000; probe++) {
+                int value = random.nextInt(210000);
+                assertEquals(a.get(value), x.contains(value));
+            }
+        }
+        assertTrue(RoomBitmap.range(5, 5).isEmpty());
+        assertArrayEquals(new int[]{1, 3, 70000}, RoomBitmap.of(70000, 3, 1, 3).toArray());
+    }
+
+    private static PoiIndex campusPois() {
+        return new PoiIndex(Arrays.asList(
+                new Poi(0, "Library", Poi.Category.ROOM, 52.9070, -1.1870),
+                new Poi(1, "Main Building", Poi.Category.ROOM, 52.9060, -1.1890),
+                new Poi(2, "Technology Building", Poi.Category.ROOM, 52.9100, -1.1850)));
+    }
+
+    private static RoomTable campusRooms() {
+        return new RoomTable.Builder()
+                .add("Library", "Study Space", 0, 200, 150, RoomTable.TRACKED | RoomTable.STEP_FREE)
+                .setPlace("Library", 0)
+                .add("Study Room A", "Study Space", -1, 6, 6, RoomTable.BOOKABLE)
+                .setPlace("Library", 1)
+                .add("Seminar Room", "Group Study", -1, 12, 3, RoomTable.BOOKABLE | RoomTable.STEP_FREE)
+                .setPlace("Main Building", 2)
+                .add("Meeting Room", "Meeting", -1, 10, 0,
+                        RoomTable.BOOKABLE | RoomTable.STEP_FREE | RoomTable.HEARING_LOOP)
+                .setPlace("Technology Building", 0)
+                .add("Quiet Pod", "Study Space", -1, 2, 0, RoomTable.BOOKABLE)
+                .setPlace("Annexe", 0)
+                .build();
+    }
+
+    @Test
+    public void combinesCriteria() throws IOException {
+        RoomTable rooms = campusRooms();
+        RoomQueryEngine engine = new RoomQueryEngine(rooms, campusPois());
+        RoomQueryEngine.Occupancy occupancy = rooms::getInitialOccupancy;
+
+        assertEquals(Arrays.asList(0, 1, 4), engine.find(new RoomQuery().types("Study Space"), null, null));
+        assertEquals(Arrays.asList(1, 4),
+                engine.find(new RoomQuery().types("Study Space").withFlags(RoomTable.BOOKABLE), null, null));
+        assertEquals(Arrays.asList(2, 3),
+                engine.find(new RoomQuery().withFlags(RoomTable.BOOKABLE | RoomTable.STEP_FREE), null, null));
+        assertEquals(Arrays.asList(1, 2, 3), engine.find(new RoomQuery().capacityBetween(6, 12), null, null));
+        assertEquals(Arrays.asList(0, 1), engine.find(new RoomQuery().buildings("Library"), null, null));
+        assertEquals(Arrays.asList(0, 3, 4), engine.find(new RoomQuery().floors(0), null, null));
+        assertEquals(Collections.emptyList(), engine.find(new RoomQuery().types("Observatory"), null, null));
+
+        // Study Room A is full, so only rooms with a seat left remain
+        assertEquals(Arrays.asList(2, 3, 4),
+                engine.find(new RoomQuery().withFlags(RoomTable.BOOKABLE).minFreeSeats(1), occupancy, null));
+        assertEquals(Arrays.asList(2, 3),
+                engine.find(new RoomQuery().withFlags(RoomTable.BOOKABLE).minFreeSeats(9), occupancy, null));
+
+        // A reservation takes the meeting room out of the afternoon window only
+        BookingEngine bookings = new BookingEngine(new LocalBookingServer(rooms.size(), 0), rooms);
+        assertEquals(BookingServer.Status.OK,
+                bookings.book(3, DAY_START + 14 * HOUR, DAY_START + 15 * HOUR).getStatus());
+        RoomQuery afternoon = new RoomQuery().withFlags(RoomTable.STEP_FREE | RoomTable.BOOKABLE)
+                .freeBetween(DAY_START + 14 * HOUR, DAY_START + 16 * HOUR);
+        assertEquals(Collections.singletonList(2), engine.find(afternoon, null, bookings));
+        RoomQuery morning = new RoomQuery().withFlags(RoomTable.STEP_FREE | RoomTable.BOOKABLE)
+                .freeBetween(DAY_START + 9 * HOUR, DAY_START + 10 * HOUR);
+        assertEquals(Arrays.asList(2, 3), engine.find(morning, null, bookings));
+    }
+
+    @Test
+    public void sortsByDistanceAndFreeSeats() throws IOException {
+        RoomTable rooms = campusRooms();
+        RoomQueryEngine engine = new RoomQueryEngine(rooms, campusPois());
+
+        // Rooms without a marker of their own sit at their building's; the Annexe has none and comes last
+        assertEquals(Arrays.asList(3, 0, 1, 2, 4),
+                engine.find(new RoomQuery().sortByDistanceFrom(52.9101, -1.1851), null, null));
+        assertEquals(Arrays.asList(3, 0),
+                engine.find(new RoomQuery().sortByDistanceFrom(52.9101, -1.1851).limit(2), null, null));
+
+        assertEquals(Arrays.asList(0, 3, 2, 4, 1),
+                engine.find(new RoomQuery().sortByFreeSeats(), rooms::getInitialOccupancy, null));
+    }
+
+    static RoomTable randomRooms(int count, Random random) {
+        RoomTable.Builder builder = new RoomTable.Builder();
+        for (int room = 0; room < count; room++) {
+            int capacity = 1 + random.nextInt(random.nextBoolean() ? 20 : 400);
+            builder.add("Room " + room, TYPES[random.nextInt(TYPES.length)], -1, capacity,
+                    random.nextInt(capacity + 1), random.nextInt(32))
+                    .setPlace(BUILDINGS[random.nextInt(BUILDINGS.length)], random.nextInt(6));
+        }
+        return builder.build();
+    }
+
+    static RoomQuery randomQuery(Random random) {
+        RoomQuery query = new RoomQuery();
+        if (random.nextBoolean()) {
+            query.types(TYPES[random.nextInt(TYPES.length)], TYPES[random.nextInt(TYPES.length)]);
+        }
+        if (random.nextBoolean()) {
+            query.buildings(BUILDINGS[random.nextInt(BUILDINGS.length)]);
+        }
+        if (random.nextBoolean()) {
+            query.floors(random.nextInt(6), random.nextInt(6));
+        }
+        query.withFlags(random.nextInt(32) & random.nextInt(32));
+        if (random.nextBoolean()) {
+            int min = random.nextInt(300);
+            query.capacityBetween(min, min + random.nextInt(200));
+        }
+        if (random.nextBoolean()) {
+            query.minFreeSeats(random.nextInt(50));
+        }
+        return query;
+    }
+
+    private static boolean matches(RoomTable rooms, int room, RoomQuery query) {
+        int capacity = rooms.getCapacity(room);
+        return (query.types == null || query.types.contains(rooms.getType(room)))
+                && (query.buildings == null || query.buildings.contains(rooms.getBuilding(room)))
+                && (query.floors == null || query.floors.contains(rooms.getFloor(room)))
+                && hasAllFlags(rooms, room, query.requiredFlags)
+                && capacity >= query.minCapacity && capacity <= query.maxCapacity
+                && (!query.needsOccupancy() || capacity - rooms.getInitialOccupancy(room) >= query.minFreeSeats);
+    }
+
+    private static boolean hasAllFlags(RoomTable rooms, int room, int flags) {
+        for (int bit = 0; bit < 32; bit++) {
+            if ((flags & (1 << bit)) != 0 && !rooms.hasFlag(room, 1 << bit)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Test
+    public void fiftyThousandRoomQueriesMatchBruteForce() throws IOException {
+        Random random = new Random(5);
+        RoomTable rooms = randomRooms(50000, random);
+        RoomQueryEngine engine = new RoomQueryEngine(rooms, new PoiIndex(Collections.emptyList()));
+        RoomQueryEngine.Occupancy occupancy = rooms::getInitialOccupancy;
+
+        List<RoomQuery> queries = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            queries.add(randomQuery(random));
+        }
+        for (RoomQuery query : queries) {
+            List<Integer> expected = new ArrayList<>();
+            for (int room = 0; room < rooms.size(); room++) {
+                if (matches(rooms, room, query)) {
+                    expected.add(room);
+                }
+            }
+            assertEquals(expected, engine.find(query, occupancy, null));
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RoutingProfileTest {
+
+    private static final double LAT = 52.9068;
+    private static final double LNG = -1.1878;
+    private static final double STEP = 0.0003;
+
+    // Two ways from a to d: a short flight of stairs over b, or round by c through a covered walkway
+    private static CampusGraph twoWays(int roundFlags) {
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+        int a = builder.addNode(LAT, LNG);
+        int b = builder.addNode(LAT + STEP, LNG + STEP);
+        int c = builder.addNode(LAT - STEP, LNG + STEP);
+        int d = builder.addNode(LAT, LNG + 2 * STEP);
+        builder.addWalkway(a, b, 40);
+        builder.addWalkway(b, d, 40, CampusGraph.STAIRS);
+        builder.addWalkway(a, c, 50, roundFlags);
+        builder.addWalkway(c, d, 50, roundFlags);
+        return builder.build();
+    }
+
+    @Test
+    public void costsFollowTheEdgeFlags() {
+        CampusGraph graph = twoWays(CampusGraph.STEEP);
+        int stairs = graph.findEdge(1, 3);
+        int ramp = graph.findEdge(0, 2);
+        assertEquals(40, RoutingProfile.SHORTEST.cost(graph, stairs), 0);
+        assertEquals(Double.POSITIVE_INFINITY, RoutingProfile.of(RoutingProfile.STEP_FREE).cost(graph, stairs), 0);
+        assertEquals(40 * RoutingProfile.STAIRS_PENALTY,
+                RoutingProfile.of(RoutingProfile.PREFER_LIFTS).cost(graph, stairs), 1e-9);
+        assertEquals(50 * RoutingProfile.STEEP_RAMP_PENALTY * RoutingProfile.EXPOSED_PENALTY,
+                RoutingProfile.of(RoutingProfile.AVOID_STEEP_RAMPS | RoutingProfile.PREFER_SHELTER).cost(graph, ramp), 1e-9);
+
+        // Profiles are shared, and never cheaper than walking
+        RoutingProfile stepFree = RoutingProfile.SHORTEST.with(RoutingProfile.STEP_FREE, true);
+        assertSame(RoutingProfile.of(RoutingProfile.STEP_FREE), stepFree);
+        assertSame(RoutingProfile.SHORTEST, stepFree.with(RoutingProfile.STEP_FREE, false));
+        for (int options = 0; options < 16; options++) {
+            for (int e = 0; e < graph.edgeCount(); e++) {
+                assertTrue(RoutingProfile.of(options).cost(graph, e) >= graph.edgeWeight(e));
+            }
+        }
+    }
+
+    @Test
+    public void stepFreeRoutesGoRoundTheStairs() {
+        CampusGraph graph = twoWays(CampusGraph.SHELTERED);
+        ProfileRouter router = new ProfileRouter(new AStarRouter(graph));
+        Route shortest = router.findRoute(0, 3);
+        assertArrayEquals(new int[]{0, 1, 3}, shortest.getNodes());
+        assertEquals(80, shortest.getLengthMeters(), 1e-9);
+
+        router.setProfile(RoutingProfile.of(RoutingProfile.STEP_FREE));
+        Route stepFree = router.findRoute(0, 3);
+        assertArrayEquals(new int[]{0, 2, 3}, stepFree.getNodes());
+        // Lengths stay in metres whatever the profile weighed
+        assertEquals(100, stepFree.getLengthMeters(), 1e-9);
+
+        // Getting wet costs more than the detour
+        router.setProfile(RoutingProfile.of(RoutingProfile.PREFER_SHELTER));
+        assertArrayEquals(new int[]{0, 2, 3}, router.findRoute(0, 3).getNodes());
+
+        // Switching back gives the same routes without searching again
+        router.setProfile(RoutingProfile.SHORTEST);
+        assertSame(shortest, router.findRoute(0, 3));
+        router.setProfile(RoutingProfile.of(RoutingProfile.STEP_FREE));
+        assertSame(stepFree, router.findRoute(0, 3));
+
+        // Stairs are the only way to b's far side when the detour is gone
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+        int a = builder.addNode(LAT, LNG);
+        int b = builder.addNode(LAT + STEP, LNG);
+        builder.addWalkway(a, b, 40, CampusGraph.STAIRS);
+        assertNull(new AStarRouter(builder.build(), RoutingProfile.of(RoutingProfile.STEP_FREE)).findRoute(a, b));
+    }
+
+    @Test
+    public void shortestRouterCanBeSwappedOnceLoaded() {
+        CampusGraph graph = GraphTestUtils.randomCampus(10, 10, 5);
+        ProfileRouter router = new ProfileRouter(new AStarRouter(graph));
+        router.setProfile(RoutingProfile.of(RoutingProfile.STEP_FREE));
+        Route stepFree = router.findRoute(0, 99);
+        Route before = new AStarRouter(graph).findRoute(0, 99);
+
+        router.setShortest(new ContractionHierarchyRouter(ContractionHierarchy.build(graph)));
+        assertSame(stepFree, router.findRoute(0, 99));
+        router.setProfile(RoutingProfile.SHORTEST);
+        assertEquals(before.getLengthMeters(), router.findRoute(0, 99).getLengthMeters(), 1e-6);
+
+        try {
+            router.setShortest(new AStarRouter(GraphTestUtils.randomCampus(10, 10, 6)));
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Shortcuts over another graph would give wrong routes
+        }
+    }
+
+    @Test
+    public void profileRoutesMatchAReferenceSearch() {
+        CampusGraph plain = GraphTestUtils.randomCampus(25, 25, 11);
+        // The same campus with flags sprinkled over its walkways
+        CampusGraph.Builder builder = new CampusGraph.Builder();
+        for (int n = 0; n < plain.nodeCount(); n++) {
+            builder.addNode(plain.latitude(n), plain.longitude(n));
+        }
+        for (int n = 0; n < plain.nodeCount(); n++) {
+            for (int e = plain.firstEdge(n); e < plain.endEdge(n); e++) {
+                int target = plain.edgeTarget(e);
+                builder.addEdge(n, target, plain.edgeWeight(e), (Math.min(n, target) * 7 + Math.max(n, target)) % 32);
+            }
+        }
+        CampusGraph graph = builder.build();
+
+        for (int options = 0; options < 16; options++) {
+            RoutingProfile profile = RoutingProfile.of(options);
+            AStarRouter router = new AStarRouter(graph, profile);
+            double[] reference = reference(graph, profile, 0);
+            for (int target = 1; target < graph.nodeCount(); target += 37) {
+                Route route = router.findRoute(0, target);
+                if (reference[target] == Double.POSITIVE_INFINITY) {
+                    assertNull(route);
+                    continue;
+                }
+                double cost = 0;
+                for (int i = 1; i < route.getNodeCount(); i++) {
+                    int best = -1;
+                    for (int e = graph.firstEdge(route.getNodes()[i - 1]); e < graph.endEdge(route.getNodes()[i - 1]); e++) {
+                        if (graph.edgeTarget(e) == route.getNodes()[i]
+                                && (best < 0 || profile.cost(graph, e) < profile.cost(graph, best))) {
+                            best = e;
+                        }
+                    }
+                    cost += profile.cost(graph, best);
+                }
+                assertEquals(reference[target], cost, 1e-6);
+            }
+        }
+    }
+
+    // Bellman-Ford over the profile's costs
+    private static double[] reference(CampusGraph graph, RoutingProfile profile, int source) {
+        double[] dist = new double[graph.nodeCount()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[source] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int n = 0; n < graph.nodeCount(); n++) {
+                for (int e = graph.firstEdge(n); e < graph.endEdge(n); e++) {
+                    double candidate = dist[n] + profile.cost(graph, e);
+                    if (candidate < dist[graph.edgeTarget(e)]) {
+                        dist[graph.edgeTarget(e)] = candidate;
+                        changed = true;
+                    }
+                }
+            }
+        }
+        return dist;
+    }
+}
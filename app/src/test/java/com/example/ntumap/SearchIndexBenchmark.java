@@ -0,0 +1,37 @@
+package com.example.ntumap;
+
+/**
+ * Times type-ahead queries, broad prefixes included, against a catalogue
+ * of 50,000 rooms. Not part of the unit test run; start it from the IDE.
+ */
+public final class SearchIndexBenchmark {
+
+    private static final String[] QUERIES = {
+            "r", "ro", "roo", "room", "room 4", "room 49999", "block 12 lab", "dining", "chau", "libary", "bocks"};
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) {
+        long start = System.nanoTime();
+        SearchIndex index = SearchIndexTest.catalogue(50000);
+        System.out.printf("search: built %d entries in %.0f ms%n", index.size(), (System.nanoTime() - start) / 1e6);
+
+        for (String query : QUERIES) {
+            start = System.nanoTime();
+            index.search(query, 10);
+            System.out.printf("search: first \"%s\" %.3f ms%n", query, (System.nanoTime() - start) / 1e6);
+        }
+        // Warm up the JIT before timing
+        for (int round = 0; round < ROUNDS; round++) {
+            for (String query : QUERIES) {
+                index.search(query, 10);
+            }
+        }
+        for (String query : QUERIES) {
+            start = System.nanoTime();
+            for (int round = 0; round < ROUNDS; round++) {
+                index.search(query, 10);
+            }
+            System.out.printf("search: \"%s\" %.3f ms/query%n", query, (System.nanoTime() - start) / 1e6 / ROUNDS);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.ntumap;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class SearchIndexTest {
+
+    private static final String[] TYPES = {"Lecture Hall", "Study Room", "Lab", "Dining", "Recreation"};
+
+    @BeforeClass
+    public static void useCampusPack() {
+        CampusPackTest.useAssetPack();
+    }
+
+    private static String topName(SearchIndex index, String query) {
+        List<SearchIndex.Match> matches = index.search(query, 1);
+        return matches.isEmpty() ? null : matches.get(0).getName();
+    }
+
+    // Rooms "Room <n>" spread over numbered blocks, the shape of a large campus catalogue
+    static SearchIndex catalogue(int rooms) {
+        SearchIndex.Builder builder = new SearchIndex.Builder();
+        for (int i = 0; i < rooms; i++) {
+            builder.add(i, "Room " + i)
+                    .addText(SearchIndex.Field.BUILDING, "Block " + (i % 400))
+                    .addText(SearchIndex.Field.TYPE, TYPES[i % TYPES.length]);
+        }
+        builder.add(rooms, "Chaucer Library").addText(SearchIndex.Field.ALIAS, "books");
+        return builder.build();
+    }
+
+    @Test
+    public void campusAliasesAndPrefixes() {
+        SearchIndex index = CampusData.getSearchIndex();
+        assertEquals("Cafeteria", topName(index, "canteen"));
+        assertEquals("Gym", topName(index, "Fitness"));
+        assertEquals("Computer Lab", topName(index, "lab"));
+        assertEquals("Library", topName(index, "lib"));
+        assertEquals("Main Building", topName(index, "main bu"));
+        assertNull(topName(index, "swimming pool"));
+        // Rooms are found by their building and floor too
+        assertEquals("Computer Lab", topName(index, "Technology Building"));
+        assertEquals("Computer Lab", topName(index, "technology floor 1"));
+        assertNull(topName(index, "technology floor 3"));
+    }
+
+    @Test
+    public void typosFallBackToTrigrams() {
+        SearchIndex index = CampusData.getSearchIndex();
+        assertEquals("Library", topName(index, "libary"));
+        assertEquals("Gym", topName(index, "gim"));
+        assertEquals("Cafeteria", topName(index, "cafetria"));
+        assertEquals("Computer Lab", topName(index, "computr lab"));
+    }
+
+    @Test
+    public void nameMatchesOutrankOtherFields() {
+        SearchIndex index = new SearchIndex.Builder()
+                .add(0, "Study Room 1").addText(SearchIndex.Field.TYPE, "Lab")
+                .add(1, "Lab 2").addText(SearchIndex.Field.TYPE, "Study Room")
+                .add(2, "Laboratory").addText(SearchIndex.Field.TYPE, "Lab")
+                .build();
+
+        List<SearchIndex.Match> matches = index.search("lab", 10);
+        assertEquals(3, matches.size());
+        assertEquals("Lab 2", matches.get(0).getName());
+        assertEquals("Laboratory", matches.get(1).getName());
+        assertEquals("Study Room 1", matches.get(2).getName());
+        assertEquals("Study Room 1", index.search("study", 10).get(0).getName());
+    }
+
+    @Test
+    public void everyWordMustMatch() {
+        SearchIndex index = catalogue(5000);
+        Random random = new Random(5);
+        for (int q = 0; q < 200; q++) {
+            int room = random.nextInt(5000);
+            String number = Integer.toString(room);
+            String prefix = number.substring(0, 1 + random.nextInt(number.length()));
+            String block = Integer.toString(room % 400);
+
+            // Each number may match either the room number or the block number
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < 5000; i++) {
+                String[] numbers = {Integer.toString(i), Integer.toString(i % 400)};
+                if (startsWithAny(numbers, prefix) && startsWithAny(numbers, block)) {
+                    expected.add(i);
+                }
+            }
+            Set<Integer> actual = new HashSet<>();
+            for (SearchIndex.Match match : index.search("room " + prefix + " block " + block, 10000)) {
+                actual.add(match.getId());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+
+    private static boolean startsWithAny(String[] words, String prefix) {
+        for (String word : words) {
+            if (word.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void broadPrefixesStopWithTheSameTopMatches() {
+        SearchIndex index = catalogue(50000);
+        String[] queries = {"r", "roo", "room", "room 4", "room 49999", "block 12 lab", "dining", "chau", "libary", "bocks"};
+        for (String query : queries) {
+            List<SearchIndex.Match> all = index.search(query, index.size());
+            List<SearchIndex.Match> top = index.search(query, 10);
+            assertEquals(query, Math.min(10, all.size()), top.size());
+            for (int i = 0; i < top.size(); i++) {
+                assertEquals(query, all.get(i).getId(), top.get(i).getId());
+                assertEquals(query, all.get(i).getScore(), top.get(i).getScore());
+            }
+        }
+        assertEquals("Room 4", topName(index, "room 4"));
+        assertEquals("Room 49999", topName(index, "room 49999"));
+        assertEquals("Chaucer Library", topName(index, "libary"));
+        assertEquals("Chaucer Library", topName(index, "bocks"));
+    }
+}
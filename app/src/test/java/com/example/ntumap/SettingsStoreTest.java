@@ -0,0 +1,164 @@
+package com.example.ntumap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SettingsStoreTest {
+
+    private static final long WRITE_DELAY_MILLIS = 100;
+
+    private TaskScheduler scheduler;
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        scheduler = new TaskScheduler(2, Runnable::run);
+        directory = Files.createTempDirectory("settings").toFile();
+        file = new File(directory, "settings.properties");
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private SettingsStore newStore() {
+        return new SettingsStore(file, scheduler.newScope(), WRITE_DELAY_MILLIS);
+    }
+
+    private static void awaitWrites(SettingsStore store, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (store.getWriteCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, store.getWriteCount());
+    }
+
+    @Test
+    public void aBurstOfChangesIsWrittenOnceAndReadBack() throws InterruptedException {
+        SettingsStore store = newStore();
+        assertFalse(store.isSaved());
+        assertSame(Settings.DEFAULTS, store.get());
+
+        // Toggling back and forth as fast as a user can tap
+        for (int i = 0; i < 50; i++) {
+            store.edit().set(Settings.HIGH_CONTRAST, i % 2 == 0).apply();
+            store.edit().setRouting(RoutingProfile.STEP_FREE, i % 3 == 1).apply();
+        }
+        store.edit().set(Settings.VOICE_GUIDANCE, true).setTextSize(20).apply();
+        assertTrue(store.get().has(Settings.VOICE_GUIDANCE));
+        assertFalse(store.get().has(Settings.HIGH_CONTRAST));
+        assertTrue(store.get().getRoutingProfile().has(RoutingProfile.STEP_FREE));
+        assertEquals(0, store.getWriteCount());
+
+        awaitWrites(store, 1);
+        Thread.sleep(2 * WRITE_DELAY_MILLIS);
+        assertEquals(1, store.getWriteCount());
+        assertTrue(store.isSaved());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        SettingsStore reopened = newStore();
+        assertEquals(store.get(), reopened.get());
+        assertEquals(20, reopened.get().getTextSize());
+        assertSame(RoutingProfile.of(RoutingProfile.STEP_FREE), reopened.get().getRoutingProfile());
+
+        // Later changes are another burst, and flush writes them without waiting
+        reopened.edit().setTextSize(99).apply();
+        assertEquals(Settings.MAX_TEXT_SIZE, reopened.get().getTextSize());
+        reopened.flush();
+        assertEquals(1, reopened.getWriteCount());
+        assertEquals(Settings.MAX_TEXT_SIZE, SettingsStore.read(file).getTextSize());
+        reopened.edit().reset().apply();
+        reopened.flush();
+        assertEquals(Settings.DEFAULTS, SettingsStore.read(file));
+    }
+
+    @Test
+    public void listenersHearChangesOnlyWhenSomethingChanged() {
+        SettingsStore store = newStore();
+        List<Settings[]> changes = new ArrayList<>();
+        SettingsStore.Listener listener = (settings, previous) -> changes.add(new Settings[]{settings, previous});
+        store.addListener(listener);
+
+        store.edit().set(Settings.LARGE_TEXT, true).apply();
+        store.edit().set(Settings.LARGE_TEXT, true).apply();
+        store.edit().setRouting(RoutingProfile.PREFER_LIFTS, true).apply();
+        assertEquals(2, changes.size());
+        assertSame(Settings.DEFAULTS, changes.get(0)[1]);
+        assertTrue(changes.get(0)[0].has(Settings.LARGE_TEXT));
+        assertSame(changes.get(0)[0], changes.get(1)[1]);
+        assertTrue(changes.get(1)[0].getRoutingProfile().has(RoutingProfile.PREFER_LIFTS));
+        assertSame(store.get(), changes.get(1)[0]);
+
+        store.removeListener(listener);
+        store.edit().set(Settings.LARGE_TEXT, false).apply();
+        assertEquals(2, changes.size());
+    }
+
+    @Test
+    public void editorsOnlyChangeWhatTheySet() throws InterruptedException {
+        SettingsStore store = newStore();
+        // Editors taken before either applies still keep each other's changes
+        SettingsStore.Editor voice = store.edit().set(Settings.VOICE_GUIDANCE, true);
+        SettingsStore.Editor shelter = store.edit().setRouting(RoutingProfile.PREFER_SHELTER, true);
+        voice.apply();
+        shelter.apply();
+        assertTrue(store.get().has(Settings.VOICE_GUIDANCE));
+        assertTrue(store.get().getRoutingProfile().has(RoutingProfile.PREFER_SHELTER));
+
+        int[] options = {Settings.HIGH_CONTRAST, Settings.SCREEN_READER, Settings.LARGE_TEXT, Settings.VIBRATION_FEEDBACK};
+        Thread[] threads = new Thread[options.length];
+        for (int t = 0; t < threads.length; t++) {
+            int option = options[t];
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    store.edit().set(option, i % 2 == 0).apply();
+                }
+                store.edit().set(option, true).apply();
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(Settings.VOICE_GUIDANCE | Settings.HIGH_CONTRAST | Settings.SCREEN_READER | Settings.LARGE_TEXT
+                | Settings.VIBRATION_FEEDBACK, store.get().getOptions());
+        assertTrue(store.get().getRoutingProfile().has(RoutingProfile.PREFER_SHELTER));
+        store.flush();
+        assertEquals(store.get(), SettingsStore.read(file));
+    }
+
+    @Test
+    public void damagedFilesFallBackToDefaults() throws IOException {
+        // A write that never got renamed into place is ignored
+        Files.write(file.toPath(), "voice_guidance=true\ntext_size=14\n".getBytes(StandardCharsets.ISO_8859_1));
+        Files.write(new File(file.getPath() + ".tmp").toPath(), "large_text=tr".getBytes(StandardCharsets.ISO_8859_1));
+        Settings settings = newStore().get();
+        assertTrue(settings.has(Settings.VOICE_GUIDANCE));
+        assertFalse(settings.has(Settings.LARGE_TEXT));
+        assertEquals(14, settings.getTextSize());
+
+        Files.write(file.toPath(), "text_size=big\nprefer_lifts=true\nunknown=1\n".getBytes(StandardCharsets.ISO_8859_1));
+        settings = newStore().get();
+        assertEquals(Settings.DEFAULT_TEXT_SIZE, settings.getTextSize());
+        assertSame(RoutingProfile.of(RoutingProfile.PREFER_LIFTS), settings.getRoutingProfile());
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.ntumap;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StartupOrchestratorTest {
+
+    // Stands in for the main looper: tasks run when the test drains it
+    private static class QueueExecutor implements java.util.concurrent.Executor {
+        final Queue<Runnable> queue = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            queue.add(task);
+        }
+
+        void drain() {
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                task.run();
+            }
+        }
+    }
+
+    private static class RecordingListener implements StartupOrchestrator.Listener {
+        final List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        final List<String> failed = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onTaskFinished(String name, boolean background, long durationNanos) {
+            finished.add(name);
+        }
+
+        @Override
+        public void onTaskFailed(String name, Throwable error) {
+            failed.add(name);
+        }
+    }
+
+    @Test
+    public void tasksRunAfterTheirDependenciesOnTheRightExecutor() {
+        QueueExecutor main = new QueueExecutor();
+        QueueExecutor background = new QueueExecutor();
+        RecordingListener listener = new RecordingListener();
+        List<String> ran = new ArrayList<>();
+
+        StartupOrchestrator startup = new StartupOrchestrator(main, background, listener);
+        startup.add("views", StartupOrchestrator.MAIN, () -> ran.add("views"));
+        startup.add("occupancy", StartupOrchestrator.MAIN, () -> ran.add("occupancy"), "pack", "views");
+        startup.add("pack", StartupOrchestrator.BACKGROUND, () -> ran.add("pack"));
+        startup.start();
+
+        assertEquals(1, main.queue.size());
+        assertEquals(1, background.queue.size());
+        main.drain();
+        assertEquals(Arrays.asList("views"), ran);
+
+        // Occupancy waits for the pack even though views are done
+        background.drain();
+        assertEquals(Arrays.asList("views", "pack"), ran);
+        assertFalse(startup.isFinished());
+        main.drain();
+        assertEquals(Arrays.asList("views", "pack", "occupancy"), ran);
+        assertTrue(startup.isFinished());
+        assertEquals(3, listener.finished.size());
+    }
+
+    @Test
+    public void deferredTasksWaitForTheFirstFrame() {
+        QueueExecutor main = new QueueExecutor();
+        QueueExecutor background = new QueueExecutor();
+        List<String> ran = new ArrayList<>();
+
+        StartupOrchestrator startup = new StartupOrchestrator(main, background, new RecordingListener());
+        startup.add("map", StartupOrchestrator.MAIN, () -> ran.add("map"));
+        startup.add("permissions", StartupOrchestrator.AFTER_FIRST_FRAME, () -> ran.add("permissions"));
+        startup.add("search", StartupOrchestrator.BACKGROUND | StartupOrchestrator.AFTER_FIRST_FRAME,
+                () -> ran.add("search"), "map");
+        startup.start();
+
+        main.drain();
+        background.drain();
+        assertEquals(Arrays.asList("map"), ran);
+
+        startup.onFirstFrame();
+        startup.onFirstFrame();
+        assertEquals(1, main.queue.size());
+        assertEquals(1, background.queue.size());
+        main.drain();
+        background.drain();
+        assertEquals(Arrays.asList("map", "permissions", "search"), ran);
+        assertTrue(startup.isFinished());
+    }
+
+    @Test
+    public void firstFrameBeforeStartReleasesDeferredTasksImmediately() {
+        QueueExecutor main = new QueueExecutor();
+        StartupOrchestrator startup = new StartupOrchestrator(main, main, new RecordingListener());
+        startup.add("permissions", StartupOrchestrator.AFTER_FIRST_FRAME, () -> {});
+        startup.onFirstFrame();
+        startup.start();
+        assertEquals(1, main.queue.size());
+    }
+
+    @Test
+    public void failedTaskSkipsItsDependentsOnly() {
+        QueueExecutor main = new QueueExecutor();
+        RecordingListener listener = new RecordingListener();
+        List<String> ran = new ArrayList<>();
+
+        StartupOrchestrator startup = new StartupOrchestrator(main, main, listener);
+        startup.add("pack", StartupOrchestrator.BACKGROUND, () -> {
+            throw new IllegalStateException("Cannot read campus POIs");
+        });
+        startup.add("occupancy", StartupOrchestrator.MAIN, () -> ran.add("occupancy"), "pack");
+        startup.add("heatmap", StartupOrchestrator.MAIN, () -> ran.add("heatmap"), "occupancy");
+        startup.add("onboarding", StartupOrchestrator.MAIN, () -> ran.add("onboarding"));
+        startup.start();
+        main.drain();
+
+        assertEquals(Arrays.asList("onboarding"), ran);
+        assertEquals(Arrays.asList("pack"), listener.failed);
+        assertTrue(startup.isFinished());
+    }
+
+    @Test
+    public void invalidGraphsAreRejected() {
+        QueueExecutor main = new QueueExecutor();
+        StartupOrchestrator cyclic = new StartupOrchestrator(main, main, new RecordingListener());
+        cyclic.add("a", StartupOrchestrator.MAIN, () -> {}, "c");
+        cyclic.add("b", StartupOrchestrator.MAIN, () -> {}, "a");
+        cyclic.add("c", StartupOrchestrator.MAIN, () -> {}, "b");
+        cyclic.add("d", StartupOrchestrator.MAIN, () -> {});
+        try {
+            cyclic.start();
+            fail("Cycle was accepted");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("[a, b, c]"));
+        }
+        assertTrue(main.queue.isEmpty());
+
+        StartupOrchestrator missing = new StartupOrchestrator(main, main, new RecordingListener());
+        missing.add("occupancy", StartupOrchestrator.MAIN, () -> {}, "pack");
+        try {
+            missing.start();
+            fail("Unknown dependency was accepted");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getMessage().contains("pack"));
+        }
+    }
+
+    @Test
+    public void cancelDropsTasksThatHaveNotStarted() {
+        QueueExecutor main = new QueueExecutor();
+        List<String> ran = new ArrayList<>();
+        StartupOrchestrator startup = new StartupOrchestrator(main, main, new RecordingListener());
+        startup.add("pack", StartupOrchestrator.MAIN, () -> ran.add("pack"));
+        startup.add("occupancy", StartupOrchestrator.MAIN, () -> ran.add("occupancy"), "pack");
+        startup.start();
+
+        startup.cancel();
+        main.drain();
+        startup.onFirstFrame();
+        main.drain();
+        assertTrue(ran.isEmpty());
+    }
+
+    @Test
+    public void wideGraphCompletesOnAThreadPool() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        RecordingListener listener = new RecordingListener();
+        CountDownLatch done = new CountDownLatch(1);
+        StartupOrchestrator startup = new StartupOrchestrator(pool, pool, listener);
+        String[] leaves = new String[200];
+        for (int i = 0; i < leaves.length; i++) {
+            leaves[i] = "leaf" + i;
+            startup.add(leaves[i], StartupOrchestrator.BACKGROUND, () -> {});
+        }
+        startup.add("join", StartupOrchestrator.MAIN, done::countDown, leaves);
+        startup.start();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(201, listener.finished.size());
+        assertTrue(startup.isFinished());
+    }
+}
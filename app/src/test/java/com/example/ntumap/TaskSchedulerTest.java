@@ -0,0 +1,203 @@
+package com.example.ntumap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TaskSchedulerTest {
+
+    private static final int WORKERS = 3;
+
+    // Stands in for the main looper: results wait here until the test runs them
+    private final LinkedBlockingQueue<Runnable> mainQueue = new LinkedBlockingQueue<>();
+    private final TaskScheduler scheduler = new TaskScheduler(WORKERS, mainQueue::add);
+
+    @After
+    public void shutDown() {
+        scheduler.shutdown();
+    }
+
+    private void runMainUntil(CountDownLatch latch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (latch.getCount() > 0) {
+            Runnable task = mainQueue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            assertNotNull("Timed out waiting for results", task);
+            task.run();
+        }
+    }
+
+    @Test
+    public void burstOfTasksStaysOnBoundedThreads() throws InterruptedException {
+        int taskCount = 1000;
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger mostRunning = new AtomicInteger();
+        CountDownLatch delivered = new CountDownLatch(taskCount);
+
+        TaskScheduler.Scope scope = scheduler.newScope();
+        for (int i = 0; i < taskCount; i++) {
+            int priority = i % 3 == 0 ? TaskScheduler.EMERGENCY : TaskScheduler.INTERACTIVE;
+            scope.submit(priority, () -> {
+                threads.add(Thread.currentThread());
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(1);
+                running.decrementAndGet();
+                return null;
+            }, ignored -> delivered.countDown());
+        }
+        runMainUntil(delivered);
+
+        // General workers plus the reserved emergency worker, however many tasks are queued
+        assertTrue("Ran on " + threads.size() + " threads", threads.size() <= WORKERS + 1);
+        assertTrue(mostRunning.get() <= WORKERS + 1);
+        assertTrue(scheduler.getLargestThreadCount() <= WORKERS + 1);
+        assertEquals(0, scope.pendingCount());
+    }
+
+    @Test
+    public void queuedTasksRunInPriorityOrder() throws InterruptedException {
+        TaskScheduler single = new TaskScheduler(1, mainQueue::add);
+        try {
+            CountDownLatch blockerStarted = new CountDownLatch(1);
+            CountDownLatch releaseBlocker = new CountDownLatch(1);
+            TaskScheduler.Scope scope = single.newScope();
+            scope.submit(TaskScheduler.BACKGROUND, () -> {
+                blockerStarted.countDown();
+                releaseBlocker.await();
+                return null;
+            }, null);
+            assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+
+            List<String> order = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch done = new CountDownLatch(4);
+            scope.submit(TaskScheduler.BACKGROUND, () -> order.add("prefetch"), ignored -> done.countDown());
+            scope.submit(TaskScheduler.INTERACTIVE, () -> order.add("search 1"), ignored -> done.countDown());
+            scope.submit(TaskScheduler.INTERACTIVE, () -> order.add("search 2"), ignored -> done.countDown());
+            scope.submit(TaskScheduler.EMERGENCY, () -> order.add("evacuation"), ignored -> done.countDown());
+
+            // The emergency worker starts the evacuation task without waiting for the busy general worker
+            Runnable first = mainQueue.poll(5, TimeUnit.SECONDS);
+            assertNotNull(first);
+            first.run();
+            assertEquals(Arrays.asList("evacuation"), order);
+
+            releaseBlocker.countDown();
+            runMainUntil(done);
+            assertEquals(Arrays.asList("evacuation", "search 1", "search 2", "prefetch"), order);
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    @Test
+    public void closedScopeDeliversNothing() throws InterruptedException {
+        TaskScheduler.Scope screen = scheduler.newScope();
+        AtomicBoolean delivered = new AtomicBoolean();
+        AtomicBoolean interrupted = new AtomicBoolean();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+
+        // One task already running, one that finishes before the screen goes, one waiting on a delay
+        screen.submit(TaskScheduler.INTERACTIVE, () -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException e) {
+                interrupted.set(true);
+            }
+            finished.countDown();
+            return "late";
+        }, result -> delivered.set(true));
+        CountDownLatch quick = new CountDownLatch(1);
+        screen.submit(TaskScheduler.INTERACTIVE, () -> {
+            quick.countDown();
+            return "quick";
+        }, result -> delivered.set(true));
+        TaskScheduler.Cancellable delayed = screen.submitDelayed(TaskScheduler.INTERACTIVE, 50,
+                () -> "delayed", result -> delivered.set(true));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(quick.await(5, TimeUnit.SECONDS));
+
+        // The screen is destroyed while the quick result is still queued for the main thread
+        screen.close();
+        assertTrue(delayed.isCancelled());
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        assertTrue(interrupted.get());
+
+        Thread.sleep(100);
+        Runnable task;
+        while ((task = mainQueue.poll()) != null) {
+            task.run();
+        }
+        assertFalse(delivered.get());
+        assertEquals(0, screen.pendingCount());
+
+        // Work submitted after close is dropped straight away
+        assertTrue(screen.submit(TaskScheduler.INTERACTIVE, () -> "after", null).isCancelled());
+    }
+
+    @Test
+    public void cancellingOneTaskLeavesTheOthers() throws InterruptedException {
+        TaskScheduler.Scope scope = scheduler.newScope();
+        List<String> results = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        TaskScheduler.Cancellable booking = scope.submitDelayed(TaskScheduler.INTERACTIVE, 200,
+                () -> "booking", results::add);
+        scope.submitDelayed(TaskScheduler.INTERACTIVE, 20, () -> "route", result -> {
+            results.add(result);
+            done.countDown();
+        });
+        scope.submitDelayed(TaskScheduler.INTERACTIVE, 40, () -> "search", result -> {
+            results.add(result);
+            done.countDown();
+        });
+        booking.cancel();
+        runMainUntil(done);
+        assertEquals(Arrays.asList("route", "search"), results);
+    }
+
+    @Test
+    public void failingTaskDoesNotStopTheWorkers() throws InterruptedException {
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch failed = new CountDownLatch(WORKERS * 2);
+        TaskScheduler reporting = new TaskScheduler(WORKERS, mainQueue::add, error -> {
+            errors.add(error);
+            failed.countDown();
+        });
+        try {
+            TaskScheduler.Scope scope = reporting.newScope();
+            CountDownLatch done = new CountDownLatch(1);
+            for (int i = 0; i < WORKERS * 2; i++) {
+                scope.submit(TaskScheduler.BACKGROUND, () -> {
+                    throw new IllegalStateException("Booking server unavailable");
+                }, result -> fail("Failed task delivered a result"));
+            }
+            scope.submit(TaskScheduler.BACKGROUND, () -> "ok", result -> done.countDown());
+            runMainUntil(done);
+            assertTrue(failed.await(5, TimeUnit.SECONDS));
+            assertEquals("Booking server unavailable", errors.get(0).getMessage());
+        } finally {
+            reporting.shutdown();
+        }
+    }
+
+    @Test
+    public void plainExecutorRunsAtItsPriority() throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        scheduler.executor(TaskScheduler.BACKGROUND).execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+    }
+}